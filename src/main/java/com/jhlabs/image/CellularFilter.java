@@ -21,7 +21,6 @@ import net.jafama.FastMath;
 import pixelitor.ThreadPool;
 import pixelitor.utils.CachedFloatRandom;
 
-import java.util.concurrent.Future;
 
 /**
  * A variant of Worley noise that calculates distances to the three
@@ -229,8 +228,7 @@ public class CellularFilter extends WholeImageFilter {
     enum GridType {
         RANDOM {
             @Override
-            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness) {
-                CachedFloatRandom random = randomTL.get();
+            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness, CachedFloatRandom random) {
                 random.setSeed(571 * cellX + 23 * cellY);
                 int randomIndex = random.nextInt() & 0x1fff;
                 int numPoints = poisson[randomIndex];
@@ -244,8 +242,7 @@ public class CellularFilter extends WholeImageFilter {
             }
         }, SQUARE {
             @Override
-            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness) {
-                CachedFloatRandom random = randomTL.get();
+            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness, CachedFloatRandom random) {
                 random.setSeed(571 * cellX + 23 * cellY);
                 float px = 0.5f;
                 float py = 0.5f;
@@ -259,7 +256,7 @@ public class CellularFilter extends WholeImageFilter {
             }
         }, HEXAGONAL {
             @Override
-            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness) {
+            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness, CachedFloatRandom random) {
 //                random.setSeed(571 * cubeX + 23 * cubeY);
                 float px, py;
                 if ((cellX & 1) == 0) {
@@ -278,7 +275,7 @@ public class CellularFilter extends WholeImageFilter {
             }
         }, OCTAGONAL {
             @Override
-            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness) {
+            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness, CachedFloatRandom random) {
 //                random.setSeed(571 * cubeX + 23 * cubeY);
                 float weight = 1.0f;
                 for (int i = 0; i < 2; i++) {
@@ -305,7 +302,7 @@ public class CellularFilter extends WholeImageFilter {
             }
         }, TRIANGULAR {
             @Override
-            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness) {
+            float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness, CachedFloatRandom random) {
 //                random.setSeed(571 * cubeX + 23 * cubeY);
                 float weight = 1.0f;
                 for (int i = 0; i < 2; i++) {
@@ -349,9 +346,11 @@ public class CellularFilter extends WholeImageFilter {
          * @param cellY      The integer y-coordinate of the cell.
          * @param results    An array to store the three nearest points found so far. This array is modified by this method.
          * @param randomness A randomness factor to jitter the feature point position.
+         * @param random     The random generator of the current thread, passed in
+         *                   so that it's looked up only once per evaluated position.
          * @return The distance to the third nearest point (used for optimization in some grid types).
          */
-        abstract float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness);
+        abstract float checkCell(float x, float y, int cellX, int cellY, Point[] results, float randomness, CachedFloatRandom random);
 
         // maintains the result array such that it always contains
         // the three closest points found so far, sorted by distance
@@ -402,6 +401,7 @@ public class CellularFilter extends WholeImageFilter {
 
     public float evaluate(float x, float y) {
         Point[] results = resultsTL.get();
+        CachedFloatRandom random = GridType.randomTL.get();
         for (Point result : results) {
             result.distance = Float.POSITIVE_INFINITY;
         }
@@ -415,31 +415,31 @@ public class CellularFilter extends WholeImageFilter {
         float fy = y - iy;
 
         // check the current cell
-        float d = gridType.checkCell(fx, fy, ix, iy, results, randomness);
+        float d = gridType.checkCell(fx, fy, ix, iy, results, randomness, random);
 
         // check adjacent cells if necessary
         if (d > fy) {
-            d = gridType.checkCell(fx, fy + 1, ix, iy - 1, results, randomness);
+            d = gridType.checkCell(fx, fy + 1, ix, iy - 1, results, randomness, random);
         }
         if (d > 1 - fy) {
-            d = gridType.checkCell(fx, fy - 1, ix, iy + 1, results, randomness);
+            d = gridType.checkCell(fx, fy - 1, ix, iy + 1, results, randomness, random);
         }
         if (d > fx) {
-            gridType.checkCell(fx + 1, fy, ix - 1, iy, results, randomness);
+            gridType.checkCell(fx + 1, fy, ix - 1, iy, results, randomness, random);
             if (d > fy) {
-                d = gridType.checkCell(fx + 1, fy + 1, ix - 1, iy - 1, results, randomness);
+                d = gridType.checkCell(fx + 1, fy + 1, ix - 1, iy - 1, results, randomness, random);
             }
             if (d > 1 - fy) {
-                d = gridType.checkCell(fx + 1, fy - 1, ix - 1, iy + 1, results, randomness);
+                d = gridType.checkCell(fx + 1, fy - 1, ix - 1, iy + 1, results, randomness, random);
             }
         }
         if (d > 1 - fx) {
-            d = gridType.checkCell(fx - 1, fy, ix + 1, iy, results, randomness);
+            d = gridType.checkCell(fx - 1, fy, ix + 1, iy, results, randomness, random);
             if (d > fy) {
-                d = gridType.checkCell(fx - 1, fy + 1, ix + 1, iy - 1, results, randomness);
+                d = gridType.checkCell(fx - 1, fy + 1, ix + 1, iy - 1, results, randomness, random);
             }
             if (d > 1 - fy) {
-                d = gridType.checkCell(fx - 1, fy - 1, ix + 1, iy + 1, results, randomness);
+                d = gridType.checkCell(fx - 1, fy - 1, ix + 1, iy + 1, results, randomness, random);
             }
         }
 
@@ -494,18 +494,12 @@ public class CellularFilter extends WholeImageFilter {
         pt = createProgressTracker(height);
         int[] outPixels = new int[width * height];
 
-        Future<?>[] rowFutures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable rowTask = () -> {
-                int index = width * finalY;
-                for (int x = 0; x < width; x++) {
-                    outPixels[index++] = genPixel(x, finalY, inPixels, width, height);
-                }
-            };
-            rowFutures[y] = ThreadPool.submit(rowTask);
-        }
-        ThreadPool.waitFor(rowFutures, pt);
+        ThreadPool.processRows(height, width, y -> {
+            int index = width * y;
+            for (int x = 0; x < width; x++) {
+                outPixels[index++] = genPixel(x, y, inPixels, width, height);
+            }
+        }, pt);
 
         finishProgressTracker();
 
@@ -21,7 +21,6 @@ import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
-import java.util.concurrent.Future;
 
 /**
  * A filter which applies Gaussian blur to an image. This is a subclass of ConvolveFilter
@@ -110,14 +109,8 @@ public class GaussianFilter extends ConvolveFilter {
         int cols = kernel.getWidth();
         int cols2 = cols / 2;
 
-        Future<?>[] rowFutures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable rowTask = () -> convolveAndTransposeRow(inPixels, outPixels, width, height, premultiply, unpremultiply, edgeAction, matrix, cols2, finalY);
-            rowFutures[y] = ThreadPool.submit(rowTask);
-        }
-
-        ThreadPool.waitFor(rowFutures, pt);
+        ThreadPool.processRows(height, width, y ->
+            convolveAndTransposeRow(inPixels, outPixels, width, height, premultiply, unpremultiply, edgeAction, matrix, cols2, y), pt);
     }
 
     private static void convolveAndTransposeRow(int[] inPixels, int[] outPixels, int width, int height, boolean premultiply, boolean unpremultiply, int edgeAction, float[] matrix, int cols2, int y) {
@@ -16,8 +16,9 @@ limitations under the License.
 
 package com.jhlabs.image;
 
-import com.jhlabs.math.FFT;
+import com.jhlabs.math.FFT2D;
 import net.jafama.FastMath;
+import pixelitor.ThreadPool;
 
 import java.awt.image.BufferedImage;
 
@@ -33,6 +34,11 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
     private static final float angle = 0;
     private int sides = 5;
 
+    // larger tiles would need fewer operations for big radii,
+    // but their buffers don't fit into the CPU caches
+    private static final int MIN_TILE_SIZE = 64;
+    private static final int MAX_TILE_SIZE = 512;
+
     public LensBlurFilter(String filterName) {
         super(filterName);
     }
@@ -77,39 +83,80 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
     public BufferedImage filter(BufferedImage src, BufferedImage dst) {
         int width = src.getWidth();
         int height = src.getHeight();
-        int rows = 1, cols = 1;
-        int log2rows = 0, log2cols = 0;
         int iradius = (int) Math.ceil(radius);
 
-        int tileWidth = iradius < 32 ? Math.min(128, width + 2 * iradius) : Math.min(256, width + 2 * iradius);
-        int tileHeight = iradius < 32 ? Math.min(128, height + 2 * iradius) : Math.min(256, height + 2 * iradius);
-
         if (dst == null) {
             dst = new BufferedImage(width, height, TYPE_INT_ARGB);
         }
 
-        while (rows < tileHeight) {
-            rows *= 2;
-            log2rows++;
-        }
-        while (cols < tileWidth) {
-            cols *= 2;
-            log2cols++;
-        }
-        int w = cols;
-        int h = rows;
+        // The tiles overlap by 2 * iradius pixels. For small images
+        // a single tile is enough in the given direction.
+        int tileSize = calcTileSize(iradius);
+        int cols = Math.min(tileSize, ceilPowerOf2(width + 2 * iradius));
+        int rows = Math.min(tileSize, ceilPowerOf2(height + 2 * iradius));
+        int stepX = cols - 2 * iradius;
+        int stepY = rows - 2 * iradius;
+        int numTilesX = (width + stepX - 1) / stepX;
+        int numTilesY = (height + stepY - 1) / stepY;
+        int numTiles = numTilesX * numTilesY;
+
+        FFT2D fft = new FFT2D(cols, rows);
+        float[][] mask = createKernelSpectrum(fft, cols, rows);
+
+        pt = createProgressTracker(numTiles);
+        BufferedImage out = dst;
+
+        // the tiles are processed in parallel, and each band allocates its buffers once
+        ThreadPool.processBands(numTiles, cols * rows, (startTile, endTile) -> {
+            Tile tile = new Tile(cols, rows);
+            for (int t = startTile; t < endTile; t++) {
+                int tileX = -iradius + (t % numTilesX) * stepX;
+                int tileY = -iradius + (t / numTilesX) * stepY;
+                tile.process(src, out, tileX, tileY, iradius, fft, mask);
+            }
+        }, pt);
+        finishProgressTracker();
 
-        tileWidth = w;
-        tileHeight = h;//FIXME-tileWidth, w, and cols are always all the same
+        return dst;
+    }
 
-        FFT fft = new FFT(Math.max(log2rows, log2cols));
+    /**
+     * Returns the power-of-two tile size that minimizes the FFT cost
+     * per output pixel, taking into account that only the inner part of
+     * the tile (without the overlapping border) produces output pixels.
+     * The tiles are larger than the maximum size only if the radius
+     * leaves no inner part in the smaller ones.
+     */
+    private static int calcTileSize(int iradius) {
+        int maxSize = Math.max(MAX_TILE_SIZE, ceilPowerOf2(2 * iradius + 1));
+        int bestSize = maxSize;
+        double bestCost = Double.MAX_VALUE;
+        for (int size = MIN_TILE_SIZE; size <= maxSize; size *= 2) {
+            int innerSize = size - 2 * iradius;
+            if (innerSize <= 0) {
+                continue;
+            }
+            double log2 = Integer.numberOfTrailingZeros(size);
+            double cost = (double) size * size * log2 / ((double) innerSize * innerSize);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestSize = size;
+            }
+        }
+        return bestSize;
+    }
+
+    private static int ceilPowerOf2(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
 
-        int[] rgb = new int[w * h];
+    /**
+     * Creates the polygon-shaped kernel, normalizes it,
+     * and returns its Fourier transform as {real, imaginary}.
+     */
+    private float[][] createKernelSpectrum(FFT2D fft, int w, int h) {
         float[][] mask = new float[2][w * h];
-        float[][] gb = new float[2][w * h];
-        float[][] ar = new float[2][w * h];
 
-        // Create the kernel
         double polyAngle = Math.PI / sides;
         double polyScale = 1.0f / FastMath.cos(polyAngle);
         double r2 = radius * radius;
@@ -134,196 +181,144 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
                     f = f * r < radius ? 1 : 0;
                 }
                 total += (float) f;
-
                 mask[0][i] = (float) f;
-                mask[1][i] = 0;
                 i++;
             }
         }
 
         // Normalize the kernel
-        i = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                mask[0][i] /= total;
-                i++;
-            }
+        for (i = 0; i < mask[0].length; i++) {
+            mask[0][i] /= total;
         }
 
-        fft.transform2D(mask[0], mask[1], w, h, true);
+        fft.transform(mask[0], mask[1], true);
+        return mask;
+    }
 
-        int workUnits = 0;
-        // count the work units the same was as the code does...
-        for (int tileY = -iradius; tileY < height; tileY += tileHeight - 2 * iradius) {
-            workUnits++;
+    /**
+     * The working buffers for processing one tile at a time.
+     * The four channels are convolved with two complex transforms
+     * by packing two real channels into each complex array.
+     */
+    private class Tile {
+        private final int w;
+        private final int h;
+        private final int[] rgb;
+        private final float[] aRe; // alpha
+        private final float[] aIm; // red
+        private final float[] gRe; // green
+        private final float[] gIm; // blue
+
+        Tile(int w, int h) {
+            this.w = w;
+            this.h = h;
+            rgb = new int[w * h];
+            aRe = new float[w * h];
+            aIm = new float[w * h];
+            gRe = new float[w * h];
+            gIm = new float[w * h];
         }
-        pt = createProgressTracker(workUnits);
-
-        for (int tileY = -iradius; tileY < height; tileY += tileHeight - 2 * iradius) {
-            for (int tileX = -iradius; tileX < width; tileX += tileWidth - 2 * iradius) {
-//                System.out.println("Tile: "+tileX+" "+tileY+" "+tileWidth+" "+tileHeight);
-
-                // Clip the tile to the image bounds
-                int tx = tileX, ty = tileY, tw = tileWidth, th = tileHeight;
-                int fx = 0, fy = 0;
-                if (tx < 0) {
-                    tw += tx;
-                    fx -= tx;
-                    tx = 0;
-                }
-                if (ty < 0) {
-                    th += ty;
-                    fy -= ty;
-                    ty = 0;
-                }
-                if (tx + tw > width) {
-                    tw = width - tx;
-                }
-                if (ty + th > height) {
-                    th = height - ty;
-                }
-                src.getRGB(tx, ty, tw, th, rgb, fy * w + fx, w);
-                // getRGB(src, tx, ty, tw, th, rgb);
-
-                // Create a float array from the pixels. Any pixels off the edge of the source image get duplicated from the edge.
-                i = 0;
-                for (int y = 0; y < h; y++) {
-                    int imageY = y + tileY;
-                    int j;
-                    if (imageY < 0) {
-                        j = fy;
-                    } else if (imageY > height) {
-                        j = fy + th - 1;
-                    } else {
-                        j = y;
+
+        void process(BufferedImage src, BufferedImage dst, int tileX, int tileY,
+                     int iradius, FFT2D fft, float[][] mask) {
+            int width = src.getWidth();
+            int height = src.getHeight();
+
+            // Clip the tile to the image bounds
+            int tx = Math.max(tileX, 0);
+            int ty = Math.max(tileY, 0);
+            int fx = tx - tileX;
+            int fy = ty - tileY;
+            int tw = Math.min(tileX + w, width) - tx;
+            int th = Math.min(tileY + h, height) - ty;
+            src.getRGB(tx, ty, tw, th, rgb, fy * w + fx, w);
+
+            // Create the float arrays from the pixels. Any pixels
+            // off the edge of the source image get duplicated from the edge.
+            int i = 0;
+            for (int y = 0; y < h; y++) {
+                int j = Math.clamp(y, fy, fy + th - 1) * w;
+                for (int x = 0; x < w; x++) {
+                    int argb = rgb[j + Math.clamp(x, fx, fx + tw - 1)];
+
+                    float r = (argb >> 16) & 0xFF;
+                    float g = (argb >> 8) & 0xFF;
+                    float b = argb & 0xFF;
+
+                    // Bloom...
+                    if (r > bloomThreshold) {
+                        r *= bloom;
                     }
-                    j *= w;
-                    for (int x = 0; x < w; x++) {
-                        int imageX = x + tileX;
-                        int k;
-                        if (imageX < 0) {
-                            k = fx;
-                        } else if (imageX > width) {
-                            k = fx + tw - 1;
-                        } else {
-                            k = x;
-                        }
-                        k += j;
-
-                        ar[0][i] = ((rgb[k] >> 24) & 0xff);
-                        float r = ((rgb[k] >> 16) & 0xff);
-                        float g = ((rgb[k] >> 8) & 0xff);
-                        float b = (rgb[k] & 0xff);
-
-                        // Bloom...
-                        if (r > bloomThreshold) {
-                            r *= bloom;
-                        }
-                        if (g > bloomThreshold) {
-                            g *= bloom;
-                        }
-                        if (b > bloomThreshold) {
-                            b *= bloom;
-                        }
-
-                        ar[1][i] = r;
-                        gb[0][i] = g;
-                        gb[1][i] = b;
-
-                        i++;
+                    if (g > bloomThreshold) {
+                        g *= bloom;
                     }
-                }
-
-                // Transform into frequency space
-                fft.transform2D(ar[0], ar[1], cols, rows, true);
-                fft.transform2D(gb[0], gb[1], cols, rows, true);
-
-                // Multiply the transformed pixels by the transformed kernel
-                i = 0;
-                for (int y = 0; y < h; y++) {
-                    for (int x = 0; x < w; x++) {
-                        float re = ar[0][i];
-                        float im = ar[1][i];
-                        float rem = mask[0][i];
-                        float imm = mask[1][i];
-                        ar[0][i] = re * rem - im * imm;
-                        ar[1][i] = re * imm + im * rem;
-
-                        re = gb[0][i];
-                        im = gb[1][i];
-                        gb[0][i] = re * rem - im * imm;
-                        gb[1][i] = re * imm + im * rem;
-                        i++;
+                    if (b > bloomThreshold) {
+                        b *= bloom;
                     }
-                }
 
-                // Transform back
-                fft.transform2D(ar[0], ar[1], cols, rows, false);
-                fft.transform2D(gb[0], gb[1], cols, rows, false);
-
-                // Convert back to RGB pixels, with quadrant remapping
-                int row_flip = w >> 1;
-                int col_flip = h >> 1;
-                int index = 0;
-
-                int workaroundMax = w * h - 1;
-
-                //FIXME-don't bother converting pixels off image edges
-                for (int y = 0; y < w; y++) {
-                    int ym = y ^ row_flip;
-                    int yi = ym * cols;
-                    for (int x = 0; x < w; x++) {
-                        int xm = yi + (x ^ col_flip);
-
-                        // Laszlo: not sure what is happening here, but for certain small images
-                        // with unusual image proportions (for example for any 100*20 input image)
-                        // we get an ArrayIndexOutOfBoundsException
-                        // This break does not result in a good-looking image, but at least
-                        // it avoids the exceptions during the automatic tests
-                        if (xm > workaroundMax) {
-                            break;
-                        }
-
-                        int a = (int) ar[0][xm];
-                        int r = (int) ar[1][xm];
-                        int g = (int) gb[0][xm];
-                        int b = (int) gb[1][xm];
-
-                        // Clamp high pixels due to blooming
-                        if (r > 255) {
-                            r = 255;
-                        }
-                        if (g > 255) {
-                            g = 255;
-                        }
-                        if (b > 255) {
-                            b = 255;
-                        }
-                        int argb = (a << 24) | (r << 16) | (g << 8) | b;
-                        rgb[index++] = argb;
-                    }
+                    aRe[i] = (argb >>> 24);
+                    aIm[i] = r;
+                    gRe[i] = g;
+                    gIm[i] = b;
+                    i++;
                 }
+            }
 
-                // Clip to the output image
-                tx = tileX + iradius;
-                ty = tileY + iradius;
-                tw = tileWidth - 2 * iradius;
-                th = tileHeight - 2 * iradius;
-                if (tx + tw > width) {
-                    tw = width - tx;
-                }
-                if (ty + th > height) {
-                    th = height - ty;
-                }
+            // Transform into frequency space
+            fft.transform(aRe, aIm, true);
+            fft.transform(gRe, gIm, true);
+
+            // Multiply the transformed pixels by the transformed kernel
+            float[] maskRe = mask[0];
+            float[] maskIm = mask[1];
+            for (i = 0; i < aRe.length; i++) {
+                float rem = maskRe[i];
+                float imm = maskIm[i];
+
+                float re = aRe[i];
+                float im = aIm[i];
+                aRe[i] = re * rem - im * imm;
+                aIm[i] = re * imm + im * rem;
+
+                re = gRe[i];
+                im = gIm[i];
+                gRe[i] = re * rem - im * imm;
+                gIm[i] = re * imm + im * rem;
+            }
 
-                dst.setRGB(tx, ty, tw, th, rgb, iradius * w + iradius, w);
-                // setRGB(dst, tx, ty, tw, th, rgb);
+            // Transform back
+            fft.transform(aRe, aIm, false);
+            fft.transform(gRe, gIm, false);
+
+            // Clip the inner part of the tile to the output image
+            int outX = tileX + iradius;
+            int outY = tileY + iradius;
+            int outW = Math.min(w - 2 * iradius, width - outX);
+            int outH = Math.min(h - 2 * iradius, height - outY);
+
+            // Convert back to RGB pixels, with quadrant remapping,
+            // because the kernel is centered in the middle of the tile
+            int xFlip = w >> 1;
+            int yFlip = h >> 1;
+            for (int y = iradius; y < iradius + outH; y++) {
+                int yi = (y ^ yFlip) * w;
+                int index = y * w + iradius;
+                for (int x = iradius; x < iradius + outW; x++) {
+                    int xm = yi + (x ^ xFlip);
+
+                    // Clamp high pixels due to blooming and
+                    // the small negative rounding errors
+                    int a = Math.clamp((int) aRe[xm], 0, 255);
+                    int r = Math.clamp((int) aIm[xm], 0, 255);
+                    int g = Math.clamp((int) gRe[xm], 0, 255);
+                    int b = Math.clamp((int) gIm[xm], 0, 255);
+
+                    rgb[index++] = (a << 24) | (r << 16) | (g << 8) | b;
+                }
             }
-            pt.unitDone();
-        }
-        finishProgressTracker();
 
-        return dst;
+            dst.setRGB(outX, outY, outW, outH, rgb, iradius * w + iradius, w);
+        }
     }
 
     @Override
@@ -22,7 +22,6 @@ import pixelitor.ThreadPool;
 
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.util.concurrent.Future;
 
 /**
  * A filter which produces motion blur the slow, but higher-quality way.
@@ -175,13 +174,8 @@ public class MotionBlurFilter extends AbstractBufferedImageOp implements MotionB
             ImageMath.premultiply(inPixels, 0, inPixels.length);
         }
 
-        Future<?>[] rowFutures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable rowTask = () -> processRow(width, height, inPixels, outPixels, cx, cy, translateX, translateY, repetitions, finalY);
-            rowFutures[y] = ThreadPool.submit(rowTask);
-        }
-        ThreadPool.waitFor(rowFutures, pt);
+        ThreadPool.processRows(height, width, y ->
+            processRow(width, height, inPixels, outPixels, cx, cy, translateX, translateY, repetitions, y), pt);
         if (premultiplyAlpha) {
             ImageMath.unpremultiply(outPixels, 0, inPixels.length);
         }
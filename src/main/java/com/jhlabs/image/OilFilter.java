@@ -18,7 +18,6 @@ package com.jhlabs.image;
 
 import pixelitor.ThreadPool;
 
-import java.util.concurrent.Future;
 
 /**
  * A filter which produces a "oil-painting" effect.
@@ -59,14 +58,8 @@ public class OilFilter extends WholeImageFilter {
         int[] outPixels = new int[width * height];
 
         pt = createProgressTracker(height);
-        Future<?>[] rowFutures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable rowTask = () -> processRow(width, height, inPixels, outPixels, finalY);
-            rowFutures[y] = ThreadPool.submit(rowTask);
-        }
-
-        ThreadPool.waitFor(rowFutures, pt);
+        ThreadPool.processRows(height, width, y ->
+            processRow(width, height, inPixels, outPixels, y), pt);
         finishProgressTracker();
 
         return outPixels;
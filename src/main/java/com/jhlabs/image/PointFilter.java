@@ -17,10 +17,11 @@ limitations under the License.
 package com.jhlabs.image;
 
 import pixelitor.ThreadPool;
+import pixelitor.filters.util.PreviewRegion;
 import pixelitor.utils.ImageUtils;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.util.concurrent.Future;
 
 import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 
@@ -49,44 +50,42 @@ public abstract class PointFilter extends AbstractBufferedImageOp {
         int[] inPixels = ImageUtils.getPixels(src);
         int[] outPixels = ImageUtils.getPixels(dst);
 
-        pt = createProgressTracker(height);
-        Future<?>[] rowFutures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable rowTask = () -> {
-                for (int x = 0; x < width; x++) {
-                    int index = finalY * width + x;
-                    outPixels[index] = processPixel(x, finalY, inPixels[index]);
+        // while previewing, only the visible region might be needed
+        Rectangle region = PreviewRegion.get(width, height);
+        int minX = region.x;
+        int maxX = region.x + region.width;
+
+        pt = createProgressTracker(region.height);
+        ThreadPool.processBands(region.height, region.width, (startRow, endRow) -> {
+            for (int y = region.y + startRow; y < region.y + endRow; y++) {
+                int index = y * width + minX;
+                for (int x = minX; x < maxX; x++) {
+                    outPixels[index] = processPixel(x, y, inPixels[index]);
+                    index++;
                 }
-            };
-            rowFutures[y] = ThreadPool.submit(rowTask);
-        }
-
-        ThreadPool.waitFor(rowFutures, pt);
+            }
+        }, pt);
         finishProgressTracker();
 
         return dst;
     }
 
     public BufferedImage grayFilter(BufferedImage src, BufferedImage dst) {
-        int width = src.getWidth();
-        int height = src.getHeight();
-
-        pt = createProgressTracker(height);
-        Future<?>[] rowFutures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable rowTask = () -> {
-                int[] inPixels = new int[width];
-                src.getRGB(0, finalY, width, 1, inPixels, 0, width);
-                for (int x = 0; x < width; x++) {
-                    inPixels[x] = processPixel(x, finalY, inPixels[x]);
+        Rectangle region = PreviewRegion.get(src.getWidth(), src.getHeight());
+        int minX = region.x;
+        int regionWidth = region.width;
+
+        pt = createProgressTracker(region.height);
+        ThreadPool.processBands(region.height, regionWidth, (startRow, endRow) -> {
+            int[] rowPixels = new int[regionWidth];
+            for (int y = region.y + startRow; y < region.y + endRow; y++) {
+                src.getRGB(minX, y, regionWidth, 1, rowPixels, 0, regionWidth);
+                for (int i = 0; i < regionWidth; i++) {
+                    rowPixels[i] = processPixel(minX + i, y, rowPixels[i]);
                 }
-                dst.setRGB(0, finalY, width, 1, inPixels, 0, width);
-            };
-            rowFutures[y] = ThreadPool.submit(rowTask);
-        }
-        ThreadPool.waitFor(rowFutures, pt);
+                dst.setRGB(minX, y, regionWidth, 1, rowPixels, 0, regionWidth);
+            }
+        }, pt);
         finishProgressTracker();
 
         return dst;
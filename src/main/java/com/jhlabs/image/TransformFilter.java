@@ -18,11 +18,11 @@ package com.jhlabs.image;
 
 import net.jafama.FastMath;
 import pixelitor.ThreadPool;
+import pixelitor.filters.util.PreviewRegion;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 /**
  * An abstract superclass for filters that transform images through
@@ -102,34 +102,30 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
      * Applies the transform using nearest-neighbor interpolation.
      */
     private BufferedImage filterPixelsNN(BufferedImage dst, int width, int height, int[] inPixels) {
-        pt = createProgressTracker(height);
+        // while previewing, only the visible region might be needed
+        Rectangle region = PreviewRegion.get(width, height);
+        int minX = region.x;
+        int maxX = region.x + region.width;
 
-        @SuppressWarnings("unchecked")
-        Future<int[]>[] rowFutures = new Future[height];
+        pt = createProgressTracker(region.height);
+        int[] outPixels = new int[region.width * region.height];
 
-        // process each output line in parallel
-        for (int y = 0; y < height; y++) {
+        // process the output bands in parallel
+        ThreadPool.processBands(region.height, region.width, (startRow, endRow) -> {
             float[] out = new float[2];
-            int finalY = y;
-
-            Callable<int[]> rowTask = () -> {
-                int[] outLine = new int[width];
-
-                for (int x = 0; x < width; x++) {
-                    transformInverse(x, finalY, out);
+            int index = startRow * region.width;
+            for (int y = region.y + startRow; y < region.y + endRow; y++) {
+                for (int x = minX; x < maxX; x++) {
+                    transformInverse(x, y, out);
                     int srcX = (int) out[0];
                     int srcY = (int) out[1];
                     // int casting rounds towards zero, so we check out[0] < 0, not srcX < 0
-                    outLine[x] = sampleNN(inPixels, srcX, srcY, srcWidth, srcHeight, out);
+                    outPixels[index++] = sampleNN(inPixels, srcX, srcY, srcWidth, srcHeight, out);
                 }
+            }
+        }, pt);
 
-                return outLine;
-            };
-
-            rowFutures[finalY] = ThreadPool.submit2(rowTask);
-        }
-
-        ThreadPool.waitFor2(rowFutures, dst, width, pt);
+        setRGB(dst, region.x, region.y, region.width, region.height, outPixels);
         finishProgressTracker();
 
         return dst;
@@ -142,19 +138,20 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
         int maxSrcX = width - 1;
         int maxSrcY = height - 1;
 
-        pt = createProgressTracker(height);
-        @SuppressWarnings("unchecked")
-        Future<int[]>[] rowFutures = new Future[height];
+        Rectangle region = PreviewRegion.get(width, height);
+        int minX = region.x;
+        int maxX = region.x + region.width;
 
-        // process each output line in parallel
-        for (int y = 0; y < height; y++) {
-            float[] out = new float[2];
-            int finalY = y;
+        pt = createProgressTracker(region.height);
+        int[] outPixels = new int[region.width * region.height];
 
-            Callable<int[]> rowTask = () -> {
-                int[] outLine = new int[width];
-                for (int x = 0; x < width; x++) {
-                    transformInverse(x, finalY, out);
+        // process the output bands in parallel
+        ThreadPool.processBands(region.height, region.width, (startRow, endRow) -> {
+            float[] out = new float[2];
+            int index = startRow * region.width;
+            for (int y = region.y + startRow; y < region.y + endRow; y++) {
+                for (int x = minX; x < maxX; x++) {
+                    transformInverse(x, y, out);
 
                     int srcX = (int) FastMath.floor(out[0]);
                     int srcY = (int) FastMath.floor(out[1]);
@@ -176,15 +173,12 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
                         sw = sampleBL(inPixels, srcX, srcY + 1, srcWidth, srcHeight);
                         se = sampleBL(inPixels, srcX + 1, srcY + 1, srcWidth, srcHeight);
                     }
-                    outLine[x] = ImageMath.bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
+                    outPixels[index++] = ImageMath.bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
                 }
-                return outLine;
-            };
-
-            rowFutures[finalY] = ThreadPool.submit2(rowTask);
-        }
+            }
+        }, pt);
 
-        ThreadPool.waitFor2(rowFutures, dst, width, pt);
+        setRGB(dst, region.x, region.y, region.width, region.height, outPixels);
         finishProgressTracker();
 
         return dst;
@@ -16,135 +16,109 @@ limitations under the License.
 
 package com.jhlabs.math;
 
-public class FFT {
-    // Weighting factors
-    protected final float[] w1;
-    protected final float[] w2;
-    protected final float[] w3;
-
-    public FFT(int logN) {
-        // Prepare the weighting factors
-        w1 = new float[logN];
-        w2 = new float[logN];
-        w3 = new float[logN];
-        int N = 1;
-        for (int k = 0; k < logN; k++) {
-            N <<= 1;
-            double angle = -2.0 * Math.PI / N;
-            w1[k] = (float) Math.sin(0.5 * angle);
-            w2[k] = -2.0f * w1[k] * w1[k];
-            w3[k] = (float) Math.sin(angle);
-        }
-    }
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A radix-2 complex FFT for a fixed power-of-two size. The twiddle factors
+ * and the bit-reversal permutation are calculated only once for each size,
+ * and the instances are immutable, so they can be shared between threads.
+ */
+public final class FFT {
+    private static final Map<Integer, FFT> cache = new ConcurrentHashMap<>();
+
+    private final int n;
+
+    // the index pairs that have to be swapped for the bit-reversal permutation
+    private final int[] swaps;
+
+    // the twiddle factors exp(-2 * PI * i * k / n) for k < n / 2
+    private final float[] cos;
+    private final float[] sin;
 
-    private static void scramble(int n, float[] real, float[] imag) {
-        int j = 0;
+    private FFT(int n) {
+        this.n = n;
 
+        int logN = Integer.numberOfTrailingZeros(n);
+        int[] pairs = new int[n];
+        int numPairs = 0;
         for (int i = 0; i < n; i++) {
-            if (i > j) {
-                float t;
-                t = real[j];
-                real[j] = real[i];
-                real[i] = t;
-                t = imag[j];
-                imag[j] = imag[i];
-                imag[i] = t;
+            int j = logN == 0 ? 0 : Integer.reverse(i) >>> (32 - logN);
+            if (i < j) {
+                pairs[numPairs++] = i;
+                pairs[numPairs++] = j;
             }
-            int m = n >> 1;
-            while (j >= m && m >= 2) {
-                j -= m;
-                m >>= 1;
-            }
-            j += m;
+        }
+        swaps = Arrays.copyOf(pairs, numPairs);
+
+        cos = new float[n / 2];
+        sin = new float[n / 2];
+        for (int k = 0; k < n / 2; k++) {
+            double angle = -2.0 * Math.PI * k / n;
+            cos[k] = (float) Math.cos(angle);
+            sin[k] = (float) Math.sin(angle);
         }
     }
 
-    private void butterflies(int n, int logN, int direction, float[] real, float[] imag) {
-        int N = 1;
-
-        for (int k = 0; k < logN; k++) {
-            float w_re, w_im, wp_re, wp_im, temp_re, temp_im, wt;
-            int half_N = N;
-            N <<= 1;
-//            wt = direction * w1[k];
-            wp_re = w2[k];
-            wp_im = direction * w3[k];
-            w_re = 1.0f;
-            w_im = 0.0f;
-            for (int offset = 0; offset < half_N; offset++) {
-                for (int i = offset; i < n; i += N) {
-                    int j = i + half_N;
-                    float re = real[j];
-                    float im = imag[j];
-                    temp_re = (w_re * re) - (w_im * im);
-                    temp_im = (w_im * re) + (w_re * im);
-                    real[j] = real[i] - temp_re;
-                    real[i] += temp_re;
-                    imag[j] = imag[i] - temp_im;
-                    imag[i] += temp_im;
-                }
-                wt = w_re;
-                w_re = wt * wp_re - w_im * wp_im + w_re;
-                w_im = w_im * wp_re + wt * wp_im + w_im;
-            }
-        }
-        if (direction == -1) {
-            float nr = 1.0f / n;
-            for (int i = 0; i < n; i++) {
-                real[i] *= nr;
-                imag[i] *= nr;
-            }
+    /**
+     * Returns the (cached) FFT for the given power-of-two size.
+     */
+    public static FFT forSize(int n) {
+        if (n <= 0 || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("n = " + n);
         }
+        return cache.computeIfAbsent(n, FFT::new);
     }
 
-    public void transform1D(float[] real, float[] imag, int logN, int n, boolean forward) {
-        scramble(n, real, imag);
-        butterflies(n, logN, forward ? 1 : -1, real, imag);
+    public int getSize() {
+        return n;
     }
 
-    public void transform2D(float[] real, float[] imag, int cols, int rows, boolean forward) {
-        int log2cols = log2(cols);
-        int log2rows = log2(rows);
-        int n = Math.max(rows, cols);
-        float[] rtemp = new float[n];
-        float[] itemp = new float[n];
-
-        // FFT the rows
-        for (int y = 0; y < rows; y++) {
-            int offset = y * cols;
-            System.arraycopy(real, offset, rtemp, 0, cols);
-            System.arraycopy(imag, offset, itemp, 0, cols);
-            transform1D(rtemp, itemp, log2cols, cols, forward);
-            System.arraycopy(rtemp, 0, real, offset, cols);
-            System.arraycopy(itemp, 0, imag, offset, cols);
+    /**
+     * Transforms in place the n complex values starting at the given offset.
+     * The inverse transform is scaled by 1/n, so that it restores the input.
+     */
+    public void transform(float[] real, float[] imag, int offset, boolean forward) {
+        for (int i = 0; i < swaps.length; i += 2) {
+            int a = offset + swaps[i];
+            int b = offset + swaps[i + 1];
+            float t = real[a];
+            real[a] = real[b];
+            real[b] = t;
+            t = imag[a];
+            imag[a] = imag[b];
+            imag[b] = t;
         }
 
-        // FFT the columns
-        for (int x = 0; x < cols; x++) {
-            int index = x;
-            for (int y = 0; y < rows; y++) {
-                rtemp[y] = real[index];
-                itemp[y] = imag[index];
-                index += cols;
-            }
-            transform1D(rtemp, itemp, log2rows, rows, forward);
-            index = x;
-            for (int y = 0; y < rows; y++) {
-                real[index] = rtemp[y];
-                imag[index] = itemp[y];
-                index += cols;
+        float sign = forward ? 1.0f : -1.0f;
+        for (int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = n / size;
+            for (int start = offset; start < offset + n; start += size) {
+                for (int k = 0; k < half; k++) {
+                    float wRe = cos[k * step];
+                    float wIm = sign * sin[k * step];
+                    int i = start + k;
+                    int j = i + half;
+                    float re = real[j];
+                    float im = imag[j];
+                    float tRe = wRe * re - wIm * im;
+                    float tIm = wIm * re + wRe * im;
+                    real[j] = real[i] - tRe;
+                    imag[j] = imag[i] - tIm;
+                    real[i] += tRe;
+                    imag[i] += tIm;
+                }
             }
         }
-    }
 
-    private static int log2(int n) {
-        int m = 1;
-        int log2n = 0;
-
-        while (m < n) {
-            m *= 2;
-            log2n++;
+        if (!forward) {
+            float scale = 1.0f / n;
+            for (int i = offset; i < offset + n; i++) {
+                real[i] *= scale;
+                imag[i] *= scale;
+            }
         }
-        return m == n ? log2n : -1;
     }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.math;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+/**
+ * A 2D complex FFT, which transforms the rows and then the columns
+ * of the data in parallel on the {@link ThreadPool}. The real and
+ * imaginary parts are stored row by row in two separate arrays.
+ * Two real-valued signals can be transformed together by putting
+ * one of them into the real parts and the other into the imaginary parts.
+ */
+public class FFT2D {
+    // the number of columns that are copied together into
+    // contiguous arrays for the column transforms
+    private static final int COLUMN_BLOCK_SIZE = 16;
+
+    private final int cols;
+    private final int rows;
+    private final FFT rowFFT;
+    private final FFT colFFT;
+
+    /**
+     * Both dimensions must be powers of two.
+     */
+    public FFT2D(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        rowFFT = FFT.forSize(cols);
+        colFFT = FFT.forSize(rows);
+    }
+
+    /**
+     * Transforms the data in place. The inverse transform
+     * is scaled so that it restores the original data.
+     */
+    public void transform(float[] real, float[] imag, boolean forward) {
+        assert real.length == cols * rows && imag.length == cols * rows;
+
+        ThreadPool.processBands(rows, cols, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                rowFFT.transform(real, imag, y * cols, forward);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        int numBlocks = (cols + COLUMN_BLOCK_SIZE - 1) / COLUMN_BLOCK_SIZE;
+        ThreadPool.processBands(numBlocks, COLUMN_BLOCK_SIZE * rows, (startBlock, endBlock) -> {
+            float[] colReal = new float[COLUMN_BLOCK_SIZE * rows];
+            float[] colImag = new float[COLUMN_BLOCK_SIZE * rows];
+            for (int block = startBlock; block < endBlock; block++) {
+                int startCol = block * COLUMN_BLOCK_SIZE;
+                int numCols = Math.min(COLUMN_BLOCK_SIZE, cols - startCol);
+                transformColumns(real, imag, startCol, numCols, colReal, colImag, forward);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+    }
+
+    // copies a block of columns into contiguous arrays, transforms them, and copies them back
+    private void transformColumns(float[] real, float[] imag, int startCol, int numCols,
+                                  float[] colReal, float[] colImag, boolean forward) {
+        for (int y = 0; y < rows; y++) {
+            int index = y * cols + startCol;
+            for (int c = 0; c < numCols; c++) {
+                colReal[c * rows + y] = real[index + c];
+                colImag[c * rows + y] = imag[index + c];
+            }
+        }
+        for (int c = 0; c < numCols; c++) {
+            colFFT.transform(colReal, colImag, c * rows, forward);
+        }
+        for (int y = 0; y < rows; y++) {
+            int index = y * cols + startCol;
+            for (int c = 0; c < numCols; c++) {
+                real[index + c] = colReal[c * rows + y];
+                imag[index + c] = colImag[c * rows + y];
+            }
+        }
+    }
+}
@@ -309,31 +309,25 @@ public final class BlendComposite implements Composite {
                                           ColorModel dstColorModel,
                                           RenderingHints hints) {
         if (isRgbColorModel(srcColorModel) && isRgbColorModel(dstColorModel)) {
-            return new BlendingRgbContext(this);
+            return new BlendingContext(this, false);
         } else if (isBgrColorModel(srcColorModel) && isBgrColorModel(dstColorModel)) {
-            return new BlendingBgrContext(this);
+            return new BlendingContext(this, true);
         }
 
         throw new RasterFormatException("Incompatible color models");
     }
 
-    private static abstract class BlendingContext implements CompositeContext {
-        protected final Blender blender;
-        protected final BlendComposite composite;
+    private static final class BlendingContext implements CompositeContext {
+        private final Blender blender;
+        private final BlendComposite composite;
 
-        private BlendingContext(BlendComposite composite) {
+        // true if the pixels are stored as INT_ABGR instead of INT_ARGB
+        private final boolean bgr;
+
+        private BlendingContext(BlendComposite composite, boolean bgr) {
             this.composite = composite;
             this.blender = Blender.getBlenderFor(composite);
-        }
-
-        @Override
-        public void dispose() {
-        }
-    }
-
-    private static class BlendingRgbContext extends BlendingContext {
-        private BlendingRgbContext(BlendComposite composite) {
-            super(composite);
+            this.bgr = bgr;
         }
 
         @Override
@@ -343,485 +337,606 @@ public final class BlendComposite implements Composite {
 
             float alpha = composite.getAlpha();
 
-            int[] result = new int[4];
-            int[] srcPixel = new int[4];
-            int[] dstPixel = new int[4];
             int[] srcPixels = new int[width];
             int[] dstPixels = new int[width];
 
             for (int y = 0; y < height; y++) {
                 src.getDataElements(0, y, width, 1, srcPixels);
                 dstIn.getDataElements(0, y, width, 1, dstPixels);
-                for (int x = 0; x < width; x++) {
-                    // pixels are stored as INT_ARGB
-                    // our arrays are [R, G, B, A]
-                    int pixel = srcPixels[x];
-                    srcPixel[0] = (pixel >> 16) & 0xFF;
-                    srcPixel[1] = (pixel >> 8) & 0xFF;
-                    srcPixel[2] = pixel & 0xFF;
-                    srcPixel[3] = (pixel >> 24) & 0xFF;
-
-                    pixel = dstPixels[x];
-                    dstPixel[0] = (pixel >> 16) & 0xFF;
-                    dstPixel[1] = (pixel >> 8) & 0xFF;
-                    dstPixel[2] = pixel & 0xFF;
-                    dstPixel[3] = (pixel >> 24) & 0xFF;
-
-                    blender.blend(srcPixel, dstPixel, result);
-
-                    // mixes the result with the opacity
-                    dstPixels[x] = (((int) (dstPixel[3] + (result[3] - dstPixel[3]) * alpha) & 0xFF) << 24) |
-                            (((int) (dstPixel[0] + (result[0] - dstPixel[0]) * alpha) & 0xFF) << 16) |
-                            (((int) (dstPixel[1] + (result[1] - dstPixel[1]) * alpha) & 0xFF) << 8) |
-                            ((int) (dstPixel[2] + (result[2] - dstPixel[2]) * alpha) & 0xFF);
+                if (bgr) {
+                    // the blenders work with INT_ARGB rows
+                    swapRedAndBlue(srcPixels, width);
+                    swapRedAndBlue(dstPixels, width);
+                    blender.blendRow(srcPixels, dstPixels, width, alpha);
+                    swapRedAndBlue(dstPixels, width);
+                } else {
+                    blender.blendRow(srcPixels, dstPixels, width, alpha);
                 }
                 dstOut.setDataElements(0, y, width, 1, dstPixels);
             }
         }
-    }
 
-    private static class BlendingBgrContext extends BlendingContext {
-        private BlendingBgrContext(BlendComposite composite) {
-            super(composite);
+        private static void swapRedAndBlue(int[] pixels, int width) {
+            for (int x = 0; x < width; x++) {
+                int p = pixels[x];
+                pixels[x] = (p & 0xFF00FF00) | ((p >> 16) & 0xFF) | ((p & 0xFF) << 16);
+            }
         }
 
         @Override
-        public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
-            int width = Math.min(src.getWidth(), dstIn.getWidth());
-            int height = Math.min(src.getHeight(), dstIn.getHeight());
-
-            float alpha = composite.getAlpha();
-
-            int[] result = new int[4];
-            int[] srcPixel = new int[4];
-            int[] dstPixel = new int[4];
-            int[] srcPixels = new int[width];
-            int[] dstPixels = new int[width];
-
-            for (int y = 0; y < height; y++) {
-                src.getDataElements(0, y, width, 1, srcPixels);
-                dstIn.getDataElements(0, y, width, 1, dstPixels);
-                for (int x = 0; x < width; x++) {
-                    // pixels are stored as INT_ABGR
-                    // our arrays are [R, G, B, A]
-                    int pixel = srcPixels[x];
-                    srcPixel[0] = pixel & 0xFF;
-                    srcPixel[1] = (pixel >> 8) & 0xFF;
-                    srcPixel[2] = (pixel >> 16) & 0xFF;
-                    srcPixel[3] = (pixel >> 24) & 0xFF;
-
-                    pixel = dstPixels[x];
-                    dstPixel[0] = pixel & 0xFF;
-                    dstPixel[1] = (pixel >> 8) & 0xFF;
-                    dstPixel[2] = (pixel >> 16) & 0xFF;
-                    dstPixel[3] = (pixel >> 24) & 0xFF;
-
-                    blender.blend(srcPixel, dstPixel, result);
-
-                    // mixes the result with the opacity
-                    dstPixels[x] = ((int) (dstPixel[3] + (result[3] - dstPixel[3]) * alpha) & 0xFF) << 24 |
-                            ((int) (dstPixel[0] + (result[0] - dstPixel[0]) * alpha) & 0xFF) |
-                            ((int) (dstPixel[1] + (result[1] - dstPixel[1]) * alpha) & 0xFF) << 8 |
-                            ((int) (dstPixel[2] + (result[2] - dstPixel[2]) * alpha) & 0xFF) << 16;
-                }
-                dstOut.setDataElements(0, y, width, 1, dstPixels);
-            }
+        public void dispose() {
         }
     }
 
-    private static abstract class Blender {
-        public abstract void blend(int[] src, int[] dst, int[] result);
-
-        public static Blender getBlenderFor(BlendComposite composite) {
+    /**
+     * Blends whole rows of packed INT_ARGB pixels. Each blending mode
+     * has its own row loop, and the per-channel formulas are static
+     * methods, so there is no dynamic dispatch for the individual pixels.
+     */
+    private abstract static class Blender {
+        /**
+         * Blends the source row into the destination row, mixing the
+         * result with the original destination according to the opacity.
+         */
+        abstract void blendRow(int[] src, int[] dst, int width, float alpha);
+
+        static Blender getBlenderFor(BlendComposite composite) {
             switch (composite.getMode()) {
                 case CROSS_FADE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            // Takes all the values from the src (upper) layer
-                            // The cross-fading will result from the derive
-                            result[0] = src[0];
-                            result[1] = src[1];
-                            result[2] = src[2];
-                            result[3] = src[3];
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            // takes all the values from the src (upper) layer,
+                            // the cross-fading will result from the opacity
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, alpha(s),
+                                    red(s),
+                                    green(s),
+                                    blue(s), alpha);
+                            }
                         }
                     };
                 case ADD:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = Math.min(255, src[0] + dst[0]);
-                            result[1] = Math.min(255, src[1] + dst[1]);
-                            result[2] = Math.min(255, src[2] + dst[2]);
-                            result[3] = Math.min(255, src[3] + dst[3]);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, Math.min(255, alpha(s) + alpha(d)),
+                                    add(red(s), red(d)),
+                                    add(green(s), green(d)),
+                                    add(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case AVERAGE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = (src[0] + dst[0]) >> 1;
-                            result[1] = (src[1] + dst[1]) >> 1;
-                            result[2] = (src[2] + dst[2]) >> 1;
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    average(red(s), red(d)),
+                                    average(green(s), green(d)),
+                                    average(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case BLUE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = dst[0];
-                            result[1] = src[1];
-                            result[2] = dst[2];
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    red(d),
+                                    green(s),
+                                    blue(d), alpha);
+                            }
                         }
                     };
                 case COLOR:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            float[] srcHSL = new float[3];
-                            ColorUtilities.RGBtoHSL(src[0], src[1], src[2], srcHSL);
-                            float[] dstHSL = new float[3];
-                            ColorUtilities.RGBtoHSL(dst[0], dst[1], dst[2], dstHSL);
-
-                            ColorUtilities.HSLtoRGB(srcHSL[0], srcHSL[1], dstHSL[2], result);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            blendHslRow(src, dst, width, alpha, true, true, false);
                         }
                     };
                 case COLOR_BURN:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = src[0] == 0 ? 0 :
-                                    Math.max(0, 255 - (((255 - dst[0]) << 8) / src[0]));
-                            result[1] = src[1] == 0 ? 0 :
-                                    Math.max(0, 255 - (((255 - dst[1]) << 8) / src[1]));
-                            result[2] = src[2] == 0 ? 0 :
-                                    Math.max(0, 255 - (((255 - dst[2]) << 8) / src[2]));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    colorBurn(red(s), red(d)),
+                                    colorBurn(green(s), green(d)),
+                                    colorBurn(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case COLOR_DODGE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = src[0] == 255 ? 255 :
-                                    Math.min((dst[0] << 8) / (255 - src[0]), 255);
-                            result[1] = src[1] == 255 ? 255 :
-                                    Math.min((dst[1] << 8) / (255 - src[1]), 255);
-                            result[2] = src[2] == 255 ? 255 :
-                                    Math.min((dst[2] << 8) / (255 - src[2]), 255);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    colorDodge(red(s), red(d)),
+                                    colorDodge(green(s), green(d)),
+                                    colorDodge(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case DARKEN:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = Math.min(src[0], dst[0]);
-                            result[1] = Math.min(src[1], dst[1]);
-                            result[2] = Math.min(src[2], dst[2]);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    Math.min(red(s), red(d)),
+                                    Math.min(green(s), green(d)),
+                                    Math.min(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case DIFFERENCE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = Math.abs(dst[0] - src[0]);
-                            result[1] = Math.abs(dst[1] - src[1]);
-                            result[2] = Math.abs(dst[2] - src[2]);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    difference(red(s), red(d)),
+                                    difference(green(s), green(d)),
+                                    difference(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case EXCLUSION:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = (dst[0] + src[0]) - ((dst[0] * src[0]) >> 7);
-                            result[1] = (dst[1] + src[1]) - ((dst[1] * src[1]) >> 7);
-                            result[2] = (dst[2] + src[2]) - ((dst[2] * src[2]) >> 7);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    exclusion(red(s), red(d)),
+                                    exclusion(green(s), green(d)),
+                                    exclusion(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case FREEZE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = src[0] == 0 ? 0 :
-                                    Math.max(0, 255 - (255 - dst[0]) * (255 - dst[0]) / src[0]);
-                            result[1] = src[1] == 0 ? 0 :
-                                    Math.max(0, 255 - (255 - dst[1]) * (255 - dst[1]) / src[1]);
-                            result[2] = src[2] == 0 ? 0 :
-                                    Math.max(0, 255 - (255 - dst[2]) * (255 - dst[2]) / src[2]);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    freeze(red(s), red(d)),
+                                    freeze(green(s), green(d)),
+                                    freeze(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case GLOW:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = dst[0] == 255 ? 255 :
-                                    Math.min(255, src[0] * src[0] / (255 - dst[0]));
-                            result[1] = dst[1] == 255 ? 255 :
-                                    Math.min(255, src[1] * src[1] / (255 - dst[1]));
-                            result[2] = dst[2] == 255 ? 255 :
-                                    Math.min(255, src[2] * src[2] / (255 - dst[2]));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    reflect(red(d), red(s)),
+                                    reflect(green(d), green(s)),
+                                    reflect(blue(d), blue(s)), alpha);
+                            }
                         }
                     };
                 case GREEN:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = dst[0];
-                            result[1] = dst[1];
-                            result[2] = src[2];
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    red(d),
+                                    green(d),
+                                    blue(s), alpha);
+                            }
                         }
                     };
                 case HARD_LIGHT:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = (src[0] < 128) ? ((dst[0] * src[0]) >> 7) :
-                                    (255 - (((255 - src[0]) * (255 - dst[0])) >> 7));
-                            result[1] = (src[1] < 128) ? ((dst[1] * src[1]) >> 7) :
-                                    (255 - (((255 - src[1]) * (255 - dst[1])) >> 7));
-                            result[2] = (src[2] < 128) ? ((dst[2] * src[2]) >> 7) :
-                                    (255 - (((255 - src[2]) * (255 - dst[2])) >> 7));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    overlay(red(d), red(s)),
+                                    overlay(green(d), green(s)),
+                                    overlay(blue(d), blue(s)), alpha);
+                            }
                         }
                     };
                 case HEAT:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = dst[0] == 0 ? 0 :
-                                    Math.max(0, 255 - (255 - src[0]) * (255 - src[0]) / dst[0]);
-                            result[1] = dst[1] == 0 ? 0 :
-                                    Math.max(0, 255 - (255 - src[1]) * (255 - src[1]) / dst[1]);
-                            result[2] = dst[2] == 0 ? 0 :
-                                    Math.max(0, 255 - (255 - src[2]) * (255 - src[2]) / dst[2]);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    freeze(red(d), red(s)),
+                                    freeze(green(d), green(s)),
+                                    freeze(blue(d), blue(s)), alpha);
+                            }
                         }
                     };
                 case HUE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            float[] srcHSL = new float[3];
-                            ColorUtilities.RGBtoHSL(src[0], src[1], src[2], srcHSL);
-                            float[] dstHSL = new float[3];
-                            ColorUtilities.RGBtoHSL(dst[0], dst[1], dst[2], dstHSL);
-
-                            ColorUtilities.HSLtoRGB(srcHSL[0], dstHSL[1], dstHSL[2], result);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            blendHslRow(src, dst, width, alpha, true, false, false);
                         }
                     };
                 case INVERSE_COLOR_BURN:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = dst[0] == 0 ? 0 :
-                                    Math.max(0, 255 - (((255 - src[0]) << 8) / dst[0]));
-                            result[1] = dst[1] == 0 ? 0 :
-                                    Math.max(0, 255 - (((255 - src[1]) << 8) / dst[1]));
-                            result[2] = dst[2] == 0 ? 0 :
-                                    Math.max(0, 255 - (((255 - src[2]) << 8) / dst[2]));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    colorBurn(red(d), red(s)),
+                                    colorBurn(green(d), green(s)),
+                                    colorBurn(blue(d), blue(s)), alpha);
+                            }
                         }
                     };
                 case INVERSE_COLOR_DODGE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = dst[0] == 255 ? 255 :
-                                    Math.min((src[0] << 8) / (255 - dst[0]), 255);
-                            result[1] = dst[1] == 255 ? 255 :
-                                    Math.min((src[1] << 8) / (255 - dst[1]), 255);
-                            result[2] = dst[2] == 255 ? 255 :
-                                    Math.min((src[2] << 8) / (255 - dst[2]), 255);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    colorDodge(red(d), red(s)),
+                                    colorDodge(green(d), green(s)),
+                                    colorDodge(blue(d), blue(s)), alpha);
+                            }
                         }
                     };
                 case LIGHTEN:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = Math.max(src[0], dst[0]);
-                            result[1] = Math.max(src[1], dst[1]);
-                            result[2] = Math.max(src[2], dst[2]);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    Math.max(red(s), red(d)),
+                                    Math.max(green(s), green(d)),
+                                    Math.max(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case LUMINOSITY:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            float[] srcHSL = new float[3];
-                            ColorUtilities.RGBtoHSL(src[0], src[1], src[2], srcHSL);
-                            float[] dstHSL = new float[3];
-                            ColorUtilities.RGBtoHSL(dst[0], dst[1], dst[2], dstHSL);
-
-                            ColorUtilities.HSLtoRGB(dstHSL[0], dstHSL[1], srcHSL[2], result);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            blendHslRow(src, dst, width, alpha, false, false, true);
                         }
                     };
                 case MULTIPLY:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = (src[0] * dst[0]) >> 8;
-                            result[1] = (src[1] * dst[1]) >> 8;
-                            result[2] = (src[2] * dst[2]) >> 8;
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    multiply(red(s), red(d)),
+                                    multiply(green(s), green(d)),
+                                    multiply(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case NEGATION:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = 255 - Math.abs(255 - dst[0] - src[0]);
-                            result[1] = 255 - Math.abs(255 - dst[1] - src[1]);
-                            result[2] = 255 - Math.abs(255 - dst[2] - src[2]);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    negation(red(s), red(d)),
+                                    negation(green(s), green(d)),
+                                    negation(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case OVERLAY:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = (dst[0] < 128) ? ((dst[0] * src[0]) >> 7) :
-                                    (255 - (((255 - dst[0]) * (255 - src[0])) >> 7));
-                            result[1] = (dst[1] < 128) ? ((dst[1] * src[1]) >> 7) :
-                                    (255 - (((255 - dst[1]) * (255 - src[1])) >> 7));
-                            result[2] = (dst[2] < 128) ? ((dst[2] * src[2]) >> 7) :
-                                    (255 - (((255 - dst[2]) * (255 - src[2])) >> 7));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    overlay(red(s), red(d)),
+                                    overlay(green(s), green(d)),
+                                    overlay(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case RED:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = src[0];
-                            result[1] = dst[1];
-                            result[2] = dst[2];
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    red(s),
+                                    green(d),
+                                    blue(d), alpha);
+                            }
                         }
                     };
                 case REFLECT:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = src[0] == 255 ? 255 :
-                                    Math.min(255, dst[0] * dst[0] / (255 - src[0]));
-                            result[1] = src[1] == 255 ? 255 :
-                                    Math.min(255, dst[1] * dst[1] / (255 - src[1]));
-                            result[2] = src[2] == 255 ? 255 :
-                                    Math.min(255, dst[2] * dst[2] / (255 - src[2]));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    reflect(red(s), red(d)),
+                                    reflect(green(s), green(d)),
+                                    reflect(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case SATURATION:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            float[] srcHSL = new float[3];
-                            ColorUtilities.RGBtoHSL(src[0], src[1], src[2], srcHSL);
-                            float[] dstHSL = new float[3];
-                            ColorUtilities.RGBtoHSL(dst[0], dst[1], dst[2], dstHSL);
-
-                            ColorUtilities.HSLtoRGB(dstHSL[0], srcHSL[1], dstHSL[2], result);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            blendHslRow(src, dst, width, alpha, false, true, false);
                         }
                     };
                 case SCREEN:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = 255 - (((255 - src[0]) * (255 - dst[0])) >> 8);
-                            result[1] = 255 - (((255 - src[1]) * (255 - dst[1])) >> 8);
-                            result[2] = 255 - (((255 - src[2]) * (255 - dst[2])) >> 8);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    screen(red(s), red(d)),
+                                    screen(green(s), green(d)),
+                                    screen(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case SOFT_BURN:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = dst[0] + src[0] < 256 ?
-                                    (dst[0] == 255 ? 255 :
-                                            Math.min(255, (src[0] << 7) / (255 - dst[0]))) :
-                                    Math.max(0, 255 - (((255 - dst[0]) << 7) / src[0]));
-                            result[1] = dst[1] + src[1] < 256 ?
-                                    (dst[1] == 255 ? 255 :
-                                            Math.min(255, (src[1] << 7) / (255 - dst[1]))) :
-                                    Math.max(0, 255 - (((255 - dst[1]) << 7) / src[1]));
-                            result[2] = dst[2] + src[2] < 256 ?
-                                    (dst[2] == 255 ? 255 :
-                                            Math.min(255, (src[2] << 7) / (255 - dst[2]))) :
-                                    Math.max(0, 255 - (((255 - dst[2]) << 7) / src[2]));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    softDodge(red(d), red(s)),
+                                    softDodge(green(d), green(s)),
+                                    softDodge(blue(d), blue(s)), alpha);
+                            }
                         }
                     };
                 case SOFT_DODGE:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = dst[0] + src[0] < 256 ?
-                                    (src[0] == 255 ? 255 :
-                                            Math.min(255, (dst[0] << 7) / (255 - src[0]))) :
-                                    Math.max(0, 255 - (((255 - src[0]) << 7) / dst[0]));
-                            result[1] = dst[1] + src[1] < 256 ?
-                                    (src[1] == 255 ? 255 :
-                                            Math.min(255, (dst[1] << 7) / (255 - src[1]))) :
-                                    Math.max(0, 255 - (((255 - src[1]) << 7) / dst[1]));
-                            result[2] = dst[2] + src[2] < 256 ?
-                                    (src[2] == 255 ? 255 :
-                                            Math.min(255, (dst[2] << 7) / (255 - src[2]))) :
-                                    Math.max(0, 255 - (((255 - src[2]) << 7) / dst[2]));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    softDodge(red(s), red(d)),
+                                    softDodge(green(s), green(d)),
+                                    softDodge(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case SOFT_LIGHT:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            int mRed = src[0] * dst[0] / 255;
-                            int mGreen = src[1] * dst[1] / 255;
-                            int mBlue = src[2] * dst[2] / 255;
-                            result[0] = mRed + src[0] * (255 - ((255 - src[0]) * (255 - dst[0]) / 255) - mRed) / 255;
-                            result[1] = mGreen + src[1] * (255 - ((255 - src[1]) * (255 - dst[1]) / 255) - mGreen) / 255;
-                            result[2] = mBlue + src[2] * (255 - ((255 - src[2]) * (255 - dst[2]) / 255) - mBlue) / 255;
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    softLight(red(s), red(d)),
+                                    softLight(green(s), green(d)),
+                                    softLight(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case STAMP:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = Math.max(0, Math.min(255, dst[0] + 2 * src[0] - 256));
-                            result[1] = Math.max(0, Math.min(255, dst[1] + 2 * src[1] - 256));
-                            result[2] = Math.max(0, Math.min(255, dst[2] + 2 * src[2] - 256));
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    stamp(red(s), red(d)),
+                                    stamp(green(s), green(d)),
+                                    stamp(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
                 case SUBTRACT:
                     return new Blender() {
                         @Override
-                        public void blend(int[] src, int[] dst, int[] result) {
-                            result[0] = Math.max(0, src[0] + dst[0] - 256);
-                            result[1] = Math.max(0, src[1] + dst[1] - 256);
-                            result[2] = Math.max(0, src[2] + dst[2] - 256);
-                            result[3] = Math.min(255, src[3] + dst[3] - (src[3] * dst[3]) / 255);
+                        void blendRow(int[] src, int[] dst, int width, float alpha) {
+                            for (int x = 0; x < width; x++) {
+                                int s = src[x];
+                                int d = dst[x];
+                                dst[x] = mix(d, unionAlpha(s, d),
+                                    subtract(red(s), red(d)),
+                                    subtract(green(s), green(d)),
+                                    subtract(blue(s), blue(d)), alpha);
+                            }
                         }
                     };
             }
             throw new IllegalArgumentException("Blender not implemented for " +
                     composite.getMode().name());
         }
+
+        private static void blendHslRow(int[] src, int[] dst, int width, float alpha,
+                                        boolean srcHue, boolean srcSaturation,
+                                        boolean srcLightness) {
+            float[] srcHSL = new float[3];
+            float[] dstHSL = new float[3];
+            int[] result = new int[3];
+            for (int x = 0; x < width; x++) {
+                int s = src[x];
+                int d = dst[x];
+                ColorUtilities.RGBtoHSL(red(s), green(s), blue(s), srcHSL);
+                ColorUtilities.RGBtoHSL(red(d), green(d), blue(d), dstHSL);
+
+                ColorUtilities.HSLtoRGB(
+                        srcHue ? srcHSL[0] : dstHSL[0],
+                        srcSaturation ? srcHSL[1] : dstHSL[1],
+                        srcLightness ? srcHSL[2] : dstHSL[2], result);
+                dst[x] = mix(d, unionAlpha(s, d),
+                        result[0], result[1], result[2], alpha);
+            }
+        }
+
+        private static int alpha(int pixel) {
+            return (pixel >> 24) & 0xFF;
+        }
+
+        private static int red(int pixel) {
+            return (pixel >> 16) & 0xFF;
+        }
+
+        private static int green(int pixel) {
+            return (pixel >> 8) & 0xFF;
+        }
+
+        private static int blue(int pixel) {
+            return pixel & 0xFF;
+        }
+
+        // the alpha of the result for most blending modes
+        private static int unionAlpha(int src, int dst) {
+            int sa = alpha(src);
+            int da = alpha(dst);
+            return Math.min(255, sa + da - (sa * da) / 255);
+        }
+
+        // mixes the blended result with the destination pixel using the opacity
+        private static int mix(int dst, int a, int r, int g, int b, float alpha) {
+            int da = alpha(dst);
+            int dr = red(dst);
+            int dg = green(dst);
+            int db = blue(dst);
+            return (((int) (da + (a - da) * alpha) & 0xFF) << 24) |
+                    (((int) (dr + (r - dr) * alpha) & 0xFF) << 16) |
+                    (((int) (dg + (g - dg) * alpha) & 0xFF) << 8) |
+                    ((int) (db + (b - db) * alpha) & 0xFF);
+        }
+
+        // The per-channel formulas. The ones that are
+        // not listed here are derived by swapping the arguments:
+        // Glow = reflect(d, s), Hard Light = overlay(d, s),
+        // Heat = freeze(d, s), Soft Burn = softDodge(d, s),
+        // Inverse Color Burn/Dodge = colorBurn/colorDodge(d, s).
+
+        private static int add(int s, int d) {
+            return Math.min(255, s + d);
+        }
+
+        private static int average(int s, int d) {
+            return (s + d) >> 1;
+        }
+
+        private static int colorBurn(int s, int d) {
+            return s == 0 ? 0 : Math.max(0, 255 - (((255 - d) << 8) / s));
+        }
+
+        private static int colorDodge(int s, int d) {
+            return s == 255 ? 255 : Math.min((d << 8) / (255 - s), 255);
+        }
+
+        private static int difference(int s, int d) {
+            return Math.abs(d - s);
+        }
+
+        private static int exclusion(int s, int d) {
+            return (d + s) - ((d * s) >> 7);
+        }
+
+        private static int freeze(int s, int d) {
+            return s == 0 ? 0 : Math.max(0, 255 - (255 - d) * (255 - d) / s);
+        }
+
+        private static int multiply(int s, int d) {
+            return (s * d) >> 8;
+        }
+
+        private static int negation(int s, int d) {
+            return 255 - Math.abs(255 - d - s);
+        }
+
+        private static int overlay(int s, int d) {
+            return d < 128 ? (d * s) >> 7 : 255 - (((255 - d) * (255 - s)) >> 7);
+        }
+
+        private static int reflect(int s, int d) {
+            return s == 255 ? 255 : Math.min(255, d * d / (255 - s));
+        }
+
+        private static int screen(int s, int d) {
+            return 255 - (((255 - s) * (255 - d)) >> 8);
+        }
+
+        private static int softDodge(int s, int d) {
+            if (d + s < 256) {
+                return s == 255 ? 255 : Math.min(255, (d << 7) / (255 - s));
+            }
+            return Math.max(0, 255 - (((255 - s) << 7) / d));
+        }
+
+        private static int softLight(int s, int d) {
+            int m = s * d / 255;
+            return m + s * (255 - ((255 - s) * (255 - d) / 255) - m) / 255;
+        }
+
+        private static int stamp(int s, int d) {
+            return Math.max(0, Math.min(255, d + 2 * s - 256));
+        }
+
+        private static int subtract(int s, int d) {
+            return Math.max(0, s + d - 256);
+        }
     }
 }
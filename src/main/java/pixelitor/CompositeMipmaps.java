@@ -0,0 +1,209 @@
+/*
+ * Copyright 2025 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * A lazily built mipmap pyramid of a composite image, so that
+ * zoomed-out views don't have to resample the full-resolution image.
+ * Each level has half the width and height of the previous one,
+ * and after a region update only the affected pixels are recalculated.
+ */
+class CompositeMipmaps {
+    // levels with a smaller width or height are not created
+    private static final int MIN_LEVEL_SIZE = 64;
+
+    // the full-resolution image from which level 1 was calculated
+    private BufferedImage source;
+
+    // the element at index i is the mipmap level i + 1
+    private final List<BufferedImage> levels = new ArrayList<>();
+
+    // the changed region of the source (in source coordinates)
+    // that is not yet reflected in the levels
+    private Rectangle dirtyRegion;
+
+    /**
+     * Discards all levels, because the whole source might have changed.
+     */
+    void invalidate() {
+        source = null;
+        levels.clear();
+        dirtyRegion = null;
+    }
+
+    /**
+     * Signals that only the given region of the source has changed.
+     */
+    void addDirtyRegion(Rectangle region) {
+        if (source == null) {
+            return;
+        }
+        if (dirtyRegion == null) {
+            dirtyRegion = new Rectangle(region);
+        } else {
+            dirtyRegion.add(region);
+        }
+    }
+
+    /**
+     * Returns the smallest level of the given composite image that
+     * still has at least the resolution needed for the given scale.
+     * Returns the composite itself if the scale is not small enough.
+     */
+    BufferedImage getImageForScale(BufferedImage composite, double scale) {
+        int level = calcLevel(composite.getWidth(), composite.getHeight(), scale);
+        if (level == 0) {
+            return composite;
+        }
+
+        if (composite != source) {
+            invalidate();
+            source = composite;
+        } else if (dirtyRegion != null) {
+            updateRegion(dirtyRegion);
+        }
+        dirtyRegion = null;
+
+        while (levels.size() < level) {
+            BufferedImage prev = levels.isEmpty() ? source : levels.getLast();
+            BufferedImage next = new BufferedImage(
+                (prev.getWidth() + 1) / 2, (prev.getHeight() + 1) / 2, TYPE_INT_ARGB_PRE);
+            downsample(prev, levels.isEmpty(), next,
+                new Rectangle(0, 0, next.getWidth(), next.getHeight()));
+            levels.add(next);
+        }
+        return levels.get(level - 1);
+    }
+
+    /**
+     * Returns the mipmap level (0 meaning the full resolution)
+     * that should be used for painting at the given scale.
+     */
+    static int calcLevel(int width, int height, double scale) {
+        int level = 0;
+        double nextLevelScale = 0.5;
+        while (nextLevelScale >= scale
+            && (width >> (level + 1)) >= MIN_LEVEL_SIZE
+            && (height >> (level + 1)) >= MIN_LEVEL_SIZE) {
+            level++;
+            nextLevelScale /= 2;
+        }
+        return level;
+    }
+
+    // propagates a changed source region through the existing levels
+    private void updateRegion(Rectangle region) {
+        Rectangle prevRegion = region.intersection(
+            new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+        BufferedImage prev = source;
+        for (int i = 0; i < levels.size() && !prevRegion.isEmpty(); i++) {
+            BufferedImage level = levels.get(i);
+            int x1 = prevRegion.x >> 1;
+            int y1 = prevRegion.y >> 1;
+            int x2 = Math.min((prevRegion.x + prevRegion.width + 1) >> 1, level.getWidth());
+            int y2 = Math.min((prevRegion.y + prevRegion.height + 1) >> 1, level.getHeight());
+            Rectangle levelRegion = new Rectangle(x1, y1, x2 - x1, y2 - y1);
+
+            downsample(prev, i == 0, level, levelRegion);
+
+            prev = level;
+            prevRegion = levelRegion;
+        }
+    }
+
+    /**
+     * Calculates the given region of the destination by averaging
+     * 2x2 blocks of the source in premultiplied color space.
+     * The source is either an arbitrary image (the composite)
+     * or a previous level with a premultiplied int array.
+     */
+    private static void downsample(BufferedImage src, boolean arbitrarySrc,
+                                   BufferedImage dst, Rectangle region) {
+        if (region.isEmpty()) {
+            return;
+        }
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int dstWidth = dst.getWidth();
+        int[] dstPixels = ImageUtils.getPixels(dst);
+        int[] srcPixels = arbitrarySrc ? null : ImageUtils.getPixels(src);
+
+        int srcX = region.x * 2;
+        int srcLen = Math.min(region.width * 2, srcWidth - srcX);
+
+        ThreadPool.processBands(region.height, srcLen, (startRow, endRow) -> {
+            int[] row1 = new int[srcLen];
+            int[] row2 = new int[srcLen];
+            for (int i = startRow; i < endRow; i++) {
+                int dstY = region.y + i;
+                int srcY1 = dstY * 2;
+                int srcY2 = Math.min(srcY1 + 1, srcHeight - 1);
+                if (arbitrarySrc) {
+                    readPremultipliedRow(src, srcX, srcY1, row1);
+                    readPremultipliedRow(src, srcX, srcY2, row2);
+                } else {
+                    System.arraycopy(srcPixels, srcY1 * srcWidth + srcX, row1, 0, srcLen);
+                    System.arraycopy(srcPixels, srcY2 * srcWidth + srcX, row2, 0, srcLen);
+                }
+
+                int dstIndex = dstY * dstWidth + region.x;
+                for (int x = 0; x < region.width; x++) {
+                    int sx1 = x * 2;
+                    int sx2 = Math.min(sx1 + 1, srcLen - 1);
+                    dstPixels[dstIndex++] = average(
+                        row1[sx1], row1[sx2], row2[sx1], row2[sx2]);
+                }
+            }
+        }, ProgressTracker.NULL_TRACKER);
+    }
+
+    private static void readPremultipliedRow(BufferedImage src, int x, int y, int[] row) {
+        src.getRGB(x, y, row.length, 1, row, 0, row.length);
+        for (int i = 0; i < row.length; i++) {
+            int argb = row[i];
+            int a = argb >>> 24;
+            if (a == 255) {
+                continue;
+            }
+            int r = ((argb >> 16) & 0xFF) * a / 255;
+            int g = ((argb >> 8) & 0xFF) * a / 255;
+            int b = (argb & 0xFF) * a / 255;
+            row[i] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    private static int average(int p1, int p2, int p3, int p4) {
+        int a = ((p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + (p4 >>> 24) + 2) >> 2;
+        int r = (((p1 >> 16) & 0xFF) + ((p2 >> 16) & 0xFF)
+            + ((p3 >> 16) & 0xFF) + ((p4 >> 16) & 0xFF) + 2) >> 2;
+        int g = (((p1 >> 8) & 0xFF) + ((p2 >> 8) & 0xFF)
+            + ((p3 >> 8) & 0xFF) + ((p4 >> 8) & 0xFF) + 2) >> 2;
+        int b = ((p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF) + (p4 & 0xFF) + 2) >> 2;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+}
@@ -126,6 +126,19 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
     // cached rendering of all visible layers combined
     private transient BufferedImage compositeImage;
 
+    // the region of the cached composite image (in image space)
+    // that must be re-rendered before it can be used again
+    private transient Rectangle compositeDirtyRegion;
+
+    // flattened images of the layers below and above the active layer
+    private transient LayerRangeCaches rangeCaches = new LayerRangeCaches();
+
+    // downscaled versions of the composite image for zoomed-out painting
+    private transient CompositeMipmaps mipmaps = new CompositeMipmaps();
+
+    // incremented when the pixels of an unspecified layer might have changed
+    private transient long contentVersion;
+
     // the View that shows this composition, if any
     private transient View view;
 
@@ -195,6 +208,9 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         // Initialize transient variables
         compositeImage = null; // will be set when needed
+        compositeDirtyRegion = null;
+        rangeCaches = new LayerRangeCaches();
+        mipmaps = new CompositeMipmaps();
         file = null; // will be set later
         fileTimestamp = 0;
         debugName = null; // will be set later
@@ -900,6 +916,14 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
         return layer == activeTopLevelLayer;
     }
 
+    /**
+     * Returns a number that changes whenever the pixels of a layer might have
+     * changed without the change being attributed to a specific layer.
+     */
+    public long getContentVersion() {
+        return contentVersion;
+    }
+
     public Layer getActiveTopLevelLayer() {
         return activeTopLevelLayer;
     }
@@ -952,22 +976,6 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
         return count[0];
     }
 
-    /**
-     * Calculates the total number of images in this composition including any mask images.
-     */
-    public int calcNumImages() {
-        int count = 0;
-        for (Layer layer : layerList) {
-            if (layer instanceof ImageLayer) {
-                count++;
-            }
-            if (layer.hasMask()) {
-                count++;
-            }
-        }
-        return count;
-    }
-
     @Override
     public String getORAStackXML() {
         return "<stack>\n";
@@ -1272,18 +1280,26 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
     }
 
     public void repaintRegion(PPoint start, PPoint end, double thickness) {
-        invalidateImageCache();
+        double minX = Math.min(start.getImX(), end.getImX()) - thickness;
+        double minY = Math.min(start.getImY(), end.getImY()) - thickness;
+        double maxX = Math.max(start.getImX(), end.getImX()) + thickness;
+        double maxY = Math.max(start.getImY(), end.getImY()) + thickness;
+        // the brush tools always paint on the active layer
+        Rectangle dirtyRegion = toDirtyRegion(new Rectangle2D.Double(
+            minX, minY, maxX - minX, maxY - minY));
+        activeLayerChanged(dirtyRegion);
         if (view != null) { // it might not be opened during image reloading
             view.repaintRegion(start, end, thickness);
-            view.repaintNavigator(false);
+            view.repaintNavigator(dirtyRegion);
         }
     }
 
     public void repaintRegion(PRectangle area) {
-        invalidateImageCache();
+        Rectangle dirtyRegion = toDirtyRegion(area.getIm());
+        activeLayerChanged(dirtyRegion);
         if (view != null) { // it might not be opened during image reloading
             view.repaintRegion(area);
-            view.repaintNavigator(false);
+            view.repaintNavigator(dirtyRegion);
         }
     }
 
@@ -1530,15 +1546,64 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
 
     /**
      * Returns the cached (canvas-sized) composite image, recalculating it if necessary.
+     * If only a region was invalidated since the last call, then only that region
+     * is re-rendered into the cached image, therefore callers that keep the
+     * returned image while the composition is edited should copy it.
      */
     public BufferedImage getCompositeImage() {
+        if (compositeImage != null && compositeDirtyRegion != null) {
+            if (rangeCaches.isValidFor(activeTopLevelLayer)) {
+                rangeCaches.renderComposite(compositeImage, compositeDirtyRegion);
+                compositeDirtyRegion = null;
+            } else {
+                boolean updated = ImageUtils.recalcCompositeRegion(
+                    layerList, compositeImage, compositeDirtyRegion);
+                compositeDirtyRegion = null;
+                if (!updated) {
+                    // The mipmaps are kept, because they will be
+                    // rebuilt anyway if the composite image is replaced,
+                    // and otherwise only the dirty region changed.
+                    invalidateCompositeImage();
+                    rangeCaches.invalidate();
+                }
+            }
+        }
         if (compositeImage == null) {
-            compositeImage = ImageUtils.calcComposite(layerList, canvas);
+            if (rangeCaches.createIfRequested(layerList, activeTopLevelLayer, canvas)) {
+                compositeImage = rangeCaches.createComposite(canvas);
+            } else {
+                compositeImage = ImageUtils.calcComposite(layerList, canvas);
+            }
             assert compositeImage != null;
         }
         return compositeImage;
     }
 
+    /**
+     * Paints the composite image on the given image-space Graphics2D,
+     * using a downscaled version if the given zoom scale allows it.
+     */
+    public void paintCompositeImage(Graphics2D g, double scale) {
+        BufferedImage composite = getCompositeImage();
+        BufferedImage img = mipmaps.getImageForScale(composite, scale);
+        if (img == composite) {
+            g.drawImage(composite, 0, 0, null);
+        } else {
+            g.drawImage(img, 0, 0, composite.getWidth(), composite.getHeight(), null);
+        }
+    }
+
+    /**
+     * Returns the smallest downscaled version of the composite image that
+     * still has enough resolution for the given scale, or the composite
+     * image itself. Like the composite, the returned image is updated
+     * in place after region changes, so it should be copied if it's
+     * used outside the EDT.
+     */
+    public BufferedImage getCompositeImageForScale(double scale) {
+        return mipmaps.getImageForScale(getCompositeImage(), scale);
+    }
+
     @Override
     public BufferedImage getImage() {
         BufferedImage image = getCompositeImage();
@@ -1555,10 +1620,114 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
      */
     @Override
     public void invalidateImageCache() {
+        contentVersion++;
+        invalidateCompositeImage();
+        rangeCaches.invalidate();
+        mipmaps.invalidate();
+    }
+
+    private void invalidateCompositeImage() {
         if (compositeImage != null) {
             compositeImage.flush();
         }
         compositeImage = null;
+        compositeDirtyRegion = null;
+    }
+
+    /**
+     * Invalidates only the given region (in image space) of the cached
+     * composite image, so that the next call to {@link #getCompositeImage()}
+     * re-renders only the affected pixels, if possible.
+     */
+    public void invalidateImageCache(Rectangle dirtyRegion) {
+        contentVersion++;
+        rangeCaches.invalidate();
+        addDirtyRegion(dirtyRegion);
+    }
+
+    /**
+     * Invalidates the cached composite image after a change
+     * that affected only the content of the active layer, keeping
+     * the flattened images of the other layers.
+     * If the region is null, then the whole layer might have changed.
+     */
+    private void activeLayerChanged(Rectangle dirtyRegion) {
+        if (activeLayer != null) {
+            activeLayer.contentChanged();
+        }
+        rangeCaches.request();
+        if (dirtyRegion == null) {
+            invalidateCompositeImage();
+            mipmaps.invalidate();
+        } else {
+            addDirtyRegion(dirtyRegion);
+        }
+    }
+
+    private void addDirtyRegion(Rectangle dirtyRegion) {
+        if (compositeImage == null) {
+            return; // everything will be recalculated anyway
+        }
+        if (compositeDirtyRegion == null) {
+            compositeDirtyRegion = new Rectangle(dirtyRegion);
+        } else {
+            compositeDirtyRegion.add(dirtyRegion);
+        }
+        mipmaps.addDirtyRegion(dirtyRegion);
+    }
+
+    // converts an image-space area into a pixel-aligned dirty region,
+    // with a one-pixel margin for the antialiasing
+    private static Rectangle toDirtyRegion(Rectangle2D imArea) {
+        Rectangle region = imArea.getBounds();
+        region.grow(1, 1);
+        return region;
+    }
+
+    /**
+     * Signals that only the given region (in image space)
+     * of the given top-level layer has been changed.
+     */
+    public void updateRegion(Layer layer, Rectangle region) {
+        assert layer.isTopLevel();
+        layer.contentChanged();
+        if (layer == activeTopLevelLayer) {
+            activeLayerChanged(region);
+        } else {
+            invalidateImageCache(region);
+        }
+
+        if (isOpen()) {
+            view.repaint();
+            view.repaintNavigator(region);
+        }
+
+        HistogramsPanel.updateFrom(this, region);
+    }
+
+    /**
+     * Signals that only the pixels of the given top-level layer have been
+     * changed, but not its position, visibility or other layer-level settings.
+     */
+    public void updateLayerContent(Layer layer, boolean updateHistogram) {
+        assert layer.isTopLevel();
+        layer.contentChanged();
+        if (layer == activeTopLevelLayer) {
+            activeLayerChanged(null);
+        } else {
+            invalidateImageCache();
+        }
+
+        if (isOpen()) {
+            view.repaint();
+            view.repaintNavigator(false);
+        }
+
+        if (updateHistogram) {
+            HistogramsPanel.updateFrom(this);
+        } else {
+            HistogramsPanel.markOutdated(this);
+        }
     }
 
     @Override
@@ -1584,6 +1753,8 @@ public class Composition implements Serializable, ImageSource, LayerHolder {
 
         if (updateHistogram) {
             HistogramsPanel.updateFrom(this);
+        } else {
+            HistogramsPanel.markOutdated(this);
         }
     }
 
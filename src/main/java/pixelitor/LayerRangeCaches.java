@@ -0,0 +1,172 @@
+/*
+ * Copyright 2025 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import pixelitor.layers.Layer;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Pre-flattened images of the top-level layers below and above
+ * the active layer of a {@link Composition}. While only the active
+ * layer is edited, the composite can be calculated from three images,
+ * independently of the number of layers.
+ */
+class LayerRangeCaches {
+    // with fewer layers there is nothing to gain
+    private static final int MIN_NUM_LAYERS = 3;
+
+    // the layer for which the caches were calculated,
+    // or null if the caches are not valid
+    private Layer layer;
+
+    // the flattened images, they are null if there
+    // are no visible layers in the given range
+    private BufferedImage belowImage;
+    private BufferedImage aboveImage;
+
+    // set when the active layer is edited, because the caches
+    // are worth creating only for repeated edits of the same layer
+    private boolean requested;
+
+    /**
+     * Returns true if the caches can be used for the given active layer.
+     */
+    boolean isValidFor(Layer activeLayer) {
+        return layer != null && layer == activeLayer;
+    }
+
+    /**
+     * Signals that the content of the active layer has changed.
+     */
+    void request() {
+        requested = true;
+    }
+
+    /**
+     * Discards the caches, because something other than
+     * the content of the active layer has changed.
+     */
+    void invalidate() {
+        layer = null;
+        belowImage = null;
+        aboveImage = null;
+        requested = false;
+    }
+
+    /**
+     * Creates the caches if they were requested and they could be used.
+     * Returns true if the caches are valid after this call.
+     */
+    boolean createIfRequested(List<Layer> layers, Layer activeLayer, Canvas canvas) {
+        if (isValidFor(activeLayer)) {
+            return true;
+        }
+        if (!requested) {
+            return false;
+        }
+        requested = false;
+
+        int activeIndex = layers.indexOf(activeLayer);
+        if (!canBeUsed(layers, activeIndex)) {
+            return false;
+        }
+
+        List<Layer> below = layers.subList(0, activeIndex);
+        List<Layer> above = layers.subList(activeIndex + 1, layers.size());
+        belowImage = hasVisible(below) ? ImageUtils.calcComposite(below, canvas) : null;
+        aboveImage = hasVisible(above) ? ImageUtils.calcComposite(above, canvas) : null;
+        layer = activeLayer;
+        return true;
+    }
+
+    private static boolean canBeUsed(List<Layer> layers, int activeIndex) {
+        if (layers.size() < MIN_NUM_LAYERS || activeIndex < 0) {
+            return false;
+        }
+        Layer activeLayer = layers.get(activeIndex);
+        if (!activeLayer.isVisible() || !activeLayer.supportsRegionRendering()) {
+            return false;
+        }
+
+        // Anything can be below the active layer, but the layers above it
+        // can be flattened separately only if their blending is associative.
+        for (int i = activeIndex + 1; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (layer.isVisible() && !layer.canBeFlattenedSeparately()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasVisible(List<Layer> layers) {
+        for (Layer layer : layers) {
+            if (layer.isVisible()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a new composite image from the caches and the active layer.
+     */
+    BufferedImage createComposite(Canvas canvas) {
+        var compositeImg = new BufferedImage(
+            canvas.getWidth(), canvas.getHeight(), TYPE_INT_ARGB_PRE);
+        renderComposite(compositeImg, null);
+        return compositeImg;
+    }
+
+    /**
+     * Re-renders the given region (or everything, if the
+     * region is null) of the composite image.
+     */
+    void renderComposite(BufferedImage compositeImg, Rectangle region) {
+        assert layer != null;
+
+        Graphics2D g = compositeImg.createGraphics();
+        if (region != null) {
+            g.setClip(region);
+            g.setComposite(AlphaComposite.Clear);
+            g.fill(region);
+        }
+
+        if (belowImage != null) {
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(belowImage, 0, 0, null);
+        }
+
+        // returns null or the same image, because it's not an adjustment layer
+        layer.render(g, compositeImg, belowImage == null);
+
+        if (aboveImage != null) {
+            g.setComposite(AlphaComposite.SrcOver);
+            g.drawImage(aboveImage, 0, 0, null);
+        }
+        g.dispose();
+    }
+}
@@ -27,6 +27,7 @@ import pixelitor.gui.utils.Theme;
 import pixelitor.gui.utils.Themes;
 import pixelitor.io.FileIO;
 import pixelitor.io.IOTasks;
+import pixelitor.io.PXCCodec;
 import pixelitor.tools.util.MeasurementOverlay;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Language;
@@ -150,6 +151,7 @@ public class Pixelitor {
 
         MouseZoomMethod.loadFromPreferences();
         PanMethod.loadFromPreferences();
+        PXCCodec.loadFromPreferences();
 
         // The IO-intensive preloading of fonts is scheduled
         // to run after all the files have been opened,
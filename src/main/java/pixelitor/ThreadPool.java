@@ -17,31 +17,45 @@
 
 package pixelitor;
 
-import com.jhlabs.image.AbstractBufferedImageOp;
 import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressTracker;
 
-import java.awt.image.BufferedImage;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 /**
- * A thread pool for parallel execution on multiple CPU cores
+ * A thread pool for parallel execution on multiple CPU cores.
+ *
+ * Image processing work should be scheduled through {@link #processBands}
+ * or {@link #processRows}, which split the rows of an image into
+ * cache-sized bands instead of submitting a separate task for each row.
  */
 public class ThreadPool {
     private static final int NUM_CORES = Runtime.getRuntime().availableProcessors();
 
-    private static final ExecutorService pool =
-        Executors.newFixedThreadPool(NUM_CORES, new ThreadFactory() {
-            private final AtomicInteger threadCount = new AtomicInteger(1);
+    // the approximate number of pixels processed by a single band task,
+    // chosen so that a band of int pixels (input and output) fits in the L2 cache
+    private static final int TARGET_BAND_PIXELS = 1 << 16;
 
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread thread = new Thread(r, "ImageProcessor-" + threadCount.getAndIncrement());
-                thread.setDaemon(true);
-                return thread;
-            }
-        });
+    // the minimum number of bands per core, so that the
+    // work-stealing can balance uneven per-row costs
+    private static final int MIN_BANDS_PER_CORE = 4;
+
+    private static final AtomicInteger threadCount = new AtomicInteger(1);
+
+    // the cancellation check of the cancellable task running on the current thread
+    private static final ThreadLocal<BooleanSupplier> cancellationCheck = new ThreadLocal<>();
+
+    private static final ForkJoinPool pool = new ForkJoinPool(NUM_CORES, p -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+        thread.setName("ImageProcessor-" + threadCount.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
 
     private ThreadPool() {
         throw new AssertionError("utility class");
@@ -55,10 +69,9 @@ public class ThreadPool {
     }
 
     /**
-     * Submits a task that returns a value, such as
-     * the calculated pixels in a line.
+     * Submits a task that returns a result.
      */
-    public static <T> Future<T> submit2(Callable<T> task) {
+    public static <T> Future<T> submit(Callable<T> task) {
         return pool.submit(task);
     }
 
@@ -95,27 +108,139 @@ public class ThreadPool {
     }
 
     /**
-     * Similar to waitFor, but also updates given the destination image.
-     * Each future represents a processed line of pixels in the image.
+     * Processes the rows [0, numRows) in parallel, in bands of consecutive rows.
+     * The bands are executed on the work-stealing pool, and the progress
+     * is reported on the calling thread, one band at a time.
+     *
+     * @param numRows  the number of rows, also the number of progress units
+     * @param rowWidth the number of pixels in a row, used for sizing the bands
      */
-    public static void waitFor2(Future<int[]>[] lineFutures,
-                                BufferedImage dst,
-                                int lineWidth,
-                                ProgressTracker pt) {
+    public static void processBands(int numRows, int rowWidth, BandTask task, ProgressTracker pt) {
         assert pt != null;
+        if (numRows <= 0) {
+            return;
+        }
+
+        BooleanSupplier isCanceled = cancellationCheck.get();
+        throwIfCanceled(isCanceled);
+
+        int bandHeight = calcBandHeight(numRows, rowWidth);
+        if (bandHeight >= numRows) {
+            // not worth the scheduling
+            task.processBand(0, numRows);
+            pt.unitsDone(numRows);
+            return;
+        }
+
+        int numBands = (numRows + bandHeight - 1) / bandHeight;
+        ForkJoinTask<?>[] bands = new ForkJoinTask<?>[numBands];
+        for (int i = 0; i < numBands; i++) {
+            int startRow = i * bandHeight;
+            int endRow = Math.min(startRow + bandHeight, numRows);
+            bands[i] = pool.submit(() -> {
+                // the remaining bands of a canceled task are skipped
+                if (isCanceled == null || !isCanceled.getAsBoolean()) {
+                    task.processBand(startRow, endRow);
+                }
+            });
+        }
+
+        for (int i = 0; i < numBands; i++) {
+            try {
+                // if called from a pool thread, this also helps with the pending bands
+                bands[i].join();
+            } catch (RuntimeException e) {
+                Messages.showException(e);
+            }
+            int startRow = i * bandHeight;
+            pt.unitsDone(Math.min(bandHeight, numRows - startRow));
+        }
+        throwIfCanceled(isCanceled);
+    }
+
+    /**
+     * Runs the given task on the calling (non-pool) thread, and lets
+     * the bands scheduled by it through {@link #processBands} stop early
+     * when the given check returns true. If the task was canceled,
+     * a {@link CancellationException} is thrown instead of returning
+     * a possibly incomplete result.
+     */
+    public static <T> T callCancellable(Supplier<T> task, BooleanSupplier isCanceled) {
+        assert !isPoolThread();
 
+        cancellationCheck.set(isCanceled);
         try {
-            for (int y = 0; y < lineFutures.length; y++) {
-                int[] linePixels = lineFutures[y].get();
-                AbstractBufferedImageOp.setRGB(dst, 0, y, lineWidth, 1, linePixels);
-                pt.unitDone();
+            T result = task.get();
+            throwIfCanceled(isCanceled);
+            return result;
+        } finally {
+            cancellationCheck.remove();
+        }
+    }
+
+    private static void throwIfCanceled(BooleanSupplier isCanceled) {
+        if (isCanceled != null && isCanceled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Same as {@link #processBands}, but with a task that processes a single row.
+     */
+    public static void processRows(int numRows, int rowWidth, IntConsumer rowTask, ProgressTracker pt) {
+        processBands(numRows, rowWidth, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                rowTask.accept(y);
             }
-        } catch (InterruptedException | ExecutionException e) {
-            Messages.showException(e);
+        }, pt);
+    }
+
+    /**
+     * Runs the given independent tasks in parallel, and returns
+     * when all of them are finished. The first task is run on
+     * the calling thread. Exceptions are rethrown by this method.
+     */
+    public static void runAll(List<Runnable> tasks) {
+        int numTasks = tasks.size();
+        ForkJoinTask<?>[] forked = new ForkJoinTask<?>[numTasks];
+        for (int i = 1; i < numTasks; i++) {
+            forked[i] = pool.submit(tasks.get(i));
+        }
+        tasks.getFirst().run();
+        for (int i = 1; i < numTasks; i++) {
+            forked[i].join();
         }
     }
 
+    /**
+     * Returns true if the current thread belongs to this pool.
+     */
+    public static boolean isPoolThread() {
+        return Thread.currentThread() instanceof ForkJoinWorkerThread worker
+            && worker.getPool() == pool;
+    }
+
+    /**
+     * Returns the number of rows in a band.
+     */
+    static int calcBandHeight(int numRows, int rowWidth) {
+        if (NUM_CORES == 1) {
+            return numRows;
+        }
+        int cacheRows = Math.max(1, TARGET_BAND_PIXELS / Math.max(1, rowWidth));
+        int balanceRows = Math.max(1, numRows / (NUM_CORES * MIN_BANDS_PER_CORE));
+        return Math.min(cacheRows, balanceRows);
+    }
+
     public static Executor getExecutor() {
         return pool;
     }
+
+    /**
+     * A task that processes the rows in the [startRow, endRow) range.
+     */
+    @FunctionalInterface
+    public interface BandTask {
+        void processBand(int startRow, int endRow);
+    }
 }
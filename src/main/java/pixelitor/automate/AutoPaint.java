@@ -89,7 +89,7 @@ public class AutoPaint {
             Messages.showException(e);
         } finally {
             History.setIgnoreEdits(false);
-            History.add(new ImageEdit("Auto Paint", dr.getComp(),
+            History.add(ImageEdit.createAfterChange("Auto Paint", dr.getComp(),
                 dr, backupImage, false));
 
             progressHandler.stopProgress();
@@ -17,11 +17,14 @@
 
 package pixelitor.automate;
 
+import pixelitor.Composition;
 import pixelitor.compactions.CompAction;
 import pixelitor.filters.Filter;
 import pixelitor.layers.Drawable;
 
+import java.awt.image.BufferedImage;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
 
 import static pixelitor.FilterContext.BATCH_AUTOMATE;
 import static pixelitor.automate.BatchFilterWizardPage.SELECT_FILTER_AND_DIRS;
@@ -49,15 +52,33 @@ public class BatchFilterWizard extends Wizard {
     protected void onWizardComplete() {
         var dialogTitle = "Batch Filter Progress";
 
-        CompAction batchFilterAction = comp -> {
-            comp.getActiveDrawable().startFilter(filter, BATCH_AUTOMATE);
-            return CompletableFuture.completedFuture(comp);
-        };
-        new BatchProcessor(batchFilterAction, dialogTitle).processFiles();
+        new BatchProcessor(new BatchFilterAction(filter), dialogTitle).processFiles();
     }
 
     @Override
     protected void performCleanup() {
         // nothing to do
     }
+
+    /**
+     * Runs the filter on the active drawable of each processed composition.
+     */
+    private record BatchFilterAction(Filter filter) implements CompAction {
+        @Override
+        public CompletableFuture<Composition> process(Composition comp) {
+            comp.getActiveDrawable().startFilter(filter, BATCH_AUTOMATE);
+            return CompletableFuture.completedFuture(comp);
+        }
+
+        @Override
+        public UnaryOperator<BufferedImage> asImageTransform() {
+            if (!filter.canBeSmart()) {
+                // only smart filters are guaranteed not to depend on the active view
+                return null;
+            }
+            // filters have mutable state, therefore each thread gets its own copy
+            ThreadLocal<Filter> threadCopies = ThreadLocal.withInitial(filter::copy);
+            return img -> threadCopies.get().transformImage(img);
+        }
+    }
 }
@@ -24,12 +24,18 @@ import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.View;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.io.*;
+import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Messages;
 
 import javax.swing.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
 
 import static java.lang.String.format;
 import static javax.swing.JOptionPane.WARNING_MESSAGE;
@@ -40,6 +46,8 @@ import static pixelitor.utils.Threads.threadInfo;
 
 /**
  * Handles the batch processing of compositions.
+ * Single-layered files can be processed in parallel without opening
+ * them, if the action can be expressed as an image transformation.
  */
 public class BatchProcessor {
     private static final String OVERWRITE_YES = "Yes";
@@ -47,6 +55,12 @@ public class BatchProcessor {
     private static final String OVERWRITE_NO = "No (Skip)";
     private static final String OVERWRITE_CANCEL = "Cancel Processing";
 
+    private static final String PARALLEL_OVERWRITE = "Overwrite";
+    private static final String PARALLEL_SKIP = "Skip Existing";
+
+    // the maximum number of files processed at the same time
+    private static int numParallelFiles = AppPreferences.loadBatchParallelFiles();
+
     private boolean overwriteAll = false;
     private boolean stopProcessing = false;
 
@@ -77,6 +91,12 @@ public class BatchProcessor {
             return;
         }
 
+        UnaryOperator<BufferedImage> imageTransform = findImageTransform(filesToProcess);
+        if (imageTransform != null) {
+            processFilesInParallel(filesToProcess, imageTransform);
+            return;
+        }
+
         stopProcessing = false;
         var progressMonitor = GUIUtils.createPercentageProgressMonitor(dialogTitle);
         var worker = new SwingWorker<Void, Void>() {
@@ -88,6 +108,81 @@ public class BatchProcessor {
         worker.execute();
     }
 
+    /**
+     * Returns the image transformation that allows processing the files in
+     * parallel without opening them, or null if they must be processed one by one.
+     */
+    private UnaryOperator<BufferedImage> findImageTransform(List<File> files) {
+        if (numParallelFiles <= 1 || files.size() <= 1
+            || FileFormat.getLastSaved().isMultiLayered()) {
+            return null;
+        }
+        for (File file : files) {
+            boolean multiLayered = FileFormat.fromFile(file)
+                .map(FileFormat::isMultiLayered)
+                .orElse(false);
+            if (multiLayered) {
+                return null;
+            }
+        }
+        return action.asImageTransform();
+    }
+
+    private void processFilesInParallel(List<File> filesToProcess,
+                                        UnaryOperator<BufferedImage> imageTransform) {
+        assert calledOnEDT() : threadInfo();
+
+        FileFormat outputFormat = FileFormat.getLastSaved();
+        Map<File, File> outputFiles = new LinkedHashMap<>();
+        int numExisting = 0;
+        for (File file : filesToProcess) {
+            File outputFile = createOutputPath(file, outputFormat);
+            outputFiles.put(file, outputFile);
+            if (outputFile.exists()) {
+                numExisting++;
+            }
+        }
+
+        // ask only once, because the files are not saved one by one
+        if (numExisting > 0) {
+            String answer = promptParallelOverwrite(numExisting);
+            if (answer.equals(OVERWRITE_CANCEL)) {
+                return;
+            }
+            if (answer.equals(PARALLEL_SKIP)) {
+                outputFiles.values().removeIf(File::exists);
+                if (outputFiles.isEmpty()) {
+                    return;
+                }
+            }
+        }
+
+        var batch = new ParallelBatch(imageTransform, outputFormat, numParallelFiles);
+        var progressMonitor = GUIUtils.createPercentageProgressMonitor(dialogTitle);
+        var worker = new SwingWorker<Map<File, Throwable>, Void>() {
+            @Override
+            public Map<File, Throwable> doInBackground() {
+                return batch.run(outputFiles, progressMonitor);
+            }
+
+            @Override
+            protected void done() {
+                progressMonitor.close();
+                try {
+                    Map<File, Throwable> failures = get();
+                    if (!failures.isEmpty()) {
+                        Messages.showStatusMessage(format("%d of %d files could not be processed.",
+                            failures.size(), outputFiles.size()));
+                        Messages.showException(failures.values().iterator().next());
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    Messages.showException(e);
+                }
+            }
+        };
+        worker.execute();
+    }
+
     private Void processFilesSequentially(List<File> filesToProcess,
                                           ProgressMonitor monitor) {
         assert calledOutsideEDT() : "on EDT";
@@ -126,7 +221,7 @@ public class BatchProcessor {
         assert calledOnEDT() : threadInfo();
 
         var format = FileFormat.getLastSaved();
-        File outputFile = createOutputPath(comp, format);
+        File outputFile = createOutputPath(comp.getFile(), format);
 
         // so that it doesn't ask to save again after we just saved it
         comp.setDirty(false);
@@ -172,12 +267,22 @@ public class BatchProcessor {
         }
     }
 
-    private File createOutputPath(Composition comp, FileFormat format) {
-        String inFileName = comp.getFile().getName();
+    private File createOutputPath(File inputFile, FileFormat format) {
+        String inFileName = inputFile.getName();
         String outFileName = FileUtils.replaceExtension(inFileName, format.toString());
         return new File(outputDir, outFileName);
     }
 
+    private static String promptParallelOverwrite(int numExisting) {
+        String msg = numExisting == 1
+            ? "1 output file already exists."
+            : format("%d output files already exist.", numExisting);
+        String[] options = {PARALLEL_OVERWRITE, PARALLEL_SKIP, OVERWRITE_CANCEL};
+        int answer = JOptionPane.showOptionDialog(PixelitorWindow.get(), msg, "Warning",
+            JOptionPane.DEFAULT_OPTION, WARNING_MESSAGE, null, options, PARALLEL_SKIP);
+        return answer < 0 ? OVERWRITE_CANCEL : options[answer];
+    }
+
     private static String promptOverwriteConfirmation(File outputFile) {
         String msg = format("File %s already exists. Overwrite?", outputFile);
         var optionPane = new JOptionPane(msg, WARNING_MESSAGE);
@@ -199,4 +304,12 @@ public class BatchProcessor {
         }
         return answer;
     }
-}
\ No newline at end of file
+
+    public static int getNumParallelFiles() {
+        return numParallelFiles;
+    }
+
+    public static void setNumParallelFiles(int numParallelFiles) {
+        BatchProcessor.numParallelFiles = numParallelFiles;
+    }
+}
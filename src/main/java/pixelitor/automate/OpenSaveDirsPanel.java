@@ -32,8 +32,8 @@ import static java.lang.String.format;
 import static pixelitor.gui.utils.BrowseFilesSupport.SelectionMode.DIRECTORY;
 
 /**
- * A panel for selecting an input folder,
- * an output folder, and a saving file format.
+ * A panel for selecting an input folder, an output folder,
+ * a saving file format, and the number of files processed in parallel.
  */
 class OpenSaveDirsPanel extends ValidatedPanel {
     private final BrowseFilesSupport inputChooser
@@ -44,6 +44,7 @@ class OpenSaveDirsPanel extends ValidatedPanel {
         "Select Output Folder", DIRECTORY);
 
     private final JComboBox<FileFormat> outputFormatSelector;
+    private final JComboBox<Integer> parallelFilesSelector;
 
     OpenSaveDirsPanel() {
         super(new GridBagLayout());
@@ -55,6 +56,18 @@ class OpenSaveDirsPanel extends ValidatedPanel {
         outputFormatSelector = new JComboBox<>(FileFormat.values());
         outputFormatSelector.setSelectedItem(FileFormat.getLastSaved());
         gbh.addLabelAndControlNoStretch("Output Format:", outputFormatSelector);
+
+        int numCores = Runtime.getRuntime().availableProcessors();
+        Integer[] choices = new Integer[numCores];
+        for (int i = 0; i < numCores; i++) {
+            choices[i] = i + 1;
+        }
+        parallelFilesSelector = new JComboBox<>(choices);
+        parallelFilesSelector.setSelectedItem(
+            Math.min(BatchProcessor.getNumParallelFiles(), numCores));
+        parallelFilesSelector.setToolTipText("<html>The number of files processed at the same time." +
+            "<br>Multi-layered files and some filters are always processed one by one.");
+        gbh.addLabelAndControlNoStretch("Files in Parallel:", parallelFilesSelector);
     }
 
     private static void addDirChooserRow(String label,
@@ -101,5 +114,6 @@ class OpenSaveDirsPanel extends ValidatedPanel {
         Dirs.setLastOpen(inputChooser.getSelectedFile());
         Dirs.setLastSave(outputChooser.getSelectedFile());
         FileFormat.setLastSaved(getSelectedFormat());
+        BatchProcessor.setNumParallelFiles((Integer) parallelFilesSelector.getSelectedItem());
     }
 }
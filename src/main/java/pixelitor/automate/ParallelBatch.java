@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.automate;
+
+import pixelitor.ThreadPool;
+import pixelitor.io.FileFormat;
+import pixelitor.io.IOTasks;
+import pixelitor.io.SaveSettings;
+import pixelitor.io.TrackedIO;
+import pixelitor.utils.ImageUtils;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import static pixelitor.utils.Threads.calledOutsideEDT;
+
+/**
+ * Processes single-layered image files concurrently, without opening
+ * them in views. Each file goes through three pipeline stages: decoding
+ * on a reader thread, transforming on the shared thread pool, and encoding
+ * on a writer thread. The number of files in flight is limited both
+ * by a count and by an estimate of their memory use.
+ */
+class ParallelBatch {
+    // the images in flight can use at most this fraction of the heap
+    private static final long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 2;
+
+    // the decoded image, its converted copy, and the transformed image
+    private static final int IMAGES_PER_FILE = 3;
+
+    private final UnaryOperator<BufferedImage> transform;
+    private final FileFormat outputFormat;
+    private final int numParallelFiles;
+
+    // the estimated memory use of the files in flight, guarded by "this"
+    private long usedMemory = 0;
+
+    ParallelBatch(UnaryOperator<BufferedImage> transform,
+                  FileFormat outputFormat, int numParallelFiles) {
+        assert !outputFormat.isMultiLayered();
+        assert numParallelFiles > 1;
+
+        this.transform = transform;
+        this.outputFormat = outputFormat;
+        this.numParallelFiles = numParallelFiles;
+    }
+
+    /**
+     * Processes the given input files into the corresponding output files,
+     * and returns when all of them are finished or the monitor is canceled.
+     * Returns the files that couldn't be processed, with the reason.
+     */
+    Map<File, Throwable> run(Map<File, File> outputFiles, ProgressMonitor monitor) {
+        assert calledOutsideEDT() : "on EDT";
+
+        ExecutorService readers = Executors.newFixedThreadPool(
+            numParallelFiles, createThreadFactory("BatchReader-"));
+        ExecutorService writers = Executors.newFixedThreadPool(
+            numParallelFiles, createThreadFactory("BatchWriter-"));
+        Executor transformers = ThreadPool.getExecutor();
+
+        Map<File, Throwable> failures = new ConcurrentSkipListMap<>();
+        Semaphore slots = new Semaphore(numParallelFiles);
+        AtomicInteger numFinished = new AtomicInteger();
+        int numFiles = outputFiles.size();
+
+        for (Map.Entry<File, File> entry : outputFiles.entrySet()) {
+            if (monitor.isCanceled()) {
+                break;
+            }
+            File input = entry.getKey();
+            File output = entry.getValue();
+
+            long memory = estimateMemory(input);
+            slots.acquireUninterruptibly();
+            acquireMemory(memory);
+
+            CompletableFuture
+                .supplyAsync(() -> read(input), readers)
+                .thenApplyAsync(transform, transformers)
+                .thenAcceptAsync(img -> write(img, output), writers)
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        failures.put(input, e instanceof CompletionException ? e.getCause() : e);
+                    }
+                    releaseMemory(memory);
+                    slots.release();
+                    updateProgress(monitor, numFinished.incrementAndGet(), numFiles);
+                });
+        }
+
+        // wait until the files in flight are finished
+        slots.acquireUninterruptibly(numParallelFiles);
+        readers.shutdown();
+        writers.shutdown();
+
+        return failures;
+    }
+
+    private static BufferedImage read(File file) {
+        BufferedImage img = TrackedIO.uncheckedRead(file);
+        // the same conversion as for the opened files
+        return ImageUtils.toSysCompatibleImage(img);
+    }
+
+    private void write(BufferedImage img, File output) {
+        String path = output.getAbsolutePath();
+        IOTasks.markPathForWriting(path);
+        try {
+            outputFormat.saveFlattened(img, new SaveSettings.Simple(outputFormat, output));
+        } finally {
+            IOTasks.markWritingComplete(path);
+        }
+    }
+
+    // waits until the given amount of memory fits into the budget,
+    // but a single file is always admitted, even if it's too large
+    private synchronized void acquireMemory(long memory) {
+        boolean interrupted = false;
+        while (usedMemory > 0 && usedMemory + memory > MEMORY_BUDGET) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        usedMemory += memory;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void releaseMemory(long memory) {
+        usedMemory -= memory;
+        notifyAll();
+    }
+
+    /**
+     * Estimates the memory needed for processing the given
+     * file by reading only the image dimensions from its header.
+     */
+    private static long estimateMemory(File file) {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(iis, true, true);
+                    return IMAGES_PER_FILE * 4L * reader.getWidth(0) * reader.getHeight(0);
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } catch (IOException e) {
+            // the problem will be reported when the file is decoded
+        }
+        return 0;
+    }
+
+    private static void updateProgress(ProgressMonitor monitor, int numFinished, int numFiles) {
+        EventQueue.invokeLater(() -> {
+            monitor.setProgress((int) (numFinished * 100.0 / numFiles));
+            monitor.setNote("Processed " + numFinished + " of " + numFiles);
+        });
+    }
+
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger(1);
+        return task -> {
+            Thread thread = new Thread(task, namePrefix + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -18,7 +18,9 @@ package pixelitor.compactions;
 
 import pixelitor.Composition;
 
+import java.awt.image.BufferedImage;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
 
 /**
  * An operation that can be applied to all layers of a {@link Composition}.
@@ -30,4 +32,14 @@ public interface CompAction {
      * instance, and the original instance is used as backup for the undo.
      */
     CompletableFuture<Composition> process(Composition srcComp);
+
+    /**
+     * Returns the equivalent transformation of a flattened single-layered
+     * image, which can run on any thread without a composition or a view,
+     * or null if this action can't be expressed in this way.
+     * The transformation can be called concurrently for different images.
+     */
+    default UnaryOperator<BufferedImage> asImageTransform() {
+        return null;
+    }
 }
@@ -25,14 +25,17 @@ import pixelitor.guides.Guides;
 import pixelitor.history.CompositionReplacedEdit;
 import pixelitor.history.History;
 import pixelitor.selection.SelectionActions;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressHandler;
 import pixelitor.utils.Utils;
 
 import java.awt.Dimension;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
 
 import static java.lang.String.format;
 import static pixelitor.utils.Threads.calledOnEDT;
@@ -71,7 +74,7 @@ public class Resize implements CompAction {
             return CompletableFuture.completedFuture(srcComp);
         }
 
-        var targetSize = calcTargetSize(srcCanvas);
+        var targetSize = calcTargetSize(srcCanvas.getWidth(), srcCanvas.getHeight());
 
         // The resizing runs outside the EDT to allow the progress bar animation
         // to update, and to enable the parallel resizing of multiple layers.
@@ -88,14 +91,24 @@ public class Resize implements CompAction {
             });
     }
 
-    private Dimension calcTargetSize(Canvas srcCanvas) {
+    @Override
+    public UnaryOperator<BufferedImage> asImageTransform() {
+        return img -> {
+            int srcWidth = img.getWidth();
+            int srcHeight = img.getHeight();
+            if (srcWidth == targetWidth && srcHeight == targetHeight) {
+                return img;
+            }
+            var targetSize = calcTargetSize(srcWidth, srcHeight);
+            return ImageUtils.resize(img, targetSize.width, targetSize.height);
+        };
+    }
+
+    private Dimension calcTargetSize(int srcWidth, int srcHeight) {
         if (!preserveAspectRatio) {
             return new Dimension(targetWidth, targetHeight);
         }
 
-        int srcWidth = srcCanvas.getWidth();
-        int srcHeight = srcCanvas.getHeight();
-
         double heightScale = targetHeight / (double) srcHeight;
         double widthScale = targetWidth / (double) srcWidth;
         double scale = Math.min(heightScale, widthScale);
@@ -29,7 +29,6 @@ import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.Serial;
 import java.util.Random;
-import java.util.concurrent.Future;
 
 import static java.awt.Color.BLACK;
 import static java.awt.Color.WHITE;
@@ -94,13 +93,8 @@ public class Clouds extends ParametrizedFilter {
         int[] c1Arr = {c1.getAlpha(), c1.getRed(), c1.getGreen(), c1.getBlue()};
         int[] c2Arr = {c2.getAlpha(), c2.getRed(), c2.getGreen(), c2.getBlue()};
 
-        Future<?>[] rowFutures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable rowTask = () -> processRow(scale, roughness, width, finalY, destPixels, c1Arr, c2Arr);
-            rowFutures[y] = ThreadPool.submit(rowTask);
-        }
-        ThreadPool.waitFor(rowFutures, pt);
+        ThreadPool.processRows(height, width, y ->
+            processRow(scale, roughness, width, y, destPixels, c1Arr, c2Arr), pt);
     }
 
     private void processRow(float startingScale, float roughness,
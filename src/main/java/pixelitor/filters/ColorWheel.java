@@ -30,7 +30,6 @@ import pixelitor.utils.StatusBarProgressTracker;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.Serial;
-import java.util.concurrent.Future;
 
 /**
  * Renders a color wheel
@@ -96,14 +95,8 @@ public class ColorWheel extends ParametrizedFilter {
 
         var pt = new StatusBarProgressTracker(NAME, height);
 
-        Future<?>[] rowFutures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable rowTask = () -> processRow(
-                destPixels, width, finalY, cx, cy, hueRot, sat, brgLum, space, spiral);
-            rowFutures[y] = ThreadPool.submit(rowTask);
-        }
-        ThreadPool.waitFor(rowFutures, pt);
+        ThreadPool.processRows(height, width, y -> processRow(
+            destPixels, width, y, cx, cy, hueRot, sat, brgLum, space, spiral), pt);
         pt.finished();
 
         return dest;
@@ -20,6 +20,7 @@ package pixelitor.filters;
 import pixelitor.filters.gui.FilterWithGUI;
 import pixelitor.filters.gui.PresetOwner;
 import pixelitor.filters.gui.UserPreset;
+import pixelitor.filters.util.PreviewRegion;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.debug.DebugNode;
@@ -126,6 +127,25 @@ public abstract class Filter implements Serializable, PresetOwner, Debuggable {
         return true;
     }
 
+    /**
+     * Whether this filter calculates only the current {@link PreviewRegion}
+     * of its full-size result, if one is set. This is possible if the
+     * result pixels are calculated independently of each other.
+     */
+    public boolean supportsPreviewRegion() {
+        return false;
+    }
+
+    /**
+     * Returns the distance within which the source pixels can affect
+     * a result pixel, if the result doesn't depend on the position of
+     * the pixels within the image, so that any region of the result can
+     * be calculated from a cropped source. Returns -1 otherwise.
+     */
+    public int getPreviewHalo() {
+        return -1;
+    }
+
     /**
      * Returns a string representation of the filter's current parameters.
      */
@@ -17,6 +17,7 @@
 
 package pixelitor.filters;
 
+import pixelitor.ThreadPool;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.ProgressTracker;
@@ -25,7 +26,6 @@ import pixelitor.utils.StatusBarProgressTracker;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.Serial;
-import java.util.Arrays;
 
 /**
  * Kuwahara filter.
@@ -37,7 +37,7 @@ public class Kuwahara extends ParametrizedFilter {
     public static final String NAME = "Kuwahara";
 
     private final RangeParam radiusParam = new RangeParam(
-        "Radius", 1, 1, 10);
+        "Radius", 1, 1, 50);
 
     public Kuwahara() {
         super(true);
@@ -51,108 +51,127 @@ public class Kuwahara extends ParametrizedFilter {
 
     @Override
     public BufferedImage transform(BufferedImage src, BufferedImage dest) {
-        dest = ImageUtils.copyImage(src);
-
         int radius = radiusParam.getValue();
 
+        int[] srcPixels = ImageUtils.getPixels(src);
         int[] destPixels = ImageUtils.getPixels(dest);
-        filterKuwahara(destPixels, dest.getWidth(), dest.getHeight(), radius);
+        filterKuwahara(srcPixels, destPixels, src.getWidth(), src.getHeight(), radius);
         return dest;
     }
 
-    private static void filterKuwahara(int[] array, int imgWidth, int imgHeight, int radius) {
+    /**
+     * Each pixel takes the mean brightness of the most homogenous of the
+     * four (radius + 1) * (radius + 1) sub-regions around it. The sums
+     * needed for the means and variances are calculated in constant time
+     * per pixel from the prefix sums of sliding column sums.
+     */
+    static void filterKuwahara(int[] src, int[] dest, int imgWidth, int imgHeight, int radius) {
         ProgressTracker pt = new StatusBarProgressTracker(NAME, imgHeight);
+        ThreadPool.processBands(imgHeight, imgWidth, (startY, endY) ->
+            filterBand(src, dest, imgWidth, imgHeight, radius, startY, endY), pt);
+        pt.finished();
+    }
 
-        int[] result = new int[array.length]; // stores the filtered image
-        float[] hsv = new float[3];
+    private static void filterBand(int[] src, int[] dest, int imgWidth, int imgHeight,
+                                   int radius, int startY, int endY) {
+        // the sums of the brightness values (0-255) and of their squares in
+        // each column, for the rows [y - radius, y] (above) and [y, y + radius] (below)
+        int[] aboveSums = new int[imgWidth];
+        int[] aboveSqSums = new int[imgWidth];
+        int[] belowSums = new int[imgWidth];
+        int[] belowSqSums = new int[imgWidth];
+
+        // the prefix sums of the column sums in the current row,
+        // the element at index x + 1 contains the sum of columns [0, x]
+        long[] abovePrefix = new long[imgWidth + 1];
+        long[] aboveSqPrefix = new long[imgWidth + 1];
+        long[] belowPrefix = new long[imgWidth + 1];
+        long[] belowSqPrefix = new long[imgWidth + 1];
+
+        for (int row = Math.max(0, startY - radius); row <= startY; row++) {
+            addRow(src, row, imgWidth, aboveSums, aboveSqSums, 1);
+        }
+        for (int row = startY; row <= Math.min(imgHeight - 1, startY + radius); row++) {
+            addRow(src, row, imgWidth, belowSums, belowSqSums, 1);
+        }
 
-        for (int y = 0; y < imgHeight; y++) {
-            for (int x = 0; x < imgWidth; x++) {
-                int index = y * imgWidth + x; // the index of the current pixel
-                rgbToHsv(array[index], hsv);
+        float[] hsv = new float[3];
+        for (int y = startY; y < endY; y++) {
+            if (y > startY) { // slide the column sums down by one row
+                addRow(src, y, imgWidth, aboveSums, aboveSqSums, 1);
+                if (y - radius - 1 >= 0) {
+                    addRow(src, y - radius - 1, imgWidth, aboveSums, aboveSqSums, -1);
+                }
+                if (y + radius < imgHeight) {
+                    addRow(src, y + radius, imgWidth, belowSums, belowSqSums, 1);
+                }
+                addRow(src, y - 1, imgWidth, belowSums, belowSqSums, -1);
+            }
+            calcPrefixSums(aboveSums, abovePrefix);
+            calcPrefixSums(aboveSqSums, aboveSqPrefix);
+            calcPrefixSums(belowSums, belowPrefix);
+            calcPrefixSums(belowSqSums, belowSqPrefix);
 
-                // get the brightness values in the four
-                // sub-regions around the current pixel
-                float[][] subRegions = getSubRegions(array, imgWidth, imgHeight, x, y, radius);
+            int aboveHeight = Math.min(y, radius) + 1;
+            int belowHeight = Math.min(imgHeight - 1 - y, radius) + 1;
 
-                // the central pixel will take the mean value of the sub-region
-                // that is most homogenous (has the smallest variance)
-                float minVariance = Float.MAX_VALUE;
+            for (int x = 0; x < imgWidth; x++) {
+                // the column ranges [leftStart, x] and [x, rightEnd)
+                int leftStart = Math.max(0, x - radius);
+                int rightEnd = Math.min(imgWidth, x + radius + 1);
+                int leftWidth = x + 1 - leftStart;
+                int rightWidth = rightEnd - x;
+
+                // the sub-regions are checked in the same order as
+                // before: top-left, top-right, bottom-left, bottom-right
+                double minVariance = Double.MAX_VALUE;
                 float minVarianceMean = 0;
-                for (float[] subRegion : subRegions) {
-                    if (subRegion.length == 0) {
-                        continue; // skip empty subregions
-                    }
-                    float mean = calcMean(subRegion);
-                    float variance = calcVariance(subRegion, mean);
-
+                for (int region = 0; region < 4; region++) {
+                    boolean left = (region & 1) == 0;
+                    boolean above = region < 2;
+                    int from = left ? leftStart : x;
+                    int to = left ? x + 1 : rightEnd;
+                    long[] prefix = above ? abovePrefix : belowPrefix;
+                    long[] sqPrefix = above ? aboveSqPrefix : belowSqPrefix;
+
+                    long n = (long) (left ? leftWidth : rightWidth)
+                        * (above ? aboveHeight : belowHeight);
+                    long sum = prefix[to] - prefix[from];
+                    long sqSum = sqPrefix[to] - sqPrefix[from];
+
+                    // n * n * variance is calculated exactly with integers, so that
+                    // equally homogenous sub-regions compare as equal
+                    double variance = (double) (n * sqSum - sum * sum) / (n * n);
                     if (variance < minVariance) {
                         minVariance = variance;
-                        minVarianceMean = mean;
+                        minVarianceMean = (float) sum / (255.0f * n);
                     }
                 }
 
+                int index = y * imgWidth + x;
+                rgbToHsv(src[index], hsv);
                 hsv[2] = minVarianceMean;
-                result[index] = hsvToRgb(hsv);
-            }
-            pt.unitDone();
-        }
-
-        // copy the filtered image back to the original array
-        System.arraycopy(result, 0, array, 0, array.length);
-        pt.finished();
-    }
-
-    private static float[][] getSubRegions(int[] array, int imgWidth, int imgHeight, int x, int y, int radius) {
-        float[][] regions = new float[4][];
-
-        int offsetArea = (radius + 1) * (radius + 1);
-
-        // starting coordinates for each sub-region
-        int[][] startCoords = {
-            {x - radius, y - radius}, {x, y - radius},
-            {x - radius, y}, {x, y}
-        };
-
-        // iterate through each sub-region
-        for (int regionIndex = 0; regionIndex < 4; regionIndex++) {
-            float[] regionValues = new float[offsetArea];
-            int validCount = 0;
-
-            for (int i = 0; i <= radius; i++) {
-                for (int j = 0; j <= radius; j++) {
-                    // the coordinates of the current pixel in the sub-region
-                    int currentX = startCoords[regionIndex][0] + i;
-                    int currentY = startCoords[regionIndex][1] + j;
-
-                    if (currentX >= 0 && currentX < imgWidth && currentY >= 0 && currentY < imgHeight) {
-                        int index = currentY * imgWidth + currentX;
-                        regionValues[validCount++] = rgbToBightness(array[index]);
-                    }
-                }
+                dest[index] = hsvToRgb(hsv);
             }
-
-            // trim to actual size
-            regions[regionIndex] = Arrays.copyOf(regionValues, validCount);
         }
-        return regions;
     }
 
-    private static float calcMean(float[] values) {
-        float sum = 0;
-        for (float value : values) {
-            sum += value;
+    // adds (sign = 1) or subtracts (sign = -1) the brightness values of a row
+    private static void addRow(int[] src, int row, int imgWidth, int[] sums, int[] sqSums, int sign) {
+        int offset = row * imgWidth;
+        for (int x = 0; x < imgWidth; x++) {
+            int brightness = calcBrightness(src[offset + x]);
+            sums[x] += sign * brightness;
+            sqSums[x] += sign * brightness * brightness;
         }
-        return values.length > 0 ? sum / values.length : 0;
     }
 
-    private static float calcVariance(float[] values, float mean) {
-        float sumSquaredDifferences = 0;
-        for (float value : values) {
-            float diff = value - mean;
-            sumSquaredDifferences += diff * diff;
+    private static void calcPrefixSums(int[] values, long[] prefix) {
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+            prefix[i + 1] = sum;
         }
-        return values.length > 0 ? sumSquaredDifferences / values.length : 0;
     }
 
     private static void rgbToHsv(int rgb, float[] hsv) {
@@ -162,17 +181,13 @@ public class Kuwahara extends ParametrizedFilter {
         Color.RGBtoHSB(red, green, blue, hsv);
     }
 
-    private static float rgbToBightness(int rgb) {
+    // the HSB brightness of the given color, scaled to 0-255
+    private static int calcBrightness(int rgb) {
         int r = (rgb >> 16) & 0xFF;
         int g = (rgb >> 8) & 0xFF;
         int b = rgb & 0xFF;
 
-        int max = Math.max(r, g);
-        if (b > max) {
-            max = b;
-        }
-
-        return ((float) max) / 255.0f;
+        return Math.max(Math.max(r, g), b);
     }
 
     private static int hsvToRgb(float[] hsv) {
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import pixelitor.ThreadPool;
+import pixelitor.filters.gui.IntChoiceParam;
+import pixelitor.filters.gui.IntChoiceParam.Item;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.gui.GUIText;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.StatusBarProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.io.Serial;
+import java.util.Arrays;
+
+/**
+ * A median filter with an arbitrary radius, which can also
+ * calculate other percentiles (including the minimum and the maximum)
+ * of the square neighborhood, independently for each channel.
+ */
+public class Median extends ParametrizedFilter {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final String NAME = "Median";
+
+    private static final int RANK_PERCENTILE = -1;
+
+    // marks the kernel histogram segments that have to be recalculated
+    private static final int NOT_UPDATED = Integer.MIN_VALUE;
+
+    // the width of the image stripes that are processed independently,
+    // small enough so that the column histograms stay in the CPU cache
+    private static final int STRIPE_WIDTH = 128;
+
+    private final RangeParam radiusParam = new RangeParam(GUIText.RADIUS, 1, 2, 50);
+    private final RangeParam percentileParam = new RangeParam("Percentile", 0, 50, 100);
+    private final IntChoiceParam rankParam = new IntChoiceParam("Rank", new Item[]{
+        new Item("Median", 50),
+        new Item("Minimum", 0),
+        new Item("Maximum", 100),
+        new Item("Percentile", RANK_PERCENTILE),
+    });
+
+    public Median() {
+        super(true);
+
+        helpURL = "https://en.wikipedia.org/wiki/Median_filter";
+
+        rankParam.setupEnableOtherIf(percentileParam,
+            rank -> rank.valueIs(RANK_PERCENTILE));
+
+        setParams(
+            radiusParam,
+            rankParam,
+            percentileParam
+        );
+    }
+
+    @Override
+    public BufferedImage transform(BufferedImage src, BufferedImage dest) {
+        int rank = rankParam.getValue();
+        int percentile = rank == RANK_PERCENTILE ? percentileParam.getValue() : rank;
+
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int numStripes = (width + STRIPE_WIDTH - 1) / STRIPE_WIDTH;
+        ProgressTracker pt = new StatusBarProgressTracker(NAME, numStripes);
+        filterRank(ImageUtils.getPixels(src), ImageUtils.getPixels(dest),
+            width, height, radiusParam.getValue(), percentile, pt);
+        pt.finished();
+
+        return dest;
+    }
+
+    @Override
+    public boolean supportsGray() {
+        return false;
+    }
+
+    /**
+     * Replaces each channel value with the given percentile of the channel values
+     * in the (2 * radius + 1) * (2 * radius + 1) square around it, repeating
+     * the edge pixels. Uses the Perreault-Hébert algorithm: each column of a
+     * stripe has a histogram that slides down with the rows, and the kernel
+     * histogram slides right by adding and removing column histograms,
+     * so that the cost per pixel doesn't depend on the radius.
+     */
+    static void filterRank(int[] src, int[] dest, int width, int height,
+                           int radius, int percentile, ProgressTracker pt) {
+        boolean opaque = true;
+        for (int pixel : src) {
+            if (pixel >>> 24 != 0xFF) {
+                opaque = false;
+                break;
+            }
+        }
+        // the alpha channel doesn't have to be filtered if it's constant
+        int[] shifts = opaque ? new int[]{16, 8, 0} : new int[]{24, 16, 8, 0};
+        int base = opaque ? 0xFF_00_00_00 : 0;
+
+        int windowSize = 2 * radius + 1;
+        long numValues = (long) windowSize * windowSize;
+        int rank = (int) Math.round(percentile / 100.0 * (numValues - 1));
+
+        int numStripes = (width + STRIPE_WIDTH - 1) / STRIPE_WIDTH;
+        ThreadPool.processBands(numStripes, STRIPE_WIDTH * height, (startStripe, endStripe) -> {
+            int maxCols = Math.min(width, STRIPE_WIDTH + 2 * radius);
+            var histograms = new Histograms(maxCols);
+            for (int stripe = startStripe; stripe < endStripe; stripe++) {
+                int startX = stripe * STRIPE_WIDTH;
+                int endX = Math.min(width, startX + STRIPE_WIDTH);
+                for (int i = 0; i < shifts.length; i++) {
+                    filterStripe(src, dest, width, height, radius, rank,
+                        startX, endX, shifts[i], i == 0, base, histograms);
+                }
+            }
+        }, pt);
+    }
+
+    /**
+     * The reused histograms of a stripe. The counts are stored on two levels:
+     * the fine histograms have 256 bins, and the coarse ones have 16 bins,
+     * each of which is the sum of 16 fine bins. The coarse level is used
+     * to quickly find the 16 fine bins that contain the searched rank.
+     */
+    private static class Histograms {
+        // the column histograms, each column has a block of 256 (or 16) bins
+        final short[] columns;
+        final short[] coarseColumns;
+
+        // the histograms of the current kernel
+        final int[] kernel = new int[256];
+        final int[] coarseKernel = new int[16];
+
+        // the x coordinate for which each 16-bin segment
+        // of the fine kernel histogram is up-to-date
+        final int[] segmentX = new int[16];
+
+        Histograms(int maxCols) {
+            columns = new short[maxCols * 256];
+            coarseColumns = new short[maxCols * 16];
+        }
+    }
+
+    private static void filterStripe(int[] src, int[] dest, int width, int height,
+                                     int radius, int rank, int startX, int endX,
+                                     int shift, boolean first, int base, Histograms hist) {
+        // the columns whose histograms are needed for this stripe
+        int startCol = Math.max(0, startX - radius);
+        int endCol = Math.min(width, endX + radius);
+        int numCols = endCol - startCol;
+
+        short[] columns = hist.columns;
+        short[] coarseColumns = hist.coarseColumns;
+        int[] kernel = hist.kernel;
+        int[] coarseKernel = hist.coarseKernel;
+        int[] segmentX = hist.segmentX;
+
+        Arrays.fill(columns, 0, numCols * 256, (short) 0);
+        Arrays.fill(coarseColumns, 0, numCols * 16, (short) 0);
+        for (int y = -radius; y <= radius; y++) {
+            updateColumns(src, width, clamp(y, height), shift, startCol, endCol, hist, 1);
+        }
+
+        for (int y = 0; y < height; y++) {
+            if (y > 0) { // slide the column histograms down by one row
+                int removedRow = clamp(y - radius - 1, height);
+                int addedRow = clamp(y + radius, height);
+                if (removedRow != addedRow) {
+                    updateColumns(src, width, removedRow, shift, startCol, endCol, hist, -1);
+                    updateColumns(src, width, addedRow, shift, startCol, endCol, hist, 1);
+                }
+            }
+
+            // the fine kernel bins are updated lazily, only when they are searched
+            Arrays.fill(coarseKernel, 0);
+            Arrays.fill(segmentX, NOT_UPDATED);
+            for (int x = startX - radius; x <= startX + radius; x++) {
+                int col = clamp(x, width) - startCol;
+                for (int c = 0; c < 16; c++) {
+                    coarseKernel[c] += coarseColumns[col * 16 + c];
+                }
+            }
+
+            int index = y * width + startX;
+            for (int x = startX; x < endX; x++) {
+                if (x > startX) { // slide the coarse kernel histogram right by one column
+                    int removedCol = clamp(x - radius - 1, width) - startCol;
+                    int addedCol = clamp(x + radius, width) - startCol;
+                    if (removedCol != addedCol) {
+                        int removed = removedCol * 16;
+                        int added = addedCol * 16;
+                        for (int c = 0; c < 16; c++) {
+                            coarseKernel[c] += coarseColumns[added + c] - coarseColumns[removed + c];
+                        }
+                    }
+                }
+
+                // find the coarse bin containing the given rank
+                int count = 0;
+                int c = 0;
+                while (count + coarseKernel[c] <= rank) {
+                    count += coarseKernel[c];
+                    c++;
+                }
+
+                updateSegment(c, x, radius, width, startCol, hist);
+
+                // find the value within the 16 fine bins
+                int value = c << 4;
+                while (count + kernel[value] <= rank) {
+                    count += kernel[value];
+                    value++;
+                }
+
+                if (first) {
+                    dest[index] = base | value << shift;
+                } else {
+                    dest[index] |= value << shift;
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Brings the given 16-bin segment of the fine kernel histogram up-to-date
+     * for the given x, either by sliding it through the skipped columns or by
+     * recalculating it, whichever is cheaper. In natural images the searched
+     * rank usually stays in the same segment, so most segments are rarely updated.
+     */
+    private static void updateSegment(int segment, int x, int radius, int width,
+                                      int startCol, Histograms hist) {
+        int[] segmentX = hist.segmentX;
+        int lastX = segmentX[segment];
+        if (lastX == x) {
+            return;
+        }
+        segmentX[segment] = x;
+
+        short[] columns = hist.columns;
+        int[] kernel = hist.kernel;
+        int first = segment << 4;
+        int windowSize = 2 * radius + 1;
+        if (lastX != NOT_UPDATED && x - lastX < windowSize) {
+            for (int sx = lastX + 1; sx <= x; sx++) {
+                int removedCol = clamp(sx - radius - 1, width) - startCol;
+                int addedCol = clamp(sx + radius, width) - startCol;
+                if (removedCol != addedCol) {
+                    int removed = removedCol * 256 + first;
+                    int added = addedCol * 256 + first;
+                    for (int v = 0; v < 16; v++) {
+                        kernel[first + v] += columns[added + v] - columns[removed + v];
+                    }
+                }
+            }
+        } else {
+            Arrays.fill(kernel, first, first + 16, 0);
+            for (int sx = x - radius; sx <= x + radius; sx++) {
+                int offset = (clamp(sx, width) - startCol) * 256 + first;
+                for (int v = 0; v < 16; v++) {
+                    kernel[first + v] += columns[offset + v];
+                }
+            }
+        }
+    }
+
+    // adds (sign = 1) or removes (sign = -1) the values of the given row
+    private static void updateColumns(int[] src, int width, int row, int shift,
+                                      int startCol, int endCol, Histograms hist, int sign) {
+        short[] columns = hist.columns;
+        short[] coarseColumns = hist.coarseColumns;
+        int offset = row * width;
+        for (int x = startCol; x < endCol; x++) {
+            int value = (src[offset + x] >>> shift) & 0xFF;
+            int col = x - startCol;
+            columns[col * 256 + value] += (short) sign;
+            coarseColumns[col * 16 + (value >> 4)] += (short) sign;
+        }
+    }
+
+    // repeats the edge pixels for coordinates outside the image
+    private static int clamp(int coord, int size) {
+        return Math.clamp(coord, 0, size - 1);
+    }
+}
@@ -42,7 +42,7 @@ public class Morphology extends ParametrizedFilter {
     private static final int OP_OPEN = 10;
     private static final int OP_CLOSE = 11;
 
-    private final RangeParam radius = new RangeParam(GUIText.RADIUS, 1, 1, 21);
+    private final RangeParam radius = new RangeParam(GUIText.RADIUS, 1, 1, 50);
     private final IntChoiceParam kernel = new IntChoiceParam("Kernel Shape", new Item[]{
         new Item("Diamond", MorphologyFilter.KERNEL_DIAMOND),
         new Item("Square", MorphologyFilter.KERNEL_SQUARE),
@@ -74,7 +74,7 @@ public class Morphology extends ParametrizedFilter {
             filter.setOp(selectedOp);
             dest = filter.filter(src, dest);
         } else {
-            var pt = new StatusBarProgressTracker(NAME, 2 * iterations);
+            var pt = new StatusBarProgressTracker(NAME, 2 * filter.getNumPasses());
             filter.setProgressTracker(pt);
 
             if (selectedOp == OP_OPEN) {
@@ -18,7 +18,12 @@
 package pixelitor.filters.impl;
 
 import com.jhlabs.image.WholeImageFilter;
+import pixelitor.ThreadPool;
 import pixelitor.filters.Morphology;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 /**
  * The implementation of the {@link Morphology} filter.
@@ -50,97 +55,217 @@ public class MorphologyFilter extends WholeImageFilter {
         this.iterations = iterations;
     }
 
+    /**
+     * Returns the number of passes over the image, which
+     * is also the number of progress work units.
+     */
+    public int getNumPasses() {
+        if (kernel == KERNEL_SQUARE) {
+            return 2;
+        }
+        // two diagonal passes and one or two cross-shaped passes
+        return iterations % 2 == 1 ? 3 : 4;
+    }
+
+    /**
+     * The result is the same as repeating a 3x3 operation "iterations" times,
+     * but the time doesn't depend on the number of iterations: the kernels
+     * are decomposed into line segments, which are processed with the van
+     * Herk/Gil-Werman algorithm using about three comparisons per pixel.
+     */
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels) {
-        int numPixels = inPixels.length;
-        short[] inA = new short[numPixels];
-        short[] inR = new short[numPixels];
-        short[] inG = new short[numPixels];
-        short[] inB = new short[numPixels];
+        if (iterations <= 0) {
+            return inPixels;
+        }
+        // the value that doesn't change the result of the
+        // operation, used for the pixels outside the image
+        int identity = op == OP_ERODE ? 0xFF_FF_FF_FF : 0;
+
+        pt = createProgressTracker(getNumPasses());
+        int[] outPixels;
+        if (kernel == KERNEL_SQUARE) {
+            // repeating the 3x3 square gives a square, which is separable
+            outPixels = inPixels;
+            processLines(outPixels, height, y -> y * width, 1, y -> width, iterations, identity);
+            pt.unitDone();
+            processLines(outPixels, width, x -> x, width, x -> height, iterations, identity);
+            pt.unitDone();
+        } else {
+            outPixels = filterDiamond(width, height, inPixels, identity);
+        }
+
+        if (op == OP_DILATE) {
+            // the dilation always made the pixels opaque
+            for (int i = 0; i < outPixels.length; i++) {
+                outPixels[i] |= 0xFF_00_00_00;
+            }
+        }
+        finishProgressTracker();
+        return outPixels;
+    }
+
+    /**
+     * Repeating the 3x3 diamond (cross) n times gives a diamond with radius n,
+     * which is the sum of two diagonal line segments with the radius (n - 1) / 2
+     * and one or two crosses, depending on the parity of n. These are applied
+     * to an image padded with the identity value, so that the intermediate
+     * results outside the image are also correct.
+     */
+    private int[] filterDiamond(int width, int height, int[] inPixels, int identity) {
+        int numCrosses = iterations % 2 == 1 ? 1 : 2;
+        int diagRadius = (iterations - numCrosses) / 2;
+
+        int pad = iterations;
+        int pw = width + 2 * pad;
+        int ph = height + 2 * pad;
+        int[] padded = new int[pw * ph];
+        Arrays.fill(padded, identity);
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(inPixels, y * width, padded, (y + pad) * pw + pad, width);
+        }
+
+        // the lines going down and to the right start in the top row
+        // (index < pw) and in the left column (from the second row)
+        int numDiagonals = pw + ph - 1;
+        processLines(padded, numDiagonals,
+            i -> i < pw ? i : (i - pw + 1) * pw,
+            pw + 1,
+            i -> i < pw ? Math.min(pw - i, ph) : Math.min(pw, ph - (i - pw + 1)),
+            diagRadius, identity);
+        pt.unitDone();
+
+        // the lines going down and to the left start in the top row
+        // and in the right column (from the second row)
+        processLines(padded, numDiagonals,
+            i -> i < pw ? i : (i - pw + 1) * pw + pw - 1,
+            pw - 1,
+            i -> i < pw ? Math.min(i + 1, ph) : Math.min(pw, ph - (i - pw + 1)),
+            diagRadius, identity);
+        pt.unitDone();
+
+        for (int i = 0; i < numCrosses; i++) {
+            padded = applyCross(padded, pw, ph);
+            pt.unitDone();
+        }
+
         int[] outPixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(padded, (y + pad) * pw + pad, outPixels, y * width, width);
+        }
+        return outPixels;
+    }
 
-        pt = createProgressTracker(iterations);
-        for (int it = 0; it < iterations; it++) {
-            if (it > 0) {
-                // use output pixels from previous iteration as input for this iteration
-                System.arraycopy(outPixels, 0, inPixels, 0, numPixels);
+    /**
+     * Applies the operation with a segment of the given radius
+     * in place along each of the given lines, in parallel.
+     */
+    private void processLines(int[] pixels, int numLines, IntUnaryOperator lineStart,
+                              int stride, IntUnaryOperator lineLength,
+                              int radius, int identity) {
+        if (radius == 0) {
+            return;
+        }
+        int maxLength = 0;
+        for (int i = 0; i < numLines; i++) {
+            maxLength = Math.max(maxLength, lineLength.applyAsInt(i));
+        }
+        int bufferLength = maxLength + 2 * radius;
+        boolean erode = op == OP_ERODE;
+
+        ThreadPool.processBands(numLines, maxLength, (startLine, endLine) -> {
+            int[] line = new int[bufferLength];
+            int[] prefix = new int[bufferLength];
+            int[] suffix = new int[bufferLength];
+            for (int i = startLine; i < endLine; i++) {
+                int start = lineStart.applyAsInt(i);
+                int length = lineLength.applyAsInt(i);
+
+                // the line, padded with the identity value at both ends
+                int paddedLength = length + 2 * radius;
+                Arrays.fill(line, 0, radius, identity);
+                for (int j = 0, index = start; j < length; j++, index += stride) {
+                    line[radius + j] = pixels[index];
+                }
+                Arrays.fill(line, radius + length, paddedLength, identity);
+
+                calcSegmentResults(line, paddedLength, radius, erode, prefix, suffix);
+
+                for (int j = 0, index = start; j < length; j++, index += stride) {
+                    // the segment around line[radius + j] spans one or two blocks
+                    pixels[index] = combine(suffix[j], prefix[j + 2 * radius], erode);
+                }
             }
+        }, ProgressTracker.NULL_TRACKER);
+    }
+
+    /**
+     * The van Herk/Gil-Werman algorithm: the line is divided into blocks with
+     * the size of the segment, and within each block the prefix and suffix
+     * results are calculated, so that any segment is covered by the suffix
+     * of one block and the prefix of the next one.
+     */
+    private static void calcSegmentResults(int[] line, int length, int radius, boolean erode,
+                                           int[] prefix, int[] suffix) {
+        int blockSize = 2 * radius + 1;
+        for (int blockStart = 0; blockStart < length; blockStart += blockSize) {
+            int blockEnd = Math.min(blockStart + blockSize, length);
 
-            // extract the color channels
-            for (int i = 0; i < numPixels; i++) {
-                int rgb = inPixels[i];
-                inA[i] = (short) ((rgb >> 24) & 0xFF);
-                inR[i] = (short) ((rgb >> 16) & 0xFF);
-                inG[i] = (short) ((rgb >> 8) & 0xFF);
-                inB[i] = (short) (rgb & 0xFF);
+            prefix[blockStart] = line[blockStart];
+            for (int i = blockStart + 1; i < blockEnd; i++) {
+                prefix[i] = combine(prefix[i - 1], line[i], erode);
             }
 
-            int index = 0; // the index of the processed pixel
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    // the final alpha, red, green, blue values
-                    short a = 0xFF;
-                    short r = 0xFF;
-                    short g = 0xFF;
-                    short b = 0xFF;
-
-                    if (op == OP_DILATE) {
-                        // initialize them with 0
-                        r = 0;
-                        g = 0;
-                        b = 0;
-                    }
-
-                    // examine neighboring pixels
-                    for (int dy = -1; dy <= 1; dy++) {
-                        int ny = y + dy;
-                        if (0 <= ny && ny < height) {
-                            int xOffset = ny * width;
-                            for (int dx = -1; dx <= 1; dx++) {
-                                if (kernel == KERNEL_DIAMOND) {
-                                    // ignore the corner neighbours
-                                    if (dx == dy && dx != 0) {
-                                        continue;
-                                    }
-                                    if (dx == -dy && dx != 0) {
-                                        continue;
-                                    }
-                                }
-
-                                int nx = x + dx;
-                                if (0 <= nx && nx < width) {
-                                    int neighborIndex = xOffset + nx;
-
-                                    if (op == OP_ERODE) {
-                                        a = min(a, inA[neighborIndex]);
-                                        r = min(r, inR[neighborIndex]);
-                                        g = min(g, inG[neighborIndex]);
-                                        b = min(b, inB[neighborIndex]);
-                                    } else {
-                                        a = max(a, inA[neighborIndex]);
-                                        r = max(r, inR[neighborIndex]);
-                                        g = max(g, inG[neighborIndex]);
-                                        b = max(b, inB[neighborIndex]);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    outPixels[index++] = a << 24 | r << 16 | g << 8 | b;
-                }
+            suffix[blockEnd - 1] = line[blockEnd - 1];
+            for (int i = blockEnd - 2; i >= blockStart; i--) {
+                suffix[i] = combine(suffix[i + 1], line[i], erode);
             }
-            pt.unitDone();
         }
-        finishProgressTracker();
-        return outPixels;
     }
 
-    private static short min(short a, short b) {
-        return (a <= b) ? a : b;
+    // applies the operation with the 3x3 cross, returns the result in a new array
+    private int[] applyCross(int[] pixels, int width, int height) {
+        boolean erode = op == OP_ERODE;
+        int[] result = new int[pixels.length];
+        ThreadPool.processRows(height, width, y -> {
+            int index = y * width;
+            for (int x = 0; x < width; x++, index++) {
+                int value = pixels[index];
+                if (x > 0) {
+                    value = combine(value, pixels[index - 1], erode);
+                }
+                if (x < width - 1) {
+                    value = combine(value, pixels[index + 1], erode);
+                }
+                if (y > 0) {
+                    value = combine(value, pixels[index - width], erode);
+                }
+                if (y < height - 1) {
+                    value = combine(value, pixels[index + width], erode);
+                }
+                result[index] = value;
+            }
+        }, ProgressTracker.NULL_TRACKER);
+        return result;
     }
 
-    private static short max(short a, short b) {
-        return (a >= b) ? a : b;
+    // the channel-wise minimum (erode) or maximum (dilate) of two packed ARGB values
+    private static int combine(int p1, int p2, boolean erode) {
+        int a1 = p1 >>> 24;
+        int r1 = (p1 >>> 16) & 0xFF;
+        int g1 = (p1 >>> 8) & 0xFF;
+        int b1 = p1 & 0xFF;
+
+        int a2 = p2 >>> 24;
+        int r2 = (p2 >>> 16) & 0xFF;
+        int g2 = (p2 >>> 8) & 0xFF;
+        int b2 = p2 & 0xFF;
+
+        if (erode) {
+            return Math.min(a1, a2) << 24 | Math.min(r1, r2) << 16
+                | Math.min(g1, g2) << 8 | Math.min(b1, b2);
+        }
+        return Math.max(a1, a2) << 24 | Math.max(r1, r2) << 16
+            | Math.max(g1, g2) << 8 | Math.max(b1, b2);
     }
 }
-
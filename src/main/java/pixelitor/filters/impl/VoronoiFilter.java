@@ -19,12 +19,16 @@ package pixelitor.filters.impl;
 
 import com.jhlabs.image.PointFilter;
 import pixelitor.AppMode;
+import pixelitor.filters.util.PreviewRegion;
+import pixelitor.utils.DistanceTransform;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Metric;
+import pixelitor.utils.NearestPointIndex;
 import pixelitor.utils.PoissonDiskSampling;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.util.List;
@@ -33,6 +37,7 @@ import java.util.stream.IntStream;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 
 /**
  * Voronoi Diagram filter implementation
@@ -46,6 +51,7 @@ public class VoronoiFilter extends PointFilter {
     private int aaRes2 = aaRes * aaRes;
 
     private PoissonDiskSampling sampling;
+    private NearestPointIndex pointIndex;
     private int[] colors;
 
     private SplittableRandom rand;
@@ -83,6 +89,7 @@ public class VoronoiFilter extends PointFilter {
         // generate a set of points using Poisson disk sampling
         sampling = new PoissonDiskSampling(width, height, distanceBetweenPoints, 10, true, rand);
         List<Point2D> points = sampling.getSamples();
+        pointIndex = new NearestPointIndex(points, width, height);
 
         // assign colors to the points
         int numPoints = points.size();
@@ -98,17 +105,42 @@ public class VoronoiFilter extends PointFilter {
             colors[i] = color;
         }
 
+        if (metric == Metric.EUCLIDEAN_SQUARED && src.getType() != TYPE_BYTE_GRAY) {
+            return fillCells(src, dst, points);
+        }
+
         // process each pixel
         return super.filter(src, dst);
     }
 
+    /**
+     * Calculates the whole cell map with a distance transform, in a time
+     * proportional to the number of pixels. The points are rounded to
+     * pixel positions, but the antialiasing uses their exact positions.
+     */
+    private BufferedImage fillCells(BufferedImage src, BufferedImage dst, List<Point2D> points) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (dst == null) {
+            dst = createCompatibleDestImage(src, null);
+        }
+
+        // while previewing, only the visible region might be needed
+        Rectangle region = PreviewRegion.get(width, height);
+        pt = createProgressTracker(region.height);
+        DistanceTransform.fillByNearestSite(points, colors,
+            ImageUtils.getPixels(dst), width, height, region, pt);
+        finishProgressTracker();
+
+        return dst;
+    }
+
     @Override
     public int processPixel(int x, int y, int rgb) {
         // find the closest sampled point to the current pixel
-        int closestIndex = sampling.findClosestPointIndex(x, y,
-            metric.asIntPrecisionDistance());
+        int closestIndex = pointIndex.findNearest(x, y, metric);
         if (closestIndex == -1) {
-            // there wasn't a point in the cell or in its neighbours
+            // there are no points at all
             if (AppMode.isDevelopment()) {
                 throw new IllegalStateException(String.format(
                     "x = %d, y = %d", x, y));
@@ -159,7 +191,7 @@ public class VoronoiFilter extends PointFilter {
             for (int j = 0; j < aaRes; j++) {
                 double sx = x + 1.0 / aaRes * j - 0.5;
                 // sx and sy are the supersampling coordinates
-                int closestIndex = sampling.findClosestPointIndex(sx, sy, metric.asDoublePrecisionDistance());
+                int closestIndex = pointIndex.findNearest(sx, sy, metric);
                 int color = colors[closestIndex];
                 r += (color >>> 16) & 0xFF;
                 g += (color >>> 8) & 0xFF;
@@ -83,6 +83,15 @@ public class JHBoxBlur extends ParametrizedFilter {
         return dest;
     }
 
+    @Override
+    public int getPreviewHalo() {
+        // each iteration spreads the pixels by the (rounded up) radius,
+        // the fractional part of the radius adds an extra pixel
+        int maxRadius = (int) Math.ceil(Math.max(
+            radius.getValueAsFloat(0), radius.getValueAsFloat(1)));
+        return (maxRadius + 1) * numIterations.getValue();
+    }
+
     @Override
     public boolean supportsGray() {
         return !hpSharpening.isChecked();
@@ -96,4 +96,9 @@ public class JHCheckerFilter extends ParametrizedFilter {
 
         return dest;
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return !bumpMap.isChecked();
+    }
 }
\ No newline at end of file
@@ -88,4 +88,9 @@ public class JHDither extends ParametrizedFilter {
 
         return filter.filter(src, dest);
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -113,4 +113,9 @@ public class JHFourColorGradient extends ParametrizedFilter {
     public FilterGUI createGUI(Filterable layer, boolean reset) {
         return new GridAdjustmentPanel(this, layer, true, false, reset);
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
\ No newline at end of file
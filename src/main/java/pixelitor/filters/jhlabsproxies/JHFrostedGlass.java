@@ -67,4 +67,9 @@ public class JHFrostedGlass extends ParametrizedFilter {
 
         return filter.filter(src, dest);
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -76,6 +76,12 @@ public class JHGaussianBlur extends ParametrizedFilter {
         return !hpSharpening.isChecked();
     }
 
+    @Override
+    public int getPreviewHalo() {
+        // the radius of the convolution kernel, plus a safety pixel
+        return (int) Math.ceil(radius.getValueAsFloat()) + 1;
+    }
+
     @Override
     protected boolean createDefaultDestImg() {
         return false;
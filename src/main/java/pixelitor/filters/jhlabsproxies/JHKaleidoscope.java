@@ -80,4 +80,9 @@ public class JHKaleidoscope extends ParametrizedFilter {
 
         return filter.filter(src, dest);
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
@@ -84,4 +84,9 @@ public class JHLensOverImage extends ParametrizedFilter {
 //        setAffectedAreaShapes(filter.getAffectedAreaShapes());
         return dest;
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
\ No newline at end of file
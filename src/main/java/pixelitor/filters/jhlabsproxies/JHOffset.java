@@ -58,4 +58,9 @@ public class JHOffset extends ParametrizedFilter {
 
         return filter.filter(src, dest);
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -77,4 +77,9 @@ public class JHPerspective extends ParametrizedFilter {
     public FilterGUI createGUI(Filterable layer, boolean reset) {
         return new GridAdjustmentPanel(this, layer, false, true, reset);
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
\ No newline at end of file
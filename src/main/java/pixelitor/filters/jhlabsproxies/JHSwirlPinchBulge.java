@@ -86,4 +86,9 @@ public class JHSwirlPinchBulge extends ParametrizedFilter {
 //        setAffectedAreaShapes(filter.getAffectedAreaShapes());
         return dest;
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -83,4 +83,9 @@ public class JHWaterRipple extends ParametrizedFilter {
 //        setAffectedAreaShapes(filter.getAffectedAreaShapes());
         return dest;
     }
+
+    @Override
+    public boolean supportsPreviewRegion() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.util;
+
+import java.awt.Rectangle;
+import java.util.function.Supplier;
+
+/**
+ * The part of a filter's destination image that has to be calculated
+ * while the filter is previewed. Image operations that calculate each
+ * destination pixel independently can check it in order to skip the
+ * pixels that are not visible in the preview.
+ * The region is bound to the thread that runs the filter.
+ */
+public final class PreviewRegion {
+    private static final ThreadLocal<Rectangle> current = new ThreadLocal<>();
+
+    private PreviewRegion() {
+    }
+
+    /**
+     * Runs the given task on the current thread while
+     * the preview region is restricted to the given rectangle.
+     */
+    public static <T> T callWithin(Rectangle region, Supplier<T> task) {
+        Rectangle prevRegion = current.get();
+        current.set(region);
+        try {
+            return task.get();
+        } finally {
+            if (prevRegion == null) {
+                current.remove();
+            } else {
+                current.set(prevRegion);
+            }
+        }
+    }
+
+    /**
+     * Returns the part of an image with the given size that has to be
+     * calculated, which is the whole image outside of restricted previews.
+     */
+    public static Rectangle get(int width, int height) {
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        Rectangle region = current.get();
+        if (region == null) {
+            return bounds;
+        }
+        return region.intersection(bounds);
+    }
+}
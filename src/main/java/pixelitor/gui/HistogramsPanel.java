@@ -19,7 +19,6 @@ package pixelitor.gui;
 
 import pixelitor.Composition;
 import pixelitor.Views;
-import pixelitor.utils.ImageUtils;
 import pixelitor.utils.ViewActivationListener;
 
 import javax.swing.*;
@@ -59,10 +58,11 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
     private final HistogramPainter bluePainter;
     private final HistogramPainter luminancePainter;
 
-    private int[] reds;
-    private int[] greens;
-    private int[] blues;
-    private int[] luminances;
+    private final ImageHistograms histograms = new ImageHistograms();
+
+    // the composition whose current state is counted in the
+    // histograms, or null if they aren't up-to-date
+    private Composition countedComp;
 
     private int[] logReds;
     private int[] logGreens;
@@ -160,6 +160,7 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
 
     @Override
     public void allViewsClosed() {
+        countedComp = null;
         redPainter.clearData();
         greenPainter.clearData();
         bluePainter.clearData();
@@ -171,46 +172,32 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
 
     @Override
     public void viewActivated(View oldView, View newView) {
-        updateHistograms(newView.getComp());
+        updateHistograms(newView.getComp(), null);
     }
 
     public static void updateFromActiveComp() {
-        Views.onActiveComp(INSTANCE::updateHistograms);
+        Views.onActiveComp(HistogramsPanel::updateFrom);
     }
 
     public static void updateFrom(Composition comp) {
-        INSTANCE.updateHistograms(comp);
+        INSTANCE.updateHistograms(comp, null);
     }
 
-    // extracts the essential information from the image
-    private void calcBaseArrays(BufferedImage image) {
-        if (reds != null) {
-            Arrays.fill(reds, 0);
-            Arrays.fill(greens, 0);
-            Arrays.fill(blues, 0);
-            Arrays.fill(luminances, 0);
-        } else {
-            reds = new int[NUM_BINS];
-            greens = new int[NUM_BINS];
-            blues = new int[NUM_BINS];
-            luminances = new int[NUM_BINS];
-        }
-
-        int[] pixels = ImageUtils.getPixels(image);
-        for (int rgb : pixels) {
-            int a = (rgb >>> 24) & 0xFF;
-            if (a > 0) {
-                int r = (rgb >>> 16) & 0xFF;
-                int g = (rgb >>> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                reds[r]++;
-                greens[g]++;
-                blues[b]++;
+    /**
+     * Updates the histograms after only the given
+     * region (in image space) of the composition has changed.
+     */
+    public static void updateFrom(Composition comp, Rectangle dirtyRegion) {
+        INSTANCE.updateHistograms(comp, dirtyRegion);
+    }
 
-                int lum = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                luminances[lum]++;
-            }
+    /**
+     * Signals that the given composition has changed, but the histograms
+     * shouldn't be updated now. The next update will recount everything.
+     */
+    public static void markOutdated(Composition comp) {
+        if (INSTANCE.countedComp == comp) {
+            INSTANCE.countedComp = null;
         }
     }
 
@@ -225,9 +212,10 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
             logBlues = new int[NUM_BINS];
         }
 
-        calcLog(reds, logReds);
-        calcLog(greens, logGreens);
-        calcLog(blues, logBlues);
+        int weight = histograms.getSampleWeight();
+        calcLog(histograms.getReds(), logReds, weight);
+        calcLog(histograms.getGreens(), logGreens, weight);
+        calcLog(histograms.getBlues(), logBlues, weight);
     }
 
     private void calcLumLogs() {
@@ -237,12 +225,16 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
             logLuminances = new int[NUM_BINS];
         }
 
-        calcLog(luminances, logLuminances);
+        calcLog(histograms.getLuminances(), logLuminances, histograms.getSampleWeight());
     }
 
     // called when the image is first added or when the image is changed
-    private void changeImage(BufferedImage image) {
-        calcBaseArrays(image);
+    private void changeImage(BufferedImage image, boolean incremental, Rectangle dirtyRegion) {
+        if (incremental) {
+            histograms.update(image, dirtyRegion);
+        } else {
+            histograms.calc(image);
+        }
         calcLazyData();
 
         updatePainterData();
@@ -264,7 +256,7 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
                 calcLumLogs();
                 luminancePainter.updateData(logLuminances);
             } else {
-                luminancePainter.updateData(luminances);
+                luminancePainter.updateData(histograms.getLuminances());
             }
         } else { // RGB mode
             if (isLogarithmic) {
@@ -273,29 +265,34 @@ public class HistogramsPanel extends JPanel implements ViewActivationListener {
                 greenPainter.updateData(logGreens);
                 bluePainter.updateData(logBlues);
             } else {
-                redPainter.updateData(reds);
-                greenPainter.updateData(greens);
-                bluePainter.updateData(blues);
+                redPainter.updateData(histograms.getReds());
+                greenPainter.updateData(histograms.getGreens());
+                bluePainter.updateData(histograms.getBlues());
             }
         }
     }
 
-    private void updateHistograms(Composition comp) {
+    private void updateHistograms(Composition comp, Rectangle dirtyRegion) {
         Objects.requireNonNull(comp);
         if (!isShown()) {
+            markOutdated(comp);
             return;
         }
 
-        changeImage(comp.getCompositeImage());
+        // only the changes since the last counting can be applied
+        boolean incremental = dirtyRegion != null && countedComp == comp;
+        changeImage(comp.getCompositeImage(), incremental, dirtyRegion);
+        countedComp = comp;
         repaint();
     }
 
-    private static void calcLog(int[] input, int[] output) {
+    private static void calcLog(int[] input, int[] output, int sampleWeight) {
         for (int i = 0; i < NUM_BINS; i++) {
             // Add one before taking the logarithm to avoid calculating log(0)
             // Note that log(1) = 0, which is just perfect.
             // Also multiply by a large number to mitigate rounding errors.
-            output[i] = (int) (1000.0 * Math.log(input[i] + 1));
+            // The sampled counts are scaled to estimate the real counts.
+            output[i] = (int) (1000.0 * Math.log((double) input[i] * sampleWeight + 1));
         }
     }
 
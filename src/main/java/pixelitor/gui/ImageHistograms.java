@@ -0,0 +1,206 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static pixelitor.gui.HistogramsPanel.NUM_BINS;
+
+/**
+ * The RGB and luminance histograms of an image with packed int pixels.
+ * They are calculated from partial histograms of horizontal bands in
+ * parallel, huge images are only sampled on a regular grid, and after
+ * a change of a region, the histograms are updated by subtracting
+ * the old pixels of the region and adding the new ones.
+ */
+final class ImageHistograms {
+    // images with more pixels are sampled
+    static final int MAX_SAMPLES = 1 << 21;
+
+    private final int[] reds = new int[NUM_BINS];
+    private final int[] greens = new int[NUM_BINS];
+    private final int[] blues = new int[NUM_BINS];
+    private final int[] luminances = new int[NUM_BINS];
+
+    private int width;
+    private int height;
+
+    // only every step-th pixel of every step-th row is sampled
+    private int step;
+
+    // the sampled pixels from the time when they were last counted,
+    // so that they can be subtracted after a change
+    private int[] samples;
+    private int samplesWidth;
+    private int samplesHeight;
+
+    /**
+     * Recalculates the histograms from the whole image.
+     */
+    void calc(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        step = calcStep(width, height);
+        samplesWidth = (width + step - 1) / step;
+        samplesHeight = (height + step - 1) / step;
+        int numSamples = samplesWidth * samplesHeight;
+        if (samples == null || samples.length != numSamples) {
+            samples = new int[numSamples];
+        }
+
+        Arrays.fill(reds, 0);
+        Arrays.fill(greens, 0);
+        Arrays.fill(blues, 0);
+        Arrays.fill(luminances, 0);
+
+        int[] pixels = ImageUtils.getPixels(image);
+        ThreadPool.processBands(samplesHeight, samplesWidth, (startRow, endRow) -> {
+            int[] bandReds = new int[NUM_BINS];
+            int[] bandGreens = new int[NUM_BINS];
+            int[] bandBlues = new int[NUM_BINS];
+            int[] bandLuminances = new int[NUM_BINS];
+            for (int sy = startRow; sy < endRow; sy++) {
+                int rowStart = sy * step * width;
+                int sampleIndex = sy * samplesWidth;
+                for (int x = 0; x < width; x += step) {
+                    int rgb = pixels[rowStart + x];
+                    samples[sampleIndex++] = rgb;
+                    if ((rgb >>> 24) != 0) {
+                        int r = (rgb >>> 16) & 0xFF;
+                        int g = (rgb >>> 8) & 0xFF;
+                        int b = rgb & 0xFF;
+                        bandReds[r]++;
+                        bandGreens[g]++;
+                        bandBlues[b]++;
+                        bandLuminances[luminance(r, g, b)]++;
+                    }
+                }
+            }
+            synchronized (this) {
+                for (int i = 0; i < NUM_BINS; i++) {
+                    reds[i] += bandReds[i];
+                    greens[i] += bandGreens[i];
+                    blues[i] += bandBlues[i];
+                    luminances[i] += bandLuminances[i];
+                }
+            }
+        }, ProgressTracker.NULL_TRACKER);
+    }
+
+    /**
+     * Updates the histograms after only the given region of the
+     * image has changed since the last calculation or update.
+     */
+    void update(BufferedImage image, Rectangle region) {
+        if (samples == null || image.getWidth() != width || image.getHeight() != height) {
+            calc(image);
+            return;
+        }
+
+        Rectangle changed = region.intersection(new Rectangle(0, 0, width, height));
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        // the range of the affected samples
+        int sx1 = (changed.x + step - 1) / step;
+        int sy1 = (changed.y + step - 1) / step;
+        int sx2 = Math.min((changed.x + changed.width + step - 1) / step, samplesWidth);
+        int sy2 = Math.min((changed.y + changed.height + step - 1) / step, samplesHeight);
+        long numChanged = (long) (sx2 - sx1) * (sy2 - sy1);
+        if (numChanged <= 0) {
+            return;
+        }
+        if (numChanged > samples.length / 4) {
+            // the parallel recalculation is faster
+            calc(image);
+            return;
+        }
+
+        int[] pixels = ImageUtils.getPixels(image);
+        for (int sy = sy1; sy < sy2; sy++) {
+            int rowStart = sy * step * width;
+            for (int sx = sx1; sx < sx2; sx++) {
+                int sampleIndex = sy * samplesWidth + sx;
+                int oldRGB = samples[sampleIndex];
+                int newRGB = pixels[rowStart + sx * step];
+                if (oldRGB != newRGB) {
+                    count(oldRGB, -1);
+                    count(newRGB, 1);
+                    samples[sampleIndex] = newRGB;
+                }
+            }
+        }
+    }
+
+    private void count(int rgb, int delta) {
+        if ((rgb >>> 24) == 0) {
+            return;
+        }
+        int r = (rgb >>> 16) & 0xFF;
+        int g = (rgb >>> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        reds[r] += delta;
+        greens[g] += delta;
+        blues[b] += delta;
+        luminances[luminance(r, g, b)] += delta;
+    }
+
+    // the Rec. 601 luma weights in integer arithmetic
+    private static int luminance(int r, int g, int b) {
+        return (299 * r + 587 * g + 114 * b) / 1000;
+    }
+
+    static int calcStep(int width, int height) {
+        long numPixels = (long) width * height;
+        int step = 1;
+        while (numPixels / ((long) step * step) > MAX_SAMPLES) {
+            step++;
+        }
+        return step;
+    }
+
+    /**
+     * Returns the number of image pixels represented by one counted pixel.
+     */
+    int getSampleWeight() {
+        return step * step;
+    }
+
+    int[] getReds() {
+        return reds;
+    }
+
+    int[] getGreens() {
+        return greens;
+    }
+
+    int[] getBlues() {
+        return blues;
+    }
+
+    int[] getLuminances() {
+        return luminances;
+    }
+}
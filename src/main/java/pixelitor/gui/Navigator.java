@@ -29,17 +29,25 @@ import pixelitor.menus.view.ZoomMenu;
 import pixelitor.tools.util.PRectangle;
 import pixelitor.utils.Cursors;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
 import pixelitor.utils.Shapes;
 import pixelitor.utils.ViewActivationListener;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
 
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
 import static pixelitor.menus.view.ZoomLevel.ACTUAL_SIZE;
 import static pixelitor.menus.view.ZoomLevel.EIGHTH_SIZE;
 import static pixelitor.menus.view.ZoomLevel.HALF_SIZE;
 import static pixelitor.menus.view.ZoomLevel.QUARTER_SIZE;
+import static pixelitor.utils.Threads.onEDT;
+import static pixelitor.utils.Threads.onPool;
 
 /**
  * The navigator component that allows the user to pan a zoomed-in image
@@ -76,6 +84,22 @@ public class Navigator extends JComponent
     private int thumbWidth;
     private int thumbHeight;
 
+    // The downscaled copy of the composite image, so that repaints
+    // (for example while dragging the view box) don't depend on the
+    // image size. It's null if it must be recreated. The refreshes
+    // replace it with an updated copy instead of modifying it.
+    private BufferedImage thumb;
+
+    // the changed region of the composite image (in image space)
+    // that is not yet reflected in the thumb, or null if there is none
+    private Rectangle thumbDirtyRegion;
+
+    private boolean thumbRefreshRunning = false;
+
+    // incremented when the thumb is discarded, so that
+    // the result of an obsolete refresh can be ignored
+    private int thumbGeneration = 0;
+
     private final AdjustmentListener scrollSyncListener;
     private static JDialog dialog;
     private JPopupMenu contextMenu;
@@ -221,6 +245,7 @@ public class Navigator extends JComponent
 
         preferredWidth = thumbWidth;
         preferredHeight = thumbHeight;
+        discardThumb();
 
         syncViewBoxPosition();
 
@@ -246,6 +271,7 @@ public class Navigator extends JComponent
         scrollPane.getVerticalScrollBar().removeAdjustmentListener(scrollSyncListener);
 
         view = null;
+        discardThumb();
     }
 
     // updates the view box rectangle position based on the view
@@ -297,6 +323,120 @@ public class Navigator extends JComponent
         view.zoomToRegion(PRectangle.fromCo(getScaledViewRect(), view));
     }
 
+    /**
+     * Signals that the given region (in image space) of the composite
+     * image has changed. If the region is null, then everything changed,
+     * but the old thumb is still shown until the refreshed one is ready.
+     * The region is recorded even if there is no thumb yet, because
+     * a running refresh might have already copied the old pixels.
+     */
+    void compositeChanged(Rectangle region) {
+        if (region == null) {
+            Canvas canvas = view.getCanvas();
+            region = new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight());
+        }
+        if (thumbDirtyRegion == null) {
+            thumbDirtyRegion = new Rectangle(region);
+        } else {
+            thumbDirtyRegion.add(region);
+        }
+    }
+
+    private void discardThumb() {
+        thumb = null;
+        thumbDirtyRegion = null;
+        thumbGeneration++;
+    }
+
+    /**
+     * Starts updating the thumb in the background. Only the mipmap level
+     * of the composite that matches the thumb size is used, and only
+     * the pixels of the dirty region are copied on the EDT.
+     */
+    private void startThumbRefresh() {
+        if (thumbRefreshRunning || thumbWidth <= 0 || thumbHeight <= 0) {
+            return;
+        }
+
+        Canvas canvas = view.getCanvas();
+        BufferedImage source = view.getComp().getCompositeImageForScale(thumbnailScale);
+        // the number of thumb pixels per source pixel
+        double scaleX = thumbWidth / (double) source.getWidth();
+        double scaleY = thumbHeight / (double) source.getHeight();
+
+        Rectangle thumbBounds = new Rectangle(0, 0, thumbWidth, thumbHeight);
+        BufferedImage base = thumb;
+        Rectangle thumbRegion;
+        if (base == null) {
+            thumbRegion = thumbBounds;
+        } else {
+            double imToThumbX = thumbWidth / (double) canvas.getWidth();
+            double imToThumbY = thumbHeight / (double) canvas.getHeight();
+            thumbRegion = scaleOut(thumbDirtyRegion, imToThumbX, imToThumbY)
+                .intersection(thumbBounds);
+        }
+        thumbDirtyRegion = null;
+        if (thumbRegion.isEmpty()) {
+            return;
+        }
+
+        // the margin is needed for the bilinear interpolation
+        Rectangle sourceRegion = scaleOut(thumbRegion, 1 / scaleX, 1 / scaleY)
+            .intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+        if (sourceRegion.isEmpty()) {
+            return;
+        }
+        // the source is updated in place on the EDT, so it can't be read later
+        BufferedImage sourceCopy = ImageUtils.copySubImage(source, sourceRegion);
+
+        thumbRefreshRunning = true;
+        int generation = thumbGeneration;
+        int width = thumbWidth;
+        int height = thumbHeight;
+        CompletableFuture.supplyAsync(() -> renderThumb(base, width, height,
+                sourceCopy, sourceRegion, thumbRegion, scaleX, scaleY), onPool)
+            .thenAcceptAsync(newThumb -> thumbRefreshFinished(newThumb, generation), onEDT)
+            .exceptionally(Messages::showExceptionOnEDT);
+    }
+
+    // scales the given rectangle, rounding outwards and adding a one-pixel margin
+    private static Rectangle scaleOut(Rectangle r, double scaleX, double scaleY) {
+        int x1 = (int) Math.floor(r.x * scaleX) - 1;
+        int y1 = (int) Math.floor(r.y * scaleY) - 1;
+        int x2 = (int) Math.ceil((r.x + r.width) * scaleX) + 1;
+        int y2 = (int) Math.ceil((r.y + r.height) * scaleY) + 1;
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    // runs outside the EDT
+    private static BufferedImage renderThumb(BufferedImage base, int width, int height,
+                                             BufferedImage sourceCopy, Rectangle sourceRegion,
+                                             Rectangle thumbRegion, double scaleX, double scaleY) {
+        BufferedImage newThumb = base == null
+            ? new BufferedImage(width, height, TYPE_INT_ARGB_PRE)
+            : ImageUtils.copyImage(base);
+
+        Graphics2D g = newThumb.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.clip(thumbRegion);
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.translate(sourceRegion.x * scaleX, sourceRegion.y * scaleY);
+        g.scale(scaleX, scaleY);
+        g.drawImage(sourceCopy, 0, 0, null);
+        g.dispose();
+
+        return newThumb;
+    }
+
+    private void thumbRefreshFinished(BufferedImage newThumb, int generation) {
+        thumbRefreshRunning = false;
+        if (generation == thumbGeneration && view != null) {
+            thumb = newThumb;
+        }
+        // also starts a new refresh if there were changes in the meantime
+        repaint();
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         if (view == null) {
@@ -304,15 +444,16 @@ public class Navigator extends JComponent
         }
 
         Graphics2D g2 = (Graphics2D) g;
-        var origTransform = g2.getTransform();
 
-        // draw the thumbnail scaled down
         checkerBoardPainter.paint(g2, null, thumbWidth, thumbHeight);
-        g2.scale(thumbnailScale, thumbnailScale);
-        g2.drawImage(view.getComp().getCompositeImage(), 0, 0, null);
+        if (thumb == null || thumbDirtyRegion != null) {
+            startThumbRefresh();
+        }
+        if (thumb != null) {
+            g2.drawImage(thumb, 0, 0, null);
+        }
 
-        // draw the viewport indicator box with the original transform
-        g2.setTransform(origTransform);
+        // draw the viewport indicator box
         g2.setStroke(VIEW_BOX_STROKE);
         g2.setColor(viewBoxColor);
         g2.draw(viewBoxRect);
@@ -31,6 +31,7 @@ import pixelitor.guides.GuideStrokeType;
 import pixelitor.guides.GuideStyle;
 import pixelitor.history.History;
 import pixelitor.io.FileChoosers;
+import pixelitor.io.PXCCodec;
 import pixelitor.layers.LayerGUILayout;
 import pixelitor.utils.Error;
 import pixelitor.utils.*;
@@ -67,6 +68,7 @@ public class PreferencesPanel extends JTabbedPane {
     private JTextField magickDirTF;
     private JTextField gmicDirTF;
     private JCheckBox nativeChoosersCB;
+    private JComboBox<PXCCodec> pxcCodecCB;
     private JCheckBox experimentalCB;
 
     // persists the last selected tab between dialog instances
@@ -317,6 +319,7 @@ public class PreferencesPanel extends JTabbedPane {
 
         addNativeChoosersCB(gbh);
         addUndoLevelsChooser(gbh);
+        addPXCCodecChooser(gbh);
         addMagickDirField(gbh);
         addGmicDirField(gbh);
         addExperimentalCB(gbh);
@@ -352,6 +355,15 @@ public class PreferencesPanel extends JTabbedPane {
         gbh.addLabelAndControl(GMIC_FOLDER_LABEL + ": ", gmicDirTF);
     }
 
+    private void addPXCCodecChooser(GridBagHelper gbh) {
+        pxcCodecCB = new JComboBox<>(PXCCodec.values());
+        pxcCodecCB.setSelectedItem(PXCCodec.getActive());
+        pxcCodecCB.setName("pxcCodecCB");
+        pxcCodecCB.setToolTipText("How the layer pixels are stored in PXC files");
+        // no action listener, set only when OK is pressed
+        gbh.addLabelAndControlNoStretch("PXC Layer Encoding:", pxcCodecCB);
+    }
+
     private void addExperimentalCB(GridBagHelper gbh) {
         experimentalCB = new JCheckBox("", Features.enableExperimental);
         gbh.addLabelAndControl("Enable Experimental Features:", experimentalCB);
@@ -390,6 +402,7 @@ public class PreferencesPanel extends JTabbedPane {
         PanMethod.changeTo((PanMethod) panMethodCB.getSelectedItem());
         View.snappingSettingChanged(snapCB.isSelected());
         FileChoosers.setUseNativeDialogs(nativeChoosersCB.isSelected());
+        PXCCodec.changeTo((PXCCodec) pxcCodecCB.getSelectedItem());
         Features.enableExperimental(experimentalCB.isSelected());
 
         return true;
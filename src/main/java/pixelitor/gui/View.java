@@ -411,7 +411,7 @@ public class View extends JComponent implements MouseListener, MouseMotionListen
             assert mask != null : "no mask in " + maskViewMode;
             mask.paint(g2, true);
         } else {
-            g2.drawImage(comp.getCompositeImage(), 0, 0, null);
+            comp.paintCompositeImage(g2, zoomScale);
 
             if (maskViewMode.showRubylith()) {
                 LayerMask mask = comp.getActiveLayer().getMask();
@@ -945,11 +945,25 @@ public class View extends JComponent implements MouseListener, MouseMotionListen
                 }
             });
         } else {
+            navigator.compositeChanged(null);
             // call now, repainting calls will be coalesced anyway
             navigator.repaint();
         }
     }
 
+    /**
+     * Repaints the navigator after only the given region
+     * (in image space) of the composite image has changed.
+     */
+    public void repaintNavigator(Rectangle dirtyRegion) {
+        assert calledOnEDT() : threadInfo();
+
+        if (navigator != null) {
+            navigator.compositeChanged(dirtyRegion);
+            navigator.repaint();
+        }
+    }
+
     /**
      * Returns the bounds of the visible part of the canvas
      * in screen coordinates
@@ -34,6 +34,7 @@ import static java.awt.BorderLayout.SOUTH;
 public class HistoryPanel extends JPanel {
     private final JButton undoButton;
     private final JButton redoButton;
+    private final JLabel usageLabel;
     private final PixelitorUndoManager pum;
 
     public HistoryPanel(PixelitorUndoManager pum) {
@@ -52,6 +53,9 @@ public class HistoryPanel extends JPanel {
         buttonsPanel.add(undoButton);
         buttonsPanel.add(redoButton);
 
+        usageLabel = new JLabel();
+        usageLabel.setHorizontalAlignment(SwingConstants.CENTER);
+
         History.addUndoableEditListener(e -> updateHistoryButtons());
         updateHistoryButtons();
 
@@ -64,7 +68,10 @@ public class HistoryPanel extends JPanel {
             buttonsPanel.add(debugButton);
         }
 
-        add(buttonsPanel, SOUTH);
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(buttonsPanel, CENTER);
+        southPanel.add(usageLabel, SOUTH);
+        add(southPanel, SOUTH);
     }
 
     private static JButton createButton(Icon icon, String name,
@@ -87,5 +94,7 @@ public class HistoryPanel extends JPanel {
 
         undoButton.setToolTipText(pum.getUndoPresentationName());
         redoButton.setToolTipText(pum.getRedoPresentationName());
+
+        usageLabel.setText("Backups: " + PixelBackup.getUsageSummary());
     }
 }
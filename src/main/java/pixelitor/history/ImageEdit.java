@@ -20,11 +20,12 @@ package pixelitor.history;
 import pixelitor.Composition;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.debug.DebugNode;
+import pixelitor.utils.debug.DebugNodes;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.lang.ref.SoftReference;
 
 /**
  * A PixelitorEdit that represents the changes made to an image.
@@ -33,7 +34,10 @@ public class ImageEdit extends FadeableEdit {
     // selections are ignored for example when the image is enlarged by the move tool
     private final boolean ignoreSelection;
 
-    private SoftReference<BufferedImage> imgRef;
+    // exactly one of them is non-null
+    private PixelBackup backup;
+    private TileDelta delta;
+
     protected Drawable dr;
 
     public ImageEdit(String name, Composition comp, Drawable dr,
@@ -47,18 +51,43 @@ public class ImageEdit extends FadeableEdit {
 
 //        Utils.debugImage(backupImage, "Backup for " + name);
 
-        // the backup image is stored in an SoftReference
-        imgRef = new SoftReference<>(backupImage);
+        // the backup can be moved to the disk, but it's never lost
+        backup = PixelBackup.of(backupImage);
         this.dr = dr;
 
         checkBackupDifferentFromActive();
     }
 
+    private ImageEdit(String name, Composition comp, Drawable dr,
+                      TileDelta delta, boolean ignoreSelection) {
+        super(name, comp, dr);
+        this.ignoreSelection = ignoreSelection;
+        this.delta = delta;
+        this.dr = dr;
+    }
+
+    /**
+     * Creates an edit for a change that was already applied to the drawable.
+     * If the change replaced the whole image with one of the same size,
+     * then only the tiles that differ from the backup image are stored.
+     */
+    public static ImageEdit createAfterChange(String name, Composition comp, Drawable dr,
+                                              BufferedImage backupImage,
+                                              boolean ignoreSelection) {
+        if (ignoreSelection || !comp.hasSelection()) {
+            TileDelta delta = TileDelta.create(backupImage, dr.getImage());
+            if (delta != null) {
+                return new ImageEdit(name, comp, dr, delta, ignoreSelection);
+            }
+        }
+        return new ImageEdit(name, comp, dr, backupImage, ignoreSelection);
+    }
+
     // the backup should never be identical to the active image
     // otherwise the backup might be also edited
     private void checkBackupDifferentFromActive() {
         BufferedImage layerImage = dr.getImage();
-        if (layerImage == imgRef.get()) {
+        if (backup.isInMemory() && layerImage == backup.getImage()) {
             throw new IllegalStateException("backup image is identical to the active one");
         }
     }
@@ -97,10 +126,16 @@ public class ImageEdit extends FadeableEdit {
      * Returns true if successful
      */
     private boolean swapImages() {
-        BufferedImage backupImage = imgRef.get();
+        if (delta != null) {
+            return swapTiles();
+        }
+
+        BufferedImage backupImage = backup.getImage();
         if (backupImage == null) {
             return false;
         }
+        // the layer takes ownership of the backup image
+        backup.release();
 
         BufferedImage tmp;
         if (ignoreSelection) {
@@ -111,7 +146,7 @@ public class ImageEdit extends FadeableEdit {
         dr.changeImageForUndoRedo(backupImage, ignoreSelection);
 
         // create new backup image from tmp
-        imgRef = new SoftReference<>(tmp);
+        backup = PixelBackup.of(tmp);
 
         if (!embedded) {
             comp.update();
@@ -122,33 +157,58 @@ public class ImageEdit extends FadeableEdit {
         return true;
     }
 
+    // changes only the tiles of the current image that were changed by the edit
+    private boolean swapTiles() {
+        if (!delta.swap(dr.getImage())) {
+            return false;
+        }
+
+        if (!embedded) {
+            Rectangle canvasRect = delta.getBounds();
+            canvasRect.translate(dr.getTx(), dr.getTy());
+            dr.updateRegion(canvasRect);
+            dr.updateIconImage();
+        }
+        return true;
+    }
+
     @Override
     public void die() {
         super.die();
 
-        BufferedImage backupImage = imgRef.get();
-        if (backupImage != null) {
-            backupImage.flush();
+        if (delta != null) {
+            delta.release();
+        } else {
+            backup.release();
         }
     }
 
     @Override
     public BufferedImage getBackupImage() {
-        if (imgRef != null) {
-            // this still could be null
-            return imgRef.get();
+        if (delta != null) {
+            // the current image is the "after" state, because
+            // only the last edit of a drawable can be faded
+            return delta.applyToCopy(dr.getImage());
         }
-        return null;
+        // null if the edit died
+        return backup.getImage();
     }
 
     @Override
     public DebugNode createDebugNode(String key) {
         DebugNode node = super.createDebugNode(key);
 
-        BufferedImage img = imgRef.get();
-        if (img != null) {
-            node.addInt("backup image width", img.getWidth());
-            node.addInt("backup image height", img.getHeight());
+        if (delta != null) {
+            node.addInt("changed tiles", delta.getNumTiles());
+            node.add(DebugNodes.createRectangleNode("changed bounds", delta.getBounds()));
+            node.addBoolean("backup in memory", delta.isInMemory());
+        } else {
+            BufferedImage img = backup.getImage();
+            if (img != null) {
+                node.addInt("backup image width", img.getWidth());
+                node.addInt("backup image height", img.getHeight());
+            }
+            node.addBoolean("backup in memory", backup.isInMemory());
         }
 
         node.addBoolean("ignoreSelection", ignoreSelection);
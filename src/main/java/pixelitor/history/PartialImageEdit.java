@@ -31,7 +31,6 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
-import java.lang.ref.SoftReference;
 
 import static java.lang.String.format;
 
@@ -41,7 +40,7 @@ import static java.lang.String.format;
  */
 public class PartialImageEdit extends FadeableEdit {
     private final Rectangle saveRect;
-    private SoftReference<Raster> backupRasterRef;
+    private PixelBackup backup;
 
     private final Drawable dr;
 
@@ -52,8 +51,7 @@ public class PartialImageEdit extends FadeableEdit {
         this.dr = dr;
         this.saveRect = saveRect;
 
-        Raster backupRaster = image.getData(this.saveRect);
-        backupRasterRef = new SoftReference<>(backupRaster);
+        backup = PixelBackup.of(image.getData(this.saveRect));
     }
 
     /**
@@ -115,7 +113,7 @@ public class PartialImageEdit extends FadeableEdit {
      * Returns true if successful
      */
     private boolean swapRasters() {
-        Raster backupRaster = backupRasterRef.get();
+        Raster backupRaster = backup.getRaster();
         if (backupRaster == null) {
             return false;
         }
@@ -136,9 +134,12 @@ public class PartialImageEdit extends FadeableEdit {
             throw e;
         }
 
-        backupRasterRef = new SoftReference<>(tmpRaster);
+        backup.release();
+        backup = PixelBackup.of(tmpRaster);
 
-        dr.update();
+        Rectangle canvasRect = new Rectangle(saveRect);
+        canvasRect.translate(dr.getTx(), dr.getTy());
+        dr.updateRegion(canvasRect);
         dr.updateIconImage();
 
         return true;
@@ -166,13 +167,17 @@ public class PartialImageEdit extends FadeableEdit {
         System.out.println("PartialImageEdit::debugRaster debugging raster: " + name + ": " + msg);
     }
 
+    @Override
+    public void die() {
+        super.die();
+
+        backup.release();
+    }
+
     @Override
     public BufferedImage getBackupImage() {
-        if (backupRasterRef == null) { // died
-            return null;
-        }
-        Raster backupRaster = backupRasterRef.get();
-        if (backupRaster == null) { // soft reference lost
+        Raster backupRaster = backup.getRaster();
+        if (backupRaster == null) { // died
             return null;
         }
 
@@ -198,7 +203,8 @@ public class PartialImageEdit extends FadeableEdit {
         DebugNode node = super.createDebugNode(key);
 
         node.addNullableDebuggable("backup raster",
-            backupRasterRef.get(), DebugNodes::createRasterNode);
+            backup.getRaster(), DebugNodes::createRasterNode);
+        node.addBoolean("backup in memory", backup.isInMemory());
         node.add(DebugNodes.createRectangleNode("saveRect", saveRect));
 
         return node;
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2025 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import pixelitor.ThreadPool;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The backup pixels of an image edit. Unlike a soft reference, a backup
+ * is never lost: the backups share a memory budget, and when it's exceeded,
+ * the least recently used backups are compressed and written to temporary
+ * files in the background. They are read back when they are needed again.
+ * If an edit is discarded without being killed, the backup
+ * is released when the edit is garbage collected.
+ */
+class PixelBackup {
+    private static final Cleaner cleaner = Cleaner.create();
+
+    // the state is in a separate object so that the
+    // cleaner can release it after this object is unreachable
+    private final Entry entry;
+
+    private PixelBackup(BufferedImage image, Raster raster, ColorModel colorModel) {
+        entry = new Entry(image, raster, colorModel);
+        cleaner.register(this, entry::release);
+    }
+
+    static PixelBackup of(BufferedImage image) {
+        return new PixelBackup(image, image.getRaster(), image.getColorModel());
+    }
+
+    static PixelBackup of(Raster raster) {
+        return new PixelBackup(null, raster, null);
+    }
+
+    /**
+     * Returns the backup as an image, or null if it
+     * was released or it couldn't be read back.
+     */
+    BufferedImage getImage() {
+        return entry.getImage();
+    }
+
+    /**
+     * Returns the backup as a raster, or null if it
+     * was released or it couldn't be read back.
+     */
+    Raster getRaster() {
+        return entry.getRaster();
+    }
+
+    /**
+     * Releases the memory or the file of this backup. Must be called when
+     * the pixels were handed over to a layer or the edit died.
+     */
+    void release() {
+        entry.release();
+    }
+
+    boolean isInMemory() {
+        return entry.isInMemory();
+    }
+
+    long getNumBytes() {
+        return entry.numBytes;
+    }
+
+    /**
+     * Moves the backup to the disk without waiting for the memory
+     * budget to be exceeded. Returns true if it was successful.
+     */
+    boolean spillNow() {
+        return entry.spillNow();
+    }
+
+    /**
+     * Returns a short summary of the memory and disk usage of all backups.
+     */
+    static String getUsageSummary() {
+        return Entry.getUsageSummary();
+    }
+
+    private static final class Entry {
+        private static final long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+        // smaller backups aren't worth the file operations
+        private static final long MIN_SPILL_BYTES = 64 * 1024;
+
+        // the number of ints that are converted to bytes at once
+        private static final int CHUNK_SIZE = 64 * 1024;
+
+        private enum State {IN_MEMORY, SPILLING, ON_DISK, RELEASED}
+
+        // the backups in memory, in the order of their last use
+        private static final Set<Entry> inMemory = new LinkedHashSet<>();
+        private static long memoryBytes = 0;
+        private static long diskBytes = 0;
+        private static Path spillDir;
+
+        // they are kept in memory only in the IN_MEMORY and SPILLING
+        // states, and the image is null if the backup is only a raster
+        private BufferedImage image;
+        private Raster raster;
+        private State state = State.IN_MEMORY;
+
+        // non-null only if the backup is an image
+        private final ColorModel colorModel;
+
+        // the raster metadata needed to recreate a spilled raster,
+        // the sample model is null if the raster can't be spilled
+        private final SampleModel sampleModel;
+        private final Point location;
+        private final int bufferSize;
+        private final long numBytes;
+
+        private Path file;
+        private long fileBytes;
+
+        Entry(BufferedImage image, Raster raster, ColorModel colorModel) {
+            this.image = image;
+            this.raster = raster;
+            this.colorModel = colorModel;
+            DataBuffer db = raster.getDataBuffer();
+            bufferSize = db.getSize();
+            numBytes = (long) bufferSize * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+            sampleModel = isSpillable(raster) ? raster.getSampleModel() : null;
+            location = new Point(raster.getMinX(), raster.getMinY());
+
+            synchronized (inMemory) {
+                inMemory.add(this);
+                memoryBytes += numBytes;
+                spillIfNeeded();
+            }
+        }
+
+        // only rasters with their own int or byte buffer
+        // can be written to a file and recreated later
+        private static boolean isSpillable(Raster raster) {
+            DataBuffer db = raster.getDataBuffer();
+            return raster.getParent() == null
+                && db.getNumBanks() == 1
+                && db.getOffset() == 0
+                && (db instanceof DataBufferInt || db instanceof DataBufferByte)
+                && raster.getSampleModelTranslateX() == raster.getMinX()
+                && raster.getSampleModelTranslateY() == raster.getMinY();
+        }
+
+        BufferedImage getImage() {
+            assert colorModel != null;
+            Raster r = getRaster();
+            if (r == null) {
+                return null;
+            }
+            synchronized (inMemory) {
+                if (image != null && image.getRaster() == r) {
+                    return image;
+                }
+            }
+            return new BufferedImage(colorModel, (WritableRaster) r,
+                colorModel.isAlphaPremultiplied(), null);
+        }
+
+        Raster getRaster() {
+            Path spilledFile;
+            synchronized (inMemory) {
+                switch (state) {
+                    case RELEASED:
+                        return null;
+                    case SPILLING:
+                        // cancel the spilling, the result will be discarded
+                        state = State.IN_MEMORY;
+                        // fall through
+                    case IN_MEMORY:
+                        // move to the end, because it was used most recently
+                        inMemory.remove(this);
+                        inMemory.add(this);
+                        return raster;
+                    default:
+                        spilledFile = file;
+                }
+            }
+            try {
+                return readRaster(spilledFile);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        void release() {
+            Path fileToDelete;
+            synchronized (inMemory) {
+                if (state == State.IN_MEMORY || state == State.SPILLING) {
+                    inMemory.remove(this);
+                    memoryBytes -= numBytes;
+                } else if (state == State.ON_DISK) {
+                    diskBytes -= fileBytes;
+                }
+                state = State.RELEASED;
+                image = null;
+                raster = null;
+                fileToDelete = file;
+                file = null;
+            }
+            deleteQuietly(fileToDelete);
+        }
+
+        boolean isInMemory() {
+            synchronized (inMemory) {
+                return state == State.IN_MEMORY || state == State.SPILLING;
+            }
+        }
+
+        // must be called while holding the lock
+        private static void spillIfNeeded() {
+            long pendingBytes = memoryBytes;
+            List<Entry> toSpill = new ArrayList<>();
+            Iterator<Entry> it = inMemory.iterator();
+            while (pendingBytes > MEMORY_BUDGET && it.hasNext()) {
+                Entry lru = it.next();
+                if (lru.state == State.SPILLING) {
+                    pendingBytes -= lru.numBytes;
+                } else if (lru.sampleModel != null && lru.numBytes >= MIN_SPILL_BYTES) {
+                    lru.state = State.SPILLING;
+                    toSpill.add(lru);
+                    pendingBytes -= lru.numBytes;
+                }
+            }
+            for (Entry backup : toSpill) {
+                ThreadPool.submit(backup::spill);
+            }
+        }
+
+        boolean spillNow() {
+            synchronized (inMemory) {
+                if (state != State.IN_MEMORY || sampleModel == null) {
+                    return false;
+                }
+                state = State.SPILLING;
+            }
+            spill();
+            return !isInMemory();
+        }
+
+        private void spill() {
+            Raster r;
+            synchronized (inMemory) {
+                if (state != State.SPILLING) {
+                    return;
+                }
+                r = raster;
+            }
+
+            Path newFile;
+            try {
+                newFile = writeRaster(r);
+            } catch (IOException e) {
+                // keep it in memory, there's nothing else to do
+                synchronized (inMemory) {
+                    if (state == State.SPILLING) {
+                        state = State.IN_MEMORY;
+                    }
+                }
+                return;
+            }
+
+            synchronized (inMemory) {
+                if (state == State.SPILLING) {
+                    state = State.ON_DISK;
+                    inMemory.remove(this);
+                    memoryBytes -= numBytes;
+                    image = null;
+                    raster = null;
+                    file = newFile;
+                    fileBytes = sizeOf(newFile);
+                    diskBytes += fileBytes;
+                    return;
+                }
+            }
+            // it was used or released in the meantime
+            deleteQuietly(newFile);
+        }
+
+        private static Path writeRaster(Raster r) throws IOException {
+            Path path = Files.createTempFile(getSpillDir(), "backup", ".bin");
+            path.toFile().deleteOnExit();
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (OutputStream out = new DeflaterOutputStream(
+                Files.newOutputStream(path), deflater, CHUNK_SIZE)) {
+                DataBuffer db = r.getDataBuffer();
+                if (db instanceof DataBufferInt intBuffer) {
+                    int[] data = intBuffer.getData();
+                    ByteBuffer bytes = ByteBuffer.allocate(4 * CHUNK_SIZE);
+                    for (int start = 0; start < data.length; start += CHUNK_SIZE) {
+                        int length = Math.min(CHUNK_SIZE, data.length - start);
+                        bytes.clear();
+                        bytes.asIntBuffer().put(data, start, length);
+                        out.write(bytes.array(), 0, 4 * length);
+                    }
+                } else {
+                    out.write(((DataBufferByte) db).getData());
+                }
+            } catch (IOException e) {
+                deleteQuietly(path);
+                throw e;
+            } finally {
+                deflater.end();
+            }
+            return path;
+        }
+
+        private Raster readRaster(Path path) throws IOException {
+            DataBuffer db;
+            try (InputStream in = new InflaterInputStream(Files.newInputStream(path))) {
+                if (sampleModel.getDataType() == DataBuffer.TYPE_INT) {
+                    int[] data = new int[bufferSize];
+                    byte[] bytes = new byte[4 * CHUNK_SIZE];
+                    for (int start = 0; start < data.length; start += CHUNK_SIZE) {
+                        int length = Math.min(CHUNK_SIZE, data.length - start);
+                        readFully(in, bytes, 4 * length);
+                        ByteBuffer.wrap(bytes).asIntBuffer().get(data, start, length);
+                    }
+                    db = new DataBufferInt(data, bufferSize);
+                } else {
+                    byte[] data = new byte[bufferSize];
+                    readFully(in, data, bufferSize);
+                    db = new DataBufferByte(data, bufferSize);
+                }
+            }
+            return Raster.createWritableRaster(sampleModel, db, location);
+        }
+
+        private static void readFully(InputStream in, byte[] bytes, int length) throws IOException {
+            if (in.readNBytes(bytes, 0, length) != length) {
+                throw new IOException("unexpected end of the backup file");
+            }
+        }
+
+        private static synchronized Path getSpillDir() throws IOException {
+            if (spillDir == null) {
+                spillDir = Files.createTempDirectory("pixelitor-undo");
+                spillDir.toFile().deleteOnExit();
+            }
+            return spillDir;
+        }
+
+        private static long sizeOf(Path path) {
+            try {
+                return Files.size(path);
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        private static void deleteQuietly(Path path) {
+            if (path == null) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // it will be deleted on exit
+            }
+        }
+
+        static String getUsageSummary() {
+            synchronized (inMemory) {
+                return "%d MB in memory, %d MB on disk".formatted(
+                    memoryBytes / (1024 * 1024), diskBytes / (1024 * 1024));
+            }
+        }
+    }
+}
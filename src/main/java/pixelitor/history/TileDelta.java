@@ -0,0 +1,268 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * The pixels of an image edit stored as the set of tiles that
+ * were changed by the edit. The unchanged tiles are not stored,
+ * because they are the same as in the layer image, and undo/redo
+ * swaps only the changed tiles with the layer image.
+ */
+class TileDelta {
+    static final int TILE_SIZE = 64;
+    private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+
+    private final int width;
+    private final int height;
+    private final int type;
+
+    // the indices of the changed tiles in row-major order, and
+    // the pixels of the changed tiles (one tile per raster row)
+    private final int[] tileIndices;
+    private PixelBackup tiles;
+
+    // the union of the changed tiles, in image coordinates
+    private final Rectangle bounds;
+
+    private TileDelta(BufferedImage before, int[] tileIndices) {
+        width = before.getWidth();
+        height = before.getHeight();
+        type = before.getType();
+        this.tileIndices = tileIndices;
+
+        int numTilesX = ceilDiv(width);
+        Rectangle union = new Rectangle(0, 0, -1, -1);
+        for (int tileIndex : tileIndices) {
+            union.add(getTileBounds(tileIndex, numTilesX));
+        }
+        bounds = union.isEmpty() ? new Rectangle() : union;
+
+        int[] pixels = ImageUtils.getPixels(before);
+        // a raster needs at least one row, even if nothing changed
+        int[] tilePixels = new int[Math.max(1, tileIndices.length) * TILE_PIXELS];
+        ThreadPool.processBands(tileIndices.length, TILE_PIXELS, (start, end) -> {
+            for (int slot = start; slot < end; slot++) {
+                copyTile(pixels, tilePixels, slot, true);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+        tiles = PixelBackup.of(createTileRaster(tilePixels));
+    }
+
+    /**
+     * Returns the tiles of the "before" image that differ from the "after"
+     * image, or null if the images can't be compared tile by tile, or if
+     * storing the changed tiles wouldn't save much compared to a full copy.
+     */
+    static TileDelta create(BufferedImage before, BufferedImage after) {
+        if (before == after || !isSupported(before) || !isSupported(after)
+            || before.getType() != after.getType()
+            || before.getWidth() != after.getWidth()
+            || before.getHeight() != after.getHeight()) {
+            return null;
+        }
+
+        int width = before.getWidth();
+        int height = before.getHeight();
+        int numTilesX = ceilDiv(width);
+        int numTilesY = ceilDiv(height);
+        int[] beforePixels = ImageUtils.getPixels(before);
+        int[] afterPixels = ImageUtils.getPixels(after);
+
+        boolean[] changed = new boolean[numTilesX * numTilesY];
+        ThreadPool.processBands(numTilesY, width * TILE_SIZE, (startRow, endRow) -> {
+            for (int tileY = startRow; tileY < endRow; tileY++) {
+                int y1 = tileY * TILE_SIZE;
+                int y2 = Math.min(y1 + TILE_SIZE, height);
+                for (int tileX = 0; tileX < numTilesX; tileX++) {
+                    int x1 = tileX * TILE_SIZE;
+                    int x2 = Math.min(x1 + TILE_SIZE, width);
+                    changed[tileY * numTilesX + tileX] = isTileChanged(
+                        beforePixels, afterPixels, width, x1, x2, y1, y2);
+                }
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        int numChanged = 0;
+        for (boolean c : changed) {
+            if (c) {
+                numChanged++;
+            }
+        }
+        // if most of the image changed, then a full copy is just as good
+        if (numChanged * 4L > changed.length * 3L) {
+            return null;
+        }
+
+        int[] tileIndices = new int[numChanged];
+        int slot = 0;
+        for (int i = 0; i < changed.length; i++) {
+            if (changed[i]) {
+                tileIndices[slot++] = i;
+            }
+        }
+        return new TileDelta(before, tileIndices);
+    }
+
+    private static boolean isTileChanged(int[] before, int[] after, int width,
+                                         int x1, int x2, int y1, int y2) {
+        for (int y = y1; y < y2; y++) {
+            int rowStart = y * width;
+            if (!Arrays.equals(before, rowStart + x1, rowStart + x2,
+                after, rowStart + x1, rowStart + x2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // only images with a packed int array that has no
+    // padding and starts at the origin can be compared
+    private static boolean isSupported(BufferedImage image) {
+        if (!ImageUtils.hasPackedIntArray(image)) {
+            return false;
+        }
+        Raster raster = image.getRaster();
+        return raster.getParent() == null
+            && raster.getDataBuffer().getOffset() == 0
+            && raster.getSampleModelTranslateX() == 0
+            && raster.getSampleModelTranslateY() == 0
+            && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm
+            && sm.getScanlineStride() == image.getWidth();
+    }
+
+    /**
+     * Exchanges the stored tiles with the corresponding tiles of the
+     * given image. Returns false if the image doesn't match the delta
+     * or if the stored tiles couldn't be read back.
+     */
+    boolean swap(BufferedImage image) {
+        if (image.getWidth() != width || image.getHeight() != height
+            || image.getType() != type || !isSupported(image)) {
+            return false;
+        }
+        Raster stored = tiles.getRaster();
+        if (stored == null) {
+            return false;
+        }
+
+        int[] pixels = ImageUtils.getPixels(image);
+        int[] storedPixels = ((DataBufferInt) stored.getDataBuffer()).getData();
+        // the stored raster isn't modified, because it might be written
+        // to the disk in the background, the image tiles go to a new one
+        int[] newTilePixels = new int[storedPixels.length];
+        ThreadPool.processBands(tileIndices.length, TILE_PIXELS, (start, end) -> {
+            for (int slot = start; slot < end; slot++) {
+                copyTile(pixels, newTilePixels, slot, true);
+                copyTile(pixels, storedPixels, slot, false);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        tiles.release();
+        tiles = PixelBackup.of(createTileRaster(newTilePixels));
+        return true;
+    }
+
+    /**
+     * Returns a copy of the given image with the stored tiles, or null
+     * if the image doesn't match or the tiles couldn't be read back.
+     */
+    BufferedImage applyToCopy(BufferedImage image) {
+        if (image.getWidth() != width || image.getHeight() != height
+            || image.getType() != type || !isSupported(image)) {
+            return null;
+        }
+        Raster stored = tiles.getRaster();
+        if (stored == null) {
+            return null;
+        }
+
+        BufferedImage copy = ImageUtils.copyImage(image);
+        int[] pixels = ImageUtils.getPixels(copy);
+        int[] storedPixels = ((DataBufferInt) stored.getDataBuffer()).getData();
+        for (int slot = 0; slot < tileIndices.length; slot++) {
+            copyTile(pixels, storedPixels, slot, false);
+        }
+        return copy;
+    }
+
+    // copies the pixels of a tile between an image-sized array
+    // and the given slot of a tile array, in the given direction
+    private void copyTile(int[] imagePixels, int[] tilePixels, int slot, boolean toTiles) {
+        Rectangle tile = getTileBounds(tileIndices[slot], ceilDiv(width));
+        int tileStart = slot * TILE_PIXELS;
+        for (int row = 0; row < tile.height; row++) {
+            int imagePos = (tile.y + row) * width + tile.x;
+            int tilePos = tileStart + row * TILE_SIZE;
+            if (toTiles) {
+                System.arraycopy(imagePixels, imagePos, tilePixels, tilePos, tile.width);
+            } else {
+                System.arraycopy(tilePixels, tilePos, imagePixels, imagePos, tile.width);
+            }
+        }
+    }
+
+    private Rectangle getTileBounds(int tileIndex, int numTilesX) {
+        int x = (tileIndex % numTilesX) * TILE_SIZE;
+        int y = (tileIndex / numTilesX) * TILE_SIZE;
+        return new Rectangle(x, y,
+            Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+    }
+
+    private static Raster createTileRaster(int[] tilePixels) {
+        return Raster.createPackedRaster(new DataBufferInt(tilePixels, tilePixels.length),
+            TILE_PIXELS, tilePixels.length / TILE_PIXELS, TILE_PIXELS, new int[]{0xFFFFFFFF}, null);
+    }
+
+    private static int ceilDiv(int size) {
+        return (size + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * Returns the changed region in image coordinates.
+     */
+    Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    int getNumTiles() {
+        return tileIndices.length;
+    }
+
+    boolean isInMemory() {
+        return tiles.isInMemory();
+    }
+
+    long getNumBytes() {
+        return tiles.getNumBytes();
+    }
+
+    void release() {
+        tiles.release();
+    }
+}
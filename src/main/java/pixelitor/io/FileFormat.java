@@ -125,7 +125,14 @@ public enum FileFormat {
     }
 
     private void saveSingleLayered(Composition comp, SaveSettings settings) {
-        BufferedImage img = comp.getCompositeImage();
+        saveFlattened(comp.getCompositeImage(), settings);
+    }
+
+    /**
+     * Saves an already flattened image in this single-layered format.
+     */
+    public void saveFlattened(BufferedImage img, SaveSettings settings) {
+        assert !multiLayered;
         if (converter != null) {
             // do the final conversion, which might be
             // necessary before writing the image
@@ -135,6 +142,10 @@ public enum FileFormat {
         FileIO.saveImageToFile(img, settings);
     }
 
+    public boolean isMultiLayered() {
+        return multiLayered;
+    }
+
     public FileFilter getFileFilter() {
         return fileFilter;
     }
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.AppPreferences;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * The encodings of the layer and mask pixels in PXC files.
+ * The codec is recorded in the first byte of each image chunk,
+ * so files saved with any codec can be read regardless of
+ * the currently selected one.
+ */
+public enum PXCCodec {
+    /**
+     * The pixels are stored without compression.
+     */
+    RAW("Uncompressed (Fastest)", "raw", 0) {
+        @Override
+        EncodedImage encode(BufferedImage img) {
+            // the rows are copied from the raster only while they are written
+            var rows = new PixelRows(img);
+            return out -> {
+                var dataOut = new DataOutputStream(out);
+                dataOut.write(id);
+                rows.writeHeader(dataOut);
+                int blockRows = rows.rowsPerBlock();
+                for (int startRow = 0; startRow < rows.height; startRow += blockRows) {
+                    int endRow = Math.min(startRow + blockRows, rows.height);
+                    dataOut.write(rows.getBytes(startRow, endRow));
+                }
+                dataOut.flush();
+            };
+        }
+
+        @Override
+        BufferedImage decodePixels(DataInputStream in) throws IOException {
+            PixelRows rows = PixelRows.readHeader(in);
+            int blockRows = rows.rowsPerBlock();
+            for (int startRow = 0; startRow < rows.height; startRow += blockRows) {
+                int endRow = Math.min(startRow + blockRows, rows.height);
+                byte[] data = new byte[(endRow - startRow) * rows.rowBytes()];
+                in.readFully(data);
+                rows.setBytes(data, startRow, endRow);
+            }
+            if (in.read() != -1) {
+                throw new IOException("corrupt raw image data");
+            }
+            return rows.image;
+        }
+    },
+    /**
+     * The rows are split into bands, which are compressed
+     * independently and in parallel with the fastest deflate level.
+     */
+    FAST("Fast Compression", "fast", 1) {
+        // the number of rows that are compressed together
+        private static final int BAND_HEIGHT = 64;
+
+        @Override
+        EncodedImage encode(BufferedImage img) {
+            var rows = new PixelRows(img);
+            int numBands = (rows.height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+            byte[][] bands = new byte[numBands][];
+            List<Runnable> tasks = new ArrayList<>(numBands);
+            for (int i = 0; i < numBands; i++) {
+                int band = i;
+                tasks.add(() -> bands[band] = compressBand(rows, band));
+            }
+            if (numBands > 0) {
+                ThreadPool.runAll(tasks);
+            }
+
+            return out -> {
+                var dataOut = new DataOutputStream(out);
+                dataOut.write(id);
+                rows.writeHeader(dataOut);
+                dataOut.writeInt(numBands);
+                for (byte[] band : bands) {
+                    dataOut.writeInt(band.length);
+                }
+                for (byte[] band : bands) {
+                    dataOut.write(band);
+                }
+                dataOut.flush();
+            };
+        }
+
+        private static byte[] compressBand(PixelRows rows, int band) {
+            int startRow = band * BAND_HEIGHT;
+            int endRow = Math.min(startRow + BAND_HEIGHT, rows.height);
+            byte[] input = rows.getBytes(startRow, endRow);
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(input);
+                deflater.finish();
+                var bytes = new ByteArrayOutputStream(input.length / 2 + 64);
+                byte[] buffer = new byte[64 * 1024];
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(buffer);
+                    bytes.write(buffer, 0, length);
+                }
+                return bytes.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        BufferedImage decodePixels(DataInputStream in) throws IOException {
+            PixelRows rows = PixelRows.readHeader(in);
+            int numBands = in.readInt();
+            if (numBands != (rows.height + BAND_HEIGHT - 1) / BAND_HEIGHT) {
+                throw new IOException("corrupt compressed image data");
+            }
+
+            int[] lengths = new int[numBands];
+            for (int i = 0; i < numBands; i++) {
+                lengths[i] = in.readInt();
+                if (lengths[i] < 0) {
+                    throw new IOException("corrupt compressed image data");
+                }
+            }
+            byte[][] bands = new byte[numBands][];
+            for (int i = 0; i < numBands; i++) {
+                bands[i] = in.readNBytes(lengths[i]);
+                if (bands[i].length != lengths[i]) {
+                    throw new IOException("truncated compressed image data");
+                }
+            }
+
+            List<Runnable> tasks = new ArrayList<>(numBands);
+            for (int i = 0; i < numBands; i++) {
+                int band = i;
+                tasks.add(() -> decompressBand(rows, band, bands[band]));
+            }
+            if (numBands > 0) {
+                try {
+                    ThreadPool.runAll(tasks);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            return rows.image;
+        }
+
+        private static void decompressBand(PixelRows rows, int band, byte[] data) {
+            int startRow = band * BAND_HEIGHT;
+            int endRow = Math.min(startRow + BAND_HEIGHT, rows.height);
+            byte[] output = new byte[(endRow - startRow) * rows.rowBytes()];
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                int done = 0;
+                while (done < output.length) {
+                    int n = inflater.inflate(output, done, output.length - done);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new UncheckedIOException(new IOException(
+                            "truncated compressed image data"));
+                    }
+                    done += n;
+                }
+            } catch (DataFormatException e) {
+                throw new UncheckedIOException(new IOException(e));
+            } finally {
+                inflater.end();
+            }
+            rows.setBytes(output, startRow, endRow);
+        }
+    },
+    /**
+     * The pixels are stored as a PNG image, which gives the smallest
+     * files, but it's also the slowest to write.
+     */
+    PNG("PNG (Smallest)", "png", 2) {
+        @Override
+        EncodedImage encode(BufferedImage img) throws IOException {
+            var bytes = new ByteArrayOutputStream();
+            bytes.write(id);
+            if (!ImageIO.write(img, "PNG", bytes)) {
+                throw new IOException("no PNG writer");
+            }
+            return bytes::writeTo;
+        }
+
+        @Override
+        BufferedImage decodePixels(DataInputStream in) throws IOException {
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(in.readAllBytes()));
+            if (img == null) {
+                throw new IOException("could not decode a PNG layer image");
+            }
+            return img;
+        }
+    };
+
+    private static PXCCodec active = PNG;
+
+    private final String displayName;
+    private final String saveCode;
+    final byte id;
+
+    PXCCodec(String displayName, String saveCode, int id) {
+        this.displayName = displayName;
+        this.saveCode = saveCode;
+        this.id = (byte) id;
+    }
+
+    /**
+     * Returns the codec used for saving PXC files.
+     */
+    public static PXCCodec getActive() {
+        return active;
+    }
+
+    public static void changeTo(PXCCodec newCodec) {
+        active = newCodec;
+    }
+
+    public static void loadFromPreferences() {
+        String loadedCode = AppPreferences.loadPXCCodec();
+
+        for (PXCCodec codec : values()) {
+            if (codec.saveCode().equals(loadedCode)) {
+                active = codec;
+                break;
+            }
+        }
+    }
+
+    public String saveCode() {
+        return saveCode;
+    }
+
+    /**
+     * Encodes the given image into the contents of an image chunk.
+     * The codecs that don't compress the pixels read them
+     * from the image only when the chunk is written.
+     */
+    abstract EncodedImage encode(BufferedImage img) throws IOException;
+
+    abstract BufferedImage decodePixels(DataInputStream in) throws IOException;
+
+    /**
+     * Decodes the contents of an image chunk written by any of the codecs.
+     */
+    static BufferedImage decode(InputStream chunk) throws IOException {
+        var in = new DataInputStream(chunk);
+        int codecId = in.read();
+        if (codecId == -1) {
+            throw new IOException("empty image chunk");
+        }
+        for (PXCCodec codec : values()) {
+            if (codec.id == (byte) codecId) {
+                return codec.decodePixels(in);
+            }
+        }
+        throw new IOException("unknown PXC image codec " + codecId);
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    /**
+     * The encoded contents of an image chunk.
+     */
+    interface EncodedImage {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Converts between the rows of an image and big-endian bytes.
+     * Grayscale images (masks) are stored with one byte per pixel,
+     * everything else as non-premultiplied ARGB ints.
+     */
+    private static class PixelRows {
+        // the approximate size of the row blocks of the raw codec
+        private static final int BLOCK_SIZE = 1024 * 1024;
+
+        private static final byte GRAY_PIXELS = 0;
+        private static final byte ARGB_PIXELS = 1;
+
+        private final BufferedImage image;
+        private final int width;
+        private final int height;
+        private final boolean gray;
+
+        PixelRows(BufferedImage image) {
+            this.image = image;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.gray = image.getType() == TYPE_BYTE_GRAY;
+        }
+
+        int rowBytes() {
+            return gray ? width : 4 * width;
+        }
+
+        long numBytes() {
+            return (long) rowBytes() * height;
+        }
+
+        // the number of rows that are read or written together
+        int rowsPerBlock() {
+            return Math.max(1, BLOCK_SIZE / rowBytes());
+        }
+
+        void writeHeader(DataOutputStream out) throws IOException {
+            out.writeInt(width);
+            out.writeInt(height);
+            out.write(gray ? GRAY_PIXELS : ARGB_PIXELS);
+        }
+
+        static PixelRows readHeader(DataInputStream in) throws IOException {
+            int width = in.readInt();
+            int height = in.readInt();
+            int kind = in.read();
+            if (width <= 0 || height <= 0 || (kind != GRAY_PIXELS && kind != ARGB_PIXELS)
+                || (long) width * height > Integer.MAX_VALUE - 8) {
+                throw new IOException("invalid image header");
+            }
+            return new PixelRows(new BufferedImage(width, height,
+                kind == GRAY_PIXELS ? TYPE_BYTE_GRAY : TYPE_INT_ARGB));
+        }
+
+        // returns the pixels of the [startRow, endRow) rows
+        byte[] getBytes(int startRow, int endRow) {
+            int numRows = endRow - startRow;
+            byte[] bytes = new byte[numRows * rowBytes()];
+            if (gray) {
+                image.getRaster().getDataElements(0, startRow, width, numRows, bytes);
+                return bytes;
+            }
+            int[] row = new int[width];
+            var intBuffer = ByteBuffer.wrap(bytes).asIntBuffer();
+            boolean intArgb = image.getType() == TYPE_INT_ARGB;
+            WritableRaster raster = image.getRaster();
+            for (int y = startRow; y < endRow; y++) {
+                if (intArgb) {
+                    raster.getDataElements(0, y, width, 1, row);
+                } else {
+                    image.getRGB(0, y, width, 1, row, 0, width);
+                }
+                intBuffer.put(row);
+            }
+            return bytes;
+        }
+
+        // sets the pixels of the [startRow, endRow) rows of a loaded image
+        void setBytes(byte[] bytes, int startRow, int endRow) {
+            int numRows = endRow - startRow;
+            WritableRaster raster = image.getRaster();
+            if (gray) {
+                raster.setDataElements(0, startRow, width, numRows, bytes);
+                return;
+            }
+            int[] pixels = new int[numRows * width];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+            raster.setDataElements(0, startRow, width, numRows, pixels);
+        }
+    }
+}
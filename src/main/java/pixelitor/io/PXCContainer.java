@@ -0,0 +1,385 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.Composition;
+import pixelitor.ThreadPool;
+import pixelitor.io.PXCCodec.EncodedImage;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.StatusBarProgressTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * The chunked container used by PXC files since version 5.
+ *
+ * After the identification and version bytes, the file contains a table
+ * of contents with the type, offset and length of each chunk. The chunks are
+ * the thumbnail, the serialized layer structure (without the pixels), and
+ * one image chunk for each layer or mask image. The image chunks are
+ * encoded and decoded in parallel with the codec recorded in their first
+ * byte, and the thumbnail can be read without touching the rest of the file.
+ */
+class PXCContainer {
+    static final int VERSION = 0x05;
+
+    private static final int THUMBNAIL_CHUNK = 1;
+    private static final int STRUCTURE_CHUNK = 2;
+    private static final int IMAGE_CHUNK = 3;
+
+    // type (int), offset (long) and length (long)
+    private static final int TOC_ENTRY_SIZE = 4 + 8 + 8;
+
+    // the identification bytes, the version byte and the number of chunks
+    private static final int HEADER_SIZE = 3 + 4;
+
+    // the maximum number of images that are encoded, but not yet written
+    private static final int MAX_PENDING_IMAGES = 2 * Runtime.getRuntime().availableProcessors();
+
+    private PXCContainer() {
+    }
+
+    static void write(Composition comp, File file) throws IOException {
+        BufferedImage thumbnail = OpenRaster.createORAThumbnail(comp.getCompositeImage());
+        byte[] thumbnailData = encodePNG(thumbnail);
+
+        // serialize the layer structure, collecting the images separately
+        var structureBytes = new ByteArrayOutputStream();
+        List<BufferedImage> images;
+        try (var out = new ImageTableOutputStream(structureBytes)) {
+            out.writeObject(comp);
+            out.flush();
+            images = out.images;
+        }
+
+        // one unit for the thumbnail and the structure, and one for each image
+        var pt = new StatusBarProgressTracker("Writing " + file.getName(), 1 + images.size());
+        PXCCodec codec = PXCCodec.getActive();
+        pt.unitDone();
+
+        int numChunks = 2 + images.size();
+        long[] offsets = new long[numChunks];
+        long[] lengths = new long[numChunks];
+        int[] types = new int[numChunks];
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE + (long) numChunks * TOC_ENTRY_SIZE);
+            var out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+
+            writeChunk(out, channel, 0, THUMBNAIL_CHUNK, o -> o.write(thumbnailData), types, offsets, lengths);
+            writeChunk(out, channel, 1, STRUCTURE_CHUNK, structureBytes::writeTo, types, offsets, lengths);
+
+            // encode the images in parallel, but write them in order
+            Deque<Future<EncodedImage>> pending = new ArrayDeque<>();
+            int nextToSubmit = 0;
+            for (int i = 0; i < images.size(); i++) {
+                while (nextToSubmit < images.size() && pending.size() < MAX_PENDING_IMAGES) {
+                    BufferedImage img = images.get(nextToSubmit++);
+                    pending.add(ThreadPool.submit(() -> codec.encode(img)));
+                }
+                EncodedImage imageData = await(pending.removeFirst());
+                writeChunk(out, channel, 2 + i, IMAGE_CHUNK, imageData, types, offsets, lengths);
+                pt.unitDone();
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + numChunks * TOC_ENTRY_SIZE);
+            header.put(new byte[]{(byte) 0xAB, (byte) 0xC4, VERSION});
+            header.putInt(numChunks);
+            for (int i = 0; i < numChunks; i++) {
+                header.putInt(types[i]);
+                header.putLong(offsets[i]);
+                header.putLong(lengths[i]);
+            }
+            header.flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+        }
+        pt.finished();
+    }
+
+    private static void writeChunk(OutputStream out, FileChannel channel, int index, int type,
+                                   EncodedImage contents, int[] types, long[] offsets,
+                                   long[] lengths) throws IOException {
+        types[index] = type;
+        offsets[index] = channel.position();
+        contents.writeTo(out);
+        out.flush();
+        lengths[index] = channel.position() - offsets[index];
+    }
+
+    static Composition read(File file, ProgressTracker pt) throws IOException, BadPxcFormatException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            TableOfContents toc = readTableOfContents(channel, file);
+
+            // decode all images in parallel
+            int numImages = toc.count(IMAGE_CHUNK);
+            List<Future<BufferedImage>> futures = new ArrayList<>(numImages);
+            for (int i = 0; i < toc.size(); i++) {
+                if (toc.types[i] == IMAGE_CHUNK) {
+                    long offset = toc.offsets[i];
+                    long length = toc.lengths[i];
+                    futures.add(ThreadPool.submit(() ->
+                        decodeImage(new ChunkInputStream(channel, offset, length))));
+                }
+            }
+            byte[] structureData = toc.readChunk(channel, toc.find(STRUCTURE_CHUNK, file));
+
+            BufferedImage[] images = new BufferedImage[numImages];
+            int imageIndex = 0;
+            for (int i = 0; i < toc.size(); i++) {
+                if (toc.types[i] == IMAGE_CHUNK) {
+                    images[imageIndex] = await(futures.get(imageIndex));
+                    imageIndex++;
+                }
+                pt.unitsDone((int) Math.min(toc.lengths[i], Integer.MAX_VALUE));
+            }
+
+            try (var in = new ImageTableInputStream(new ByteArrayInputStream(structureData), images)) {
+                return (Composition) in.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    static BufferedImage readThumbnail(File file) throws IOException, BadPxcFormatException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            TableOfContents toc = readTableOfContents(channel, file);
+            byte[] thumbnailData = toc.readChunk(channel, toc.find(THUMBNAIL_CHUNK, file));
+            return ImageIO.read(new ByteArrayInputStream(thumbnailData));
+        }
+    }
+
+    private static TableOfContents readTableOfContents(FileChannel channel, File file)
+        throws IOException, BadPxcFormatException {
+        ByteBuffer header = ByteBuffer.wrap(readChunk(channel, 0, HEADER_SIZE));
+        header.position(3); // the identification and version bytes were already checked
+        int numChunks = header.getInt();
+        long maxChunks = (channel.size() - HEADER_SIZE) / TOC_ENTRY_SIZE;
+        if (numChunks < 0 || numChunks > maxChunks) {
+            throw new BadPxcFormatException(file.getName() + " has a corrupt table of contents.");
+        }
+
+        var toc = new TableOfContents(numChunks);
+        ByteBuffer entries = ByteBuffer.wrap(readChunk(channel,
+            HEADER_SIZE, (long) numChunks * TOC_ENTRY_SIZE));
+        for (int i = 0; i < numChunks; i++) {
+            toc.types[i] = entries.getInt();
+            toc.offsets[i] = entries.getLong();
+            toc.lengths[i] = entries.getLong();
+            if (toc.offsets[i] < 0 || toc.lengths[i] < 0
+                || toc.offsets[i] + toc.lengths[i] > channel.size()) {
+                throw new BadPxcFormatException(file.getName() + " has a corrupt chunk.");
+            }
+        }
+        return toc;
+    }
+
+    // positional reads, so it can be called from multiple threads
+    private static byte[] readChunk(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("chunk too large: " + length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+        return buffer.array();
+    }
+
+    // waits for a parallel encoding or decoding task
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioe) {
+                throw ioe;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static byte[] encodePNG(BufferedImage img) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        if (!ImageIO.write(img, "PNG", bytes)) {
+            throw new IOException("no PNG writer");
+        }
+        return bytes.toByteArray();
+    }
+
+    private static BufferedImage decodeImage(InputStream chunk) throws IOException {
+        BufferedImage img = PXCCodec.decode(chunk);
+        int imgType = img.getType();
+        if (imgType != TYPE_BYTE_GRAY && imgType != TYPE_INT_ARGB) {
+            img = ImageUtils.toSysCompatibleImage(img);
+        }
+        return img;
+    }
+
+    /**
+     * Reads a chunk with positional reads, so that
+     * multiple chunks can be read in parallel.
+     */
+    private static class ChunkInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        ChunkInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+    }
+
+    private static class TableOfContents {
+        private final int[] types;
+        private final long[] offsets;
+        private final long[] lengths;
+
+        TableOfContents(int numChunks) {
+            types = new int[numChunks];
+            offsets = new long[numChunks];
+            lengths = new long[numChunks];
+        }
+
+        int size() {
+            return types.length;
+        }
+
+        int count(int type) {
+            int count = 0;
+            for (int t : types) {
+                if (t == type) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int find(int type, File file) throws BadPxcFormatException {
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == type) {
+                    return i;
+                }
+            }
+            throw new BadPxcFormatException(file.getName() + " has no chunk of type " + type);
+        }
+
+        byte[] readChunk(FileChannel channel, int index) throws IOException {
+            return PXCContainer.readChunk(channel, offsets[index], lengths[index]);
+        }
+    }
+
+    /**
+     * Serializes an object graph, but instead of writing the images of
+     * the layers inline, it only writes their index in an image table.
+     */
+    static class ImageTableOutputStream extends ObjectOutputStream {
+        private final List<BufferedImage> images = new ArrayList<>();
+
+        ImageTableOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        int addImage(BufferedImage img) {
+            images.add(img);
+            return images.size() - 1;
+        }
+    }
+
+    /**
+     * Deserializes an object graph written by an {@link ImageTableOutputStream}.
+     */
+    static class ImageTableInputStream extends ObjectInputStream {
+        private final BufferedImage[] images;
+
+        ImageTableInputStream(InputStream in, BufferedImage[] images) throws IOException {
+            super(in);
+            this.images = images;
+        }
+
+        BufferedImage getImage(int index) throws IOException {
+            if (index < 0 || index >= images.length) {
+                throw new InvalidObjectException("invalid image index " + index);
+            }
+            return images[index];
+        }
+    }
+}
@@ -33,15 +33,14 @@ import static pixelitor.utils.ImageUtils.getPixels;
  * PXC file format support.
  */
 public class PXCFormat {
-    private static final int CURRENT_PXC_VERSION_NUMBER = 0x04;
+    private static final int CURRENT_PXC_VERSION_NUMBER = PXCContainer.VERSION;
 
     // the first version supporting a thumbnail
     private static final int THUMBNAIL_FORMAT_VERSION = 0x04;
 
-    // tracks the writing of the whole file
-    private static ProgressTracker mainPT;
-
-    private static double workRatioForOneImage;
+    // the image type written instead of the pixels if the
+    // image is stored in a separate chunk of the container
+    private static final int IMAGE_TABLE_REFERENCE = -1;
 
     private PXCFormat() {
     }
@@ -84,24 +83,10 @@ public class PXCFormat {
                     + " has unknown version byte " + versionByte);
             }
 
-            // Skip thumbnail data
-            if (versionByte >= THUMBNAIL_FORMAT_VERSION) {
-                // Read thumbnail length (4 bytes)
-                int thumbnailLength = readInt(is);
-                // Skip the thumbnail data
-                is.skip(thumbnailLength);
-            }
-
-            if (versionByte == 3) { // gzipped stream in old pxc files
-                try (GZIPInputStream gs = new GZIPInputStream(is)) {
-                    try (ObjectInput ois = new ObjectInputStream(gs)) {
-                        comp = (Composition) ois.readObject();
-                    }
-                }
+            if (versionByte == PXCContainer.VERSION) {
+                comp = PXCContainer.read(file, tracker);
             } else {
-                try (ObjectInput ois = new ObjectInputStream(is)) {
-                    comp = (Composition) ois.readObject();
-                }
+                comp = readSerialized(is, versionByte);
             }
             // file is transient in Composition because the pxc file can be renamed
             comp.setFile(file);
@@ -114,45 +99,35 @@ public class PXCFormat {
         return comp;
     }
 
-    public static void write(Composition comp, File file) {
-        mainPT = new StatusBarProgressTracker(
-            "Writing " + file.getName(), 100);
-        int numImages = comp.calcNumImages();
-        if (numImages > 0) {
-            workRatioForOneImage = 1.0 / numImages;
-        } else {
-            workRatioForOneImage = -1;
+    // reads the pxc versions in which the whole file is a serialized object graph
+    private static Composition readSerialized(InputStream is, int versionByte)
+        throws IOException, ClassNotFoundException {
+        // Skip thumbnail data
+        if (versionByte >= THUMBNAIL_FORMAT_VERSION) {
+            // Read thumbnail length (4 bytes)
+            int thumbnailLength = readInt(is);
+            // Skip the thumbnail data
+            is.skip(thumbnailLength);
         }
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            // write header bytes and version
-            fos.write(new byte[]{(byte) 0xAB, (byte) 0xC4, CURRENT_PXC_VERSION_NUMBER});
-
-            // write thumbnail
-            BufferedImage thumbnail = OpenRaster.createORAThumbnail(comp.getCompositeImage());
-            // create an extra stream so that we know the length of the thumbnail data
-            ByteArrayOutputStream thumbnailBytes = new ByteArrayOutputStream();
-            ImageIO.write(thumbnail, "PNG", thumbnailBytes);
-            byte[] thumbnailData = thumbnailBytes.toByteArray();
-            writeInt(fos, thumbnailData.length); // write thumbnail length
-            fos.write(thumbnailData); // write thumbnail data
 
-//            try (GZIPOutputStream gz = new GZIPOutputStream(fos)) {
-//                try (ObjectOutput oos = new ObjectOutputStream(gz)) {
-//                    oos.writeObject(comp);
-//                    oos.flush();
-//                }
-//            }
-
-            // since pxc version 4, the stream isn't gzipped
-            try (ObjectOutput oos = new ObjectOutputStream(fos)) {
-                oos.writeObject(comp);
-                oos.flush();
+        if (versionByte == 3) { // gzipped stream in old pxc files
+            try (GZIPInputStream gs = new GZIPInputStream(is)) {
+                try (ObjectInput ois = new ObjectInputStream(gs)) {
+                    return (Composition) ois.readObject();
+                }
             }
+        }
+        try (ObjectInput ois = new ObjectInputStream(is)) {
+            return (Composition) ois.readObject();
+        }
+    }
+
+    public static void write(Composition comp, File file) {
+        try {
+            PXCContainer.write(comp, file);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        mainPT.finished();
-        mainPT = null;
     }
 
     /**
@@ -167,6 +142,10 @@ public class PXCFormat {
             }
 
             int versionByte = is.read();
+            if (versionByte == PXCContainer.VERSION) {
+                // the container can seek directly to the thumbnail
+                return PXCContainer.readThumbnail(file);
+            }
             if (versionByte != THUMBNAIL_FORMAT_VERSION) {
                 return null; // old version, no thumbnail
             }
@@ -188,36 +167,22 @@ public class PXCFormat {
         assert img != null;
         int imgWidth = img.getWidth();
         int imgHeight = img.getHeight();
-
-        // in PXC version 3, only grayscale images were written
-        // as PNG, and for simplicity, we still write this field
-//        int imgType = img.getType();
-        int imgType = TYPE_BYTE_GRAY;
-
         out.writeInt(imgWidth);
         out.writeInt(imgHeight);
-        out.writeInt(imgType);
 
-        ProgressTracker pt = getImageTracker();
-
-        if (imgType == TYPE_BYTE_GRAY) {
-            TrackedIO.writeToStream(img, out, "PNG", pt);
-//            ImageIO.write(img, "PNG", out);
-        } else {
-            // this legacy branch is never executed anymore
-            int[] pixels = getPixels(img);
-            int length = pixels.length;
-            int progress = 0;
-            int fiveUnits = length / 20;
-            for (int pixel : pixels) {
-                out.writeInt(pixel);
-                progress++;
-                if (progress > fiveUnits) {
-                    pt.unitsDone(5);
-                    progress = 0;
-                }
-            }
+        if (out instanceof PXCContainer.ImageTableOutputStream tableOut) {
+            // the pixels are written into a separate chunk
+            out.writeInt(IMAGE_TABLE_REFERENCE);
+            out.writeInt(tableOut.addImage(img));
+            return;
         }
+
+        // In PXC version 3, only grayscale images were written
+        // as PNG, and for simplicity, we still write this field.
+        // Since version 5, this inline format is used only
+        // when the object graph isn't written into a pxc file.
+        out.writeInt(TYPE_BYTE_GRAY);
+        TrackedIO.writeToStream(img, out, "PNG", ProgressTracker.NULL_TRACKER);
     }
 
     // when deserializing, the progress tracking
@@ -227,7 +192,12 @@ public class PXCFormat {
         int height = in.readInt();
         int type = in.readInt();
 
-        if (type == TYPE_BYTE_GRAY) {
+        if (type == IMAGE_TABLE_REFERENCE) {
+            if (!(in instanceof PXCContainer.ImageTableInputStream tableIn)) {
+                throw new InvalidObjectException("unexpected image reference");
+            }
+            return tableIn.getImage(in.readInt());
+        } else if (type == TYPE_BYTE_GRAY) {
             BufferedImage img = ImageIO.read(in);
             int imgType = img.getType();
             if (imgType != TYPE_BYTE_GRAY && imgType != BufferedImage.TYPE_INT_ARGB) {
@@ -247,26 +217,9 @@ public class PXCFormat {
         }
     }
 
-    private static ProgressTracker getImageTracker() {
-        if (workRatioForOneImage == -1) {
-            // a pxc without images
-            return ProgressTracker.NULL_TRACKER;
-        } else {
-            return new SubtaskProgressTracker(workRatioForOneImage, mainPT);
-        }
-    }
-
     // Reads 4 bytes as an int
     private static int readInt(InputStream is) throws IOException {
         return is.read() << 24 | (is.read() & 0xFF) << 16 |
             (is.read() & 0xFF) << 8 | (is.read() & 0xFF);
     }
-
-    // Writes an int as 4 bytes
-    private static void writeInt(OutputStream os, int value) throws IOException {
-        os.write((value >>> 24) & 0xFF);
-        os.write((value >>> 16) & 0xFF);
-        os.write((value >>> 8) & 0xFF);
-        os.write(value & 0xFF);
-    }
 }
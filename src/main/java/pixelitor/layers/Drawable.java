@@ -27,6 +27,7 @@ import pixelitor.utils.test.RandomGUITest;
 
 import java.awt.Component;
 import java.awt.Composite;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
@@ -83,7 +84,11 @@ public interface Drawable extends Filterable {
 
     @Override
     default void startPreview(Filter filter, boolean firstPreview, Component busyCursorTarget) {
-        startFilter(filter, FilterContext.PREVIEWING, busyCursorTarget);
+        if (FilterPreviews.canRunAsync(filter)) {
+            FilterPreviews.start(this, filter, firstPreview);
+        } else {
+            startFilter(filter, FilterContext.PREVIEWING, busyCursorTarget);
+        }
     }
 
     @Override
@@ -123,6 +128,17 @@ public interface Drawable extends Filterable {
 
     void update();
 
+    /**
+     * Signals that only the pixels have been changed.
+     */
+    void updateContent();
+
+    /**
+     * Signals that only the given region (in image space,
+     * relative to the canvas) of the pixels has been changed.
+     */
+    void updateRegion(Rectangle region);
+
     void repaintRegion(PPoint start, PPoint end, double thickness);
 
     void repaintRegion(PRectangle area);
@@ -0,0 +1,474 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import pixelitor.AppMode;
+import pixelitor.ThreadPool;
+import pixelitor.filters.Filter;
+import pixelitor.filters.util.Filters;
+import pixelitor.filters.util.PreviewRegion;
+import pixelitor.gui.View;
+import pixelitor.gui.utils.Dialogs;
+import pixelitor.gui.utils.GUIUtils;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
+import pixelitor.utils.test.RandomGUITest;
+
+import javax.swing.JViewport;
+import javax.swing.event.ChangeListener;
+import java.awt.AlphaComposite;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static pixelitor.FilterContext.PREVIEWING;
+import static pixelitor.utils.Threads.calledOnEDT;
+import static pixelitor.utils.Threads.threadInfo;
+
+/**
+ * Calculates the filter previews of a dialog session outside the EDT.
+ * A new preview request cancels the running one, and for large images
+ * a downscaled preview is shown before the full-resolution one,
+ * if the previous full-resolution preview was slow.
+ * If the filter supports it and the image is zoomed in, then only
+ * the visible region is calculated, the rest is filled in lazily
+ * when scrolling, and the full image is calculated only at the end.
+ * All methods, except for the preview calculation itself, run on the EDT.
+ */
+class FilterPreviews {
+    // previews of smaller images are always calculated at full resolution
+    private static final long MIN_PROGRESSIVE_PIXELS = 4_000_000;
+
+    // the approximate number of pixels in a downscaled preview
+    private static final long LOW_RES_PIXELS = 1_000_000;
+
+    // full-resolution previews faster than this don't need a downscaled step
+    private static final long SLOW_PREVIEW_NANOS = MILLISECONDS.toNanos(150);
+
+    // the visible region is extended by this many pixels in each
+    // direction, so that small scrolls don't require new calculations
+    private static final int REGION_MARGIN = 128;
+
+    // if the visible region is a larger part of the image than this,
+    // then the whole image is calculated right away
+    private static final double MAX_REGION_FRACTION = 0.5;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "FilterPreview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // the most recent request, or null if there is no preview in progress
+    private static Request latest;
+
+    // the duration of the last full-resolution preview in the current session,
+    // or a negative value if there wasn't one yet
+    private static long lastFullNanos = -1;
+
+    // the downscaled filter source, reused within a session,
+    // these are accessed only on the preview thread
+    private static BufferedImage lowResSrc;
+    private static BufferedImage lowResSrcFor;
+
+    // the viewport that is observed during a session, so
+    // that scrolling can fill in the missing preview regions
+    private static JViewport viewport;
+    private static final ChangeListener viewportListener = e -> visibleRegionChanged();
+
+    private FilterPreviews() {
+    }
+
+    /**
+     * Returns true if the previews of the given filter can be
+     * calculated outside the EDT. This requires an exact copy of the
+     * filter, because the dialog can change the original while the
+     * preview is running.
+     */
+    static boolean canRunAsync(Filter filter) {
+        return filter.canBeSmart() && filter.canHaveUserPresets()
+            && !AppMode.isUnitTesting() && !RandomGUITest.isRunning();
+    }
+
+    /**
+     * Starts calculating the preview of the given filter with its current
+     * settings, canceling the calculation of the previous preview.
+     */
+    static void start(Drawable dr, Filter filter, boolean firstPreview) {
+        assert calledOnEDT() : threadInfo();
+
+        cancel();
+        if (firstPreview) {
+            lastFullNanos = -1;
+        }
+
+        BufferedImage src = dr.getFilterSourceImage();
+        long numPixels = (long) src.getWidth() * src.getHeight();
+        boolean progressive = numPixels >= MIN_PROGRESSIVE_PIXELS
+            && (lastFullNanos < 0 || lastFullNanos > SLOW_PREVIEW_NANOS);
+
+        Rectangle region = null;
+        if (filter.supportsPreviewRegion() || filter.getPreviewHalo() >= 0) {
+            region = calcVisibleRegion(dr, src);
+            if (region != null && region.width * (double) region.height
+                > MAX_REGION_FRACTION * numPixels) {
+                region = null;
+            }
+            if (region != null) {
+                observeViewport(dr.getComp().getView());
+            }
+        }
+
+        latest = new Request(dr, filter.copy(), filter.getName(), src, progressive, region);
+        executor.execute(latest::calculate);
+        Filters.setLastFilter(filter);
+    }
+
+    /**
+     * Returns the visible region of the given filter source plus a margin,
+     * or null if it can't be determined. The source must be the whole image
+     * of the drawable, therefore region previews are not used with selections.
+     */
+    private static Rectangle calcVisibleRegion(Drawable dr, BufferedImage src) {
+        var comp = dr.getComp();
+        View view = comp.getView();
+        if (view == null || comp.hasSelection()) {
+            return null;
+        }
+
+        Rectangle region = view.componentToImageSpace(view.getVisibleRegion()).getBounds();
+        region.translate(-dr.getTx(), -dr.getTy());
+        region.grow(REGION_MARGIN, REGION_MARGIN);
+        region = region.intersection(new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+        return region.isEmpty() ? null : region;
+    }
+
+    private static void observeViewport(View view) {
+        JViewport newViewport = view.getViewContainer().getScrollPane().getViewport();
+        if (newViewport != viewport) {
+            stopObservingViewport();
+            viewport = newViewport;
+            viewport.addChangeListener(viewportListener);
+        }
+    }
+
+    private static void stopObservingViewport() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+    }
+
+    /**
+     * Schedules the calculation of the preview pixels that became
+     * visible after scrolling or zooming, if there are any.
+     */
+    private static void visibleRegionChanged() {
+        Request request = latest;
+        if (request == null || request.calculated == null) {
+            // no region preview is shown
+            return;
+        }
+        Rectangle needed = calcVisibleRegion(request.dr, request.src);
+        if (needed == null) {
+            return;
+        }
+        Area missing = new Area(needed);
+        missing.subtract(request.calculated);
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Rectangle fillRegion = missing.getBounds();
+        request.calculated.add(new Area(fillRegion));
+        executor.execute(() -> request.fill(fillRegion));
+    }
+
+    // runs on the preview thread
+    private static BufferedImage getLowResSource(BufferedImage src) {
+        if (lowResSrcFor != src) {
+            double numPixels = (double) src.getWidth() * src.getHeight();
+            double scale = Math.sqrt(LOW_RES_PIXELS / numPixels);
+            int width = Math.max(1, (int) (src.getWidth() * scale));
+            int height = Math.max(1, (int) (src.getHeight() * scale));
+            lowResSrc = ImageUtils.resize(src, width, height);
+            lowResSrcFor = src;
+        }
+        return lowResSrc;
+    }
+
+    /**
+     * Makes sure that the full-resolution preview of the most recent
+     * request is shown, calculating it on the EDT if necessary.
+     * Called when the dialog is accepted.
+     */
+    static void finish(Drawable dr) {
+        assert calledOnEDT() : threadInfo();
+
+        Request request = latest;
+        if (request == null || request.dr != dr) {
+            return;
+        }
+        request.cancel();
+        if (!request.finalShown) {
+            BufferedImage result = request.fullResult;
+            if (result != null) {
+                dr.changePreviewImage(result, request.filterName, PREVIEWING);
+            } else {
+                // the canceled calculation might still be using the filter of
+                // the request, so the final result is calculated with a copy
+                Filter filter = request.filter.copy();
+                GUIUtils.runWithBusyCursor(() -> dr.runFilter(filter, PREVIEWING));
+            }
+        }
+        endSession();
+    }
+
+    /**
+     * Cancels the preview calculation, if there is one in progress.
+     */
+    static void cancel() {
+        if (latest != null) {
+            latest.cancel();
+            latest = null;
+        }
+    }
+
+    /**
+     * Cancels the preview calculation and releases the cached images.
+     */
+    static void endSession() {
+        cancel();
+        stopObservingViewport();
+        executor.execute(() -> {
+            lowResSrc = null;
+            lowResSrcFor = null;
+        });
+    }
+
+    // unlike ImageUtils.crop, this copies translucent pixels without any rounding
+    private static BufferedImage cropExactly(BufferedImage src, Rectangle cropRect) {
+        BufferedImage crop = ImageUtils.createImageWithSameCM(src, cropRect.width, cropRect.height);
+        crop.getRaster().setRect(-cropRect.x, -cropRect.y, src.getRaster());
+        return crop;
+    }
+
+    private static BufferedImage upscale(BufferedImage img, int width, int height) {
+        BufferedImage upscaled = ImageUtils.createImageWithSameCM(img, width, height);
+        Graphics2D g = upscaled.createGraphics();
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(img, 0, 0, width, height, null);
+        g.dispose();
+        return upscaled;
+    }
+
+    /**
+     * A preview calculation with a private copy of the filter.
+     */
+    private static class Request {
+        private final Drawable dr;
+        private final Filter filter;
+        private final String filterName;
+        private final BufferedImage src;
+        private final boolean progressive;
+
+        // the initially calculated region of the source,
+        // or null if the whole image is calculated
+        private final Rectangle region;
+
+        private volatile boolean canceled;
+        private volatile BufferedImage fullResult;
+
+        // the source with the calculated regions replaced by the filtered
+        // pixels, created on the preview thread before it's first shown
+        private BufferedImage regionPreview;
+
+        // accessed only on the EDT
+        private boolean finalShown;
+
+        // the calculated or scheduled regions of a region preview, accessed
+        // only on the EDT, null until the first region is shown
+        private Area calculated;
+
+        Request(Drawable dr, Filter filter, String filterName,
+                BufferedImage src, boolean progressive, Rectangle region) {
+            this.dr = dr;
+            this.filter = filter;
+            this.filterName = filterName;
+            this.src = src;
+            this.progressive = progressive && region == null;
+            this.region = region;
+        }
+
+        void cancel() {
+            canceled = true;
+        }
+
+        boolean isCanceled() {
+            return canceled;
+        }
+
+        // runs on the preview thread
+        void calculate() {
+            runSafely(() -> {
+                if (region != null) {
+                    calculateRegion();
+                } else {
+                    calculateFull();
+                }
+            });
+        }
+
+        private void calculateFull() {
+            if (progressive) {
+                BufferedImage lowResSrc = getLowResSource(src);
+                BufferedImage lowRes = ThreadPool.callCancellable(() ->
+                    filter.transformImage(lowResSrc), this::isCanceled);
+                if (lowRes == lowResSrc) {
+                    show(src, -1);
+                } else if (lowRes.getWidth() == lowResSrc.getWidth()
+                    && lowRes.getHeight() == lowResSrc.getHeight()) {
+                    show(upscale(lowRes, src.getWidth(), src.getHeight()), -1);
+                }
+            }
+
+            long startTime = System.nanoTime();
+            BufferedImage result = ThreadPool.callCancellable(() ->
+                filter.transformImage(src), this::isCanceled);
+            fullResult = result;
+            show(result, System.nanoTime() - startTime);
+        }
+
+        private void calculateRegion() {
+            BufferedImage result = ThreadPool.callCancellable(() ->
+                filterRegion(region), this::isCanceled);
+            if (result == null) { // the filter doesn't change the image
+                fullResult = src;
+                show(src, 0);
+                return;
+            }
+
+            regionPreview = ImageUtils.copyImage(src);
+            paste(result, region);
+            EventQueue.invokeLater(() -> {
+                if (canceled || latest != this) {
+                    return;
+                }
+                calculated = new Area(region);
+                dr.changePreviewImage(regionPreview, filterName, PREVIEWING);
+            });
+        }
+
+        /**
+         * Calculates an additional region of a region preview.
+         * Runs on the preview thread.
+         */
+        void fill(Rectangle fillRegion) {
+            runSafely(() -> {
+                BufferedImage result = ThreadPool.callCancellable(() ->
+                    filterRegion(fillRegion), this::isCanceled);
+                EventQueue.invokeLater(() -> {
+                    if (result == null || canceled || latest != this) {
+                        return;
+                    }
+                    // pasted on the EDT, because the preview is already shown
+                    paste(result, fillRegion);
+                    dr.changePreviewImage(regionPreview, filterName, PREVIEWING);
+                });
+            });
+        }
+
+        /**
+         * Returns the filtered pixels of the given source region, or
+         * null if the filter doesn't change the image with these settings.
+         */
+        private BufferedImage filterRegion(Rectangle r) {
+            if (filter.supportsPreviewRegion()) {
+                // the filter calculates only the region of a full-size result
+                BufferedImage result = PreviewRegion.callWithin(r, () ->
+                    filter.transformImage(src));
+                if (result == src) {
+                    return null;
+                }
+                return result.getSubimage(r.x, r.y, r.width, r.height);
+            }
+
+            // the filter is applied to a cropped source that
+            // also contains the pixels influencing the region
+            int halo = filter.getPreviewHalo();
+            Rectangle cropRect = new Rectangle(r);
+            cropRect.grow(halo, halo);
+            cropRect = cropRect.intersection(new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+            BufferedImage crop = cropExactly(src, cropRect);
+            BufferedImage result = filter.transformImage(crop);
+            if (result == crop) {
+                return null;
+            }
+            return result.getSubimage(r.x - cropRect.x, r.y - cropRect.y, r.width, r.height);
+        }
+
+        private void paste(BufferedImage regionResult, Rectangle r) {
+            Graphics2D g = regionPreview.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(regionResult, r.x, r.y, null);
+            g.dispose();
+        }
+
+        // runs the given calculation on the preview thread, handling the errors
+        private void runSafely(Runnable calculation) {
+            if (canceled) {
+                return;
+            }
+            try {
+                calculation.run();
+            } catch (CancellationException e) {
+                // a newer request replaced this one
+            } catch (OutOfMemoryError e) {
+                EventQueue.invokeLater(() -> Dialogs.showOutOfMemoryDialog(e));
+            } catch (Throwable e) {
+                String msg = String.format("Error while previewing the filter '%s'%nparams = %s",
+                    filterName, filter.paramsAsString());
+                Messages.showExceptionOnEDT(new IllegalStateException(msg, e));
+            }
+        }
+
+        // the duration is negative for downscaled previews
+        private void show(BufferedImage preview, long durationNanos) {
+            EventQueue.invokeLater(() -> {
+                if (canceled || latest != this) {
+                    return;
+                }
+                dr.changePreviewImage(preview, filterName, PREVIEWING);
+                if (durationNanos >= 0) {
+                    finalShown = true;
+                    lastFullNanos = durationNanos;
+                    Messages.showPerformanceMessage(filterName, NANOSECONDS.toMillis(durationNanos));
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.SerialExecutor;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static pixelitor.utils.Threads.calledOnEDT;
+import static pixelitor.utils.Threads.threadInfo;
+
+/**
+ * Schedules the creation of the layer icon thumbnails.
+ * The requests are coalesced per layer, so that a burst of changes
+ * (for example a brush stroke, which also updates the icons of all
+ * the parent groups) creates each thumbnail only once. The thumbnails
+ * are created one at a time in the background, and the finished
+ * ones are set on the EDT in batches.
+ */
+final class IconThumbnailScheduler {
+    // creates the thumbnails one at a time, so that
+    // they don't compete with the filters for the threads
+    private static final Executor executor = new SerialExecutor(ThreadPool.getExecutor());
+
+    // the requested layers in the order of their first request,
+    // with the GUI of the latest request; accessed only on the EDT
+    private static final Map<Layer, LayerGUI> requested = new LinkedHashMap<>();
+    private static boolean flushScheduled = false;
+
+    // the layers whose background task hasn't started yet. A new request
+    // for such a layer isn't queued again, because the task will
+    // use the layer's state at the time when it runs.
+    private static final Set<Layer> queued = ConcurrentHashMap.newKeySet();
+
+    // the thumbnails created in the background, waiting to be set on the EDT
+    private static final List<Result> finished = new ArrayList<>();
+    private static boolean deliveryScheduled = false;
+
+    private record Result(Layer layer, LayerGUI gui, BufferedImage thumb) {
+    }
+
+    private IconThumbnailScheduler() {
+        // should not be instantiated
+    }
+
+    /**
+     * Requests a new icon thumbnail for the given layer,
+     * which will be shown in the given GUI.
+     */
+    static void request(Layer layer, LayerGUI gui) {
+        assert calledOnEDT() : threadInfo();
+
+        requested.put(layer, gui);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            EventQueue.invokeLater(IconThumbnailScheduler::flush);
+        }
+    }
+
+    // runs after the events that made the requests were processed
+    private static void flush() {
+        assert calledOnEDT() : threadInfo();
+
+        List<Result> ready = new ArrayList<>();
+        for (Map.Entry<Layer, LayerGUI> entry : requested.entrySet()) {
+            Layer layer = entry.getKey();
+            LayerGUI gui = entry.getValue();
+            if (layer instanceof CompositeLayer) {
+                // created on the EDT, because it might start
+                // a smart filter, which shouldn't run concurrently
+                BufferedImage thumb = layer.createIconThumbnail();
+                if (thumb != null) {
+                    ready.add(new Result(layer, gui, thumb));
+                }
+            } else if (queued.add(layer)) {
+                executor.execute(() -> createInBackground(layer, gui));
+            }
+        }
+        requested.clear();
+        flushScheduled = false;
+
+        for (Result result : ready) {
+            result.gui().updateIconOnEDT(result.layer(), result.thumb());
+        }
+    }
+
+    private static void createInBackground(Layer layer, LayerGUI gui) {
+        // from now on a new request needs a new task
+        queued.remove(layer);
+
+        BufferedImage thumb = layer.createIconThumbnail();
+        assert thumb != null;
+        if (thumb == null) {
+            return;
+        }
+
+        synchronized (finished) {
+            finished.add(new Result(layer, gui, thumb));
+            if (!deliveryScheduled) {
+                deliveryScheduled = true;
+                EventQueue.invokeLater(IconThumbnailScheduler::deliver);
+            }
+        }
+    }
+
+    private static void deliver() {
+        List<Result> batch;
+        synchronized (finished) {
+            batch = new ArrayList<>(finished);
+            finished.clear();
+            deliveryScheduled = false;
+        }
+        for (Result result : batch) {
+            result.gui().updateIconOnEDT(result.layer(), result.thumb());
+        }
+    }
+}
@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serial;
+import java.lang.ref.WeakReference;
 import java.util.concurrent.CompletableFuture;
 
 import static java.awt.RenderingHints.KEY_INTERPOLATION;
@@ -257,7 +258,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
             setState(PREVIEW);
         }
         imageRefChanged();
-        holder.update(false);
+        updateContent(false);
     }
 
     @Override
@@ -382,7 +383,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
         setState(PREVIEW);
         imageRefChanged();
-        holder.update();
+        updateContent();
     }
 
     private void setImageWithSelection(BufferedImage newImage, boolean isUndoRedo) {
@@ -415,11 +416,29 @@ public class ImageLayer extends ContentLayer implements Drawable {
         BufferedImage prevImage = image;
         setImage(newImage);
 
-        History.add(new ImageEdit(editName, comp, this, prevImage, true));
+        History.add(ImageEdit.createAfterChange(editName, comp, this, prevImage, true));
         holder.update();
         updateIconImage();
     }
 
+    @Override
+    public void updateContent() {
+        updateContent(true);
+    }
+
+    /**
+     * Similar to {@link #update(boolean)}, but signals that only the
+     * pixels of this layer have been changed, which allows the
+     * composition to keep the flattened images of the other layers.
+     */
+    public void updateContent(boolean updateHistogram) {
+        if (isTopLevel()) {
+            comp.updateLayerContent(this, updateHistogram);
+        } else {
+            update(updateHistogram);
+        }
+    }
+
     @Override
     public void startPreviewing() {
         assert state == NORMAL : "state was " + state;
@@ -443,29 +462,40 @@ public class ImageLayer extends ContentLayer implements Drawable {
         assert state == PREVIEW || state == SHOW_ORIGINAL;
         assert previewImage != null;
 
+        FilterPreviews.endSession();
+
         setState(NORMAL);
 
         // so that layer mask transparency image is regenerated
         // from the real image after the previews
         imageRefChanged();
 
-        holder.update();
+        updateContent();
     }
 
     @Override
     public void onFilterDialogAccepted(String filterName) {
         assert state == PREVIEW || state == SHOW_ORIGINAL;
+
+        // the final preview might still be calculated in the background
+        FilterPreviews.finish(this);
         assert previewImage != null;
 
+        // Without a selection, the preview image is a new image,
+        // so the current image can be the backup without copying it.
+        BufferedImage backupImage = null;
         if (imageContentChanged) {
-            History.add(new ImageEdit(filterName, comp, this,
-                getSelectedSubImage(true), false));
+            backupImage = previewImage != image && !comp.hasSelection()
+                ? image
+                : getSelectedSubImage(true);
         }
 
         image = previewImage;
         imageRefChanged();
 
         if (imageContentChanged) {
+            History.add(ImageEdit.createAfterChange(filterName, comp, this,
+                backupImage, false));
             updateIconImage();
         }
 
@@ -473,7 +503,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
         setState(NORMAL);
 
         if (wasShowOriginal) {
-            holder.update();
+            updateContent();
         }
     }
 
@@ -521,7 +551,7 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
             if (shouldRefresh) {
                 imageRefChanged();
-                holder.update();
+                updateContent();
             }
         } else {
             imageContentChanged = true; // history will be necessary
@@ -565,14 +595,14 @@ public class ImageLayer extends ContentLayer implements Drawable {
         }
         assert imageForUndo != null;
 
-        var edit = new ImageEdit(filterName, comp, this,
+        var edit = ImageEdit.createAfterChange(filterName, comp, this,
             imageForUndo, false);
         History.add(edit);
 
         // otherwise the next filter run will take the old image source,
         // not the actual one
         filterSourceImage = null;
-        holder.update();
+        updateContent();
         updateIconImage();
     }
 
@@ -1029,6 +1059,51 @@ public class ImageLayer extends ContentLayer implements Drawable {
         }
     }
 
+    @Override
+    protected Object getContentCacheKey() {
+        if (tmpLayer != null || (Tools.isShapesDrawing() && isActive())) {
+            // the painted content differs from the image
+            return null;
+        }
+        return new ContentKey(getVisibleImage(), getTx(), getTy(),
+            comp, comp.getContentVersion(), getContentVersion());
+    }
+
+    // identifies the painted content of an image layer: in-place edits
+    // of the image are detected through the content versions. The image
+    // and the composition are only weakly referenced, so that a stale key
+    // doesn't keep them in memory after they were replaced or closed.
+    private record ContentKey(WeakReference<BufferedImage> imageRef, int imageHash,
+                              int tx, int ty, WeakReference<Composition> compRef,
+                              long compVersion, long layerVersion) {
+        ContentKey(BufferedImage image, int tx, int ty,
+                   Composition comp, long compVersion, long layerVersion) {
+            this(new WeakReference<>(image), System.identityHashCode(image),
+                tx, ty, new WeakReference<>(comp), compVersion, layerVersion);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            // a key whose image or composition was collected equals nothing
+            return o instanceof ContentKey other
+                && isSame(imageRef, other.imageRef)
+                && tx == other.tx && ty == other.ty
+                && isSame(compRef, other.compRef)
+                && compVersion == other.compVersion
+                && layerVersion == other.layerVersion;
+        }
+
+        private static boolean isSame(WeakReference<?> a, WeakReference<?> b) {
+            Object referent = a.get();
+            return referent != null && referent == b.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return imageHash;
+        }
+    }
+
     // called when the visible image's variable
     // points to a new reference
     protected void imageRefChanged() {
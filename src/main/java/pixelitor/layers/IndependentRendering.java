@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import pixelitor.Composition;
+import pixelitor.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Calculates the images of isolated subtrees of the layer tree
+ * (non-pass-through groups and smart objects) concurrently,
+ * before the layers are composited in stack order.
+ *
+ * The subtrees form the leaves of a simple render graph: they can be rendered
+ * in parallel only if they don't share smart object contents, because a shared
+ * content composition caches its composite image. The subtrees that conflict
+ * with an already scheduled one are left to the serial compositing.
+ */
+public final class IndependentRendering {
+    // the icon updates requested while the current thread prepares
+    // a subtree, or null if it isn't running a preparation
+    private static final ThreadLocal<List<Runnable>> deferredIconUpdates = new ThreadLocal<>();
+
+    private IndependentRendering() {
+        throw new AssertionError("utility class");
+    }
+
+    /**
+     * Prepares the cached images of the given layers, so that
+     * compositing them doesn't have to render any subtree.
+     */
+    public static void prepare(List<Layer> layers) {
+        if (ThreadPool.isPoolThread()) {
+            // already inside a parallel rendering
+            return;
+        }
+
+        List<Layer> candidates = new ArrayList<>();
+        for (Layer layer : layers) {
+            if (layer.isVisible()) {
+                layer.collectRenderPreparations(candidates);
+            }
+        }
+        if (candidates.size() < 2) {
+            return; // the serial compositing will render it
+        }
+
+        Set<Composition> usedContents = new HashSet<>();
+        List<Runnable> iconUpdates = Collections.synchronizedList(new ArrayList<>());
+        List<Runnable> tasks = new ArrayList<>();
+        for (Layer candidate : candidates) {
+            Set<Composition> contents = new HashSet<>();
+            collectContents(candidate, contents);
+            if (contents.stream().noneMatch(usedContents::contains)) {
+                usedContents.addAll(contents);
+                tasks.add(() -> prepareDeferringIcons(candidate, iconUpdates));
+            }
+        }
+        if (tasks.size() > 1) {
+            ThreadPool.runAll(tasks);
+            // the icons are updated on the calling thread, as in serial rendering
+            iconUpdates.forEach(Runnable::run);
+        }
+    }
+
+    private static void prepareDeferringIcons(Layer layer, List<Runnable> iconUpdates) {
+        List<Runnable> prevUpdates = deferredIconUpdates.get();
+        deferredIconUpdates.set(iconUpdates);
+        try {
+            layer.prepareRendering();
+        } finally {
+            deferredIconUpdates.set(prevUpdates);
+        }
+    }
+
+    /**
+     * Runs the given icon update, or if the current thread is preparing
+     * a subtree, postpones it until all preparations are finished.
+     */
+    static void runIconUpdate(Runnable iconUpdate) {
+        List<Runnable> iconUpdates = deferredIconUpdates.get();
+        if (iconUpdates == null) {
+            iconUpdate.run();
+        } else {
+            iconUpdates.add(iconUpdate);
+        }
+    }
+
+    // collects the smart object contents that could be rendered as part of the given layer
+    private static void collectContents(Layer layer, Set<Composition> contents) {
+        layer.forEachNestedLayer(nested -> {
+            if (nested instanceof SmartObject so && contents.add(so.getContent())) {
+                so.getContent().forEachTopLevelLayer(
+                    contentLayer -> collectContents(contentLayer, contents));
+            }
+        }, false);
+    }
+}
@@ -103,6 +103,13 @@ public abstract class Layer implements Serializable, Debuggable {
 
     private transient List<LayerListener> listeners;
 
+    // the content painted through the mask, created lazily
+    private transient MaskedImageCache maskedImageCache;
+
+    // incremented when the composition is notified that
+    // the pixels of this particular layer have changed
+    private transient long contentVersion;
+
     // unit tests use a different LayerUI implementation
     // by assigning a different UI factory
     public static Function<Layer, LayerUI> uiFactory = LayerGUI::new;
@@ -601,6 +608,7 @@ public abstract class Layer implements Serializable, Debuggable {
         View view = comp.getView();
         MaskViewMode prevMode = view.getMaskViewMode();
         mask = null;
+        releaseMaskedImage();
 
         ui.removeMaskIcon();
         Layers.maskDeleted(this); // notify global mask listeners
@@ -761,6 +769,55 @@ public abstract class Layer implements Serializable, Debuggable {
         return null;
     }
 
+    /**
+     * Adds this layer (or its nested layers) to the given list if it has
+     * an own image that must be calculated before it can be rendered,
+     * and the calculation doesn't depend on the other layers.
+     */
+    void collectRenderPreparations(List<Layer> candidates) {
+        // only isolated subtrees have such images
+    }
+
+    /**
+     * Calculates the image collected by {@link #collectRenderPreparations(List)}.
+     * It can be called on any thread, and the icon updates
+     * requested by it are run later, on the calling thread.
+     */
+    void prepareRendering() {
+        // only isolated subtrees have such images
+    }
+
+    /**
+     * Returns whether this layer can be rendered into a clipped region of
+     * the composite image. This isn't possible for adjustment layers and
+     * watermarking text layers, because they transform the whole composite.
+     */
+    public boolean supportsRegionRendering() {
+        return !isAdjustment;
+    }
+
+    /**
+     * Returns whether this layer can be composited onto an image that
+     * contains the already flattened layers above it, which is true
+     * for the normal blending mode, because it's associative.
+     */
+    public boolean canBeFlattenedSeparately() {
+        return blendingMode == BlendingMode.NORMAL && !isAdjustment;
+    }
+
+    /**
+     * Signals that only the given region (in image space,
+     * relative to the canvas) of this layer has been changed.
+     */
+    public void updateRegion(Rectangle region) {
+        if (isTopLevel()) {
+            comp.updateRegion(this, region);
+        } else {
+            // the cached images of the parent holders must be recalculated
+            update();
+        }
+    }
+
     /**
      * Paints the layer content on the given Graphics2D.
      * Called by non-adjustment layers.
@@ -771,21 +828,82 @@ public abstract class Layer implements Serializable, Debuggable {
 
     // paints the layer content applying its mask
     private void paintWithMask(Graphics2D g, boolean firstVisibleLayer) {
-        // 1. create the masked image
-        // TODO the masked image should be cached
-        var maskedImage = new BufferedImage(
-            comp.getCanvasWidth(), comp.getCanvasHeight(), TYPE_INT_ARGB);
-        Graphics2D mig = maskedImage.createGraphics();
-        paint(mig, firstVisibleLayer);
-        mig.setComposite(DstIn);
-        mig.drawImage(mask.getTransparencyImage(),
-            mask.getTx(), mask.getTy(), null);
-        mig.dispose();
+        // 1. create the masked image, or reuse it if nothing changed
+        MaskedImageKey cacheKey = createMaskedImageKey(firstVisibleLayer);
+        BufferedImage maskedImage = null;
+        if (cacheKey != null) {
+            if (maskedImageCache == null) {
+                maskedImageCache = new MaskedImageCache();
+            }
+            maskedImage = maskedImageCache.get(cacheKey);
+        }
+        if (maskedImage == null) {
+            maskedImage = new BufferedImage(
+                comp.getCanvasWidth(), comp.getCanvasHeight(), TYPE_INT_ARGB);
+            Graphics2D mig = maskedImage.createGraphics();
+            paint(mig, firstVisibleLayer);
+            mig.setComposite(DstIn);
+            mig.drawImage(mask.getTransparencyImage(),
+                mask.getTx(), mask.getTy(), null);
+            mig.dispose();
+
+            if (cacheKey != null) {
+                maskedImageCache.put(cacheKey, maskedImage);
+            }
+        }
 
         // 2. paint the masked image onto the graphics
         g.drawImage(maskedImage, 0, 0, null);
     }
 
+    // returns null if the masked image of this layer can't be cached
+    private MaskedImageKey createMaskedImageKey(boolean firstVisibleLayer) {
+        Object contentKey = getContentCacheKey();
+        if (contentKey == null) {
+            return null;
+        }
+        Object maskKey = mask.getContentCacheKey();
+        if (maskKey == null) {
+            return null;
+        }
+        return new MaskedImageKey(contentKey, maskKey,
+            comp.getCanvasWidth(), comp.getCanvasHeight(), firstVisibleLayer);
+    }
+
+    /**
+     * Signals that the pixels of this layer might have changed.
+     */
+    public void contentChanged() {
+        contentVersion++;
+    }
+
+    protected long getContentVersion() {
+        return contentVersion;
+    }
+
+    /**
+     * Returns an object that is equal to the previously returned ones
+     * only if the painted content of this layer didn't change since then,
+     * or null if such changes can't be tracked for this layer.
+     */
+    protected Object getContentCacheKey() {
+        return null;
+    }
+
+    /**
+     * Releases the cached masked image of this layer.
+     */
+    protected void releaseMaskedImage() {
+        if (maskedImageCache != null) {
+            maskedImageCache.release();
+        }
+    }
+
+    private record MaskedImageKey(Object contentKey, Object maskKey,
+                                  int canvasWidth, int canvasHeight,
+                                  boolean firstVisibleLayer) {
+    }
+
     /**
      * Applies the layer's effect to the given image.
      * Used by adjustment and watermarking text layers.
@@ -1049,8 +1167,9 @@ public abstract class Layer implements Serializable, Debuggable {
         // otherwise this method must be overridden
         assert hasRasterIcon();
 
-        if (ui != null) {
-            ui.updateLayerIconImageAsync(this);
+        LayerUI layerUI = ui;
+        if (layerUI != null) {
+            IndependentRendering.runIconUpdate(() -> layerUI.updateLayerIconImageAsync(this));
         }
         if (!isTopLevel()) {
             ((CompositeLayer) holder).updateIconImage();
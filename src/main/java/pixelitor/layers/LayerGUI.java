@@ -442,31 +442,10 @@ public class LayerGUI extends JToggleButton implements LayerUI {
         assert calledOnEDT() : threadInfo();
         assert layer.hasRasterIcon();
 
-        // the synchronous update avoids starting a filter twice
-        // TODO dubious design
-        boolean synchronousUpdate = layer instanceof CompositeLayer;
-
-        if (synchronousUpdate) {
-            BufferedImage thumb = layer.createIconThumbnail();
-            assert thumb != null;
-            if (thumb != null) {
-                updateIconOnEDT(layer, thumb);
-            }
-            return;
-        }
-
-        Runnable notEDT = () -> {
-            BufferedImage thumb = layer.createIconThumbnail();
-            assert thumb != null;
-            if (thumb != null) {
-                SwingUtilities.invokeLater(() -> updateIconOnEDT(layer, thumb));
-            }
-        };
-
-        new Thread(notEDT).start();
+        IconThumbnailScheduler.request(layer, this);
     }
 
-    private void updateIconOnEDT(Layer layer, BufferedImage thumb) {
+    void updateIconOnEDT(Layer layer, BufferedImage thumb) {
         assert calledOnEDT() : threadInfo();
         if (layer instanceof LayerMask mask) {
             if (!hasMaskIcon()) {
@@ -149,6 +149,51 @@ public class LayerGroup extends CompositeLayer {
         return currentComposite;
     }
 
+    @Override
+    public boolean supportsRegionRendering() {
+        if (!isPassThrough()) {
+            return true; // the cached image is simply painted
+        }
+        for (Layer layer : layers) {
+            if (layer.isVisible() && !layer.supportsRegionRendering()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean canBeFlattenedSeparately() {
+        if (!isPassThrough()) {
+            return super.canBeFlattenedSeparately();
+        }
+        for (Layer layer : layers) {
+            if (layer.isVisible() && !layer.canBeFlattenedSeparately()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    void collectRenderPreparations(List<Layer> candidates) {
+        if (isPassThrough()) {
+            for (Layer layer : layers) {
+                if (layer.isVisible()) {
+                    layer.collectRenderPreparations(candidates);
+                }
+            }
+        } else if (cachedImage == null) {
+            candidates.add(this);
+        }
+    }
+
+    @Override
+    void prepareRendering() {
+        // the icon is updated later, on the calling thread
+        cachedImage = ImageUtils.calcComposite(layers, comp.getCanvas());
+    }
+
     private BufferedImage renderPassThrough(Graphics2D g, BufferedImage currentComposite, boolean firstVisibleLayer) {
         // Apply the layers as if they were directly in the parent holder.
         // The algorithm is similar to ImageUtils.calcComposite(),
@@ -210,6 +255,9 @@ public class LayerGroup extends CompositeLayer {
     private BufferedImage getCachedImage() {
         if (cachedImage == null) {
             recalcCachedImage();
+        } else if (needsIconUpdate) { // it was calculated by prepareRendering()
+            updateIconImage();
+            needsIconUpdate = false;
         }
         return cachedImage;
     }
@@ -451,9 +499,10 @@ public class LayerGroup extends CompositeLayer {
         } else if (cachedImage != null) {
             thumb = createThumbnail(cachedImage, thumbSize, thumbCheckerBoardPainter);
         } else {
-            // isolated groups should always have a cached image
-            throw new IllegalStateException();
-//            thumb = ImageUtils.createCircleThumb(new Color(0, 0, 203));
+            // the cached image was discarded after the thumbnail
+            // was requested, postpone until it's recalculated
+            needsIconUpdate = true;
+            return null;
         }
 
         return thumb;
@@ -31,6 +31,7 @@ import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.IndexColorModel;
@@ -209,6 +210,17 @@ public class LayerMask extends ImageLayer {
         Tools.SHAPES.paintOverActiveLayer(g);
     }
 
+    @Override
+    protected Object getContentCacheKey() {
+        if (owner.isMaskEditing() && Tools.isShapesDrawing()) {
+            // see getTransparencyImage()
+            return null;
+        }
+        // the in-place edits of the mask are tracked by
+        // the content version of the owner, which is also in the key
+        return super.getContentCacheKey();
+    }
+
     /**
      * Returns an image representing the mask's transparency,
      * potentially including a preview of active shape tool drawing.
@@ -280,10 +292,32 @@ public class LayerMask extends ImageLayer {
         holder.update(updateHistogram);
     }
 
+    @Override
+    public void updateRegion(Rectangle region) {
+        if (owner instanceof SmartFilter || !owner.isTopLevel()) {
+            // the downstream filters or the parent
+            // group caches could change any pixel
+            update();
+        } else {
+            comp.updateRegion(owner, region);
+        }
+    }
+
+    @Override
+    public void updateContent(boolean updateHistogram) {
+        if (owner instanceof SmartFilter || !owner.isTopLevel()) {
+            update(updateHistogram);
+        } else {
+            comp.updateLayerContent(owner, updateHistogram);
+        }
+    }
+
     @Override
     public void repaintRegion(PPoint start, PPoint end, double thickness) {
         if (owner instanceof SmartFilter sf) {
             sf.layerLevelSettingsChanged(false);
+            // the downstream filters could change any pixel
+            comp.invalidateImageCache();
         }
         comp.repaintRegion(start, end, thickness);
     }
@@ -292,6 +326,7 @@ public class LayerMask extends ImageLayer {
     public void repaintRegion(PRectangle area) {
         if (owner instanceof SmartFilter sf) {
             sf.layerLevelSettingsChanged(false);
+            comp.invalidateImageCache();
         }
         comp.repaintRegion(area);
     }
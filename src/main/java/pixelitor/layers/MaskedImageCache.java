@@ -0,0 +1,113 @@
+/*
+ * Copyright 2025 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Caches the result of painting a layer's content through its mask.
+ * An image is reused only as long as its key is equal to the key
+ * of the current layer state. The images are softly referenced,
+ * and their total size is limited by a memory budget shared by all
+ * layers, which releases the least recently used images first.
+ */
+class MaskedImageCache {
+    private static final long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 8;
+
+    // all caches holding an image, in the order of their last use
+    private static final Set<MaskedImageCache> usedCaches = new LinkedHashSet<>();
+    private static long usedBytes = 0;
+
+    private Object key;
+    private SoftReference<BufferedImage> imageRef;
+    private long numBytes;
+
+    /**
+     * Returns the cached image if it was created for the given key, or null.
+     */
+    BufferedImage get(Object key) {
+        synchronized (usedCaches) {
+            if (imageRef == null || !this.key.equals(key)) {
+                return null;
+            }
+            BufferedImage image = imageRef.get();
+            if (image == null) { // released by the garbage collector
+                release();
+                return null;
+            }
+
+            // move to the end, because it was used most recently
+            usedCaches.remove(this);
+            usedCaches.add(this);
+            return image;
+        }
+    }
+
+    /**
+     * Stores the given image for the given key, releasing other
+     * cached images if necessary to stay within the memory budget.
+     */
+    void put(Object key, BufferedImage image) {
+        long imageBytes = 4L * image.getWidth() * image.getHeight();
+        synchronized (usedCaches) {
+            release();
+            if (imageBytes > MEMORY_BUDGET) {
+                return;
+            }
+
+            this.key = key;
+            imageRef = new SoftReference<>(image);
+            numBytes = imageBytes;
+            usedBytes += imageBytes;
+            usedCaches.add(this);
+
+            Iterator<MaskedImageCache> it = usedCaches.iterator();
+            while (usedBytes > MEMORY_BUDGET && it.hasNext()) {
+                MaskedImageCache lru = it.next();
+                if (lru != this) {
+                    it.remove();
+                    lru.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the cached image, if there is one.
+     */
+    void release() {
+        synchronized (usedCaches) {
+            if (imageRef != null) {
+                usedCaches.remove(this);
+                clear();
+            }
+        }
+    }
+
+    // must be called while holding the lock, after removing from the set
+    private void clear() {
+        usedBytes -= numBytes;
+        numBytes = 0;
+        imageRef = null;
+        key = null;
+    }
+}
@@ -20,7 +20,9 @@ package pixelitor.layers;
 import pixelitor.Composition;
 import pixelitor.CopyType;
 import pixelitor.filters.Filter;
+import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.FilterWithGUI;
+import pixelitor.filters.gui.UserPreset;
 import pixelitor.filters.util.FilterAction;
 import pixelitor.filters.util.FilterSearchPanel;
 import pixelitor.gui.utils.GUIUtils;
@@ -49,7 +51,9 @@ import java.util.stream.Stream;
  * because their output is cached inside the smart object.
  * Additionally, smart filters also cache their own output,
  * so that if the filter settings are changed, only the filters
- * downstream from that filter will be rerun.
+ * downstream from that filter will be rerun. The cached output
+ * is valid only for the filter settings it was calculated with,
+ * see {@link SmartFilterCache}.
  */
 public class SmartFilter extends AdjustmentLayer implements ImageSource {
     @Serial
@@ -59,7 +63,7 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
     // smart filter in the chain or the composition if this is the first
     private ImageSource imageSource;
 
-    private transient BufferedImage outputCache;
+    private transient SmartFilterCache outputCache = new SmartFilterCache();
     private SmartObject smartObject; // the parent
 
     // the next smart filter in the chain (null if this is the last filter)
@@ -82,13 +86,18 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
         this.smartObject = orig.smartObject;
 
         holder = smartObject;
-        outputCache = orig.outputCache; // safe to share
+
+        BufferedImage origOutput = orig.outputCache.peek();
+        if (origOutput != null) {
+            // safe to share, because the filter settings are the same
+            outputCache.put(calcFingerprint(), origOutput);
+        }
     }
 
     @Serial
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         // defaults for transient fields
-        outputCache = null;
+        outputCache = new SmartFilterCache();
 
         in.defaultReadObject();
 
@@ -111,12 +120,19 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
 
     @Override
     public BufferedImage getImage() {
-        BufferedImage prevImage = imageSource.getImage();
         if (!isVisible()) {
-            return prevImage;
+            return imageSource.getImage();
         }
 
-        BufferedImage transformed = transformImage(prevImage);
+        // the input is requested only if it's really needed, so that
+        // the released images of the upstream filters aren't recalculated
+        BufferedImage prevImage = null;
+        String fingerprint = calcFingerprint();
+        BufferedImage transformed = outputCache.get(fingerprint);
+        if (transformed == null) {
+            prevImage = imageSource.getImage();
+            transformed = createOutputCache(prevImage, fingerprint);
+        }
 
         if (usesMask()) {
             // copy, because otherwise different masks
@@ -128,6 +144,9 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
         if (!usesMask() && isNormalAndOpaque()) {
             return transformed;
         } else {
+            if (prevImage == null) {
+                prevImage = imageSource.getImage();
+            }
             // Unlike an adjustment layer, this makes sure that prevImage
             // (which could be cached in the image source) isn't modified.
             BufferedImage copy = ImageUtils.copyImage(prevImage);
@@ -142,26 +161,71 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
 
     @Override
     public BufferedImage transformImage(BufferedImage src) {
-        if (outputCache != null) {
-            return outputCache;
+        String fingerprint = calcFingerprint();
+        BufferedImage cached = outputCache.get(fingerprint);
+        if (cached != null) {
+            return cached;
         }
         assert src != null;
-        createOutputCache(src);
-
-        return outputCache;
+        return createOutputCache(src, fingerprint);
     }
 
     public void evaluateNow() {
-        if (outputCache == null) {
-            createOutputCache(imageSource.getImage());
+        invalidateIfChanged();
+        if (outputCache.peek() == null) {
+            createOutputCache(imageSource.getImage(), calcFingerprint());
         }
     }
 
-    private void createOutputCache(BufferedImage src) {
-        outputCache = filter.transformImage(src);
-        if (outputCache == src) {
-            outputCache = ImageUtils.copyImage(outputCache);
+    private BufferedImage createOutputCache(BufferedImage src, String fingerprint) {
+        BufferedImage output = filter.transformImage(src);
+        if (output == src) {
+            output = ImageUtils.copyImage(output);
+        }
+        outputCache.put(fingerprint, output);
+        return output;
+    }
+
+    /**
+     * Returns a fingerprint of the current filter settings, which determine
+     * the output for a given input, or null if the settings can't be captured.
+     */
+    private String calcFingerprint() {
+        String className = filter.getClass().getName();
+        if (filter instanceof ParametrizedFilter pf) {
+            // also the filters without a preset menu can have settings
+            UserPreset preset = new UserPreset("", null);
+            pf.getParamSet().saveStateTo(preset);
+            return className + "\n" + preset.saveToString();
+        }
+        if (!hasFingerprint()) {
+            return null;
         }
+        // filters without a GUI have no settings
+        return className;
+    }
+
+    /**
+     * Returns true if the settings changes of the filter are detected
+     * through the fingerprint of the cached output. Otherwise the
+     * cache must be explicitly invalidated after each change.
+     */
+    private boolean hasFingerprint() {
+        return filter instanceof ParametrizedFilter || !(filter instanceof FilterWithGUI);
+    }
+
+    /**
+     * Invalidates the cache of this filter and all subsequent filters in the
+     * chain if the filter settings changed since the output was calculated,
+     * even if the output was already released to stay within the memory budget.
+     * Returns true if the chain was invalidated.
+     */
+    public boolean invalidateIfChanged() {
+        if (outputCache.isStale(calcFingerprint())) {
+            invalidateChain();
+            return true;
+        }
+        return false;
     }
 
     @Override
@@ -201,9 +265,15 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
 
     @Override
     public void setShowOriginal(boolean b) {
-        // otherwise the caching overrides the effect
-        // of swapping the filter settings in the superclass
-        invalidateAll();
+        if (hasFingerprint()) {
+            // the swapped filter settings are detected through the fingerprint
+            // of the cached output when the smart object recalculates its image
+            smartObject.invalidateImageCache();
+        } else {
+            // otherwise the caching overrides the effect
+            // of swapping the filter settings in the superclass
+            invalidateAll();
+        }
 
         super.setShowOriginal(b);
     }
@@ -223,10 +293,7 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
      * Clears the cached filtered image, forcing recomputation on next access.
      */
     public void invalidateCache() {
-        if (outputCache != null) {
-            outputCache.flush();
-            outputCache = null;
-        }
+        outputCache.invalidate();
     }
 
     @Override
@@ -277,6 +344,15 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
 
     @Override
     public void onFilterDialogCanceled() {
+        if (hasFingerprint()) {
+            // If this dialog session changed the filter (and therefore the image),
+            // then the restored settings won't match the cached output, and only
+            // this and the subsequent filters will be recalculated.
+            smartObject.invalidateImageCache();
+            super.onFilterDialogCanceled();
+            return;
+        }
+
         boolean changed = filterSettingsChanged();
         super.onFilterDialogCanceled();
         if (changed) {
@@ -289,15 +365,21 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
     @Override
     public void startPreview(Filter filter, boolean firstPreview, Component busyCursorTarget) {
         if (!firstPreview) {
-            invalidateAll();
+            if (hasFingerprint()) {
+                smartObject.invalidateImageCache();
+            } else {
+                invalidateAll();
+            }
         }
-        if (outputCache != null) {
+        invalidateIfChanged();
+        if (outputCache.peek() == null) {
+            GUIUtils.runWithBusyCursor(() ->
+                    createOutputCache(imageSource.getImage(), calcFingerprint()),
+                busyCursorTarget);
+        } else if (firstPreview) {
             // the painting thread already calculated it
             return;
         }
-        GUIUtils.runWithBusyCursor(() ->
-                createOutputCache(imageSource.getImage()),
-            busyCursorTarget);
         holder.update();
     }
 
@@ -414,11 +496,18 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
     }
 
     public boolean hasCachedImage() {
-        return outputCache != null;
+        return outputCache.peek() != null;
     }
 
     public BufferedImage getOutputCache() {
-        return outputCache;
+        return outputCache.peek();
+    }
+
+    /**
+     * Returns the hit and miss counts of the output caches of all smart filters.
+     */
+    public static String getCacheStatistics() {
+        return SmartFilterCache.getStatistics();
     }
 
     @Override
@@ -458,7 +547,7 @@ public class SmartFilter extends AdjustmentLayer implements ImageSource {
         node.addString("imageSource class", imageSource.getClass().getSimpleName());
         node.add(imageSource.createDebugNode("imageSource"));
         node.addString("next", String.valueOf(next));
-        node.addBoolean("cached", (outputCache != null));
+        node.addBoolean("cached", hasCachedImage());
 
         return node;
     }
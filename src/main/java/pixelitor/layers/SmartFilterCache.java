@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The cached output image of a {@link SmartFilter}. The image is valid only
+ * for the filter settings it was calculated with, which are identified by a
+ * fingerprint of the filter state, so that after a settings change only the
+ * filters starting from the first changed one have to be rerun.
+ * The images are softly referenced, and their total size is limited by a
+ * memory budget shared by all smart filters, which releases the least
+ * recently used images first.
+ */
+class SmartFilterCache {
+    // all caches holding an image, in the order of their last use
+    private static final Set<SmartFilterCache> usedCaches = new LinkedHashSet<>();
+    private static long usedBytes = 0;
+    private static long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+    private static long numHits = 0;
+    private static long numMisses = 0;
+
+    // The fingerprint of the filter settings for which the image was calculated.
+    // It's kept even if the image is released because of the memory budget,
+    // because the downstream images still depend on these settings. It's null
+    // if the settings can't be fingerprinted, and then the image is valid
+    // until it's explicitly invalidated.
+    private String fingerprint;
+
+    private SoftReference<BufferedImage> imageRef;
+    private long numBytes;
+
+    /**
+     * Changes the memory budget shared by all caches, and returns the previous
+     * one. The images above the new budget are released only by the next put.
+     */
+    static long setMemoryBudget(long newBudget) {
+        synchronized (usedCaches) {
+            long prevBudget = memoryBudget;
+            memoryBudget = newBudget;
+            return prevBudget;
+        }
+    }
+
+    /**
+     * Returns the cached image if it was calculated for the given fingerprint, or null.
+     */
+    BufferedImage get(String fingerprint) {
+        synchronized (usedCaches) {
+            BufferedImage image = peek();
+            if (image == null || !Objects.equals(fingerprint, this.fingerprint)) {
+                numMisses++;
+                return null;
+            }
+            numHits++;
+
+            // move to the end, because it was used most recently
+            usedCaches.remove(this);
+            usedCaches.add(this);
+            return image;
+        }
+    }
+
+    /**
+     * Returns the cached image without updating the statistics, or null.
+     */
+    BufferedImage peek() {
+        synchronized (usedCaches) {
+            if (imageRef == null) {
+                return null;
+            }
+            BufferedImage image = imageRef.get();
+            if (image == null) { // released by the garbage collector
+                usedCaches.remove(this);
+                clearImage();
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Returns true if the cached (or already released) image was
+     * calculated for filter settings other than the given ones.
+     */
+    boolean isStale(String fingerprint) {
+        synchronized (usedCaches) {
+            return this.fingerprint != null && !this.fingerprint.equals(fingerprint);
+        }
+    }
+
+    /**
+     * Stores the given image for the given fingerprint, releasing other
+     * cached images if necessary to stay within the memory budget.
+     */
+    void put(String fingerprint, BufferedImage image) {
+        long imageBytes = 4L * image.getWidth() * image.getHeight();
+        synchronized (usedCaches) {
+            invalidate();
+            this.fingerprint = fingerprint;
+            if (imageBytes > memoryBudget) {
+                return;
+            }
+
+            imageRef = new SoftReference<>(image);
+            numBytes = imageBytes;
+            usedBytes += imageBytes;
+            usedCaches.add(this);
+
+            Iterator<SmartFilterCache> it = usedCaches.iterator();
+            while (usedBytes > memoryBudget && it.hasNext()) {
+                SmartFilterCache lru = it.next();
+                if (lru != this) {
+                    it.remove();
+                    lru.clearImage();
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the cached image and forgets the settings it was calculated for.
+     */
+    void invalidate() {
+        synchronized (usedCaches) {
+            if (imageRef != null) {
+                usedCaches.remove(this);
+                imageRef.clear();
+                clearImage();
+            }
+            fingerprint = null;
+        }
+    }
+
+    // must be called while holding the lock, after removing from the set
+    private void clearImage() {
+        usedBytes -= numBytes;
+        numBytes = 0;
+        imageRef = null;
+    }
+
+    static long getNumHits() {
+        synchronized (usedCaches) {
+            return numHits;
+        }
+    }
+
+    static long getNumMisses() {
+        synchronized (usedCaches) {
+            return numMisses;
+        }
+    }
+
+    static long getUsedBytes() {
+        synchronized (usedCaches) {
+            return usedBytes;
+        }
+    }
+
+    /**
+     * Returns a short summary of the global cache statistics.
+     */
+    static String getStatistics() {
+        synchronized (usedCaches) {
+            return "%d hits, %d misses, %d cached images, %d MB".formatted(
+                numHits, numMisses, usedCaches.size(), usedBytes / (1024 * 1024));
+        }
+    }
+}
@@ -309,6 +309,13 @@ public class SmartObject extends CompositeLayer {
     }
 
     private void recalculateImage() {
+        // rerun only the filters starting from the first one with changed settings
+        for (SmartFilter filter : filters) {
+            if (filter.invalidateIfChanged()) {
+                break;
+            }
+        }
+
         image = filters.isEmpty()
             ? baseSource.getImage()
             : filters.getLast().getImage();
@@ -366,15 +373,28 @@ public class SmartObject extends CompositeLayer {
     public BufferedImage getVisibleImage() {
         if (imageNeedsRefresh) {
             recalculateImage();
-
-            if (iconImageNeedsRefresh) {
-                updateIconImage();
-                iconImageNeedsRefresh = false;
-            }
+        }
+        // also checked if the image was calculated by prepareRendering()
+        if (iconImageNeedsRefresh) {
+            updateIconImage();
+            iconImageNeedsRefresh = false;
         }
         return image;
     }
 
+    @Override
+    void collectRenderPreparations(List<Layer> candidates) {
+        if (imageNeedsRefresh) {
+            candidates.add(this);
+        }
+    }
+
+    @Override
+    void prepareRendering() {
+        // the icon is updated later, on the calling thread
+        recalculateImage();
+    }
+
     @Override
     protected String getRasterizedName() {
         return Utils.removePrefix(name, NAME_PREFIX);
@@ -1171,6 +1191,7 @@ public class SmartObject extends CompositeLayer {
         for (SmartFilter filter : filters) {
             node.add(filter.createDebugNode("smart filter"));
         }
+        node.addString("smart filter caches", SmartFilter.getCacheStatistics());
         if (imageTransformer != null) {
             node.add(imageTransformer.createDebugNode("imageTransformer"));
         }
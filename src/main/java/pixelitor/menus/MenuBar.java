@@ -1036,6 +1036,7 @@ public class MenuBar extends JMenuBar {
         PMenu sub = new PMenu(i18n.getString("noise"));
 
         sub.addFilter(Kuwahara.NAME, Kuwahara::new);
+        sub.addFilter(Median.NAME, Median::new);
 
         String reduceNoiseFilterName = "Reduce Single Pixel Noise";
         sub.addForwardingFilter(reduceNoiseFilterName,
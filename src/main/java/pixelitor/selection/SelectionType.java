@@ -17,25 +17,22 @@
 
 package pixelitor.selection;
 
-import pixelitor.Composition;
-import pixelitor.gui.View;
-import pixelitor.layers.Drawable;
 import pixelitor.tools.Tools;
 import pixelitor.tools.util.Drag;
 import pixelitor.tools.util.PMouseEvent;
+import pixelitor.utils.FloodFill;
 import pixelitor.utils.ImageUtils;
 
-import java.awt.Color;
-import java.awt.Point;
 import java.awt.Shape;
 import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.util.Stack;
+import java.util.function.IntPredicate;
 
-import static pixelitor.utils.ImageUtils.isGrayscale;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
 
 /**
  * The different ways a selection shape can be created or updated interactively.
@@ -136,149 +133,37 @@ public enum SelectionType {
 
         /**
          * Selects contiguous pixels within a color tolerance using a scanline fill algorithm.
+         * The colors are taken from the composite image, because that's what the user sees.
          */
         private static Area selectPixelsInColorRange(PMouseEvent pm) {
-            Area selectedArea = new Area();
+            BufferedImage img = pm.getComp().getCompositeImage();
+            int width = img.getWidth();
+            int height = img.getHeight();
 
-            int imX = (int) pm.getImX();
-            int imY = (int) pm.getImY();
-
-            Composition comp = pm.getComp();
-            Drawable dr = comp.getActiveDrawableOrThrow();
-            BufferedImage image = dr.getImage();
-            int imgHeight = image.getHeight();
-            int imgWidth = image.getWidth();
-
-            // adjust click coordinates to be relative to the drawable's image
-            int x = imX - dr.getTx();
-            int y = imY - dr.getTy();
-
-            // check if the click is outside the drawable's bounds
-            if (x < 0 || x >= imgWidth || y < 0 || y >= imgHeight) {
+            int x = (int) pm.getImX();
+            int y = (int) pm.getImY();
+            if (x < 0 || x >= width || y < 0 || y >= height) {
                 return new Area();
             }
 
-            int colorTolerance = Tools.MAGIC_WAND.getTolerance();
-
-            boolean hasSelection = comp.hasSelection();
-            boolean grayScale = isGrayscale(image);
-
-            // TODO optionally we should use the composite image
-            //   for color picking, as that's what the user sees
-            BufferedImage workingImage;
-            if (grayScale) {
-                workingImage = ImageUtils.toSysCompatibleImage(image);
-            } else if (hasSelection) {
-                workingImage = ImageUtils.copyImage(image);
+            int tolerance = Tools.MAGIC_WAND.getTolerance();
+            int rgbAtMouse = img.getRGB(x, y);
+
+            IntPredicate inRange;
+            int type = img.getType();
+            if (type == TYPE_INT_ARGB) {
+                int[] pixels = ImageUtils.getPixels(img);
+                inRange = i -> ImageUtils.isSimilar(pixels[i], rgbAtMouse, tolerance);
+            } else if (type == TYPE_INT_ARGB_PRE) {
+                int[] pixels = ImageUtils.getPixels(img);
+                inRange = i -> ImageUtils.isSimilar(
+                    ImageUtils.unPremultiply(pixels[i]), rgbAtMouse, tolerance);
             } else {
-                workingImage = image;
-            }
-
-            // tracks pixels already processed or added to the selection
-            boolean [][] visited = new boolean[workingImage.getWidth()][workingImage.getHeight()];
-
-            int targetColor = getColorAtPoint(new Point(x, y), pm);
-
-            int finalX = x;
-            int finalY = y;
-
-            selectArea(workingImage, finalX, finalY, colorTolerance, targetColor, selectedArea, pm, visited, 1);
-            selectArea(workingImage, finalX, finalY, colorTolerance, targetColor, selectedArea, pm, visited, -1);
-
-            return selectedArea;
-        }
-
-        private static void selectArea(BufferedImage img, int x, int y, int tolerance,
-                                       int rgbAtMouse, Area selectedArea, PMouseEvent pm,
-                                       boolean[][] visited, int yOffset) {
-
-            Stack<Point> pixelsToProcess = new Stack<>();
-            pixelsToProcess.push(new Point(x, y));
-
-            while (!pixelsToProcess.isEmpty()) {
-                Point currentPixel = pixelsToProcess.pop();
-
-                int startX = currentPixel.x;
-                int startY = currentPixel.y;
-
-                if (canBeSelected(currentPixel, img, rgbAtMouse, tolerance, visited, pm)) {
-
-                    int leftX = walkDirection(currentPixel, img, rgbAtMouse, tolerance, visited, -1, pixelsToProcess, pm); // Walk left
-                    int lineEndX = walkDirection(currentPixel, img, rgbAtMouse, tolerance, visited, 1, pixelsToProcess, pm); // Walk right
-
-                    // Create an area based on the line segment
-                    int lineStartX = leftX + 1;
-                    int lineLength = lineEndX - lineStartX;
-
-                    if (lineLength > 0) {
-                        Area lineSegment = new Area(new Rectangle2D.Double(lineStartX, startY, lineLength, 1));
-                        selectedArea.add(lineSegment);
-                    }
-
-                    pixelsToProcess.push(new Point(startX, startY + yOffset));
-                }
+                int[] pixels = img.getRGB(0, 0, width, height, null, 0, width);
+                inRange = i -> ImageUtils.isSimilar(pixels[i], rgbAtMouse, tolerance);
             }
-        }
 
-        private static int walkDirection(Point currentPixel, BufferedImage img, int rgbAtMouse, int tolerance, boolean[][] visited,
-                                         int xStep, Stack<Point> pixelsToProcess, PMouseEvent pm) {
-
-            int startX = currentPixel.x;
-            int startY = currentPixel.y;
-            int currentX = startX + xStep;
-
-            while (canBeSelected(new Point(currentX, startY), img, rgbAtMouse, tolerance, visited, pm)) {
-                visited[currentX][startY] = true;
-
-                Point pointAbove = new Point(currentX, startY - 1);
-                boolean canBeSelectedAbove = canBeSelected(pointAbove, img, rgbAtMouse, tolerance, visited, pm);
-
-                Point pointBelow = new Point(currentX, startY + 1);
-                boolean canBeSelectedBelow = canBeSelected(pointBelow, img, rgbAtMouse, tolerance, visited, pm);
-
-                selectPixelIfPossible(canBeSelectedAbove, pixelsToProcess, pointAbove);
-                selectPixelIfPossible(canBeSelectedBelow, pixelsToProcess, pointBelow);
-
-                currentX += xStep;
-            }
-            return currentX;
-        }
-
-        private static void selectPixelIfPossible(boolean canBeSelected, Stack<Point> pixelsToProcess, Point pointToSelect) {
-            if (canBeSelected) {
-                pixelsToProcess.push(pointToSelect);
-            }
-        }
-
-        private static boolean canBeSelected(Point currentPixel, BufferedImage img,
-                                             int rgbAtMouse, int tolerance, boolean[][] visited, PMouseEvent pm) {
-            int imgHeight = img.getHeight();
-            int imgWidth = img.getWidth();
-
-            int currentX = currentPixel.x;
-            int currentY = currentPixel.y;
-
-            int targetColor = getColorAtPoint(currentPixel, pm);
-
-            return currentX >= 0 && currentX < imgWidth && currentY >= 0 && currentY < imgHeight &&
-                ImageUtils.isSimilar(rgbAtMouse, targetColor, tolerance) &&
-                !visited[currentX][currentY];
-        }
-
-        private static int getColorAtPoint(Point p, PMouseEvent pm) {
-            int x = p.x;
-            int y = p.y;
-
-            View view = pm.getView();
-            BufferedImage img;
-            Composition comp = view.getComp();
-            img = comp.getCompositeImage();
-
-            if (x >= 0 && x < img.getWidth() && y >= 0 && y < img.getHeight()) {
-                return img.getRGB(x, y);
-            } else {
-                return Color.BLACK.getRGB();
-            }
+            return FloodFill.fill(width, height, x, y, inRange).toShape(0, 0);
         }
     };
 
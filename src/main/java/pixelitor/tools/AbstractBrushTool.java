@@ -382,23 +382,27 @@ public abstract class AbstractBrushTool extends Tool {
 
     private void finishBrushStroke(Drawable dr) {
         brush.finishBrushStroke();
-        addBrushStrokeToHistory(dr);
+
+        double maxBrushRadius = brush.getMaxEffectiveRadius();
+        var affectedRect = affectedArea.toRectangle(maxBrushRadius);
+        assert !affectedRect.isEmpty() : "brush radius = " + maxBrushRadius
+            + ", affected area = " + affectedArea;
+
+        // the history edit translates its rectangle
+        addBrushStrokeToHistory(dr, new Rectangle(affectedRect));
 
         assert brushContext != null;
         if (brushContext != null) {
-            brushContext.finish(dr);
+            // the margin covers the rounding of the affected area
+            affectedRect.grow(2, 2);
+            brushContext.finish(dr, affectedRect);
         }
         brushContext = null;
     }
 
-    private void addBrushStrokeToHistory(Drawable dr) {
+    private void addBrushStrokeToHistory(Drawable dr, Rectangle affectedRect) {
         var originalImage = drawTarget.getOriginalImage(dr, this);
 
-        double maxBrushRadius = brush.getMaxEffectiveRadius();
-        var affectedRect = affectedArea.toRectangle(maxBrushRadius);
-        assert !affectedRect.isEmpty() : "brush radius = " + maxBrushRadius
-            + ", affected area = " + affectedArea;
-
         var imageEdit = PartialImageEdit.create(
             affectedRect, originalImage, dr, false, getName());
         if (imageEdit != null) {
@@ -26,6 +26,7 @@ import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 
 import static java.awt.AlphaComposite.DST_OUT;
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
@@ -78,14 +79,15 @@ public class BrushContext {
 
     /**
      * Disposes graphics resources and finalizes the drawing on the target drawable.
+     * The affected region is relative to the canvas.
      */
-    public void finish(Drawable dr) {
+    public void finish(Drawable dr, Rectangle affectedRegion) {
         assert this.dr == dr;
 
         graphics.dispose();
 
         drawTarget.finishBrushStroke(dr);
-        dr.update();
+        dr.updateRegion(affectedRegion);
         dr.updateIconImage();
     }
 }
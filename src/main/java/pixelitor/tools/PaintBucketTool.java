@@ -27,6 +27,8 @@ import pixelitor.history.PartialImageEdit;
 import pixelitor.layers.Drawable;
 import pixelitor.tools.util.PMouseEvent;
 import pixelitor.utils.Cursors;
+import pixelitor.utils.FloodFill;
+import pixelitor.utils.FloodFill.Spans;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.debug.DebugNode;
 
@@ -34,8 +36,6 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.ResourceBundle;
 
 import static java.awt.BasicStroke.CAP_BUTT;
@@ -158,7 +158,7 @@ public class PaintBucketTool extends Tool {
 
         int tolerance = colorTolerance.getValue();
         Rectangle modifiedArea = switch (getSelectedAction()) {
-            case LOCAL -> scanlineFloodFill(workingImage,
+            case LOCAL -> floodFill(workingImage,
                 x, y, tolerance, rgbAtMouse, fillRGB);
             case GLOBAL -> globalReplaceColor(workingImage,
                 tolerance, rgbAtMouse, fillRGB);
@@ -197,118 +197,20 @@ public class PaintBucketTool extends Tool {
     }
 
     /**
-     * Uses the "Scanline fill" algorithm described at
-     * http://en.wikipedia.org/wiki/Flood_fill
+     * Replaces the color of the pixels that are connected to the
+     * clicked pixel and are similar to it, and returns the replaced area.
      */
-    private static Rectangle scanlineFloodFill(BufferedImage img,
-                                               int x, int y, int tolerance,
-                                               int rgbAtMouse, int newRGB) {
-        int minX = x;
-        int maxX = x;
-        int minY = y;
-        int maxY = y;
-        int imgHeight = img.getHeight();
+    private static Rectangle floodFill(BufferedImage img,
+                                       int x, int y, int tolerance,
+                                       int rgbAtMouse, int newRGB) {
         int imgWidth = img.getWidth();
-
         int[] pixels = ImageUtils.getPixels(img);
 
-        boolean[] checkedPixels = new boolean[pixels.length];
-
-        // the double-ended queue is used as a simple LIFO stack
-        Deque<Point> stack = new ArrayDeque<>();
-        stack.push(new Point(x, y));
-
-        while (!stack.isEmpty()) {
-            Point p = stack.pop();
-
-            x = p.x;
-            y = p.y;
-
-            // find the last replaceable point to the left
-            int scanlineMinX = x - 1;
-            int offset = y * imgWidth;
-            while (scanlineMinX >= 0
-                && ImageUtils.isSimilar(pixels[scanlineMinX + offset], rgbAtMouse, tolerance)) {
-                scanlineMinX--;
-            }
-            scanlineMinX++;
-
-            // find the last replaceable point to the right
-            int scanlineMaxX = x + 1;
-            while (scanlineMaxX < img.getWidth()
-                && ImageUtils.isSimilar(pixels[scanlineMaxX + offset], rgbAtMouse, tolerance)) {
-                scanlineMaxX++;
-            }
-            scanlineMaxX--;
-
-            // set the minX, maxX, minY, maxY variables
-            // that will be used to calculate the modified area
-            if (scanlineMinX < minX) {
-                minX = scanlineMinX;
-            }
-            if (scanlineMaxX > maxX) {
-                maxX = scanlineMaxX;
-            }
-            if (y > maxY) {
-                maxY = y;
-            } else if (y < minY) {
-                minY = y;
-            }
-
-            // draw a line between (scanlineMinX, y) and (scanlineMaxX, y)
-            for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                int index = i + offset;
-                pixels[index] = newRGB;
-                checkedPixels[index] = true;
-            }
-
-            // look upwards for new points to be inspected later
-            if (y > 0) {
-                // if there are multiple pixels to be replaced
-                // that are horizontal neighbours,
-                // only one of them has to be inspected later
-                boolean pointsInLine = false;
-
-                int upOffset = (y - 1) * imgWidth;
-
-                for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                    int upIndex = i + upOffset;
-                    boolean shouldBeReplaced = !checkedPixels[upIndex]
-                        && ImageUtils.isSimilar(pixels[upIndex], rgbAtMouse, tolerance);
-
-                    if (!pointsInLine && shouldBeReplaced) {
-                        Point inspectLater = new Point(i, y - 1);
-                        stack.push(inspectLater);
-                        pointsInLine = true;
-                    } else if (pointsInLine && !shouldBeReplaced) {
-                        pointsInLine = false;
-                    }
-                }
-            }
-
-            // look downwards for new points to be inspected later
-            if (y < imgHeight - 1) {
-                boolean pointsInLine = false;
-                int downOffset = (y + 1) * imgWidth;
-
-                for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                    int downIndex = i + downOffset;
-                    boolean shouldBeReplaced = !checkedPixels[downIndex]
-                        && ImageUtils.isSimilar(pixels[downIndex], rgbAtMouse, tolerance);
-
-                    if (!pointsInLine && shouldBeReplaced) {
-                        Point inspectLater = new Point(i, y + 1);
-                        stack.push(inspectLater);
-                        pointsInLine = true;
-                    } else if (pointsInLine && !shouldBeReplaced) {
-                        pointsInLine = false;
-                    }
-                }
-            }
-        }
+        Spans spans = FloodFill.fill(imgWidth, img.getHeight(), x, y,
+            i -> ImageUtils.isSimilar(pixels[i], rgbAtMouse, tolerance));
+        spans.fillPixels(pixels, imgWidth, newRGB);
 
-        // return the modified area
-        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        return spans.getBounds();
     }
 
     private static Rectangle globalReplaceColor(BufferedImage img,
@@ -22,6 +22,7 @@ import pixelitor.Features;
 import pixelitor.NewImage;
 import pixelitor.Pixelitor;
 import pixelitor.TipsOfTheDay;
+import pixelitor.automate.BatchProcessor;
 import pixelitor.colors.FgBgColors;
 import pixelitor.gui.*;
 import pixelitor.gui.utils.Screens;
@@ -33,6 +34,7 @@ import pixelitor.history.History;
 import pixelitor.io.Dirs;
 import pixelitor.io.FileChoosers;
 import pixelitor.io.FileFormat;
+import pixelitor.io.PXCCodec;
 import pixelitor.layers.LayerGUILayout;
 import pixelitor.menus.file.BoundedUniqueList;
 import pixelitor.menus.file.RecentFileEntry;
@@ -89,6 +91,7 @@ public final class AppPreferences {
     private static final String LAST_OPEN_DIR_KEY = "last_open_dir";
     private static final String LAST_SAVE_DIR_KEY = "last_save_dir";
     private static final String LAST_SAVE_FORMAT_KEY = "last_save_fmt";
+    private static final String BATCH_PARALLEL_FILES_KEY = "batch_parallel_files";
 
     private static final String UNDO_LEVELS_KEY = "undo_levels";
     private static final String THUMB_SIZE_KEY = "thumb_size";
@@ -97,6 +100,7 @@ public final class AppPreferences {
     private static final String LANG_KEY = "lang";
     private static final String MOUSE_ZOOM_KEY = "mouse_zoom";
     private static final String PAN_KEY = "pan";
+    private static final String PXC_CODEC_KEY = "pxc_codec";
 
     private static final String GUIDE_COLOR_KEY = "guide_color";
     private static final String GUIDE_STROKE_KEY = "guide_stroke";
@@ -333,6 +337,14 @@ public final class AppPreferences {
         mainPrefs.put(LAST_SAVE_FORMAT_KEY, lastOutput.toString());
     }
 
+    public static int loadBatchParallelFiles() {
+        return mainPrefs.getInt(BATCH_PARALLEL_FILES_KEY, 1);
+    }
+
+    private static void saveBatchParallelFiles() {
+        mainPrefs.putInt(BATCH_PARALLEL_FILES_KEY, BatchProcessor.getNumParallelFiles());
+    }
+
     public static int loadUndoLevels() {
         int retVal = mainPrefs.getInt(UNDO_LEVELS_KEY, -1);
         if (retVal == -1) {
@@ -396,6 +408,7 @@ public final class AppPreferences {
         saveLastOpenDir();
         saveLastSaveDir();
         saveLastSaveFormat();
+        saveBatchParallelFiles();
         saveFgBgColors();
         PixelitorWindow.get().getWorkSpace().savePreferences();
         saveUndoLevels();
@@ -410,6 +423,7 @@ public final class AppPreferences {
         saveLanguage();
         saveMouseZoom();
         savePan();
+        savePXCCodec();
         savePaths();
         saveFlags();
         saveExperimentalFeatures();
@@ -559,6 +573,14 @@ public final class AppPreferences {
         mainPrefs.put(PAN_KEY, PanMethod.ACTIVE.saveCode());
     }
 
+    public static String loadPXCCodec() {
+        return mainPrefs.get(PXC_CODEC_KEY, PXCCodec.PNG.saveCode());
+    }
+
+    private static void savePXCCodec() {
+        mainPrefs.put(PXC_CODEC_KEY, PXCCodec.getActive().saveCode());
+    }
+
     private static void loadPaths() {
         magickDirName = mainPrefs.get(MAGICK_DIR_KEY, "");
         gmicDirName = mainPrefs.get(GMIC_DIR_KEY, "");
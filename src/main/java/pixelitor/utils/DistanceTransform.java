@@ -0,0 +1,196 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Euclidean nearest-site maps of rasters, based on the separable
+ * distance transform of Felzenszwalb and Huttenlocher. The cost is
+ * proportional to the number of pixels, independently of the
+ * number of sites, but the sites are rounded to pixel positions.
+ */
+public final class DistanceTransform {
+    private DistanceTransform() {
+        // should not be instantiated
+    }
+
+    /**
+     * Writes the value of the nearest site (in Euclidean distance) for each
+     * pixel of the given region into the given packed pixel array.
+     */
+    public static void fillByNearestSite(List<Point2D> sites, int[] siteValues,
+                                         int[] dst, int width, int height,
+                                         Rectangle region, ProgressTracker pt) {
+        int numSites = sites.size();
+        if (numSites == 0 || region.isEmpty()) {
+            return;
+        }
+
+        int[] siteXs = new int[numSites];
+        int[] siteYs = new int[numSites];
+        for (int i = 0; i < numSites; i++) {
+            Point2D site = sites.get(i);
+            siteXs[i] = Math.clamp(Math.round(site.getX()), 0, width - 1);
+            siteYs[i] = Math.clamp(Math.round(site.getY()), 0, height - 1);
+        }
+
+        // sorts the sites into columns, and by y within a column,
+        // with two stable counting sorts
+        int[] byY = countingSort(identity(numSites), siteYs, height);
+        int[] colStarts = new int[width + 1];
+        int[] colSites = countingSort(byY, siteXs, width, colStarts);
+        int[] colSiteYs = new int[numSites];
+        for (int i = 0; i < numSites; i++) {
+            colSiteYs[i] = siteYs[colSites[i]];
+        }
+
+        ThreadPool.processBands(region.height, width, (startRow, endRow) -> {
+            // for each column, the first site position at or below the current row
+            int[] next = new int[width];
+            for (int x = 0; x < width; x++) {
+                int from = colStarts[x];
+                int to = colStarts[x + 1];
+                int found = Arrays.binarySearch(colSiteYs, from, to, region.y + startRow);
+                if (found < 0) {
+                    found = -found - 1;
+                } else {
+                    // go back to the first of the equal values
+                    while (found > from && colSiteYs[found - 1] == colSiteYs[found]) {
+                        found--;
+                    }
+                }
+                next[x] = found;
+            }
+
+            // the squared vertical distance to the nearest site of each
+            // column (infinite for empty columns) and the site's index
+            double[] colDist = new double[width];
+            int[] colNearest = new int[width];
+
+            // the lower envelope of the parabolas rooted at the columns
+            int[] envColumns = new int[width];
+            double[] envBounds = new double[width + 1];
+
+            for (int y = region.y + startRow; y < region.y + endRow; y++) {
+                for (int x = 0; x < width; x++) {
+                    int from = colStarts[x];
+                    int to = colStarts[x + 1];
+                    int pos = next[x];
+                    while (pos < to && colSiteYs[pos] < y) {
+                        pos++;
+                    }
+                    next[x] = pos;
+
+                    double dist = Double.POSITIVE_INFINITY;
+                    int nearest = -1;
+                    if (pos < to) {
+                        int dy = colSiteYs[pos] - y;
+                        dist = (double) dy * dy;
+                        nearest = colSites[pos];
+                    }
+                    if (pos > from) {
+                        int dy = y - colSiteYs[pos - 1];
+                        if ((double) dy * dy < dist) {
+                            dist = (double) dy * dy;
+                            nearest = colSites[pos - 1];
+                        }
+                    }
+                    colDist[x] = dist;
+                    colNearest[x] = nearest;
+                }
+
+                int numParabolas = buildLowerEnvelope(colDist, width, envColumns, envBounds);
+                if (numParabolas == 0) {
+                    continue; // can't happen if there are sites
+                }
+
+                int k = 0;
+                int index = y * width + region.x;
+                for (int x = region.x; x < region.x + region.width; x++) {
+                    while (envBounds[k + 1] < x) {
+                        k++;
+                    }
+                    dst[index++] = siteValues[colNearest[envColumns[k]]];
+                }
+            }
+        }, pt);
+    }
+
+    // Calculates the lower envelope of the parabolas (x - q)² + f[q]
+    // for the columns q with a finite f[q]. Parabola i is the lowest
+    // between bounds[i] and bounds[i + 1]. Returns the number of parabolas.
+    private static int buildLowerEnvelope(double[] f, int n, int[] columns, double[] bounds) {
+        int k = -1;
+        for (int q = 0; q < n; q++) {
+            double fq = f[q];
+            if (fq == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double s = Double.NEGATIVE_INFINITY;
+            while (k >= 0) {
+                int v = columns[k];
+                s = ((fq + (double) q * q) - (f[v] + (double) v * v)) / (2.0 * (q - v));
+                if (s > bounds[k]) {
+                    break;
+                }
+                k--;
+            }
+            k++;
+            columns[k] = q;
+            bounds[k] = k == 0 ? Double.NEGATIVE_INFINITY : s;
+            bounds[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        return k + 1;
+    }
+
+    private static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    private static int[] countingSort(int[] order, int[] keys, int numKeys) {
+        return countingSort(order, keys, numKeys, new int[numKeys + 1]);
+    }
+
+    // stable sort of the given order by the keys, the starts
+    // of the key groups are returned in the starts array
+    private static int[] countingSort(int[] order, int[] keys, int numKeys, int[] starts) {
+        for (int i : order) {
+            starts[keys[i] + 1]++;
+        }
+        for (int i = 1; i <= numKeys; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] sorted = new int[order.length];
+        int[] fill = new int[numKeys];
+        for (int i : order) {
+            int key = keys[i];
+            sorted[starts[key] + fill[key]++] = i;
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A scanline flood fill that finds the 4-connected region of pixels
+ * around a seed pixel without allocating objects per pixel.
+ * The region is returned as horizontal spans, which can be
+ * painted into a pixel array or converted into a shape.
+ */
+public final class FloodFill {
+    private FloodFill() {
+        // do not instantiate
+    }
+
+    /**
+     * Returns the region of pixels that are connected to the given seed pixel
+     * and accepted by the given test, which receives pixel indices (y * width + x).
+     * The seed pixel itself is assumed to be accepted.
+     *
+     * Uses the span-based algorithm from "A Seed Fill Algorithm"
+     * by Paul Heckbert (Graphics Gems, 1990), which tests most pixels once.
+     */
+    public static Spans fill(int width, int height, int seedX, int seedY, IntPredicate inRegion) {
+        assert seedX >= 0 && seedX < width && seedY >= 0 && seedY < height;
+        assert width <= Spans.COORD_MASK && height <= Spans.COORD_MASK;
+
+        long[] filled = new long[(int) (((long) width * height + 63) >>> 6)];
+        Spans spans = new Spans();
+
+        // Each entry is a row to be explored, the column range [x1, x2] in the
+        // previous row (in the direction opposite to dy) that is already filled,
+        // and the direction. The seed row has a single-pixel "parent range",
+        // and the row above the seed is explored separately.
+        IntStack stack = new IntStack();
+        push(stack, seedY - 1, seedX, seedX, -1, height);
+        stack.push(seedY, seedX, seedX, 1);
+
+        while (!stack.isEmpty()) {
+            int dy = stack.pop();
+            int x2 = stack.pop();
+            int x1 = stack.pop();
+            int y = stack.pop();
+            int rowStart = y * width;
+
+            // walk left from the start of the parent range
+            int x = x1;
+            while (x >= 0 && isFillable(rowStart + x, filled, inRegion)) {
+                x--;
+            }
+            int runStart;
+            if (x < x1) {
+                runStart = x + 1;
+                if (runStart < x1) {
+                    // leaked beyond the parent range on the left
+                    push(stack, y - dy, runStart, x1 - 1, -dy, height);
+                }
+                x = x1 + 1;
+            } else {
+                x = skipNonFillable(x1 + 1, x2, rowStart, filled, inRegion);
+                runStart = x;
+            }
+
+            while (runStart <= x2) {
+                while (x < width && isFillable(rowStart + x, filled, inRegion)) {
+                    x++;
+                }
+                setRange(filled, rowStart + runStart, rowStart + x);
+                spans.add(y, runStart, x);
+
+                push(stack, y + dy, runStart, x - 1, dy, height);
+                if (x - 1 > x2) {
+                    // leaked beyond the parent range on the right
+                    push(stack, y - dy, x2 + 1, x - 1, -dy, height);
+                }
+
+                x = skipNonFillable(x + 1, x2, rowStart, filled, inRegion);
+                runStart = x;
+            }
+        }
+        return spans;
+    }
+
+    private static void push(IntStack stack, int y, int x1, int x2, int dy, int height) {
+        if (y >= 0 && y < height) {
+            stack.push(y, x1, x2, dy);
+        }
+    }
+
+    // returns the first fillable column in [from, to], or to + 1 if there is none
+    private static int skipNonFillable(int from, int to, int rowStart,
+                                       long[] filled, IntPredicate inRegion) {
+        int x = from;
+        while (x <= to && !isFillable(rowStart + x, filled, inRegion)) {
+            x++;
+        }
+        return x;
+    }
+
+    private static boolean isFillable(int index, long[] filled, IntPredicate inRegion) {
+        return (filled[index >>> 6] & (1L << index)) == 0 && inRegion.test(index);
+    }
+
+    // sets the bits in [from, to)
+    private static void setRange(long[] bits, int from, int to) {
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            bits[firstWord] |= firstMask & lastMask;
+            return;
+        }
+        bits[firstWord] |= firstMask;
+        for (int i = firstWord + 1; i < lastWord; i++) {
+            bits[i] = -1L;
+        }
+        bits[lastWord] |= lastMask;
+    }
+
+    /**
+     * A growable stack of ints.
+     */
+    private static final class IntStack {
+        private int[] data = new int[256];
+        private int size;
+
+        void push(int a, int b, int c, int d) {
+            if (size + 4 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size] = a;
+            data[size + 1] = b;
+            data[size + 2] = c;
+            data[size + 3] = d;
+            size += 4;
+        }
+
+        int pop() {
+            return data[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    /**
+     * A set of non-overlapping horizontal pixel spans, each of them
+     * stored as a row index and a half-open [start, end) column range.
+     */
+    public static final class Spans {
+        // the number of bits for a coordinate when the spans are sorted
+        private static final int COORD_BITS = 21;
+        private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+
+        private int[] data = new int[3 * 64];
+        private int size;
+
+        private void add(int y, int start, int end) {
+            if (3 * size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int i = 3 * size;
+            data[i] = y;
+            data[i + 1] = start;
+            data[i + 2] = end;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the number of pixels in all spans.
+         */
+        public long getNumPixels() {
+            long numPixels = 0;
+            for (int i = 0; i < size; i++) {
+                numPixels += data[3 * i + 2] - data[3 * i + 1];
+            }
+            return numPixels;
+        }
+
+        /**
+         * Returns the bounding box of the spans, or null if there are none.
+         */
+        public Rectangle getBounds() {
+            if (size == 0) {
+                return null;
+            }
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                int y = data[3 * i];
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+                minX = Math.min(minX, data[3 * i + 1]);
+                maxX = Math.max(maxX, data[3 * i + 2]);
+            }
+            return new Rectangle(minX, minY, maxX - minX, maxY - minY + 1);
+        }
+
+        /**
+         * Sets the pixels of the spans to the given value in a pixel array.
+         */
+        public void fillPixels(int[] pixels, int width, int value) {
+            for (int i = 0; i < size; i++) {
+                int rowStart = data[3 * i] * width;
+                Arrays.fill(pixels, rowStart + data[3 * i + 1], rowStart + data[3 * i + 2], value);
+            }
+        }
+
+        /**
+         * Converts the spans into a shape, translated by the given offset.
+         * Consecutive rows with the same spans become a single rectangle,
+         * and the rectangles are merged into an outline in a single step.
+         */
+        public Area toShape(int dx, int dy) {
+            if (size == 0) {
+                return new Area();
+            }
+
+            // sort the spans by row, and within a row by start
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = (long) data[3 * i] << 2 * COORD_BITS
+                    | (long) data[3 * i + 1] << COORD_BITS
+                    | data[3 * i + 2];
+            }
+            Arrays.sort(sorted);
+
+            Path2D path = new Path2D.Float(Path2D.WIND_NON_ZERO, 5 * size);
+            int groupStart = 0; // the first span of the current group of rows
+            while (groupStart < size) {
+                int rowLength = rowEnd(sorted, groupStart) - groupStart;
+                int groupHeight = 1;
+                int next = groupStart + rowLength;
+                while (hasSameColumns(sorted, groupStart, next, rowLength)) {
+                    groupHeight++;
+                    next += rowLength;
+                }
+
+                int y1 = (int) (sorted[groupStart] >>> 2 * COORD_BITS) + dy;
+                int y2 = y1 + groupHeight;
+                for (int i = groupStart; i < groupStart + rowLength; i++) {
+                    int x1 = (int) (sorted[i] >>> COORD_BITS & COORD_MASK) + dx;
+                    int x2 = (int) (sorted[i] & COORD_MASK) + dx;
+                    path.moveTo(x1, y1);
+                    path.lineTo(x2, y1);
+                    path.lineTo(x2, y2);
+                    path.lineTo(x1, y2);
+                    path.closePath();
+                }
+                groupStart = next;
+            }
+            return new Area(path);
+        }
+
+        // returns the index after the last span in the row of the given span
+        private static int rowEnd(long[] sorted, int start) {
+            long row = sorted[start] >>> 2 * COORD_BITS;
+            int end = start + 1;
+            while (end < sorted.length && sorted[end] >>> 2 * COORD_BITS == row) {
+                end++;
+            }
+            return end;
+        }
+
+        // checks whether the row starting at the given candidate index directly
+        // follows the previous row and has the same spans as the first row
+        private static boolean hasSameColumns(long[] sorted, int first,
+                                              int candidate, int rowLength) {
+            if (candidate >= sorted.length
+                || rowEnd(sorted, candidate) - candidate != rowLength
+                || (sorted[candidate] >>> 2 * COORD_BITS)
+                != (sorted[candidate - 1] >>> 2 * COORD_BITS) + 1) {
+                return false;
+            }
+            long columnsMask = (1L << 2 * COORD_BITS) - 1;
+            for (int i = 0; i < rowLength; i++) {
+                if ((sorted[first + i] & columnsMask) != (sorted[candidate + i] & columnsMask)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
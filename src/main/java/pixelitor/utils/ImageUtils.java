@@ -32,6 +32,7 @@ import pixelitor.filters.Invert;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.layers.ContentLayer;
 import pixelitor.layers.ImageLayer;
+import pixelitor.layers.IndependentRendering;
 import pixelitor.layers.Layer;
 import pixelitor.selection.Selection;
 import pixelitor.tools.Tools;
@@ -84,6 +85,9 @@ public class ImageUtils {
     private static final double DEG_315_IN_RADIANS = Math.PI / 4;
     private static final Color CHECKERBOARD_GRAY = new Color(200, 200, 200);
 
+    // the number of samples per thumbnail pixel in each direction
+    private static final int THUMB_OVERSAMPLING = 4;
+
     private static final GraphicsConfiguration graphicsConfig = GraphicsEnvironment
         .getLocalGraphicsEnvironment()
         .getDefaultScreenDevice()
@@ -169,114 +173,18 @@ public class ImageUtils {
             resize(img, targetWidth, targetHeight), onPool);
     }
 
-    public static BufferedImage resize(BufferedImage img, int targetWidth, int targetHeight) {
-        boolean progressiveBilinear = targetWidth < img.getWidth() / 2
-            || targetHeight < img.getHeight() / 2;
-        return scaleImage(img, targetWidth, targetHeight, VALUE_INTERPOLATION_BICUBIC, progressiveBilinear);
-    }
-
-    // From the Filthy Rich Clients book
-
     /**
-     * Convenience method that returns a scaled instance of the
-     * provided BufferedImage.
-     *
-     * @param img                 the original image to be scaled
-     * @param targetWidth         the desired width of the scaled instance,
-     *                            in pixels
-     * @param targetHeight        the desired height of the scaled instance,
-     *                            in pixels
-     * @param hint                one of the rendering hints that corresponds to
-     *                            RenderingHints.KEY_INTERPOLATION (e.g.
-     *                            RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
-     *                            RenderingHints.VALUE_INTERPOLATION_BILINEAR,
-     *                            RenderingHints.VALUE_INTERPOLATION_BICUBIC)
-     * @param progressiveBilinear if true, this method will use a multi-step
-     *                            scaling technique that provides higher quality than the usual
-     *                            one-step technique (only useful in down-scaling cases, where
-     *                            targetWidth or targetHeight is
-     *                            smaller than the original dimensions)
-     * @return a scaled version of the original BufferedImage
+     * Resizes the given image with the kernel that gives
+     * the best quality for the given target size.
      */
-    private static BufferedImage scaleImage(BufferedImage img,
-                                            int targetWidth, int targetHeight,
-                                            Object hint,
-                                            boolean progressiveBilinear) {
-        assert img != null;
-
-        int prevW = img.getWidth();
-        int prevH = img.getHeight();
-
-        if (targetWidth >= prevW || targetHeight >= prevH) {
-            progressiveBilinear = false;
-        }
-
-        int type = img.getType();
-
-        BufferedImage ret = img;
-        int w, h;
-        boolean isTranslucent = img.getTransparency() != Transparency.OPAQUE;
-
-        if (progressiveBilinear) {
-            // Use multi-step technique: start with original size, then
-            // scale down in multiple passes with drawImage()
-            // until the target size is reached
-            w = img.getWidth();
-            h = img.getHeight();
-        } else {
-            // Use one-step technique: scale directly from original
-            // size to target size with a single drawImage() call
-            w = targetWidth;
-            h = targetHeight;
-        }
-
-        BufferedImage scratchImage = null;
-        Graphics2D g2 = null;
-        do {
-            if (progressiveBilinear && w > targetWidth) {
-                w /= 2;
-                if (w < targetWidth) {
-                    w = targetWidth;
-                }
-            }
-
-            if (progressiveBilinear && h > targetHeight) {
-                h /= 2;
-                if (h < targetHeight) {
-                    h = targetHeight;
-                }
-            }
-
-            if (scratchImage == null || isTranslucent) {
-                // Use a single scratch buffer for all iterations
-                // and then copy to the final, correctly-sized image
-                // before returning
-                scratchImage = new BufferedImage(w, h, type);
-                g2 = scratchImage.createGraphics();
-            }
-            g2.setRenderingHint(KEY_INTERPOLATION, hint);
-            g2.drawImage(ret, 0, 0, w, h, 0, 0, prevW, prevH, null);
-            prevW = w;
-            prevH = h;
-
-            ret = scratchImage;
-        } while (w != targetWidth || h != targetHeight);
-
-        if (g2 != null) {
-            g2.dispose();
-        }
-
-        // If we used a scratch buffer that is larger than our target size,
-        // create an image of the right size and copy the results into it
-        if (targetWidth != ret.getWidth() || targetHeight != ret.getHeight()) {
-            scratchImage = new BufferedImage(targetWidth, targetHeight, type);
-            g2 = scratchImage.createGraphics();
-            g2.drawImage(ret, 0, 0, null);
-            g2.dispose();
-            ret = scratchImage;
-        }
+    public static BufferedImage resize(BufferedImage img, int targetWidth, int targetHeight) {
+        var kernel = Resampler.Kernel.bestFor(img.getWidth(), img.getHeight(), targetWidth, targetHeight);
+        return resize(img, targetWidth, targetHeight, kernel);
+    }
 
-        return ret;
+    public static BufferedImage resize(BufferedImage img, int targetWidth, int targetHeight,
+                                       Resampler.Kernel kernel) {
+        return Resampler.resize(img, targetWidth, targetHeight, kernel, ProgressTracker.NULL_TRACKER);
     }
 
     /**
@@ -635,13 +543,33 @@ public class ImageUtils {
             painter.paint(g, null, thumbWidth, thumbHeight);
         }
 
-        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-        g.drawImage(src, 0, 0, thumbWidth, thumbHeight, null);
+        g.drawImage(sampleThumbnail(src, thumbWidth, thumbHeight), 0, 0, null);
         g.dispose();
 
         return thumb;
     }
 
+    /**
+     * Averages a few nearest-neighbor samples for each thumbnail pixel,
+     * which is much smoother than taking a single sample, but the cost
+     * still doesn't depend on the size of the source image.
+     */
+    private static BufferedImage sampleThumbnail(BufferedImage src, int thumbWidth, int thumbHeight) {
+        int sampledWidth = Math.min(src.getWidth(), thumbWidth * THUMB_OVERSAMPLING);
+        int sampledHeight = Math.min(src.getHeight(), thumbHeight * THUMB_OVERSAMPLING);
+
+        BufferedImage sampled = src;
+        if (sampledWidth < src.getWidth() || sampledHeight < src.getHeight()) {
+            sampled = new BufferedImage(sampledWidth, sampledHeight, TYPE_INT_ARGB_PRE);
+            Graphics2D g = sampled.createGraphics();
+            g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(src, 0, 0, sampledWidth, sampledHeight, null);
+            g.dispose();
+        }
+        return Resampler.resize(sampled, thumbWidth, thumbHeight,
+            Resampler.Kernel.BOX, ProgressTracker.NULL_TRACKER);
+    }
+
     public static void paintRedXOn(BufferedImage thumb) {
         int thumbWidth = thumb.getWidth();
         int thumbHeight = thumb.getHeight();
@@ -1432,6 +1360,9 @@ public class ImageUtils {
             }
         }
 
+        // render the isolated groups and smart objects in parallel
+        IndependentRendering.prepare(layers);
+
         var compositeImg = new BufferedImage(
             canvas.getWidth(), canvas.getHeight(), TYPE_INT_ARGB_PRE);
         Graphics2D g = compositeImg.createGraphics();
@@ -1455,6 +1386,56 @@ public class ImageUtils {
         return compositeImg;
     }
 
+    /**
+     * Re-renders only the given region of an existing composite image
+     * that was created by {@link #calcComposite(List, Canvas)}.
+     * Returns false if the composite can't be updated region by region,
+     * in which case it must be fully recalculated.
+     */
+    public static boolean recalcCompositeRegion(List<Layer> layers,
+                                                BufferedImage compositeImg,
+                                                Rectangle region) {
+        if (layers.size() == 1) {
+            // the composite might be shared with the single layer
+            return false;
+        }
+        for (Layer layer : layers) {
+            if (layer.isVisible() && !layer.supportsRegionRendering()) {
+                return false;
+            }
+        }
+
+        Rectangle clip = region.intersection(new Rectangle(0, 0,
+            compositeImg.getWidth(), compositeImg.getHeight()));
+        if (clip.isEmpty()) {
+            return true;
+        }
+
+        Graphics2D g = compositeImg.createGraphics();
+        g.setClip(clip);
+        g.setComposite(AlphaComposite.Clear);
+        g.fill(clip);
+
+        // the first visible layer is always applied with normal blending mode
+        boolean firstVisibleLayer = true;
+        for (Layer layer : layers) {
+            if (!layer.isVisible()) {
+                continue;
+            }
+            BufferedImage result = layer.render(g, compositeImg, firstVisibleLayer);
+            if (result != null) { // isolated layer groups return the same image
+                assert result == compositeImg;
+                g.dispose();
+                g = compositeImg.createGraphics();
+                g.setClip(clip);
+            }
+            firstVisibleLayer = false;
+        }
+
+        g.dispose();
+        return true;
+    }
+
     public static BufferedImage createCircleThumb(Color color) {
         BufferedImage img = createSysCompatibleImage(thumbSize, thumbSize);
         Graphics2D g2 = img.createGraphics();
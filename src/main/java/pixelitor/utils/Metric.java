@@ -26,13 +26,6 @@ public enum Metric {
      * Without the square root for better performance.
      */
     EUCLIDEAN_SQUARED("Euclidean") {
-        @Override
-        public double distanceInt(int x1, int y1, int x2, int y2) {
-            int dx = x1 - x2;
-            int dy = y1 - y2;
-            return dx * dx + dy * dy;
-        }
-
         @Override
         public double distanceDouble(double x1, double y1, double x2, double y2) {
             double dx = x1 - x2;
@@ -45,11 +38,6 @@ public enum Metric {
      * Represents the distance a taxi would drive in a city laid out in a grid-like pattern.
      */
     MANHATTAN("Taxicab (Manhattan)") {
-        @Override
-        public double distanceInt(int x1, int y1, int x2, int y2) {
-            return Math.abs(x1 - x2) + Math.abs(y1 - y2);
-        }
-
         @Override
         public double distanceDouble(double x1, double y1, double x2, double y2) {
             return Math.abs(x1 - x2) + Math.abs(y1 - y2);
@@ -60,11 +48,6 @@ public enum Metric {
      * Represents the minimum number of moves a king would need to make on a chessboard.
      */
     CHEBYSHEV("Chessboard (Chebyshev)") {
-        @Override
-        public double distanceInt(int x1, int y1, int x2, int y2) {
-            return Math.max(Math.abs(x1 - x2), Math.abs(y1 - y2));
-        }
-
         @Override
         public double distanceDouble(double x1, double y1, double x2, double y2) {
             return Math.max(Math.abs(x1 - x2), Math.abs(y1 - y2));
@@ -83,27 +66,7 @@ public enum Metric {
     }
 
     /**
-     * The distance with int precision.
-     */
-    public abstract double distanceInt(int x1, int y1, int x2, int y2);
-
-    /**
-     * The distance with double precision (slower).
+     * The distance between the given points.
      */
     public abstract double distanceDouble(double x1, double y1, double x2, double y2);
-
-    public DistanceFunction asIntPrecisionDistance() {
-        return (x1, y1, x2, y2) -> distanceInt((int) x1, (int) y1, (int) x2, (int) y2);
-    }
-
-    public DistanceFunction asDoublePrecisionDistance() {
-        return this::distanceDouble;
-    }
-
-    /**
-     * Abstracts away the precision of the calculations.
-     */
-    public interface DistanceFunction {
-        double apply(double x1, double y1, double x2, double y2);
-    }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.geom.Point2D;
+import java.util.List;
+
+/**
+ * A bucket grid over a fixed set of points, which finds the point
+ * nearest to a given position in any {@link Metric}. The buckets are
+ * stored in flat arrays, so the queries don't allocate, and they can
+ * run concurrently. For evenly distributed points (for example the
+ * result of a {@link PoissonDiskSampling}), a query checks only
+ * a few buckets, independently of the number of points.
+ */
+public final class NearestPointIndex {
+    // the coordinates of the points (x and y interleaved),
+    // sorted by buckets, so that a bucket is read sequentially
+    private final double[] coords;
+
+    private final double cellSize;
+    private final int numHorCells;
+    private final int numVerCells;
+
+    // the points of bucket i are at the sorted positions
+    // from bucketStarts[i] to bucketStarts[i + 1]
+    private final int[] bucketStarts;
+
+    // the original indices of the points at the sorted positions
+    private final int[] pointIndices;
+
+    /**
+     * Creates an index for points within the given area,
+     * with about one point per bucket.
+     */
+    public NearestPointIndex(List<Point2D> points, int width, int height) {
+        this(points, width, height,
+            Math.max(1.0, Math.sqrt((double) width * height / Math.max(1, points.size()))));
+    }
+
+    public NearestPointIndex(List<Point2D> points, int width, int height, double cellSize) {
+        int numPoints = points.size();
+        this.cellSize = cellSize;
+        numHorCells = Math.max(1, (int) Math.ceil(width / cellSize));
+        numVerCells = Math.max(1, (int) Math.ceil(height / cellSize));
+
+        // counting sort of the points by their buckets
+        int[] pointBuckets = new int[numPoints];
+        bucketStarts = new int[numHorCells * numVerCells + 1];
+        for (int i = 0; i < numPoints; i++) {
+            Point2D point = points.get(i);
+            int bucket = toCellY(point.getY()) * numHorCells + toCellX(point.getX());
+            pointBuckets[i] = bucket;
+            bucketStarts[bucket + 1]++;
+        }
+        for (int i = 1; i < bucketStarts.length; i++) {
+            bucketStarts[i] += bucketStarts[i - 1];
+        }
+        coords = new double[2 * numPoints];
+        pointIndices = new int[numPoints];
+        int[] fillPositions = new int[bucketStarts.length - 1];
+        for (int i = 0; i < numPoints; i++) {
+            int bucket = pointBuckets[i];
+            int pos = bucketStarts[bucket] + fillPositions[bucket]++;
+            Point2D point = points.get(i);
+            coords[2 * pos] = point.getX();
+            coords[2 * pos + 1] = point.getY();
+            pointIndices[pos] = i;
+        }
+    }
+
+    // points outside the area are put into the border buckets
+    private int toCellX(double x) {
+        return Math.clamp((long) Math.floor(x / cellSize), 0, numHorCells - 1);
+    }
+
+    private int toCellY(double y) {
+        return Math.clamp((long) Math.floor(y / cellSize), 0, numVerCells - 1);
+    }
+
+    /**
+     * Returns the index of the point nearest to the given position
+     * in the given metric, or -1 if there are no points.
+     */
+    public int findNearest(double x, double y, Metric metric) {
+        int cellX = toCellX(x);
+        int cellY = toCellY(y);
+
+        int nearestPos = -1;
+        double minDist = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ; ring++) {
+            if (nearestPos != -1 && ringLowerBound(x, y, cellX, cellY, ring, metric) >= minDist) {
+                // the points in this and the further rings can't be closer
+                return pointIndices[nearestPos];
+            }
+
+            int minCellX = cellX - ring;
+            int maxCellX = cellX + ring;
+            int minCellY = cellY - ring;
+            int maxCellY = cellY + ring;
+            for (int cy = Math.max(minCellY, 0); cy <= Math.min(maxCellY, numVerCells - 1); cy++) {
+                boolean fullRow = cy == minCellY || cy == maxCellY;
+                // in the inner rows, only the first and last cells belong to the ring
+                int step = fullRow ? 1 : Math.max(2 * ring, 1);
+                for (int cx = minCellX; cx <= maxCellX; cx += step) {
+                    if (cx < 0 || cx >= numHorCells) {
+                        continue;
+                    }
+                    int bucket = cy * numHorCells + cx;
+                    for (int pos = bucketStarts[bucket], end = bucketStarts[bucket + 1]; pos < end; pos++) {
+                        double dist = distance(metric, x - coords[2 * pos], y - coords[2 * pos + 1]);
+                        if (dist < minDist) {
+                            minDist = dist;
+                            nearestPos = pos;
+                        }
+                    }
+                }
+            }
+
+            if (minCellX <= 0 && minCellY <= 0
+                && maxCellX >= numHorCells - 1 && maxCellY >= numVerCells - 1) {
+                // all buckets were checked
+                return nearestPos == -1 ? -1 : pointIndices[nearestPos];
+            }
+        }
+    }
+
+    // the same as Metric.distanceDouble, but inlined for the hot loop
+    private static double distance(Metric metric, double dx, double dy) {
+        return switch (metric) {
+            case EUCLIDEAN_SQUARED -> dx * dx + dy * dy;
+            case MANHATTAN -> Math.abs(dx) + Math.abs(dy);
+            case CHEBYSHEV -> Math.max(Math.abs(dx), Math.abs(dy));
+        };
+    }
+
+    /**
+     * Returns a lower bound of the distance between the given position
+     * and any point in the given ring of buckets around the given cell.
+     */
+    private double ringLowerBound(double x, double y, int cellX, int cellY, int ring, Metric metric) {
+        if (ring == 0) {
+            return 0;
+        }
+        // The points in the ring are outside the block of the inner rings,
+        // so their Chebyshev distance, which is the smallest of the supported
+        // metrics, is at least the distance to the nearest edge of that block.
+        // The border buckets extend to infinity, so if the inner block
+        // includes them, there are no ring points beyond that edge.
+        double gap = Double.POSITIVE_INFINITY;
+        if (cellX - ring + 1 > 0) {
+            gap = Math.min(gap, x - (cellX - ring + 1) * cellSize);
+        }
+        if (cellX + ring - 1 < numHorCells - 1) {
+            gap = Math.min(gap, (cellX + ring) * cellSize - x);
+        }
+        if (cellY - ring + 1 > 0) {
+            gap = Math.min(gap, y - (cellY - ring + 1) * cellSize);
+        }
+        if (cellY + ring - 1 < numVerCells - 1) {
+            gap = Math.min(gap, (cellY + ring) * cellSize - y);
+        }
+        if (gap <= 0) {
+            return 0;
+        }
+        return metric == Metric.EUCLIDEAN_SQUARED ? gap * gap : gap;
+    }
+
+    public int getNumPoints() {
+        return pointIndices.length;
+    }
+}
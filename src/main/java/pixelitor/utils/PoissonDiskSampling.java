@@ -17,8 +17,6 @@
 
 package pixelitor.utils;
 
-import pixelitor.utils.Metric.DistanceFunction;
-
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.geom.Line2D;
@@ -184,49 +182,6 @@ public class PoissonDiskSampling {
         }
     }
 
-    /**
-     * Returns the index of the closest sample
-     */
-    public int findClosestPointIndex(double x, double y,
-                                     DistanceFunction distanceFunction) {
-        int searchDist = 1;
-        while (true) {
-            int index = searchNeighborhood(x, y, searchDist, distanceFunction);
-            if (index != -1) {
-                return index;
-            }
-            searchDist++;
-        }
-    }
-
-    private int searchNeighborhood(double x, double y, int searchDist,
-                                   DistanceFunction distanceFunction) {
-        int gridX = (int) (x / cellWidth);
-        int gridY = (int) (y / cellHeight);
-        double minDistSoFar = Double.POSITIVE_INFINITY;
-        int indexOfClosest = -1;
-        for (int gx = gridX - searchDist; gx <= gridX + searchDist; gx++) {
-            if (gx < 0 || gx >= numHorCells) {
-                continue;
-            }
-            for (int gy = gridY - searchDist; gy <= gridY + searchDist; gy++) {
-                if (gy < 0 || gy >= numVerCells) {
-                    continue;
-                }
-                int index = grid[gx][gy];
-                if (index != -1) {
-                    Point2D point = samples.get(index);
-                    double dist = distanceFunction.apply(x, y, point.getX(), point.getY());
-                    if (dist < minDistSoFar) {
-                        minDistSoFar = dist;
-                        indexOfClosest = index;
-                    }
-                }
-            }
-        }
-        return indexOfClosest;
-    }
-
     public List<Point2D> getSamples() {
         return samples;
     }
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_CUSTOM;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Resizes images with separable resampling kernels. The destination
+ * is calculated in parallel, in strips of rows: the source rows needed
+ * by a strip are resampled horizontally one at a time and immediately
+ * accumulated into the strip, so apart from the source and the result,
+ * only a few rows are kept in memory, independently of the scaling.
+ * The colors are resampled with premultiplied alpha.
+ */
+public final class Resampler {
+    // the number of destination rows that are accumulated together
+    private static final int STRIP_HEIGHT = 64;
+
+    private Resampler() {
+        // should not be instantiated
+    }
+
+    /**
+     * The resampling kernels, as functions of the distance in source pixels.
+     * When downscaling, they are stretched to cover the shrunk pixels.
+     */
+    public enum Kernel {
+        /**
+         * Averages the covered pixels, or repeats the nearest pixel when upscaling.
+         */
+        BOX(0.5) {
+            @Override
+            double weight(double x) {
+                return x >= -0.5 && x < 0.5 ? 1 : 0;
+            }
+        },
+        /**
+         * The cubic filter of Mitchell and Netravali (B = C = 1/3),
+         * a compromise between sharpness and ringing, good for upscaling.
+         */
+        MITCHELL(2) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                if (x < 1) {
+                    return (7 * x * x * x - 12 * x * x + 16.0 / 3) / 6;
+                }
+                if (x < 2) {
+                    return (-7.0 / 3 * x * x * x + 12 * x * x - 20 * x + 32.0 / 3) / 6;
+                }
+                return 0;
+            }
+        },
+        /**
+         * The three-lobed windowed sinc filter, sharp, good for downscaling.
+         */
+        LANCZOS(3) {
+            @Override
+            double weight(double x) {
+                if (x == 0) {
+                    return 1;
+                }
+                if (x <= -3 || x >= 3) {
+                    return 0;
+                }
+                double px = Math.PI * x;
+                return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+            }
+        };
+
+        private final double radius;
+
+        Kernel(double radius) {
+            this.radius = radius;
+        }
+
+        abstract double weight(double x);
+
+        /**
+         * Returns the kernel that gives the best quality for the given resizing.
+         */
+        public static Kernel bestFor(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+            boolean downscaling = (long) dstWidth * dstHeight < (long) srcWidth * srcHeight;
+            return downscaling ? LANCZOS : MITCHELL;
+        }
+    }
+
+    /**
+     * Returns a new image with the given size, resampled from the given image
+     * with the given kernel. The result has the type of the source if possible.
+     * The progress is tracked in strips of destination rows.
+     */
+    public static BufferedImage resize(BufferedImage src, int dstWidth, int dstHeight,
+                                       Kernel kernel, ProgressTracker pt) {
+        assert dstWidth > 0 && dstHeight > 0 : "dstWidth = " + dstWidth + ", dstHeight = " + dstHeight;
+
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        var job = new Job(src, createDestImage(src, dstWidth, dstHeight),
+            new Weights(kernel, srcWidth, dstWidth),
+            new Weights(kernel, srcHeight, dstHeight));
+
+        // The bands are scheduled in whole strips, because the source rows
+        // needed by a strip are resampled horizontally for each strip.
+        int numStrips = (dstHeight + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+        ThreadPool.processBands(numStrips, STRIP_HEIGHT * Math.max(srcWidth, dstWidth),
+            (startStrip, endStrip) -> job.processBand(startStrip * STRIP_HEIGHT,
+                Math.min(endStrip * STRIP_HEIGHT, dstHeight)), pt);
+
+        return job.dst;
+    }
+
+    private static BufferedImage createDestImage(BufferedImage src, int width, int height) {
+        int type = src.getType();
+        if (type == TYPE_CUSTOM) {
+            type = src.getColorModel().hasAlpha() ? TYPE_INT_ARGB : TYPE_INT_RGB;
+        }
+        return new BufferedImage(width, height, type);
+    }
+
+    /**
+     * The contributions of the source pixels to each destination pixel
+     * along one axis. The contributing source pixels are consecutive,
+     * and both their first and their last index grows with the
+     * destination index.
+     */
+    private static final class Weights {
+        private final int[] starts;
+        private final int[] counts;
+        private final float[] weights;
+
+        // the maximal number of contributing pixels
+        private final int stride;
+
+        Weights(Kernel kernel, int srcSize, int dstSize) {
+            starts = new int[dstSize];
+            counts = new int[dstSize];
+            if (srcSize == dstSize) {
+                // not even a kernel that isn't interpolating should blur here
+                weights = new float[dstSize];
+                Arrays.fill(weights, 1.0f);
+                Arrays.fill(counts, 1);
+                Arrays.setAll(starts, i -> i);
+                stride = 1;
+                return;
+            }
+
+            double scale = dstSize / (double) srcSize;
+            double stretch = Math.max(1.0, 1.0 / scale);
+            double support = kernel.radius * stretch;
+            stride = (int) Math.ceil(2 * support) + 1;
+            weights = new float[dstSize * stride];
+
+            for (int i = 0; i < dstSize; i++) {
+                // the pixel centers are at half-integer positions
+                double center = (i + 0.5) / scale;
+                int start = Math.max(0, (int) Math.floor(center - support));
+                int end = Math.min(srcSize, (int) Math.ceil(center + support));
+                int offset = i * stride;
+
+                double sum = 0;
+                for (int j = start; j < end; j++) {
+                    double w = kernel.weight((j + 0.5 - center) / stretch);
+                    weights[offset + j - start] = (float) w;
+                    sum += w;
+                }
+                if (sum == 0) {
+                    // a safety net, the normalization needs a nonzero sum
+                    start = Math.clamp((long) center, 0, srcSize - 1);
+                    end = start + 1;
+                    weights[offset] = 1;
+                    sum = 1;
+                }
+                for (int j = 0; j < end - start; j++) {
+                    weights[offset + j] /= (float) sum;
+                }
+                starts[i] = start;
+                counts[i] = end - start;
+            }
+        }
+
+        int getEnd(int i) {
+            return starts[i] + counts[i];
+        }
+    }
+
+    /**
+     * The state shared by the bands of one resizing.
+     */
+    private static final class Job {
+        private final BufferedImage src;
+        private final BufferedImage dst;
+        private final WritableRaster srcRaster;
+        private final WritableRaster dstRaster;
+        private final Weights xWeights;
+        private final Weights yWeights;
+
+        // the pixels are either one gray value or premultiplied ARGB
+        private final boolean gray;
+        private final int channels;
+        private final int srcWidth;
+        private final int dstWidth;
+
+        Job(BufferedImage src, BufferedImage dst, Weights xWeights, Weights yWeights) {
+            this.src = src;
+            this.dst = dst;
+            this.xWeights = xWeights;
+            this.yWeights = yWeights;
+            srcRaster = src.getRaster();
+            dstRaster = dst.getRaster();
+            gray = src.getType() == TYPE_BYTE_GRAY;
+            channels = gray ? 1 : 4;
+            srcWidth = src.getWidth();
+            dstWidth = dst.getWidth();
+        }
+
+        void processBand(int startRow, int endRow) {
+            int rowLength = dstWidth * channels;
+            float[] srcRow = new float[srcWidth * channels];
+            float[] resampledRow = new float[rowLength];
+            float[] strip = new float[Math.min(STRIP_HEIGHT, endRow - startRow) * rowLength];
+            Object srcElements = null;
+            Object dstElements = gray ? new byte[dstWidth] : new int[dstWidth];
+
+            for (int stripStart = startRow; stripStart < endRow; stripStart += STRIP_HEIGHT) {
+                int stripEnd = Math.min(stripStart + STRIP_HEIGHT, endRow);
+                Arrays.fill(strip, 0.0f);
+
+                // the first destination row of the strip that
+                // can still receive contributions
+                int firstOpenRow = stripStart;
+                int lastSrcRow = yWeights.getEnd(stripEnd - 1);
+                for (int sy = yWeights.starts[stripStart]; sy < lastSrcRow; sy++) {
+                    srcElements = readRow(sy, srcElements, srcRow);
+                    resampleRow(srcRow, resampledRow);
+
+                    while (yWeights.getEnd(firstOpenRow) <= sy) {
+                        firstOpenRow++;
+                    }
+                    for (int y = firstOpenRow; y < stripEnd && yWeights.starts[y] <= sy; y++) {
+                        float w = yWeights.weights[y * yWeights.stride + sy - yWeights.starts[y]];
+                        int offset = (y - stripStart) * rowLength;
+                        for (int i = 0; i < rowLength; i++) {
+                            strip[offset + i] += w * resampledRow[i];
+                        }
+                    }
+                }
+
+                for (int y = stripStart; y < stripEnd; y++) {
+                    writeRow(y, strip, (y - stripStart) * rowLength, dstElements);
+                }
+            }
+        }
+
+        // reads a source row into the given array, as gray or premultiplied
+        // ARGB values, and returns the reusable array of the raw data
+        private Object readRow(int y, Object elements, float[] row) {
+            if (gray) {
+                byte[] bytes = (byte[]) srcRaster.getDataElements(0, y, srcWidth, 1, elements);
+                for (int x = 0; x < srcWidth; x++) {
+                    row[x] = bytes[x] & 0xFF;
+                }
+                return bytes;
+            }
+
+            int type = src.getType();
+            int[] pixels;
+            if (type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE || type == TYPE_INT_RGB) {
+                pixels = (int[]) srcRaster.getDataElements(0, y, srcWidth, 1, elements);
+            } else {
+                pixels = elements == null ? new int[srcWidth] : (int[]) elements;
+                src.getRGB(0, y, srcWidth, 1, pixels, 0, srcWidth);
+                type = TYPE_INT_ARGB;
+            }
+            for (int x = 0, i = 0; x < srcWidth; x++, i += 4) {
+                int argb = pixels[x];
+                int a = type == TYPE_INT_RGB ? 255 : argb >>> 24;
+                float r = (argb >> 16) & 0xFF;
+                float g = (argb >> 8) & 0xFF;
+                float b = argb & 0xFF;
+                if (type == TYPE_INT_ARGB && a != 255) {
+                    float alpha = a / 255.0f;
+                    r *= alpha;
+                    g *= alpha;
+                    b *= alpha;
+                }
+                row[i] = a;
+                row[i + 1] = r;
+                row[i + 2] = g;
+                row[i + 3] = b;
+            }
+            return pixels;
+        }
+
+        private void resampleRow(float[] srcRow, float[] dstRow) {
+            int[] starts = xWeights.starts;
+            int[] counts = xWeights.counts;
+            float[] weights = xWeights.weights;
+            int stride = xWeights.stride;
+
+            if (gray) {
+                for (int x = 0; x < dstWidth; x++) {
+                    int offset = x * stride;
+                    int start = starts[x];
+                    float sum = 0;
+                    for (int k = 0; k < counts[x]; k++) {
+                        sum += weights[offset + k] * srcRow[start + k];
+                    }
+                    dstRow[x] = sum;
+                }
+                return;
+            }
+
+            for (int x = 0, i = 0; x < dstWidth; x++, i += 4) {
+                int offset = x * stride;
+                int srcIndex = starts[x] * 4;
+                float a = 0, r = 0, g = 0, b = 0;
+                for (int k = 0; k < counts[x]; k++, srcIndex += 4) {
+                    float w = weights[offset + k];
+                    a += w * srcRow[srcIndex];
+                    r += w * srcRow[srcIndex + 1];
+                    g += w * srcRow[srcIndex + 2];
+                    b += w * srcRow[srcIndex + 3];
+                }
+                dstRow[i] = a;
+                dstRow[i + 1] = r;
+                dstRow[i + 2] = g;
+                dstRow[i + 3] = b;
+            }
+        }
+
+        // the kernels with negative lobes can overshoot,
+        // so the values are clamped to the valid range
+        private void writeRow(int y, float[] values, int offset, Object elements) {
+            if (gray) {
+                byte[] bytes = (byte[]) elements;
+                for (int x = 0; x < dstWidth; x++) {
+                    bytes[x] = (byte) toByte(values[offset + x], 255);
+                }
+                dstRaster.setDataElements(0, y, dstWidth, 1, bytes);
+                return;
+            }
+
+            int[] pixels = (int[]) elements;
+            int type = dst.getType();
+            boolean premultiplied = type == TYPE_INT_ARGB_PRE;
+            for (int x = 0, i = offset; x < dstWidth; x++, i += 4) {
+                int a = toByte(values[i], 255);
+                float r = values[i + 1];
+                float g = values[i + 2];
+                float b = values[i + 3];
+                if (a == 0) {
+                    pixels[x] = 0;
+                    continue;
+                }
+                if (premultiplied) {
+                    pixels[x] = a << 24 | toByte(r, a) << 16 | toByte(g, a) << 8 | toByte(b, a);
+                } else {
+                    float unmultiply = 255.0f / Math.max(values[i], 1.0f);
+                    pixels[x] = a << 24
+                        | toByte(r * unmultiply, 255) << 16
+                        | toByte(g * unmultiply, 255) << 8
+                        | toByte(b * unmultiply, 255);
+                }
+            }
+            if (type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE || type == TYPE_INT_RGB) {
+                dstRaster.setDataElements(0, y, dstWidth, 1, pixels);
+            } else {
+                dst.setRGB(0, y, dstWidth, 1, pixels, 0, dstWidth);
+            }
+        }
+
+        private static int toByte(float value, int max) {
+            return Math.clamp((int) (value + 0.5f), 0, max);
+        }
+    }
+}
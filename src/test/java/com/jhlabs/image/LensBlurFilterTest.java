@@ -0,0 +1,66 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("LensBlurFilter tests")
+class LensBlurFilterTest {
+    @ParameterizedTest
+    @CsvSource({
+        "40, 30, 5",
+        "700, 12, 101",
+        // the radius leaves no inner part in tiles of the maximum size
+        "600, 9, 256",
+        "1100, 3, 300",
+    })
+    void uniformImageStaysUniform(int width, int height, float radius) {
+        int color = 0xFF_40_80_C0;
+        var src = new BufferedImage(width, height, TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                src.setRGB(x, y, color);
+            }
+        }
+
+        var filter = new LensBlurFilter("Lens Blur");
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        filter.setRadius(radius);
+        BufferedImage dest = filter.filter(src, null);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = dest.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    assertThat((rgb >>> shift) & 0xFF)
+                        .as("x = %d, y = %d, shift = %d", x, y, shift)
+                        .isCloseTo((color >>> shift) & 0xFF, within(1));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.math;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("FFT2D tests")
+class FFT2DTest {
+    @ParameterizedTest
+    @CsvSource({"1, 1", "2, 8", "16, 4", "32, 32"})
+    void matchesNaiveDFT(int cols, int rows) {
+        float[] real = new float[cols * rows];
+        float[] imag = new float[cols * rows];
+        fillRandom(real, imag, cols * 7L + rows);
+
+        double[] expectedReal = new double[cols * rows];
+        double[] expectedImag = new double[cols * rows];
+        for (int v = 0; v < rows; v++) {
+            for (int u = 0; u < cols; u++) {
+                for (int y = 0; y < rows; y++) {
+                    for (int x = 0; x < cols; x++) {
+                        double angle = -2 * Math.PI * ((double) u * x / cols + (double) v * y / rows);
+                        double re = real[y * cols + x];
+                        double im = imag[y * cols + x];
+                        expectedReal[v * cols + u] += re * Math.cos(angle) - im * Math.sin(angle);
+                        expectedImag[v * cols + u] += re * Math.sin(angle) + im * Math.cos(angle);
+                    }
+                }
+            }
+        }
+
+        new FFT2D(cols, rows).transform(real, imag, true);
+
+        for (int i = 0; i < real.length; i++) {
+            assertThat((double) real[i]).isCloseTo(expectedReal[i], within(1.0e-3));
+            assertThat((double) imag[i]).isCloseTo(expectedImag[i], within(1.0e-3));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"64, 64", "256, 32", "8, 512"})
+    void inverseRestoresInput(int cols, int rows) {
+        float[] real = new float[cols * rows];
+        float[] imag = new float[cols * rows];
+        fillRandom(real, imag, cols * 7L + rows);
+        float[] origReal = real.clone();
+        float[] origImag = imag.clone();
+
+        FFT2D fft = new FFT2D(cols, rows);
+        fft.transform(real, imag, true);
+        fft.transform(real, imag, false);
+
+        for (int i = 0; i < real.length; i++) {
+            assertThat(real[i]).isCloseTo(origReal[i], within(1.0e-4f));
+            assertThat(imag[i]).isCloseTo(origImag[i], within(1.0e-4f));
+        }
+    }
+
+    private static void fillRandom(float[] real, float[] imag, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < real.length; i++) {
+            real[i] = random.nextFloat();
+            imag[i] = random.nextFloat();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2025 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("CompositeMipmaps tests")
+class CompositeMipmapsTest {
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void levelSelection() {
+        assertThat(CompositeMipmaps.calcLevel(1000, 1000, 1.0)).isEqualTo(0);
+        assertThat(CompositeMipmaps.calcLevel(1000, 1000, 0.6)).isEqualTo(0);
+        assertThat(CompositeMipmaps.calcLevel(1000, 1000, 0.5)).isEqualTo(1);
+        assertThat(CompositeMipmaps.calcLevel(1000, 1000, 0.2)).isEqualTo(2);
+        assertThat(CompositeMipmaps.calcLevel(1000, 1000, 0.125)).isEqualTo(3);
+
+        // small images are not downscaled too much
+        assertThat(CompositeMipmaps.calcLevel(100, 1000, 0.01)).isEqualTo(0);
+        assertThat(CompositeMipmaps.calcLevel(300, 300, 0.01)).isEqualTo(2);
+    }
+
+    @Test
+    void regionUpdateMatchesFullRebuild() {
+        BufferedImage composite = new BufferedImage(301, 257, TYPE_INT_ARGB_PRE);
+        fill(composite, Color.BLUE, new Rectangle(0, 0, 301, 257));
+
+        var mipmaps = new CompositeMipmaps();
+        mipmaps.getImageForScale(composite, 0.2);
+
+        Rectangle region = new Rectangle(37, 41, 23, 19);
+        fill(composite, Color.RED, region);
+        mipmaps.addDirtyRegion(region);
+        BufferedImage updated = mipmaps.getImageForScale(composite, 0.2);
+
+        BufferedImage rebuilt = new CompositeMipmaps().getImageForScale(composite, 0.2);
+        assertThat(updated).isNotSameAs(composite);
+        assertThat(ImageUtils.getPixels(updated)).isEqualTo(ImageUtils.getPixels(rebuilt));
+    }
+
+    private static void fill(BufferedImage img, Color color, Rectangle area) {
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fill(area);
+        g.dispose();
+    }
+}
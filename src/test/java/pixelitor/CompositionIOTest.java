@@ -20,6 +20,7 @@ package pixelitor;
 import org.junit.jupiter.api.*;
 import pixelitor.io.FileIO;
 import pixelitor.io.OpenRaster;
+import pixelitor.io.PXCCodec;
 import pixelitor.io.PXCFormat;
 import pixelitor.layers.*;
 
@@ -116,6 +117,7 @@ class CompositionIOTest {
     @DisplayName("read/write PXC")
     void shouldReadAndWritePXCFormat() {
         Map<String, Consumer<Layer>> tests = initSimplePXCTests();
+        PXCCodec activeCodec = PXCCodec.getActive();
 
         for (var testCase : tests.entrySet()) {
             String fileName = testCase.getKey();
@@ -126,14 +128,19 @@ class CompositionIOTest {
                 // test reading
                 var comp = checkMultiLayerRead(inputFile, secondLayerValidator);
 
-                // Test round-trip by writing to temporary file and reading back
-                File tmpFile = File.createTempFile("pix_tmp", ".pxc");
-                PXCFormat.write(comp, tmpFile);
-                checkMultiLayerRead(tmpFile, secondLayerValidator);
+                // Test round-trip with each codec by writing to temporary file and reading back
+                for (PXCCodec codec : PXCCodec.values()) {
+                    PXCCodec.changeTo(codec);
+                    File tmpFile = File.createTempFile("pix_tmp", ".pxc");
+                    PXCFormat.write(comp, tmpFile);
+                    checkMultiLayerRead(tmpFile, secondLayerValidator);
 
-                cleanupTempFile(tmpFile);
+                    cleanupTempFile(tmpFile);
+                }
             } catch (Exception e) {
                 throw new IllegalStateException("Error while testing " + fileName, e);
+            } finally {
+                PXCCodec.changeTo(activeCodec);
             }
         }
     }
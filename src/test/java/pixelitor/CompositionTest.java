@@ -20,10 +20,16 @@ package pixelitor;
 import org.junit.jupiter.api.*;
 import pixelitor.compactions.Crop;
 import pixelitor.history.History;
+import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
+import pixelitor.utils.ImageUtils;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
 
 import static pixelitor.TestHelper.assertHistoryEditsAre;
 import static pixelitor.TestHelper.createEmptyImageLayer;
@@ -851,4 +857,45 @@ class CompositionTest {
         History.redo("Rename Image");
         assertThat(comp).hasName("CompositionTest New Name");
     }
-}
\ No newline at end of file
+
+    @Test
+    void compositeRegionUpdate() {
+        comp.getCompositeImage(); // create the cached composite
+
+        // paint on the second layer
+        ImageLayer layer = (ImageLayer) comp.getLayer(1);
+        Rectangle region = new Rectangle(2, 3, 5, 4);
+        Graphics2D g = layer.getImage().createGraphics();
+        g.setColor(Color.RED);
+        g.fill(region);
+        g.dispose();
+        comp.invalidateImageCache(region);
+
+        BufferedImage updated = comp.getCompositeImage();
+        BufferedImage expected = ImageUtils.calcComposite(
+            List.of(comp.getLayer(0), layer), comp.getCanvas());
+        assertThat(ImageUtils.getPixels(updated))
+            .isEqualTo(ImageUtils.getPixels(expected));
+    }
+
+    @Test
+    void compositeFromLayerRangeCaches() {
+        // add a third layer, so that the middle one can be edited
+        comp.addNewEmptyImageLayer("layer 3", false);
+        ImageLayer middle = (ImageLayer) comp.getLayer(1);
+        comp.setActiveLayer(middle);
+
+        for (int i = 0; i < 2; i++) {
+            Graphics2D g = middle.getImage().createGraphics();
+            g.setColor(i == 0 ? Color.RED : Color.BLUE);
+            g.fillRect(i, i, 6, 5);
+            g.dispose();
+            middle.updateContent();
+
+            BufferedImage expected = ImageUtils.calcComposite(
+                comp.levelStream().map(Layer.class::cast).toList(), comp.getCanvas());
+            assertThat(ImageUtils.getPixels(comp.getCompositeImage()))
+                .isEqualTo(ImageUtils.getPixels(expected));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2025 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("ThreadPool tests")
+class ThreadPoolTest {
+    @ParameterizedTest
+    @CsvSource({"1, 1", "7, 3", "100, 10", "1000, 2000", "5000, 1"})
+    void processBandsCoversEachRowOnce(int numRows, int rowWidth) {
+        AtomicIntegerArray visits = new AtomicIntegerArray(numRows);
+        AtomicInteger reportedUnits = new AtomicInteger();
+        ProgressTracker pt = new CountingTracker(reportedUnits);
+
+        ThreadPool.processBands(numRows, rowWidth, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                visits.incrementAndGet(y);
+            }
+        }, pt);
+
+        for (int y = 0; y < numRows; y++) {
+            assertThat(visits.get(y)).as("row " + y).isEqualTo(1);
+        }
+        assertThat(reportedUnits.get()).isEqualTo(numRows);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 1", "100, 10", "10000, 10000"})
+    void bandHeightIsInRange(int numRows, int rowWidth) {
+        int bandHeight = ThreadPool.calcBandHeight(numRows, rowWidth);
+        assertThat(bandHeight).isBetween(1, numRows);
+    }
+
+    @Test
+    void runAllRunsEachTask() {
+        AtomicIntegerArray runs = new AtomicIntegerArray(5);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < runs.length(); i++) {
+            int index = i;
+            tasks.add(() -> {
+                assertThat(ThreadPool.isPoolThread()).isEqualTo(index > 0);
+                runs.incrementAndGet(index);
+            });
+        }
+
+        ThreadPool.runAll(tasks);
+
+        for (int i = 0; i < runs.length(); i++) {
+            assertThat(runs.get(i)).as("task " + i).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void cancelledBandsAreSkipped() {
+        AtomicInteger processedRows = new AtomicInteger();
+        AtomicBoolean canceled = new AtomicBoolean();
+
+        assertThatThrownBy(() -> ThreadPool.callCancellable(() -> {
+            canceled.set(true);
+            ThreadPool.processBands(1000, 2000, (startRow, endRow) ->
+                processedRows.addAndGet(endRow - startRow), ProgressTracker.NULL_TRACKER);
+            return null;
+        }, canceled::get)).isInstanceOf(CancellationException.class);
+        assertThat(processedRows.get()).isZero();
+
+        // without cancellation the result is returned
+        Integer result = ThreadPool.callCancellable(() -> 42, () -> false);
+        assertThat(result).isEqualTo(42);
+    }
+
+    private record CountingTracker(AtomicInteger units) implements ProgressTracker {
+        @Override
+        public void unitDone() {
+            units.incrementAndGet();
+        }
+
+        @Override
+        public void unitsDone(int completedUnits) {
+            units.addAndGet(completedUnits);
+        }
+
+        @Override
+        public void finished() {
+        }
+    }
+}
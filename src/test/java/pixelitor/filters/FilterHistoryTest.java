@@ -19,6 +19,7 @@ package pixelitor.filters;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -29,10 +30,15 @@ import pixelitor.history.History;
 import pixelitor.layers.ImageLayer;
 import pixelitor.testutils.WithSelection;
 import pixelitor.testutils.WithTranslation;
+import pixelitor.utils.ImageUtils;
 
+import java.awt.Color;
 import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.util.stream.Stream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -71,4 +77,37 @@ class FilterHistoryTest {
 
         TestHelper.assertHistoryEditsAre("Invert");
     }
+
+    @Test
+    void partialChangeHistory() {
+        // big enough to have unchanged tiles
+        Composition comp = TestHelper.createRealComp("FilterHistoryTest",
+            ImageLayer.class, 300, 200);
+        History.clear();
+        ImageLayer layer = (ImageLayer) comp.getActiveLayer();
+        int[] before = ImageUtils.getPixels(layer.getImage()).clone();
+
+        layer.startFilter(new CornerFilter(), FilterContext.FILTER_WITHOUT_DIALOG, busyCursorParent);
+        int[] after = ImageUtils.getPixels(layer.getImage()).clone();
+        assertThat(after).isNotEqualTo(before);
+
+        History.undo();
+        assertThat(ImageUtils.getPixels(layer.getImage())).isEqualTo(before);
+
+        History.redo();
+        assertThat(ImageUtils.getPixels(layer.getImage())).isEqualTo(after);
+    }
+
+    // a filter that changes only the top left corner
+    private static class CornerFilter extends Filter {
+        @Override
+        protected BufferedImage transform(BufferedImage src, BufferedImage dest) {
+            dest = ImageUtils.copyImage(src);
+            Graphics2D g = dest.createGraphics();
+            g.setColor(Color.RED);
+            g.fillRect(0, 0, 10, 10);
+            g.dispose();
+            return dest;
+        }
+    }
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import pixelitor.TestHelper;
+
+import java.awt.Color;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@DisplayName("Kuwahara tests")
+class KuwaharaTest {
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "1, 1, 3",
+        "1, 9, 2",
+        "9, 1, 2",
+        "37, 23, 1",
+        "37, 23, 4",
+        "20, 70, 10",
+    })
+    void matchesBruteForceCalculation(int width, int height, int radius) {
+        Random random = new Random(width * 31L + height + radius);
+        int[] src = new int[width * height];
+        for (int i = 0; i < src.length; i++) {
+            // few distinct values, so that there are equally homogenous sub-regions
+            int gray = random.nextInt(4) * 0x30;
+            src[i] = random.nextBoolean() ? random.nextInt() : 0xFF_00_00_00 | gray << 16 | gray << 8 | gray;
+        }
+
+        int[] dest = new int[src.length];
+        Kuwahara.filterKuwahara(src, dest, width, height, radius);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int index = y * width + x;
+                assertThat(dest[index])
+                    .as("x = %d, y = %d", x, y)
+                    .isEqualTo(bruteForce(src, width, height, x, y, radius));
+            }
+        }
+    }
+
+    @Test
+    void grayPixelsTakeTheMeanOfTheMostHomogenousRegion() {
+        int[] src = {gray(0), gray(60), gray(200), gray(250)};
+        int[] dest = new int[src.length];
+
+        Kuwahara.filterKuwahara(src, dest, 4, 1, 1);
+
+        // for example, the region of the second pixel is {0, 60}
+        // and the region of the third pixel is {200, 250}
+        assertThat(dest).containsExactly(gray(0), gray(30), gray(225), gray(250));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "37, 23, 1",
+        "37, 23, 4",
+        "20, 70, 10",
+    })
+    void matchesPreviousImplementation(int width, int height, int radius) {
+        Random random = new Random(width * 17L + height + radius);
+        int[] src = new int[width * height];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = random.nextInt() | 0xFF_00_00_00;
+        }
+
+        int[] dest = new int[src.length];
+        Kuwahara.filterKuwahara(src, dest, width, height, radius);
+
+        int numChecked = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (hasNearlyEqualVariances(src, width, height, x, y, radius)) {
+                    // the float variances of the old code could be ordered either way
+                    continue;
+                }
+                numChecked++;
+                int expected = previousImplementation(src, width, height, x, y, radius);
+                int actual = dest[y * width + x];
+                for (int shift = 0; shift < 32; shift += 8) {
+                    assertThat((actual >>> shift) & 0xFF)
+                        .as("x = %d, y = %d, shift = %d", x, y, shift)
+                        .isCloseTo((expected >>> shift) & 0xFF, within(1));
+                }
+            }
+        }
+        assertThat(numChecked).isGreaterThan(src.length * 9 / 10);
+    }
+
+    // the per-pixel calculation that was used before the sliding sums
+    private static int previousImplementation(int[] src, int width, int height, int x, int y, int radius) {
+        float minVariance = Float.MAX_VALUE;
+        float minVarianceMean = 0;
+        for (int[] start : calcRegionStarts(x, y, radius)) {
+            float[] values = new float[(radius + 1) * (radius + 1)];
+            int n = 0;
+            for (int i = 0; i <= radius; i++) {
+                for (int j = 0; j <= radius; j++) {
+                    int sx = start[0] + i;
+                    int sy = start[1] + j;
+                    if (sx >= 0 && sx < width && sy >= 0 && sy < height) {
+                        values[n++] = calcBrightness(src[sy * width + sx]) / 255.0f;
+                    }
+                }
+            }
+            float sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += values[i];
+            }
+            float mean = sum / n;
+            float sqDiffSum = 0;
+            for (int i = 0; i < n; i++) {
+                float diff = values[i] - mean;
+                sqDiffSum += diff * diff;
+            }
+            float variance = sqDiffSum / n;
+            if (variance < minVariance) {
+                minVariance = variance;
+                minVarianceMean = mean;
+            }
+        }
+        return withBrightness(src[y * width + x], minVarianceMean);
+    }
+
+    private static boolean hasNearlyEqualVariances(int[] src, int width, int height,
+                                                   int x, int y, int radius) {
+        double min = Double.MAX_VALUE;
+        double secondMin = Double.MAX_VALUE;
+        for (int[] start : calcRegionStarts(x, y, radius)) {
+            double variance = calcRegionStats(src, width, height, start, radius)[2];
+            if (variance < min) {
+                secondMin = min;
+                min = variance;
+            } else if (variance < secondMin) {
+                secondMin = variance;
+            }
+        }
+        return secondMin - min < 1.0e-3 * Math.max(1.0, secondMin);
+    }
+
+    // a straightforward calculation of the same result
+    private static int bruteForce(int[] src, int width, int height, int x, int y, int radius) {
+        double minVariance = Double.MAX_VALUE;
+        float minVarianceMean = 0;
+        for (int[] start : calcRegionStarts(x, y, radius)) {
+            double[] stats = calcRegionStats(src, width, height, start, radius);
+            if (stats[2] < minVariance) {
+                minVariance = stats[2];
+                minVarianceMean = (float) stats[1] / (255.0f * (float) stats[0]);
+            }
+        }
+        return withBrightness(src[y * width + x], minVarianceMean);
+    }
+
+    // the top-left, top-right, bottom-left and bottom-right sub-regions
+    private static int[][] calcRegionStarts(int x, int y, int radius) {
+        return new int[][]{
+            {x - radius, y - radius}, {x, y - radius},
+            {x - radius, y}, {x, y}
+        };
+    }
+
+    // returns the number of pixels, the brightness sum and the variance
+    private static double[] calcRegionStats(int[] src, int width, int height, int[] start, int radius) {
+        long n = 0;
+        long sum = 0;
+        long sqSum = 0;
+        for (int sy = start[1]; sy <= start[1] + radius; sy++) {
+            for (int sx = start[0]; sx <= start[0] + radius; sx++) {
+                if (sx >= 0 && sx < width && sy >= 0 && sy < height) {
+                    int brightness = calcBrightness(src[sy * width + sx]);
+                    n++;
+                    sum += brightness;
+                    sqSum += brightness * brightness;
+                }
+            }
+        }
+        double variance = (double) (n * sqSum - sum * sum) / (n * n);
+        return new double[]{n, sum, variance};
+    }
+
+    private static int calcBrightness(int rgb) {
+        return Math.max(Math.max((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF), rgb & 0xFF);
+    }
+
+    private static int withBrightness(int rgb, float brightness) {
+        float[] hsb = Color.RGBtoHSB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, null);
+        return Color.HSBtoRGB(hsb[0], hsb[1], brightness);
+    }
+
+    private static int gray(int value) {
+        return 0xFF_00_00_00 | value << 16 | value << 8 | value;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import pixelitor.TestHelper;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Median tests")
+class MedianTest {
+    @ParameterizedTest
+    @CsvSource({
+        "1, 1, 3, 50, true",
+        "1, 9, 2, 50, false",
+        "9, 1, 2, 0, true",
+        "37, 23, 1, 50, false",
+        "37, 23, 4, 100, true",
+        "300, 20, 5, 50, true",
+        "260, 30, 3, 25, false",
+        "20, 70, 10, 75, true",
+    })
+    void matchesBruteForceCalculation(int width, int height, int radius, int percentile, boolean opaque) {
+        Random random = new Random(width * 31L + height + radius);
+        int[] src = new int[width * height];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = opaque ? random.nextInt() | 0xFF_00_00_00 : random.nextInt();
+        }
+
+        int[] dest = new int[src.length];
+        Median.filterRank(src, dest, width, height, radius, percentile, ProgressTracker.NULL_TRACKER);
+
+        int windowSize = 2 * radius + 1;
+        int numValues = windowSize * windowSize;
+        int rank = (int) Math.round(percentile / 100.0 * (numValues - 1));
+        int[] values = new int[numValues];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int expected = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int n = 0;
+                    for (int dy = -radius; dy <= radius; dy++) {
+                        int sy = Math.clamp(y + dy, 0, height - 1);
+                        for (int dx = -radius; dx <= radius; dx++) {
+                            int sx = Math.clamp(x + dx, 0, width - 1);
+                            values[n++] = (src[sy * width + sx] >>> shift) & 0xFF;
+                        }
+                    }
+                    Arrays.sort(values);
+                    expected |= values[rank] << shift;
+                }
+                assertThat(dest[y * width + x])
+                    .as("x = %d, y = %d", x, y)
+                    .isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void filtersGrayscaleImages() {
+        TestHelper.setUnitTestingMode();
+
+        // a uniform layer mask with a single outlier pixel
+        BufferedImage mask = new BufferedImage(9, 7, TYPE_BYTE_GRAY);
+        WritableRaster raster = mask.getRaster();
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 9; x++) {
+                raster.setSample(x, y, 0, 100);
+            }
+        }
+        raster.setSample(4, 3, 0, 255);
+
+        BufferedImage result = new Median().transformImage(mask);
+
+        assertThat(result.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        assertThat(result.getWidth()).isEqualTo(9);
+        assertThat(result.getHeight()).isEqualTo(7);
+        // the outlier is removed, and the image is uniform again
+        int expected = result.getRaster().getSample(0, 0, 0);
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 9; x++) {
+                assertThat(result.getRaster().getSample(x, y, 0))
+                    .as("x = %d, y = %d", x, y)
+                    .isEqualTo(expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import pixelitor.utils.ProgressTracker;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_DIAMOND;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_SQUARE;
+import static pixelitor.filters.impl.MorphologyFilter.OP_DILATE;
+import static pixelitor.filters.impl.MorphologyFilter.OP_ERODE;
+
+@DisplayName("MorphologyFilter tests")
+class MorphologyFilterTest {
+    @ParameterizedTest
+    @CsvSource({
+        "1, 1, 3",
+        "1, 9, 2",
+        "9, 1, 4",
+        "17, 11, 1",
+        "17, 11, 2",
+        "17, 11, 5",
+        "30, 25, 8",
+    })
+    void sameAsRepeated3x3Operation(int width, int height, int iterations) {
+        Random random = new Random(width * 31L + height + iterations);
+        int[] src = new int[width * height];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = random.nextInt();
+        }
+
+        for (int kernel : new int[]{KERNEL_DIAMOND, KERNEL_SQUARE}) {
+            for (int op : new int[]{OP_ERODE, OP_DILATE}) {
+                var filter = new MorphologyFilter("Test");
+                filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+                filter.setKernel(kernel);
+                filter.setOp(op);
+                filter.setIterations(iterations);
+
+                int[] result = filter.filterPixels(width, height, src.clone());
+
+                assertThat(result)
+                    .as("kernel = %d, op = %d", kernel, op)
+                    .isEqualTo(repeat3x3(src, width, height, iterations, kernel, op));
+            }
+        }
+    }
+
+    // the straightforward calculation: a 3x3 operation repeated n times
+    private static int[] repeat3x3(int[] src, int width, int height,
+                                   int iterations, int kernel, int op) {
+        int[] pixels = src.clone();
+        for (int it = 0; it < iterations; it++) {
+            int[] next = new int[pixels.length];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int[] channels = new int[4];
+                    for (int c = 0; c < 4; c++) {
+                        channels[c] = op == OP_ERODE ? 255 : 0;
+                    }
+                    for (int dy = -1; dy <= 1; dy++) {
+                        for (int dx = -1; dx <= 1; dx++) {
+                            int nx = x + dx;
+                            int ny = y + dy;
+                            boolean corner = dx != 0 && dy != 0;
+                            if ((kernel == KERNEL_DIAMOND && corner)
+                                || nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                                continue;
+                            }
+                            int rgb = pixels[ny * width + nx];
+                            for (int c = 0; c < 4; c++) {
+                                int value = (rgb >>> (24 - 8 * c)) & 0xFF;
+                                channels[c] = op == OP_ERODE
+                                    ? Math.min(channels[c], value)
+                                    : Math.max(channels[c], value);
+                            }
+                        }
+                    }
+                    if (op == OP_DILATE) {
+                        channels[0] = 255; // dilation makes the pixels opaque
+                    }
+                    next[y * width + x] = channels[0] << 24 | channels[1] << 16
+                        | channels[2] << 8 | channels[3];
+                }
+            }
+            pixels = next;
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.util;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.TestHelper;
+import pixelitor.filters.Filter;
+import pixelitor.filters.jhlabsproxies.JHBoxBlur;
+import pixelitor.filters.jhlabsproxies.JHGaussianBlur;
+import pixelitor.filters.jhlabsproxies.JHPolarCoordinates;
+import pixelitor.filters.jhlabsproxies.JHTriTone;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("PreviewRegion tests")
+class PreviewRegionTest {
+    private static final Rectangle REGION = new Rectangle(13, 21, 40, 30);
+
+    @BeforeAll
+    static void beforeAllTests() {
+        TestHelper.setUnitTestingMode();
+    }
+
+    @Test
+    void pointFilterCalculatesOnlyTheRegion() {
+        checkRegionCalculation(new JHTriTone());
+    }
+
+    @Test
+    void transformFilterCalculatesOnlyTheRegion() {
+        checkRegionCalculation(new JHPolarCoordinates());
+    }
+
+    @Test
+    void haloIsEnoughForCroppedSource() {
+        checkHalo(new JHGaussianBlur());
+        checkHalo(new JHBoxBlur());
+    }
+
+    private static void checkHalo(Filter filter) {
+        BufferedImage src = createRandomImage(100, 80);
+        BufferedImage full = filter.transformImage(src);
+
+        int halo = filter.getPreviewHalo();
+        assertThat(halo).isPositive();
+        Rectangle cropRect = new Rectangle(REGION);
+        cropRect.grow(halo, halo);
+        BufferedImage crop = ImageUtils.createImageWithSameCM(src, cropRect.width, cropRect.height);
+        crop.getRaster().setRect(-cropRect.x, -cropRect.y, src.getRaster());
+        BufferedImage cropResult = filter.transformImage(crop);
+
+        for (int y = 0; y < REGION.height; y++) {
+            for (int x = 0; x < REGION.width; x++) {
+                assertThat(cropResult.getRGB(x + halo, y + halo))
+                    .isEqualTo(full.getRGB(REGION.x + x, REGION.y + y));
+            }
+        }
+    }
+
+    @Test
+    void regionIsClippedToTheImage() {
+        Rectangle clipped = PreviewRegion.callWithin(new Rectangle(-5, 10, 50, 50),
+            () -> PreviewRegion.get(30, 40));
+        assertThat(clipped).isEqualTo(new Rectangle(0, 10, 30, 30));
+
+        // the whole image outside restricted previews
+        assertThat(PreviewRegion.get(30, 40)).isEqualTo(new Rectangle(0, 0, 30, 40));
+    }
+
+    private static void checkRegionCalculation(Filter filter) {
+        assertThat(filter.supportsPreviewRegion()).isTrue();
+        BufferedImage src = createRandomImage(100, 80);
+
+        BufferedImage full = filter.transformImage(src);
+        BufferedImage restricted = PreviewRegion.callWithin(REGION,
+            () -> filter.transformImage(src));
+
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                if (REGION.contains(x, y)) {
+                    assertThat(restricted.getRGB(x, y)).isEqualTo(full.getRGB(x, y));
+                } else {
+                    // not calculated
+                    assertThat(restricted.getRGB(x, y)).isZero();
+                }
+            }
+        }
+    }
+
+    private static BufferedImage createRandomImage(int width, int height) {
+        var img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pixelitor.gui.HistogramsPanel.NUM_BINS;
+
+@DisplayName("ImageHistograms tests")
+class ImageHistogramsTest {
+    private final Random random = new Random(123);
+
+    @Test
+    void countsAllPixels() {
+        BufferedImage image = createRandomImage(301, 207);
+        var histograms = new ImageHistograms();
+        histograms.calc(image);
+
+        assertThat(histograms.getSampleWeight()).isEqualTo(1);
+        assertMatchesBruteForce(histograms, image, 1);
+    }
+
+    @Test
+    void updatesChangedRegion() {
+        BufferedImage image = createRandomImage(250, 180);
+        var histograms = new ImageHistograms();
+        histograms.calc(image);
+
+        Rectangle region = new Rectangle(40, 30, 25, 17);
+        randomize(image, region);
+        // the region can extend beyond the image
+        Rectangle edgeRegion = new Rectangle(230, 170, 40, 40);
+        randomize(image, edgeRegion);
+
+        histograms.update(image, region);
+        histograms.update(image, edgeRegion);
+        assertMatchesBruteForce(histograms, image, 1);
+    }
+
+    @Test
+    void samplesHugeImages() {
+        int width = 2100;
+        int height = 1100;
+        assertThat((long) width * height).isGreaterThan(ImageHistograms.MAX_SAMPLES);
+
+        BufferedImage image = createRandomImage(width, height);
+        var histograms = new ImageHistograms();
+        histograms.calc(image);
+
+        int step = ImageHistograms.calcStep(width, height);
+        assertThat(step).isGreaterThan(1);
+        assertThat(histograms.getSampleWeight()).isEqualTo(step * step);
+        assertMatchesBruteForce(histograms, image, step);
+
+        Rectangle region = new Rectangle(101, 333, 70, 45);
+        randomize(image, region);
+        histograms.update(image, region);
+        assertMatchesBruteForce(histograms, image, step);
+    }
+
+    private BufferedImage createRandomImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, TYPE_INT_ARGB_PRE);
+        randomize(image, new Rectangle(0, 0, width, height));
+        return image;
+    }
+
+    private void randomize(BufferedImage image, Rectangle region) {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int width = image.getWidth();
+        Rectangle r = region.intersection(new Rectangle(0, 0, width, image.getHeight()));
+        for (int y = r.y; y < r.y + r.height; y++) {
+            for (int x = r.x; x < r.x + r.width; x++) {
+                // some transparent pixels, which aren't counted
+                pixels[y * width + x] = random.nextInt(8) == 0 ? 0 : random.nextInt();
+            }
+        }
+    }
+
+    private static void assertMatchesBruteForce(ImageHistograms histograms,
+                                                BufferedImage image, int step) {
+        int[] reds = new int[NUM_BINS];
+        int[] greens = new int[NUM_BINS];
+        int[] blues = new int[NUM_BINS];
+        int[] luminances = new int[NUM_BINS];
+        for (int y = 0; y < image.getHeight(); y += step) {
+            for (int x = 0; x < image.getWidth(); x += step) {
+                int rgb = image.getRaster().getDataBuffer().getElem(y * image.getWidth() + x);
+                if ((rgb >>> 24) == 0) {
+                    continue;
+                }
+                int r = (rgb >>> 16) & 0xFF;
+                int g = (rgb >>> 8) & 0xFF;
+                int b = rgb & 0xFF;
+                reds[r]++;
+                greens[g]++;
+                blues[b]++;
+                luminances[(299 * r + 587 * g + 114 * b) / 1000]++;
+            }
+        }
+        assertThat(histograms.getReds()).isEqualTo(reds);
+        assertThat(histograms.getGreens()).isEqualTo(greens);
+        assertThat(histograms.getBlues()).isEqualTo(blues);
+        assertThat(histograms.getLuminances()).isEqualTo(luminances);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("PixelBackup tests")
+class PixelBackupTest {
+    @Test
+    void intImageSurvivesSpilling() {
+        BufferedImage image = createRandomImage(TYPE_INT_ARGB);
+        int[] expected = image.getRGB(0, 0, 300, 200, null, 0, 300);
+
+        PixelBackup backup = PixelBackup.of(image);
+        assertThat(backup.getNumBytes()).isEqualTo(4L * 300 * 200);
+        assertThat(backup.spillNow()).isTrue();
+        assertThat(backup.isInMemory()).isFalse();
+
+        BufferedImage restored = backup.getImage();
+        assertThat(restored).isNotSameAs(image);
+        assertThat(restored.getType()).isEqualTo(TYPE_INT_ARGB);
+        assertThat(restored.getRGB(0, 0, 300, 200, null, 0, 300)).isEqualTo(expected);
+
+        backup.release();
+        assertThat(backup.getImage()).isNull();
+    }
+
+    @Test
+    void byteImageSurvivesSpilling() {
+        BufferedImage image = createRandomImage(TYPE_BYTE_GRAY);
+        int[] expected = image.getRaster().getPixels(0, 0, 300, 200, (int[]) null);
+
+        PixelBackup backup = PixelBackup.of(image);
+        assertThat(backup.spillNow()).isTrue();
+
+        BufferedImage restored = backup.getImage();
+        assertThat(restored.getRaster().getPixels(0, 0, 300, 200, (int[]) null))
+            .isEqualTo(expected);
+        backup.release();
+    }
+
+    @Test
+    void rasterKeepsLocation() {
+        BufferedImage image = createRandomImage(TYPE_INT_ARGB);
+        Rectangle rect = new Rectangle(50, 40, 200, 100);
+        Raster raster = image.getData(rect);
+        int[] expected = ((DataBufferInt) raster.getDataBuffer()).getData().clone();
+
+        PixelBackup backup = PixelBackup.of(raster);
+        assertThat(backup.spillNow()).isTrue();
+
+        Raster restored = backup.getRaster();
+        assertThat(restored.getBounds()).isEqualTo(rect);
+        assertThat(((DataBufferInt) restored.getDataBuffer()).getData()).isEqualTo(expected);
+        backup.release();
+    }
+
+    @Test
+    void unspilledBackupIsTheOriginal() {
+        BufferedImage image = createRandomImage(TYPE_INT_ARGB);
+
+        PixelBackup backup = PixelBackup.of(image);
+        assertThat(backup.isInMemory()).isTrue();
+        assertThat(backup.getImage()).isSameAs(image);
+
+        backup.release();
+        assertThat(backup.isInMemory()).isFalse();
+        assertThat(backup.spillNow()).isFalse();
+    }
+
+    private static BufferedImage createRandomImage(int type) {
+        BufferedImage image = new BufferedImage(300, 200, type);
+        Random random = new Random(42);
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 300; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+}
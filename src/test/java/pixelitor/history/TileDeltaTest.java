@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.history;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("TileDelta tests")
+class TileDeltaTest {
+    // not a multiple of the tile size, so that there are partial tiles
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    @Test
+    void storesOnlyChangedTiles() {
+        BufferedImage before = createRandomImage();
+        BufferedImage after = ImageUtils.copyImage(before);
+        fillRect(after, 10, 10, 20, 20);
+        fillRect(after, 290, 195, 5, 5);
+
+        TileDelta delta = TileDelta.create(before, after);
+
+        assertThat(delta).isNotNull();
+        assertThat(delta.getNumTiles()).isEqualTo(2);
+        assertThat(delta.getBounds()).isEqualTo(new Rectangle(0, 0, WIDTH, HEIGHT));
+        delta.release();
+    }
+
+    @Test
+    void swapRestoresBothStates() {
+        BufferedImage before = createRandomImage();
+        BufferedImage after = ImageUtils.copyImage(before);
+        fillRect(after, 100, 50, 80, 70);
+        int[] beforePixels = ImageUtils.getPixels(before).clone();
+        int[] afterPixels = ImageUtils.getPixels(after).clone();
+
+        TileDelta delta = TileDelta.create(before, after);
+        assertThat(delta.getBounds()).isEqualTo(new Rectangle(64, 0, 128, 128));
+
+        // undo
+        assertThat(delta.swap(after)).isTrue();
+        assertThat(ImageUtils.getPixels(after)).isEqualTo(beforePixels);
+
+        // redo
+        assertThat(delta.swap(after)).isTrue();
+        assertThat(ImageUtils.getPixels(after)).isEqualTo(afterPixels);
+
+        // the copy is created from the "after" state
+        BufferedImage copy = delta.applyToCopy(after);
+        assertThat(ImageUtils.getPixels(copy)).isEqualTo(beforePixels);
+        assertThat(ImageUtils.getPixels(after)).isEqualTo(afterPixels);
+
+        delta.release();
+        assertThat(delta.swap(after)).isFalse();
+    }
+
+    @Test
+    void storesFullSlotsForPartialTiles() {
+        BufferedImage before = createRandomImage();
+        BufferedImage after = ImageUtils.copyImage(before);
+        fillRect(after, 150, 100, 150, 100);
+        int[] beforePixels = ImageUtils.getPixels(before).clone();
+
+        TileDelta delta = TileDelta.create(before, after);
+        // the partial tiles at the edges also take full slots
+        assertThat(delta.getNumTiles()).isEqualTo(9);
+        assertThat(delta.getNumBytes()).isEqualTo(4L * 9 * 64 * 64);
+
+        assertThat(delta.swap(after)).isTrue();
+        assertThat(ImageUtils.getPixels(after)).isEqualTo(beforePixels);
+        delta.release();
+    }
+
+    @Test
+    void unchangedImage() {
+        BufferedImage before = createRandomImage();
+        BufferedImage after = ImageUtils.copyImage(before);
+        int[] pixels = ImageUtils.getPixels(after).clone();
+
+        TileDelta delta = TileDelta.create(before, after);
+
+        assertThat(delta.getNumTiles()).isZero();
+        assertThat(delta.getBounds().isEmpty()).isTrue();
+        assertThat(delta.swap(after)).isTrue();
+        assertThat(ImageUtils.getPixels(after)).isEqualTo(pixels);
+        delta.release();
+    }
+
+    @Test
+    void notCreatedIfNotWorthIt() {
+        BufferedImage before = createRandomImage();
+
+        // most of the image changed
+        BufferedImage after = ImageUtils.copyImage(before);
+        fillRect(after, 0, 0, WIDTH, HEIGHT);
+        assertThat(TileDelta.create(before, after)).isNull();
+
+        // different sizes
+        assertThat(TileDelta.create(before, new BufferedImage(WIDTH, HEIGHT + 1, TYPE_INT_ARGB))).isNull();
+
+        // not a packed int image
+        BufferedImage gray = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        assertThat(TileDelta.create(gray, new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY))).isNull();
+    }
+
+    private static BufferedImage createRandomImage() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        int[] pixels = ImageUtils.getPixels(image);
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return image;
+    }
+
+    private static void fillRect(BufferedImage image, int x, int y, int width, int height) {
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(x, y, width, height);
+        g.dispose();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("PXCCodec tests")
+class PXCCodecTest {
+    @ParameterizedTest
+    @EnumSource(PXCCodec.class)
+    void argbRoundTrip(PXCCodec codec) throws IOException {
+        // taller than a band of the fast codec
+        BufferedImage img = createRandomImage(37, 150, TYPE_INT_ARGB);
+
+        BufferedImage decoded = decode(encode(codec, img));
+
+        assertSamePixels(img, decoded);
+    }
+
+    @ParameterizedTest
+    @EnumSource(PXCCodec.class)
+    void grayRoundTrip(PXCCodec codec) throws IOException {
+        BufferedImage img = createRandomImage(20, 70, TYPE_BYTE_GRAY);
+
+        BufferedImage decoded = decode(encode(codec, img));
+
+        assertThat(decoded.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        int[] expected = img.getRaster().getPixels(0, 0, 20, 70, (int[]) null);
+        int[] actual = decoded.getRaster().getPixels(0, 0, 20, 70, (int[]) null);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PXCCodec.class, names = {"RAW", "FAST"})
+    void truncatedDataIsRejected(PXCCodec codec) throws IOException {
+        byte[] data = encode(codec, createRandomImage(10, 10, TYPE_INT_ARGB));
+        byte[] truncated = new byte[data.length - 5];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        assertThatThrownBy(() -> decode(truncated))
+            .isInstanceOf(IOException.class);
+    }
+
+    @ParameterizedTest
+    @EnumSource(PXCCodec.class)
+    void largeImageRoundTrip(PXCCodec codec) throws IOException {
+        // the raw codec writes and reads this in multiple row blocks
+        BufferedImage img = createRandomImage(700, 450, TYPE_INT_ARGB);
+
+        BufferedImage decoded = decode(encode(codec, img));
+
+        assertSamePixels(img, decoded);
+    }
+
+    @Test
+    void extraRawDataIsRejected() throws IOException {
+        byte[] data = encode(PXCCodec.RAW, createRandomImage(10, 10, TYPE_INT_ARGB));
+        // a corrupt header that claims fewer rows than were written
+        data[8] = 5;
+
+        assertThatThrownBy(() -> decode(data))
+            .isInstanceOf(IOException.class);
+    }
+
+    private static byte[] encode(PXCCodec codec, BufferedImage img) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        codec.encode(img).writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] data) throws IOException {
+        return PXCCodec.decode(new ByteArrayInputStream(data));
+    }
+
+    private static BufferedImage createRandomImage(int width, int height, int type) {
+        var img = new BufferedImage(width, height, type);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertThat(actual.getWidth()).isEqualTo(width);
+        assertThat(actual.getHeight()).isEqualTo(height);
+        assertThat(actual.getRGB(0, 0, width, height, null, 0, width))
+            .isEqualTo(expected.getRGB(0, 0, width, height, null, 0, width));
+    }
+}
@@ -36,6 +36,7 @@ import pixelitor.utils.ImageUtils;
 import java.awt.AlphaComposite;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.Collection;
 
@@ -557,4 +558,23 @@ public class ImageLayerTest {
             iconChecker.verifyUpdateCounts(3, 0);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void staleContentCacheKeyDoesNotKeepTheImage() throws InterruptedException {
+        BufferedImage image = TestHelper.createImage();
+        layer.setImage(image);
+        Object key = layer.getContentCacheKey();
+        assertThat(key).isEqualTo(layer.getContentCacheKey());
+
+        var imageRef = new WeakReference<>(image);
+        image = null;
+        layer.setImage(TestHelper.createImage());
+        assertThat(key).isNotEqualTo(layer.getContentCacheKey());
+
+        for (int i = 0; i < 50 && imageRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(imageRef.get()).isNull();
+    }
+}
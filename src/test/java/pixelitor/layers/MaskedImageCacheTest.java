@@ -0,0 +1,48 @@
+/*
+ * Copyright 2025 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("MaskedImageCache tests")
+class MaskedImageCacheTest {
+    @Test
+    void reusedOnlyForEqualKeys() {
+        var cache = new MaskedImageCache();
+        var image = new BufferedImage(10, 10, TYPE_INT_ARGB);
+
+        assertThat(cache.get("a")).isNull();
+        cache.put("a", image);
+        assertThat(cache.get("a")).isSameAs(image);
+        assertThat(cache.get("b")).isNull();
+
+        var image2 = new BufferedImage(10, 10, TYPE_INT_ARGB);
+        cache.put("b", image2);
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.get("b")).isSameAs(image2);
+
+        cache.release();
+        assertThat(cache.get("b")).isNull();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("SmartFilterCache tests")
+class SmartFilterCacheTest {
+    @Test
+    void validOnlyForTheSameSettings() {
+        var cache = new SmartFilterCache();
+        var image = new BufferedImage(10, 10, TYPE_INT_ARGB);
+        long hitsBefore = SmartFilterCache.getNumHits();
+        long missesBefore = SmartFilterCache.getNumMisses();
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.isStale("a")).isFalse();
+
+        cache.put("a", image);
+        assertThat(cache.get("a")).isSameAs(image);
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.isStale("a")).isFalse();
+        assertThat(cache.isStale("b")).isTrue();
+
+        assertThat(SmartFilterCache.getNumHits() - hitsBefore).isEqualTo(1);
+        assertThat(SmartFilterCache.getNumMisses() - missesBefore).isEqualTo(2);
+
+        cache.invalidate();
+        assertThat(cache.peek()).isNull();
+        assertThat(cache.isStale("b")).isFalse();
+    }
+
+    @Test
+    void releasedImagesKeepTheirSettings() {
+        // room for only one of the 100x100 images
+        long prevBudget = SmartFilterCache.setMemoryBudget(50_000);
+        var cache = new SmartFilterCache();
+        var other = new SmartFilterCache();
+        try {
+            cache.put("a", new BufferedImage(100, 100, TYPE_INT_ARGB));
+            other.put("x", new BufferedImage(100, 100, TYPE_INT_ARGB));
+
+            // the image was released, but later settings
+            // changes must still invalidate the downstream filters
+            assertThat(cache.peek()).isNull();
+            assertThat(other.peek()).isNotNull();
+            assertThat(cache.isStale("a")).isFalse();
+            assertThat(cache.isStale("b")).isTrue();
+        } finally {
+            cache.invalidate();
+            other.invalidate();
+            SmartFilterCache.setMemoryBudget(prevBudget);
+        }
+    }
+}
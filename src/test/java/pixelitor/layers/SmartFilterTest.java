@@ -21,6 +21,7 @@ import org.junit.jupiter.api.*;
 import pixelitor.Composition;
 import pixelitor.TestHelper;
 import pixelitor.filters.Filter;
+import pixelitor.filters.Sepia;
 import pixelitor.history.History;
 import pixelitor.utils.MockFilter;
 
@@ -96,6 +97,25 @@ class SmartFilterTest {
         smartObject.resize(new Dimension(4, 4)).join();
     }
 
+    @Test
+    void trivialFilterSettingsAreFingerprinted() {
+        // trivial filters have no preset menu, but their settings
+        // still determine the cached output of the smart filter
+        Sepia sepia = new Sepia();
+        assertThat(sepia.canHaveUserPresets()).isFalse();
+
+        SmartFilter sepiaSF = new SmartFilter(sepia, smartObject.getContent(), smartObject);
+        smartObject.addSmartFilter(sepiaSF, true, true);
+        forceRecalculatingImage();
+        assertThat(sepiaSF.invalidateIfChanged()).isFalse();
+
+        sepia.getParamSet().set("Intensity", "50");
+        assertThat(sepiaSF.invalidateIfChanged()).isTrue();
+
+        forceRecalculatingImage();
+        assertThat(sepiaSF.invalidateIfChanged()).isFalse();
+    }
+
     @Test
     void addSmartFilter() {
         Filter newFilter = TestHelper.createMockFilter("Filter 4");
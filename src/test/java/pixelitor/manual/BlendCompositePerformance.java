@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import org.jdesktop.swingx.graphics.BlendComposite;
+import org.jdesktop.swingx.graphics.BlendComposite.BlendingMode;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Measures the speed of {@link BlendComposite} for each blending mode.
+ * Running it on an older revision gives the baseline for comparisons.
+ */
+public class BlendCompositePerformance {
+    private static final int IMAGE_SIZE = 2000;
+    private static final int NUM_WARMUP_RUNS = 5;
+    private static final int NUM_MEASURED_RUNS = 10;
+
+    private BlendCompositePerformance() {
+    }
+
+    public static void main(String[] args) {
+        BufferedImage src = createRandomImage(new Random(1));
+        BufferedImage dst = createRandomImage(new Random(2));
+
+        double totalMillis = 0;
+        for (BlendingMode mode : BlendingMode.values()) {
+            BlendComposite composite = BlendComposite.getInstance(mode, 0.8f);
+            for (int i = 0; i < NUM_WARMUP_RUNS; i++) {
+                blend(composite, src, dst);
+            }
+
+            double minMillis = Double.MAX_VALUE;
+            for (int i = 0; i < NUM_MEASURED_RUNS; i++) {
+                long startTime = System.nanoTime();
+                blend(composite, src, dst);
+                double millis = (System.nanoTime() - startTime) / 1_000_000.0;
+                minMillis = Math.min(minMillis, millis);
+            }
+            totalMillis += minMillis;
+            System.out.printf("%-20s min = %8.2f ms%n", mode, minMillis);
+        }
+        System.out.printf("%-20s       %8.2f ms%n", "total", totalMillis);
+        System.exit(0);
+    }
+
+    private static void blend(BlendComposite composite, BufferedImage src, BufferedImage dst) {
+        Graphics2D g = dst.createGraphics();
+        g.setComposite(composite);
+        g.drawImage(src, 0, 0, null);
+        g.dispose();
+    }
+
+    private static BufferedImage createRandomImage(Random rand) {
+        var img = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, TYPE_INT_ARGB);
+        for (int y = 0; y < IMAGE_SIZE; y++) {
+            for (int x = 0; x < IMAGE_SIZE; x++) {
+                img.setRGB(x, y, rand.nextInt());
+            }
+        }
+        return img;
+    }
+}
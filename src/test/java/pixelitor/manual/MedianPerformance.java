@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.manual;
+
+import pixelitor.filters.Median;
+import pixelitor.utils.Messages;
+import pixelitor.utils.TestMessageHandler;
+import pixelitor.utils.Texts;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Measures the speed of the {@link Median} filter for increasing radii.
+ * The running time should be nearly independent of the radius.
+ */
+public class MedianPerformance {
+    private static final int IMAGE_SIZE = 2000;
+    private static final int[] RADII = {1, 5, 10, 20, 30, 50};
+    private static final int NUM_WARMUP_RUNS = 3;
+    private static final int NUM_MEASURED_RUNS = 5;
+
+    private MedianPerformance() {
+    }
+
+    public static void main(String[] args) {
+        // the filter reports its progress
+        Messages.setHandler(new TestMessageHandler());
+        Texts.init();
+        BufferedImage src = createRandomImage(new Random(1));
+
+        for (int radius : RADII) {
+            var filter = new Median();
+            filter.getParamSet().set("Radius", String.valueOf(radius));
+            for (int i = 0; i < NUM_WARMUP_RUNS; i++) {
+                filter.transformImage(src);
+            }
+
+            double minMillis = Double.MAX_VALUE;
+            for (int i = 0; i < NUM_MEASURED_RUNS; i++) {
+                long startTime = System.nanoTime();
+                filter.transformImage(src);
+                double millis = (System.nanoTime() - startTime) / 1_000_000.0;
+                minMillis = Math.min(minMillis, millis);
+            }
+            System.out.printf("radius = %2d, min = %8.2f ms%n", radius, minMillis);
+        }
+        System.exit(0);
+    }
+
+    private static BufferedImage createRandomImage(Random rand) {
+        var img = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, TYPE_INT_ARGB);
+        for (int y = 0; y < IMAGE_SIZE; y++) {
+            for (int x = 0; x < IMAGE_SIZE; x++) {
+                img.setRGB(x, y, 0xFF_00_00_00 | rand.nextInt());
+            }
+        }
+        return img;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("DistanceTransform tests")
+class DistanceTransformTest {
+    @Test
+    void fillsByNearestSite() {
+        Random random = new Random(11);
+        int width = 213;
+        int height = 157;
+        int numSites = 120;
+        List<Point2D> sites = new ArrayList<>();
+        int[] siteValues = new int[numSites];
+        for (int i = 0; i < numSites; i++) {
+            // at pixel positions, so that the result is exact
+            sites.add(new Point2D.Double(random.nextInt(width), random.nextInt(height)));
+            siteValues[i] = i;
+        }
+        int[] dst = new int[width * height];
+        dst[0] = -1;
+        Rectangle region = new Rectangle(17, 9, 150, 120);
+
+        DistanceTransform.fillByNearestSite(sites, siteValues, dst,
+            width, height, region, ProgressTracker.NULL_TRACKER);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = dst[y * width + x];
+                if (!region.contains(x, y)) {
+                    // outside the region the pixels aren't touched
+                    assertThat(value).isEqualTo(y == 0 && x == 0 ? -1 : 0);
+                    continue;
+                }
+                double expected = Double.POSITIVE_INFINITY;
+                for (Point2D site : sites) {
+                    expected = Math.min(expected, site.distanceSq(x, y));
+                }
+                // compares the distances, because there can be ties
+                assertThat(sites.get(value).distanceSq(x, y)).isEqualTo(expected);
+            }
+        }
+    }
+}
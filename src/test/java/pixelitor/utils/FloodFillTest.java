@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pixelitor.utils.FloodFill.Spans;
+
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("FloodFill tests")
+class FloodFillTest {
+    @Test
+    void matchesBreadthFirstSearch() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            int width = 1 + random.nextInt(90);
+            int height = 1 + random.nextInt(70);
+            // few values, so that there are complex regions with holes
+            boolean[] inRegion = new boolean[width * height];
+            for (int j = 0; j < inRegion.length; j++) {
+                inRegion[j] = random.nextInt(10) < 6;
+            }
+            int seedX = random.nextInt(width);
+            int seedY = random.nextInt(height);
+            inRegion[seedY * width + seedX] = true;
+
+            Spans spans = FloodFill.fill(width, height, seedX, seedY, idx -> inRegion[idx]);
+
+            boolean[] expected = bfs(inRegion, width, height, seedX, seedY);
+            int[] actual = new int[width * height];
+            spans.fillPixels(actual, width, 1);
+            int numExpected = 0;
+            for (int j = 0; j < expected.length; j++) {
+                assertThat(actual[j] == 1).isEqualTo(expected[j]);
+                if (expected[j]) {
+                    numExpected++;
+                }
+            }
+            assertThat(spans.getNumPixels()).isEqualTo(numExpected);
+
+            // the shape contains exactly the centers of the filled pixels
+            Area shape = spans.toShape(5, 7);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertThat(shape.contains(x + 5.5, y + 7.5))
+                        .isEqualTo(expected[y * width + x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rectangularRegion() {
+        int width = 200;
+        int height = 100;
+        Rectangle rect = new Rectangle(30, 20, 100, 50);
+
+        Spans spans = FloodFill.fill(width, height, 60, 40,
+            idx -> rect.contains(idx % width, idx / width));
+
+        assertThat(spans.size()).isEqualTo(50);
+        assertThat(spans.getBounds()).isEqualTo(rect);
+        // the rows with the same span are merged
+        assertThat(spans.toShape(0, 0).getBounds()).isEqualTo(rect);
+        assertThat(spans.toShape(0, 0).isRectangular()).isTrue();
+    }
+
+    private static boolean[] bfs(boolean[] inRegion, int width, int height, int seedX, int seedY) {
+        boolean[] reached = new boolean[inRegion.length];
+        Deque<int[]> queue = new ArrayDeque<>();
+        queue.add(new int[]{seedX, seedY});
+        reached[seedY * width + seedX] = true;
+        int[][] neighbors = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!queue.isEmpty()) {
+            int[] p = queue.poll();
+            for (int[] d : neighbors) {
+                int x = p[0] + d[0];
+                int y = p[1] + d[1];
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    int idx = y * width + x;
+                    if (inRegion[idx] && !reached[idx]) {
+                        reached[idx] = true;
+                        queue.add(new int[]{x, y});
+                    }
+                }
+            }
+        }
+        return reached;
+    }
+}
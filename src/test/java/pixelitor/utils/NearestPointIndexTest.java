@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("NearestPointIndex tests")
+class NearestPointIndexTest {
+    @ParameterizedTest
+    @EnumSource(Metric.class)
+    void findsNearestRandomPoint(Metric metric) {
+        Random random = new Random(7);
+        int width = 317;
+        int height = 211;
+        List<Point2D> points = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            // clustered points, so that some buckets are empty
+            double x = random.nextBoolean() ? random.nextDouble() * 60 : random.nextDouble() * width;
+            points.add(new Point2D.Double(x, random.nextDouble() * height));
+        }
+        var index = new NearestPointIndex(points, width, height);
+
+        for (int i = 0; i < 2000; i++) {
+            // also outside the area, as with the antialiasing subsamples
+            double x = random.nextDouble() * (width + 20) - 10;
+            double y = random.nextDouble() * (height + 20) - 10;
+            assertNearest(index, points, x, y, metric);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Metric.class)
+    void findsNearestPoissonSample(Metric metric) {
+        int width = 400;
+        int height = 300;
+        var sampling = new PoissonDiskSampling(width, height, 25, 10, true, new SplittableRandom(3));
+        List<Point2D> points = sampling.getSamples();
+        var index = new NearestPointIndex(points, width, height);
+
+        for (int y = 0; y < height; y += 7) {
+            for (int x = 0; x < width; x += 5) {
+                assertNearest(index, points, x, y, metric);
+            }
+        }
+    }
+
+    private static void assertNearest(NearestPointIndex index, List<Point2D> points,
+                                      double x, double y, Metric metric) {
+        double expected = Double.POSITIVE_INFINITY;
+        for (Point2D p : points) {
+            expected = Math.min(expected, metric.distanceDouble(x, y, p.getX(), p.getY()));
+        }
+        Point2D found = points.get(index.findNearest(x, y, metric));
+        // compares the distances, because there can be ties
+        assertThat(metric.distanceDouble(x, y, found.getX(), found.getY())).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pixelitor.utils.Resampler.Kernel;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Resampler tests")
+class ResamplerTest {
+    @ParameterizedTest
+    @EnumSource(Kernel.class)
+    void keepsUniformColor(Kernel kernel) {
+        int color = 0xFF_34_A0_7B;
+        var src = new BufferedImage(97, 61, TYPE_INT_ARGB);
+        fill(src, color);
+
+        int[][] sizes = {{13, 9}, {97, 20}, {250, 61}, {300, 190}};
+        for (int[] size : sizes) {
+            BufferedImage dst = resize(src, size[0], size[1], kernel);
+            assertThat(dst.getType()).isEqualTo(TYPE_INT_ARGB);
+            assertThat(dst.getWidth()).isEqualTo(size[0]);
+            assertThat(dst.getHeight()).isEqualTo(size[1]);
+            for (int y = 0; y < size[1]; y++) {
+                for (int x = 0; x < size[0]; x++) {
+                    assertThat(dst.getRGB(x, y)).isEqualTo(color);
+                }
+            }
+        }
+    }
+
+    @Test
+    void boxAveragesBlocks() {
+        var src = new BufferedImage(4, 2, TYPE_BYTE_GRAY);
+        byte[] values = {0, 10, (byte) 200, (byte) 220, 20, 30, (byte) 240, (byte) 255};
+        src.getRaster().setDataElements(0, 0, 4, 2, values);
+
+        BufferedImage dst = resize(src, 2, 1, Kernel.BOX);
+
+        assertThat(dst.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        assertThat(dst.getRaster().getSample(0, 0, 0)).isEqualTo(15);
+        assertThat(dst.getRaster().getSample(1, 0, 0)).isEqualTo(229);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Kernel.class)
+    void transparentColorsDontBleed(Kernel kernel) {
+        // white but transparent on the left, opaque red on the right
+        var src = new BufferedImage(40, 10, TYPE_INT_ARGB);
+        fill(src, 0x00_FF_FF_FF);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 20; x < 40; x++) {
+                src.setRGB(x, y, 0xFF_FF_00_00);
+            }
+        }
+
+        BufferedImage dst = resize(src, 15, 4, kernel);
+
+        for (int x = 0; x < 15; x++) {
+            int argb = dst.getRGB(x, 2);
+            if (argb >>> 24 != 0) {
+                assertThat(argb & 0xFF_FF_FF).isEqualTo(0xFF_00_00);
+            }
+        }
+    }
+
+    @Test
+    void keepsPremultipliedType() {
+        var src = new BufferedImage(30, 30, TYPE_INT_ARGB_PRE);
+        int[] pixels = new int[30 * 30];
+        Arrays.fill(pixels, 0x80_40_20_10);
+        src.getRaster().setDataElements(0, 0, 30, 30, pixels);
+
+        BufferedImage dst = resize(src, 10, 45, Kernel.MITCHELL);
+
+        assertThat(dst.getType()).isEqualTo(TYPE_INT_ARGB_PRE);
+        int[] pixel = (int[]) dst.getRaster().getDataElements(5, 20, null);
+        assertThat(pixel[0]).isEqualTo(0x80_40_20_10);
+    }
+
+    private static BufferedImage resize(BufferedImage src, int width, int height, Kernel kernel) {
+        return Resampler.resize(src, width, height, kernel, ProgressTracker.NULL_TRACKER);
+    }
+
+    private static void fill(BufferedImage img, int argb) {
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, argb);
+            }
+        }
+    }
+}